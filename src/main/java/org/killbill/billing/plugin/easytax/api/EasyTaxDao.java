@@ -16,14 +16,22 @@
 package org.killbill.billing.plugin.easytax.api;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 import javax.annotation.Nullable;
 
 import org.joda.time.DateTime;
 import org.killbill.billing.plugin.easytax.core.EasyTaxTaxCode;
+import org.killbill.billing.plugin.easytax.core.EasyTaxTaxCodeChange;
+import org.killbill.billing.plugin.easytax.core.EasyTaxTaxCodeDiff;
+import org.killbill.billing.plugin.easytax.core.EasyTaxTaxCodeRollOver;
 import org.killbill.billing.plugin.easytax.core.EasyTaxTaxation;
+import org.killbill.billing.plugin.easytax.core.TaxCodePrecedence;
+import org.killbill.billing.plugin.easytax.core.TaxZoneHierarchy;
 
 /**
  * API for EasyTax data access.
@@ -59,8 +67,16 @@ public interface EasyTaxDao {
      * values.
      * </p>
      * 
+     * <p>
+     * The saved tax codes, combined with the existing tax codes, must not have overlapping
+     * validity date ranges for the same <i>tax zone</i>, <i>product name</i>, and <i>tax code</i>
+     * values; otherwise nothing is saved.
+     * </p>
+     * 
      * @param taxCodes
      *            the tax code details to save
+     * @throws EasyTaxTaxCodeOverlapException
+     *             if saving the tax codes would result in overlapping validity date ranges
      * @throws SQLException
      *             if any SQL error occurs
      */
@@ -111,6 +127,366 @@ public interface EasyTaxDao {
             @Nullable final String productName, @Nullable String taxCode, @Nullable DateTime date)
             throws SQLException;
 
+    /**
+     * Find all tax codes for a tenant as they were known at a given time, optionally limited to a
+     * specific tax zone, product name, or validity date.
+     * 
+     * <p>
+     * This is a bitemporal query: {@code date} restricts the results by the validity date range of
+     * the tax codes (valid time), while {@code knownDate} reconstructs the tax codes as they had
+     * been saved at that time (transaction time) from the tax code change log. The created date of
+     * each returned tax code is the date that version of the tax code was saved. Only changes
+     * recorded in the change log are considered.
+     * </p>
+     * 
+     * <p>
+     * The change log of a tenant is incomplete before the date its old changes were last removed
+     * (see {@link #removeTaxCodeChanges(DateTime, int)}), or before the date it was seeded from
+     * tax codes saved before the change log existed. A {@code knownDate} before then is rejected.
+     * </p>
+     * 
+     * <p>
+     * The transaction time of a change is taken from the application clock of the node making the
+     * change, after it has locked the tax codes of the tenant but before the change commits; it is
+     * not a database timestamp. Changes are dated in sequence order as long as the clocks of all
+     * nodes agree, and a {@code knownDate} within the duration of a modifying transaction may or
+     * may not see its changes.
+     * </p>
+     * 
+     * @param kbTenantId
+     *            the tenant ID
+     * @param taxZone
+     *            an optional tax zone to limit the results to
+     * @param productName
+     *            an optional product name to limit the results to
+     * @param taxCode
+     *            an optional tax code to limit the results to
+     * @param date
+     *            an optional validity date to limit the results to
+     * @param knownDate
+     *            an optional date to find the tax codes as known at; if {@literal null} then the
+     *            current tax codes are returned, as with
+     *            {@link #getTaxCodes(UUID, String, String, String, DateTime)}
+     * @return the found tax codes, never {@literal null}, ordered as with
+     *         {@link #getTaxCodes(UUID, String, String, String, DateTime)}
+     * @throws EasyTaxTaxCodeValidationException
+     *             if {@code knownDate} is before the change log of the tenant is complete
+     * @throws SQLException
+     *             if any SQL error occurs
+     */
+    List<EasyTaxTaxCode> getTaxCodes(UUID kbTenantId, @Nullable String taxZone,
+            @Nullable String productName, @Nullable String taxCode, @Nullable DateTime date,
+            @Nullable DateTime knownDate) throws SQLException;
+
+    /**
+     * Find the tax codes that apply to a tax zone, including those of all the tax zones it is
+     * nested within, for a product name at a given date.
+     * 
+     * <p>
+     * The tax codes of each tax zone include those with the
+     * {@link EasyTaxTaxCode#ANY_PRODUCT_NAME} product name, unless overridden by a tax code for
+     * {@code productName} as described in {@link TaxCodePrecedence}. If {@code productName} is
+     * {@literal null}, for example for an invoice item without a plan, the tax codes of all
+     * products apply, and none are overridden.
+     * </p>
+     * 
+     * <p>
+     * This default implementation calls
+     * {@link #getTaxCodes(UUID, String, String, String, DateTime)} for each tax zone in the
+     * ancestry of {@code taxZone}, for both {@code productName} and any product. Implementations
+     * should look up all the tax codes at once, for example from a pre-computed set of the tax
+     * codes of all the tax zones and products.
+     * </p>
+     * 
+     * @param kbTenantId
+     *            the tenant ID
+     * @param hierarchy
+     *            the tax zone hierarchy
+     * @param taxZone
+     *            the tax zone
+     * @param productName
+     *            the product name, or {@literal null} for all products
+     * @param date
+     *            the validity date
+     * @return the found tax codes, never {@literal null}, ordered by valid from date in descending
+     *         order, and then from {@code taxZone} to its outermost ancestor
+     * @throws SQLException
+     *             if any SQL error occurs
+     */
+    default List<EasyTaxTaxCode> getApplicableTaxCodes(UUID kbTenantId,
+            TaxZoneHierarchy hierarchy, String taxZone, String productName, DateTime date)
+            throws SQLException {
+        final List<EasyTaxTaxCode> results = new ArrayList<>();
+        for (String zone : hierarchy.ancestry(taxZone)) {
+            results.addAll(getTaxCodes(kbTenantId, zone, productName, null, date));
+            if (productName != null && !EasyTaxTaxCode.ANY_PRODUCT_NAME.equals(productName)) {
+                results.addAll(getTaxCodes(kbTenantId, zone, EasyTaxTaxCode.ANY_PRODUCT_NAME,
+                        null, date));
+            }
+        }
+        if (productName != null) {
+            TaxCodePrecedence.removeOverridden(results);
+        }
+        // stable sort, so codes valid from the same date keep their ancestry order
+        results.sort(Comparator.comparing(EasyTaxTaxCode::getValidFromDate).reversed());
+        return results;
+    }
+
+    /**
+     * Import a snapshot of tax codes for a tenant.
+     *
+     * <p>
+     * The tenant ID of each imported tax code is ignored, and {@code kbTenantId} used instead. If
+     * {@code replace} is {@literal true} then all existing tax codes of the tenant that are not in
+     * the snapshot are deleted; in either case existing tax codes are updated as with
+     * {@link #saveTaxCodes(Iterable)}, and tax codes that do not change are left untouched. The
+     * tax codes are written using batched statements in a single transaction. Nothing is imported
+     * if the resulting tax codes would have overlapping validity date ranges.
+     * </p>
+     *
+     * @param kbTenantId
+     *            the tenant ID to import the tax codes into
+     * @param taxCodes
+     *            the tax codes to import
+     * @param replace
+     *            {@literal true} to replace all existing tax codes of the tenant
+     * @return the number of tax codes inserted or updated; existing tax codes that are imported
+     *         without any change are not counted
+     * @throws EasyTaxTaxCodeOverlapException
+     *             if importing the tax codes would result in overlapping validity date ranges
+     * @throws SQLException
+     *             if any SQL error occurs
+     */
+    int importTaxCodes(UUID kbTenantId, Iterable<EasyTaxTaxCode> taxCodes, boolean replace)
+            throws SQLException;
+
+    /**
+     * Synchronize the tax codes of a tenant with a desired set of tax codes.
+     *
+     * <p>
+     * The desired tax codes are compared to the existing tax codes of the tenant (optionally
+     * limited to a single tax zone) and only the differences are applied: tax codes that do not
+     * exist are inserted, tax codes whose <i>tax rate</i> or <i>valid to</i> date have changed are
+     * updated, and existing tax codes not present in {@code taxCodes} are deleted. Unchanged tax
+     * codes are not modified. The changes are written using batched statements in a single
+     * transaction. Nothing is changed if the desired tax codes have overlapping validity date
+     * ranges.
+     * </p>
+     *
+     * @param kbTenantId
+     *            the tenant ID
+     * @param taxZone
+     *            if provided, limit the synchronization to this tax zone; all {@code taxCodes} must
+     *            then have this tax zone
+     * @param taxCodes
+     *            the complete set of desired tax codes
+     * @return the applied differences, never {@literal null}
+     * @throws EasyTaxTaxCodeOverlapException
+     *             if the desired tax codes have overlapping validity date ranges
+     * @throws SQLException
+     *             if any SQL error occurs
+     */
+    EasyTaxTaxCodeDiff syncTaxCodes(UUID kbTenantId, @Nullable String taxZone,
+            Iterable<EasyTaxTaxCode> taxCodes) throws SQLException;
+
+    /**
+     * Copy all tax codes from one tenant to another.
+     *
+     * <p>
+     * The tax codes are copied within the database in a single transaction. If {@code replace} is
+     * {@literal true} then all existing tax codes of the destination tenant are deleted first;
+     * otherwise only tax codes not already defined for the destination tenant, as outlined in
+     * {@link EasyTaxTaxCode#equals(Object)}, are copied.
+     * </p>
+     *
+     * @param fromKbTenantId
+     *            the ID of the tenant to copy the tax codes from
+     * @param toKbTenantId
+     *            the ID of the tenant to copy the tax codes to
+     * @param replace
+     *            {@literal true} to replace all existing tax codes of the destination tenant
+     * @return the number of copied tax codes
+     * @throws EasyTaxTaxCodeOverlapException
+     *             if {@code replace} is {@literal false} and the copied tax codes overlap the
+     *             validity date ranges of existing tax codes of the destination tenant
+     * @throws SQLException
+     *             if any SQL error occurs
+     */
+    int copyTaxCodes(UUID fromKbTenantId, UUID toKbTenantId, boolean replace)
+            throws SQLException;
+
+    /**
+     * Add tax codes to a staged set of tax codes.
+     *
+     * <p>
+     * Staged tax codes have no effect until the stage is activated via
+     * {@link #activateTaxCodeStage(UUID, UUID)}. This method can be called repeatedly with the same
+     * {@code stageId} to stage a large set of tax codes in several batches. The tenant ID of each
+     * staged tax code is ignored, and {@code kbTenantId} used instead.
+     * </p>
+     *
+     * @param kbTenantId
+     *            the tenant ID
+     * @param stageId
+     *            the ID of the stage to add the tax codes to
+     * @param taxCodes
+     *            the tax codes to stage
+     * @return the number of staged tax codes
+     * @throws SQLException
+     *             if any SQL error occurs
+     */
+    int stageTaxCodes(UUID kbTenantId, UUID stageId, Iterable<EasyTaxTaxCode> taxCodes)
+            throws SQLException;
+
+    /**
+     * Get the staged tax codes of a stage.
+     *
+     * @param kbTenantId
+     *            the tenant ID
+     * @param stageId
+     *            the ID of the stage
+     * @return the staged tax codes, never {@literal null}, ordered by the order they were staged
+     * @throws SQLException
+     *             if any SQL error occurs
+     */
+    List<EasyTaxTaxCode> getStagedTaxCodes(UUID kbTenantId, UUID stageId) throws SQLException;
+
+    /**
+     * Activate a staged set of tax codes, replacing all existing tax codes of the tenant.
+     *
+     * <p>
+     * All existing tax codes of the tenant are replaced by the staged tax codes, and the stage is
+     * removed, in a single transaction. Readers thus see either the complete previous set of tax
+     * codes or the complete staged set, never a mix of both. If the stage has no tax codes then
+     * nothing is changed. The staged tax codes are validated within the same transaction, so the
+     * tax codes activated are exactly the ones validated.
+     * </p>
+     *
+     * @param kbTenantId
+     *            the tenant ID
+     * @param stageId
+     *            the ID of the stage to activate
+     * @return the number of activated tax codes, or {@literal 0} if the stage has no tax codes
+     * @throws EasyTaxTaxCodeValidationException
+     *             if the staged tax codes are not valid, in which case nothing is changed
+     * @throws SQLException
+     *             if any other SQL error occurs
+     */
+    int activateTaxCodeStage(UUID kbTenantId, UUID stageId) throws SQLException;
+
+    /**
+     * Remove a staged set of tax codes without activating it.
+     *
+     * @param kbTenantId
+     *            the tenant ID
+     * @param stageId
+     *            the ID of the stage to remove
+     * @return the number of removed staged tax codes
+     * @throws SQLException
+     *             if any SQL error occurs
+     */
+    int removeTaxCodeStage(UUID kbTenantId, UUID stageId) throws SQLException;
+
+    /**
+     * Remove abandoned staged sets of tax codes.
+     *
+     * <p>
+     * Only stages that have had no tax codes added since {@code olderThan} are removed, across all
+     * tenants. This method removes at most {@code maxStages} stages in a single transaction, so
+     * it should be called repeatedly until it returns {@literal 0} to remove all abandoned stages.
+     * </p>
+     *
+     * @param olderThan
+     *            the date a stage must have been last added to before to be removed
+     * @param maxStages
+     *            the maximum number of stages to remove
+     * @return the number of removed staged tax codes
+     * @throws SQLException
+     *             if any SQL error occurs
+     */
+    int removeTaxCodeStages(DateTime olderThan, int maxStages) throws SQLException;
+
+    /**
+     * Roll over a set of open-ended tax codes to a new tax rate.
+     *
+     * <p>
+     * All matching tax codes without a valid to date that are valid from before the effective date
+     * of {@code rollOver} have their valid to date set to the effective date, and a successor tax
+     * code valid from the effective date is added for each, all in a single transaction.
+     * </p>
+     *
+     * @param kbTenantId
+     *            the tenant ID
+     * @param rollOver
+     *            the roll over criteria and new tax rate
+     * @return the number of tax codes rolled over
+     * @throws EasyTaxTaxCodeOverlapException
+     *             if a matching tax code already has a tax code valid from the effective date or
+     *             later, for example from an earlier roll over with the same effective date, in
+     *             which case nothing is changed
+     * @throws SQLException
+     *             if any other SQL error occurs
+     */
+    int rollOverTaxCodes(UUID kbTenantId, EasyTaxTaxCodeRollOver rollOver) throws SQLException;
+
+    /**
+     * Get the tax code changes of a tenant made after a given change sequence.
+     *
+     * <p>
+     * Every modification of tax codes appends one change per affected tax code to a change log,
+     * in the same transaction as the modification; saving a tax code without changing it is not
+     * logged. Sequences are assigned in commit order, starting from {@literal 1}, so a
+     * consumer can keep the tax codes of a tenant in sync by repeatedly calling this method with
+     * the sequence of the last change it has seen.
+     * </p>
+     *
+     * @param kbTenantId
+     *            the tenant ID
+     * @param sinceSequence
+     *            the sequence to get changes after, or {@literal 0} for all changes
+     * @param max
+     *            the maximum number of changes to return
+     * @return the changes, ordered by sequence, never {@literal null}
+     * @throws SQLException
+     *             if any SQL error occurs
+     */
+    List<EasyTaxTaxCodeChange> getTaxCodeChanges(UUID kbTenantId, long sinceSequence, int max)
+            throws SQLException;
+
+    /**
+     * Remove tax code changes that are no longer needed to know the tax codes as of a date.
+     *
+     * <p>
+     * Changes made before {@code olderThan} are removed, across all tenants, if a later change to
+     * the same tax code was also made before {@code olderThan}, as are deletions with no earlier
+     * change left to refer to. The change log thus still describes the tax codes known at any date
+     * from {@code olderThan} on, but a consumer that last saw a sequence from before
+     * {@code olderThan} may have missed removed changes and must reload all tax codes. This method
+     * removes at most {@code maxChanges} changes in a single transaction, so it should be called
+     * repeatedly until it returns {@literal 0} to remove all unneeded changes. The tax codes of a
+     * tenant with removed changes can no longer be found as known at a date before
+     * {@code olderThan}.
+     * </p>
+     *
+     * @param olderThan
+     *            the date a change must have been made before to be removed
+     * @param maxChanges
+     *            the maximum number of changes to remove
+     * @return the number of removed changes
+     * @throws SQLException
+     *             if any SQL error occurs
+     */
+    int removeTaxCodeChanges(DateTime olderThan, int maxChanges) throws SQLException;
+
+    /**
+     * Get the IDs of all tenants that have tax codes.
+     *
+     * @return the tenant IDs, never {@literal null}
+     * @throws SQLException
+     *             if any SQL error occurs
+     */
+    Set<UUID> getTaxCodeTenantIds() throws SQLException;
+
     /**
      * Add a taxation record.
      * 
@@ -120,16 +496,38 @@ public interface EasyTaxDao {
      * and any generated tax invoice items.
      * </p>
      * 
+     * <p>
+     * Taxation records are unique by their tenant, invoice, and
+     * {@link EasyTaxTaxation#getContentHash()} values, so that the same taxation cannot be added to
+     * an invoice more than once, even by concurrent processes. Content hashes are kept apart from
+     * the taxation records, so this holds after the records are compacted, but they are deleted
+     * when the records are archived. Records without a content hash are not checked.
+     * </p>
+     * 
+     * <p>
+     * If the invoice's taxation records have been archived, they are restored along with the new
+     * record, in the same transaction.
+     * </p>
+     * 
      * @param taxation
      *            the taxation to save
+     * @throws java.sql.SQLIntegrityConstraintViolationException
+     *             if a taxation with the same content hash already exists for the invoice
      * @throws SQLException
-     *             if any SQL error occurs
+     *             if any other SQL error occurs
      */
     void addTaxation(EasyTaxTaxation taxation) throws SQLException;
 
     /**
      * Get the taxation objects for an invoice.
-     * 
+     *
+     * <p>
+     * The taxation archive (see {@link #archiveTaxations(DateTime, int)}) is only queried if the
+     * invoice has no current taxation objects. Adding a taxation to an archived invoice restores
+     * its archived objects first (see {@link #addTaxation(EasyTaxTaxation)}), so an invoice's
+     * objects are never split between the two. The objects are ordered by record ID.
+     * </p>
+     *
      * @param kbTenantId
      *            the tenant ID
      * @param kbAccountId
@@ -143,4 +541,69 @@ public interface EasyTaxDao {
     List<EasyTaxTaxation> getTaxation(final UUID kbTenantId, final UUID kbAccountId,
             final UUID kbInvoiceId) throws SQLException;
 
+    /**
+     * Move the taxation records of old invoices into the taxation archive.
+     *
+     * <p>
+     * Only invoices whose <b>most recent</b> taxation record was created before {@code olderThan}
+     * are archived, so that all taxation records for a given invoice are moved together. This
+     * method moves at most {@code maxInvoices} invoices worth of taxation records in a single
+     * transaction, and should be called repeatedly until it returns {@literal 0} to archive all
+     * eligible records. Records already in the archive are not copied again, so a retried batch
+     * does not duplicate archived records. The content hashes of archived invoices (see
+     * {@link #addTaxation(EasyTaxTaxation)}) are deleted in the same transaction.
+     * </p>
+     *
+     * @param olderThan
+     *            the date to archive records older than
+     * @param maxInvoices
+     *            the maximum number of invoices to archive
+     * @return the number of taxation records archived
+     * @throws SQLException
+     *             if any SQL error occurs
+     */
+    int archiveTaxations(DateTime olderThan, int maxInvoices) throws SQLException;
+
+    /**
+     * Compact all taxation records for an invoice into a single record.
+     *
+     * <p>
+     * The oldest taxation record of the invoice is updated to hold the union of all the invoice
+     * item mappings, the sum of all the total tax values, and the most recent creation date; all
+     * other taxation records of the invoice are then deleted. This is performed in a single
+     * transaction.
+     * </p>
+     *
+     * @param kbTenantId
+     *            the tenant ID
+     * @param kbAccountId
+     *            the account ID
+     * @param kbInvoiceId
+     *            the invoice ID
+     * @return the number of taxation records removed, or {@literal 0} if the invoice had fewer
+     *         than two taxation records
+     * @throws SQLException
+     *             if any SQL error occurs
+     */
+    int compactTaxation(UUID kbTenantId, UUID kbAccountId, UUID kbInvoiceId) throws SQLException;
+
+    /**
+     * Compact the taxation records of invoices having many taxation records.
+     *
+     * <p>
+     * Each found invoice is compacted in its own transaction, as with
+     * {@link #compactTaxation(UUID, UUID, UUID)}. This method should be called repeatedly until it
+     * returns {@literal 0} to compact all eligible invoices.
+     * </p>
+     *
+     * @param minRecords
+     *            the minimum number of taxation records an invoice must have to be compacted
+     * @param maxInvoices
+     *            the maximum number of invoices to compact
+     * @return the number of invoices compacted
+     * @throws SQLException
+     *             if any SQL error occurs
+     */
+    int compactTaxations(int minRecords, int maxInvoices) throws SQLException;
+
 }
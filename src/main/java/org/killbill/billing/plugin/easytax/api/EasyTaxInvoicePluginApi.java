@@ -68,6 +68,15 @@ public class EasyTaxInvoicePluginApi extends PluginInvoicePluginApi {
                 taxZoneResolver, taxDateResolver, clock);
     }
 
+    /**
+     * Get the tax calculator.
+     *
+     * @return the calculator
+     */
+    public EasyTaxTaxCalculator getCalculator() {
+        return calculator;
+    }
+
     @Override
     public List<InvoiceItem> getAdditionalInvoiceItems(final Invoice invoice, final boolean dryRun,
             final Iterable<PluginProperty> properties, final CallContext context) {
@@ -17,7 +17,11 @@ package org.killbill.billing.plugin.easytax.api;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -27,9 +31,12 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
 import java.util.stream.Collectors;
 
 import javax.annotation.Nullable;
@@ -45,12 +52,13 @@ import org.killbill.billing.invoice.api.InvoiceItem;
 import org.killbill.billing.osgi.api.OSGIKillbill;
 import org.killbill.billing.payment.api.PluginProperty;
 import org.killbill.billing.plugin.api.invoice.PluginTaxCalculator;
-import org.killbill.billing.plugin.easytax.core.AccountCustomFieldTaxZoneResolver;
 import org.killbill.billing.plugin.easytax.core.EasyTaxConfig;
 import org.killbill.billing.plugin.easytax.core.EasyTaxConfigurationHandler;
+import org.killbill.billing.plugin.easytax.core.EasyTaxResolverRegistry;
 import org.killbill.billing.plugin.easytax.core.EasyTaxTaxCode;
 import org.killbill.billing.plugin.easytax.core.EasyTaxTaxation;
-import org.killbill.billing.plugin.easytax.core.SimpleTaxDateResolver;
+import org.killbill.billing.plugin.easytax.core.FixedPointTaxAmount;
+import org.killbill.billing.plugin.easytax.core.StripedLock;
 import org.killbill.clock.Clock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -67,17 +75,17 @@ public class EasyTaxTaxCalculator extends PluginTaxCalculator {
     /** The service filter property key for the tenant ID. */
     public static final String TENANT_ID_FILTER = "tenant";
 
-    // CHECKSTYLE OFF: LineLength
-    private static final ConcurrentMap<UUID, EasyTaxTaxZoneResolver> ZONE_RESOLVER_CACHE = new ConcurrentHashMap<>();
-    private static final ConcurrentMap<UUID, EasyTaxTaxDateResolver> DATE_RESOLVER_CACHE = new ConcurrentHashMap<>();
-    // CHECKSTYLE ON: LineLength
+    /** The number of lock stripes used to serialize computing tax for the same invoice. */
+    public static final int INVOICE_LOCK_STRIPES = 64;
 
     private final OSGIKillbill killbillApi;
     private final EasyTaxConfigurationHandler configurationHandler;
     private final EasyTaxDao dao;
     private final OptionalService<EasyTaxTaxZoneResolver> taxZoneResolver;
     private final OptionalService<EasyTaxTaxDateResolver> taxDateResolver;
+    private final EasyTaxResolverRegistry resolverRegistry;
     private final Clock clock;
+    private final StripedLock invoiceLocks = new StripedLock(INVOICE_LOCK_STRIPES);
 
     private final Logger log = LoggerFactory.getLogger(getClass());
 
@@ -107,9 +115,19 @@ public class EasyTaxTaxCalculator extends PluginTaxCalculator {
         this.dao = dao;
         this.taxZoneResolver = taxZoneResolver;
         this.taxDateResolver = taxDateResolver;
+        this.resolverRegistry = new EasyTaxResolverRegistry(killbillApi, configurationHandler);
         this.clock = clock;
     }
 
+    /**
+     * Get the registry of resolvers created from tenant configurations.
+     * 
+     * @return the resolver registry
+     */
+    public EasyTaxResolverRegistry getResolverRegistry() {
+        return resolverRegistry;
+    }
+
     /**
      * Get an {@link EasyTaxTaxZoneResolver} to use.
      * 
@@ -117,8 +135,8 @@ public class EasyTaxTaxCalculator extends PluginTaxCalculator {
      * This will use the configured {@code OptionalService<EasyTaxTaxZoneResolver>} first, passing a
      * filter on {@link #TENANT_ID_FILTER} that matches the given tenant ID or the absence of a
      * tenant ID (e.g. a global service). If no service is found that way, the
-     * {@link EasyTaxConfig#getTaxZoneResolver()} property is used to instantiate a resolver for the
-     * given tenant.
+     * {@link EasyTaxConfig#getTaxZoneResolver()} property is used to get a resolver for the given
+     * tenant from the {@link EasyTaxResolverRegistry}.
      * </p>
      * 
      * @param kbTenantId
@@ -131,21 +149,7 @@ public class EasyTaxTaxCalculator extends PluginTaxCalculator {
         if (result != null) {
             return result;
         }
-        return ZONE_RESOLVER_CACHE.computeIfAbsent(kbTenantId, k -> {
-            EasyTaxConfig config = configurationHandler.getConfigurable(kbTenantId);
-            String resolverClassName = config.getTaxZoneResolver();
-            EasyTaxTaxZoneResolver resolover = null;
-            try {
-                resolover = (EasyTaxTaxZoneResolver) EasyTaxTaxCalculator.class.getClassLoader()
-                        .loadClass(resolverClassName).newInstance();
-            } catch (InstantiationException | IllegalAccessException | ClassNotFoundException e) {
-                log.error("Error instantiating EasyTaxTaxZoneResolver class [{}]; using default",
-                        resolverClassName, e);
-                resolover = new AccountCustomFieldTaxZoneResolver();
-            }
-            resolover.init(killbillApi, config);
-            return resolover;
-        });
+        return resolverRegistry.taxZoneResolver(kbTenantId);
     }
 
     /**
@@ -155,8 +159,8 @@ public class EasyTaxTaxCalculator extends PluginTaxCalculator {
      * This will use the configured {@code OptionalService<EasyTaxTaxDateResolver>} first, passing a
      * filter on {@link #TENANT_ID_FILTER} that matches the given tenant ID or the absence of a
      * tenant ID (e.g. a global service). If no service is found that way, the
-     * {@link EasyTaxConfig#getTaxDateResolver()} property is used to instantiate a resolver for the
-     * given tenant.
+     * {@link EasyTaxConfig#getTaxDateResolver()} property is used to get a resolver for the given
+     * tenant from the {@link EasyTaxResolverRegistry}.
      * </p>
      * 
      * @param kbTenantId
@@ -169,21 +173,67 @@ public class EasyTaxTaxCalculator extends PluginTaxCalculator {
         if (result != null) {
             return result;
         }
-        return DATE_RESOLVER_CACHE.computeIfAbsent(kbTenantId, k -> {
-            EasyTaxConfig config = configurationHandler.getConfigurable(kbTenantId);
-            String resolverClassName = config.getTaxDateResolver();
-            EasyTaxTaxDateResolver resolver = null;
-            try {
-                resolver = (EasyTaxTaxDateResolver) EasyTaxTaxCalculator.class.getClassLoader()
-                        .loadClass(resolverClassName).newInstance();
-            } catch (InstantiationException | IllegalAccessException | ClassNotFoundException e) {
-                log.error("Error instantiating EasyTaxTaxDateResolver class [{}]; using default",
-                        resolverClassName, e);
-                resolver = new SimpleTaxDateResolver();
-            }
-            resolver.init(killbillApi, config);
-            return resolver;
-        });
+        return resolverRegistry.taxDateResolver(kbTenantId);
+    }
+
+    /**
+     * Create the tax zone and tax date resolvers of a tenant ahead of their first use.
+     *
+     * @param kbTenantId
+     *            the tenant ID
+     */
+    public void warmUp(UUID kbTenantId) {
+        taxZoneResolver(kbTenantId);
+        taxDateResolver(kbTenantId);
+    }
+
+    /**
+     * Resolve the tax zones of accounts about to be invoiced in bulk, so resolving the tax zone of
+     * each of their invoices does not need to query them one at a time.
+     *
+     * @param kbTenantId
+     *            the tenant ID
+     * @param kbAccountIds
+     *            the IDs of the accounts about to be invoiced
+     * @return the number of accounts prefetched
+     * @see EasyTaxTaxZoneResolver#prefetchTaxZones(UUID, Collection)
+     */
+    public int prefetchTaxZones(UUID kbTenantId, Collection<UUID> kbAccountIds) {
+        return taxZoneResolver(kbTenantId).prefetchTaxZones(kbTenantId, kbAccountIds);
+    }
+
+    /**
+     * Replace the resolvers created for a tenant, after the tenant's configuration has changed.
+     *
+     * @param kbTenantId
+     *            the tenant ID, or {@literal null} to discard the resolvers of all tenants, after
+     *            the global configuration has changed
+     * @param config
+     *            the new configuration
+     * @see EasyTaxResolverRegistry#configurationChanged(UUID, EasyTaxConfig)
+     */
+    public void configurationChanged(@Nullable UUID kbTenantId, EasyTaxConfig config) {
+        resolverRegistry.configurationChanged(kbTenantId, config);
+    }
+
+    /**
+     * Notify the tax zone resolver of a tenant that an account, or one of its custom fields, has
+     * changed, so any data it has cached for the account is discarded.
+     *
+     * @param kbTenantId
+     *            the tenant ID
+     * @param kbAccountId
+     *            the ID of the account that changed
+     * @see EasyTaxTaxZoneResolver#accountChanged(UUID, UUID)
+     */
+    public void accountChanged(UUID kbTenantId, UUID kbAccountId) {
+        EasyTaxTaxZoneResolver result = taxZoneResolver.service(
+                OptionalService.equalOrAbsentFilter(TENANT_ID_FILTER, kbTenantId.toString()));
+        if (result != null) {
+            result.accountChanged(kbTenantId, kbAccountId);
+        } else {
+            resolverRegistry.accountChanged(kbTenantId, kbAccountId);
+        }
     }
 
     @Override
@@ -193,11 +243,33 @@ public class EasyTaxTaxCalculator extends PluginTaxCalculator {
         // instantiate zone resolver
         EasyTaxTaxZoneResolver resolver = taxZoneResolver(kbTenantId);
         String taxZone = resolver.taxZoneForInvoice(kbTenantId, account, invoice, pluginProperties);
-        if (taxZone == null) {
+        Map<UUID, String> itemTaxZones = resolver.taxZonesForInvoiceItems(kbTenantId, account,
+                invoice, taxableItems.values(), pluginProperties);
+        if (itemTaxZones == null) {
+            itemTaxZones = Collections.emptyMap();
+        }
+        if (taxZone == null && itemTaxZones.isEmpty()) {
             return Collections.emptyList();
         }
 
-        Map<UUID, Set<UUID>> alreadyTaxedItems = getAlreadyTaxedItemsWithTaxes(invoice, kbTenantId);
+        // serialize computing tax for the same invoice, so existing taxations are not missed
+        final Lock invoiceLock = invoiceLocks.lockFor(invoice.getId());
+        invoiceLock.lock();
+        try {
+            return computeTaxItems(account, newInvoice, invoice, taxableItems, adjustmentItems,
+                    dryRun, taxZone, itemTaxZones, kbTenantId,
+                    configurationHandler.getConfigurable(kbTenantId));
+        } finally {
+            invoiceLock.unlock();
+        }
+    }
+
+    private List<InvoiceItem> computeTaxItems(Account account, Invoice newInvoice, Invoice invoice,
+            Map<UUID, InvoiceItem> taxableItems, Map<UUID, Collection<InvoiceItem>> adjustmentItems,
+            boolean dryRun, String taxZone, Map<UUID, String> itemTaxZones, UUID kbTenantId,
+            EasyTaxConfig config) {
+        final List<EasyTaxTaxation> existingTaxations = getExistingTaxations(invoice, kbTenantId);
+        Map<UUID, Set<UUID>> alreadyTaxedItems = getAlreadyTaxedItemsWithTaxes(existingTaxations);
 
         final Map<UUID, InvoiceItem> salesTaxItems = new LinkedHashMap<>();
         final Map<UUID, InvoiceItem> returnTaxItems = new LinkedHashMap<>();
@@ -208,11 +280,12 @@ public class EasyTaxTaxCalculator extends PluginTaxCalculator {
         // CHECKSTYLE ON: LineLength
         // TODO: make static for actual caching support?
         final Map<String, String> planToProductCache = new HashMap<>();
+        final TaxZones taxZones = new TaxZones(taxZone, itemTaxZones);
 
         List<InvoiceItem> newTaxInvoiceItems = new ArrayList<>();
         if (!salesTaxItems.isEmpty()) {
             newTaxInvoiceItems.addAll(getTaxItems(account, newInvoice, invoice, salesTaxItems, null,
-                    null, dryRun, taxZone, planToProductCache, kbTenantId));
+                    null, dryRun, taxZones, planToProductCache, kbTenantId, config));
         }
         if (!returnTaxItems.isEmpty()) {
             // TODO: tracking original invoice ref code?
@@ -228,8 +301,8 @@ public class EasyTaxTaxCalculator extends PluginTaxCalculator {
             }
 
             newTaxInvoiceItems.addAll(getTaxItems(account, newInvoice, invoice, returnTaxItems,
-                    adjustmentItemsForReturnTaxItems, originalInvoiceReferenceCode, dryRun, taxZone,
-                    planToProductCache, kbTenantId));
+                    adjustmentItemsForReturnTaxItems, originalInvoiceReferenceCode, dryRun,
+                    taxZones, planToProductCache, kbTenantId, config));
         }
 
         // add to already taxed settings
@@ -255,12 +328,20 @@ public class EasyTaxTaxCalculator extends PluginTaxCalculator {
             }
             taxation.setInvoiceItemIds(taxedItemsWithAdjustments);
             taxation.setTotalTax(totalTax);
+            taxation.setContentHash(
+                    taxationContentHash(adjustmentItemsForReturnTaxItems, newTaxInvoiceItems));
             try {
                 dao.addTaxation(taxation);
+            } catch (SQLIntegrityConstraintViolationException e) {
+                log.info("Taxation record for invoice {} already added by another process",
+                        invoice.getId());
+                return Collections.emptyList();
             } catch (SQLException e) {
                 log.error("Error saving taxation record for invoice {}", invoice.getId(), e);
                 return Collections.emptyList();
             }
+            compactTaxationIfNeeded(account, invoice, existingTaxations.size() + 1, kbTenantId,
+                    config);
         }
 
         return Collections.unmodifiableList(newTaxInvoiceItems);
@@ -268,46 +349,147 @@ public class EasyTaxTaxCalculator extends PluginTaxCalculator {
     }
 
     /**
-     * Get a mapping of existing taxable invoice item IDs to associated tax invoice items on an
-     * invoice.
+     * Compute a hash of the taxable content of a new taxation record.
+     * 
+     * <p>
+     * The hash covers only the content taxed by the new tax items: the IDs of the taxable items
+     * they are linked to and, for returned items, the IDs of the adjustment items being taxed. It
+     * does not cover the IDs of the new tax items themselves as those are randomly assigned, nor
+     * adjustments of items that were not taxed again. Thus two attempts to tax the same content on
+     * an invoice produce the same hash.
+     * </p>
+     * 
+     * @param adjustmentItemsForReturnTaxItems
+     *            the adjustment items of the returned items being taxed, by taxable item ID
+     * @param newTaxItems
+     *            the new tax items
+     * @return the hash, as a hex-encoded SHA-256 digest
+     */
+    private static String taxationContentHash(
+            Map<UUID, Collection<InvoiceItem>> adjustmentItemsForReturnTaxItems,
+            List<InvoiceItem> newTaxItems) {
+        final SortedMap<UUID, SortedSet<UUID>> content = new TreeMap<>();
+        for (InvoiceItem item : newTaxItems) {
+            if (item.getLinkedItemId() == null) {
+                continue;
+            }
+            SortedSet<UUID> ids = content.computeIfAbsent(item.getLinkedItemId(),
+                    k -> new TreeSet<>());
+            Collection<InvoiceItem> adjustments = adjustmentItemsForReturnTaxItems
+                    .get(item.getLinkedItemId());
+            if (adjustments != null) {
+                for (InvoiceItem adjustment : adjustments) {
+                    ids.add(adjustment.getId());
+                }
+            }
+        }
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 digest not available", e);
+        }
+        for (Map.Entry<UUID, SortedSet<UUID>> entry : content.entrySet()) {
+            digest.update(entry.getKey().toString().getBytes(StandardCharsets.US_ASCII));
+            for (UUID id : entry.getValue()) {
+                digest.update((byte) ',');
+                digest.update(id.toString().getBytes(StandardCharsets.US_ASCII));
+            }
+            digest.update((byte) ';');
+        }
+        final byte[] hash = digest.digest();
+        final StringBuilder buf = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            buf.append(Character.forDigit((b >> 4) & 0xF, 16))
+                    .append(Character.forDigit(b & 0xF, 16));
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Get the existing taxation records for an invoice.
      * 
      * @param invoice
-     *            the invoice to inspect
+     *            the invoice to get the taxation records for
      * @param kbTenantId
      *            the tenant ID
+     * @return the taxation records, or an empty list if none available
+     */
+    private List<EasyTaxTaxation> getExistingTaxations(Invoice invoice, UUID kbTenantId) {
+        try {
+            return dao.getTaxation(kbTenantId, invoice.getAccountId(), invoice.getId());
+        } catch (final SQLException e) {
+            log.warn("Unable to compute tax for account {}", invoice.getAccountId(), e);
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Get a mapping of existing taxable invoice item IDs to associated tax invoice items on an
+     * invoice.
+     * 
+     * @param taxations
+     *            the existing taxation records of the invoice
      * @return the mapping, or an empty {@code Map} if no existing items available
      */
-    private Map<UUID, Set<UUID>> getAlreadyTaxedItemsWithTaxes(Invoice invoice, UUID kbTenantId) {
+    private Map<UUID, Set<UUID>> getAlreadyTaxedItemsWithTaxes(List<EasyTaxTaxation> taxations) {
         Map<UUID, Set<UUID>> alreadyTaxed = null;
-        try {
-            List<EasyTaxTaxation> taxations = dao.getTaxation(kbTenantId, invoice.getAccountId(),
-                    invoice.getId());
-            if (!taxations.isEmpty()) {
-                if (taxations.size() == 1) {
-                    alreadyTaxed = taxations.get(0).getInvoiceItemIds();
-                } else {
-                    alreadyTaxed = new HashMap<>();
-                    for (EasyTaxTaxation taxation : taxations) {
-                        for (Map.Entry<UUID, Set<UUID>> entry : taxation.getInvoiceItemIds()
-                                .entrySet()) {
-                            alreadyTaxed.computeIfAbsent(entry.getKey(), k -> new HashSet<>())
-                                    .addAll(entry.getValue());
-                        }
+        if (taxations != null && !taxations.isEmpty()) {
+            if (taxations.size() == 1) {
+                alreadyTaxed = taxations.get(0).getInvoiceItemIds();
+            } else {
+                alreadyTaxed = new HashMap<>();
+                for (EasyTaxTaxation taxation : taxations) {
+                    for (Map.Entry<UUID, Set<UUID>> entry : taxation.getInvoiceItemIds()
+                            .entrySet()) {
+                        alreadyTaxed.computeIfAbsent(entry.getKey(), k -> new HashSet<>())
+                                .addAll(entry.getValue());
                     }
                 }
             }
-        } catch (final SQLException e) {
-            log.warn("Unable to compute tax for account {}", invoice.getAccountId(), e);
         }
         return alreadyTaxed != null ? alreadyTaxed : Collections.emptyMap();
     }
 
+    /**
+     * Compact the taxation records of an invoice if the configured threshold has been reached.
+     * 
+     * <p>
+     * Compaction failures are logged but otherwise ignored, as the taxation records remain valid
+     * when not compacted.
+     * </p>
+     * 
+     * @param account
+     *            the account
+     * @param invoice
+     *            the invoice
+     * @param taxationCount
+     *            the number of taxation records the invoice now has
+     * @param kbTenantId
+     *            the tenant ID
+     * @param config
+     *            the tenant configuration
+     * @see EasyTaxConfig#getTaxationCompactThreshold()
+     */
+    private void compactTaxationIfNeeded(Account account, Invoice invoice, int taxationCount,
+            UUID kbTenantId, EasyTaxConfig config) {
+        final int threshold = config.getTaxationCompactThreshold();
+        if (threshold < 1 || taxationCount < Math.max(2, threshold)) {
+            return;
+        }
+        try {
+            dao.compactTaxation(kbTenantId, account.getId(), invoice.getId());
+        } catch (SQLException e) {
+            log.warn("Error compacting taxation records for invoice {}", invoice.getId(), e);
+        }
+    }
+
     private List<InvoiceItem> getTaxItems(final Account account, final Invoice newInvoice,
             final Invoice invoice, final Map<UUID, InvoiceItem> taxableItems,
             @Nullable final Map<UUID, Collection<InvoiceItem>> adjustmentItems,
             @Nullable final String originalInvoiceReferenceCode, final boolean dryRun,
-            final String taxZone, final Map<String, String> planToProductCache,
-            final UUID kbTenantId) {
+            final TaxZones taxZones, final Map<String, String> planToProductCache,
+            final UUID kbTenantId, final EasyTaxConfig config) {
         // Keep track of the invoice items and adjustments we've already taxed
         final Map<UUID, Iterable<InvoiceItem>> kbInvoiceItems = new HashMap<>();
         if (adjustmentItems != null) {
@@ -323,8 +505,8 @@ public class EasyTaxTaxCalculator extends PluginTaxCalculator {
 
         try {
             return buildInvoiceItems(account, newInvoice, invoice, taxableItems, adjustmentItems,
-                    originalInvoiceReferenceCode, dryRun, taxZone, planToProductCache, kbTenantId,
-                    kbInvoiceItems, taxItemsDate);
+                    originalInvoiceReferenceCode, dryRun, taxZones, planToProductCache,
+                    kbTenantId, kbInvoiceItems, taxItemsDate, config);
         } catch (final RuntimeException e) {
             log.warn("Unable to compute tax for account " + account.getId(), e);
             return Collections.emptyList();
@@ -358,51 +540,60 @@ public class EasyTaxTaxCalculator extends PluginTaxCalculator {
             final Invoice invoice, final Map<UUID, InvoiceItem> taxableItems,
             @Nullable final Map<UUID, Collection<InvoiceItem>> adjustmentItems,
             @Nullable final String originalInvoiceReferenceCode, final boolean dryRun,
-            final String taxZone, final Map<String, String> planToProductCache,
+            final TaxZones taxZones, final Map<String, String> planToProductCache,
             final UUID kbTenantId, final Map<UUID, Iterable<InvoiceItem>> kbInvoiceItems,
-            final LocalDate utcToday) throws SQLException {
+            final LocalDate utcToday, final EasyTaxConfig config) throws SQLException {
+        final Map<UUID, DateTime> taxDates = taxDateResolver(kbTenantId)
+                .taxDatesForInvoiceItems(kbTenantId, account, newInvoice, taxableItems.values(),
+                        null);
         final List<InvoiceItem> newTaxItems = new ArrayList<>();
         for (final InvoiceItem taxableItem : taxableItems.values()) {
+            final String taxZone = taxZones.taxZone(taxableItem);
+            if (taxZone == null) {
+                continue;
+            }
             final Collection<InvoiceItem> adjustmentsForTaxableItem = adjustmentItems == null ? null
                     : adjustmentItems.get(taxableItem.getId());
             final BigDecimal netItemAmount = adjustmentsForTaxableItem == null
                     ? taxableItem.getAmount()
                     : sum(adjustmentsForTaxableItem);
             newTaxItems.addAll(taxInvoiceItemsForInvoiceItem(account, newInvoice, taxableItem,
-                    taxZone, netItemAmount, utcToday, kbTenantId, planToProductCache));
+                    taxZone, taxZones, netItemAmount, utcToday, kbTenantId, planToProductCache,
+                    config, taxDates.get(taxableItem.getId())));
         }
 
         return newTaxItems;
     }
 
-    private DateTime taxDateForInvoiceItem(UUID kbTenantId, Account account, Invoice invoice,
-            InvoiceItem item) {
-        EasyTaxTaxDateResolver dateResolver = taxDateResolver(kbTenantId);
-        return dateResolver.taxDateForInvoiceItem(kbTenantId, account, invoice, item, null);
-    }
-
     private List<InvoiceItem> taxInvoiceItemsForInvoiceItem(final Account account,
             final Invoice newInvoice, final InvoiceItem taxableItem, final String taxZone,
-            final BigDecimal netItemAmount, final LocalDate utcToday, final UUID kbTenantId,
-            final Map<String, String> planToProductCache) throws SQLException {
-        DateTime taxDate = taxDateForInvoiceItem(kbTenantId, account, newInvoice, taxableItem);
+            final TaxZones taxZones, final BigDecimal netItemAmount, final LocalDate utcToday,
+            final UUID kbTenantId, final Map<String, String> planToProductCache,
+            final EasyTaxConfig config,
+            @Nullable DateTime taxDate) throws SQLException {
         if (taxDate == null) {
             // use the current date; should this be configurable (i.e. to bail if not found)?
             taxDate = clock.getUTCNow();
         }
         String productName = productNameForInvoiceItem(taxableItem, planToProductCache, kbTenantId);
-        List<EasyTaxTaxCode> taxCodes = dao.getTaxCodes(kbTenantId, taxZone, productName, null,
-                taxDate);
+        // look up the tax codes once per distinct tax zone, product, and date on the invoice
+        final String taxCodesKey = taxZone + '\0' + productName + '\0' + taxDate.getMillis();
+        List<EasyTaxTaxCode> taxCodes = taxZones.taxCodes.get(taxCodesKey);
+        if (taxCodes == null) {
+            taxCodes = dao.getApplicableTaxCodes(kbTenantId, config.getTaxZoneHierarchy(),
+                    taxZone, productName, taxDate);
+            taxZones.taxCodes.put(taxCodesKey, taxCodes);
+        }
         if (taxCodes == null || taxCodes.isEmpty()) {
             return Collections.emptyList();
         }
-        final EasyTaxConfig config = configurationHandler.getConfigurable(kbTenantId);
         final int scale = config.getTaxScale();
         final RoundingMode roundingMode = config.getTaxRoundingMode();
         List<InvoiceItem> newTaxItems = new ArrayList<>();
         for (EasyTaxTaxCode taxCode : taxCodes) {
             InvoiceItem taxItem = buildTaxItem(taxableItem, newInvoice.getId(), utcToday,
-                    taxCode.getTaxRate().multiply(netItemAmount).setScale(scale, roundingMode),
+                    FixedPointTaxAmount.multiply(taxCode.getTaxRate(), netItemAmount, scale,
+                            roundingMode),
                     taxCode.getTaxCode());
             if (taxItem != null) {
                 newTaxItems.add(taxItem);
@@ -410,4 +601,25 @@ public class EasyTaxTaxCalculator extends PluginTaxCalculator {
         }
         return newTaxItems;
     }
+
+    /**
+     * The tax zones of the items of one invoice, and the tax codes already looked up for them.
+     */
+    private static final class TaxZones {
+
+        private final String invoiceTaxZone;
+        private final Map<UUID, String> itemTaxZones;
+        private final Map<String, List<EasyTaxTaxCode>> taxCodes = new HashMap<>();
+
+        private TaxZones(@Nullable String invoiceTaxZone, Map<UUID, String> itemTaxZones) {
+            super();
+            this.invoiceTaxZone = invoiceTaxZone;
+            this.itemTaxZones = itemTaxZones;
+        }
+
+        private String taxZone(InvoiceItem item) {
+            final String taxZone = itemTaxZones.get(item.getId());
+            return (taxZone != null ? taxZone : invoiceTaxZone);
+        }
+    }
 }
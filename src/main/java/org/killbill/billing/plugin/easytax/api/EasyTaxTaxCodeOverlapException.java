@@ -0,0 +1,58 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.killbill.billing.plugin.easytax.api;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Exception thrown when saving tax codes would result in overlapping validity date ranges for the
+ * same tax zone, product name, and tax code.
+ * 
+ * @author matt
+ */
+public class EasyTaxTaxCodeOverlapException extends SQLException {
+
+    private static final long serialVersionUID = -4185766027957447186L;
+
+    /** The SQL state used for overlap errors, an integrity constraint violation. */
+    public static final String SQL_STATE = "23000";
+
+    private final List<String> overlaps;
+
+    /**
+     * Constructor.
+     * 
+     * @param overlaps
+     *            the overlap messages; must not be empty
+     */
+    public EasyTaxTaxCodeOverlapException(List<String> overlaps) {
+        super(overlaps.get(0) + (overlaps.size() > 1 ? " (and " + (overlaps.size() - 1) + " more)"
+                : ""), SQL_STATE);
+        this.overlaps = Collections.unmodifiableList(overlaps);
+    }
+
+    /**
+     * Get the overlap messages.
+     * 
+     * @return the overlap messages, never empty
+     */
+    public List<String> getOverlaps() {
+        return overlaps;
+    }
+
+}
@@ -0,0 +1,58 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.killbill.billing.plugin.easytax.api;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Exception thrown when a set of tax codes fails validation, for example a staged set of tax
+ * codes that is activated after being staged with missing or invalid properties.
+ * 
+ * @author matt
+ */
+public class EasyTaxTaxCodeValidationException extends SQLException {
+
+    private static final long serialVersionUID = 3062144785211532604L;
+
+    /** The SQL state used for validation errors, a data exception. */
+    public static final String SQL_STATE = "22000";
+
+    private final List<String> errors;
+
+    /**
+     * Constructor.
+     * 
+     * @param errors
+     *            the validation error messages; must not be empty
+     */
+    public EasyTaxTaxCodeValidationException(List<String> errors) {
+        super(errors.get(0) + (errors.size() > 1 ? " (and " + (errors.size() - 1) + " more)" : ""),
+                SQL_STATE);
+        this.errors = Collections.unmodifiableList(errors);
+    }
+
+    /**
+     * Get the validation error messages.
+     * 
+     * @return the validation error messages, never empty
+     */
+    public List<String> getErrors() {
+        return errors;
+    }
+
+}
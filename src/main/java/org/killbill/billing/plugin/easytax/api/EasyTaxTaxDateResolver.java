@@ -15,6 +15,8 @@
 
 package org.killbill.billing.plugin.easytax.api;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.UUID;
 
 import org.joda.time.DateTime;
@@ -69,4 +71,55 @@ public interface EasyTaxTaxDateResolver {
     DateTime taxDateForInvoiceItem(UUID kbTenantId, Account account, Invoice invoice,
             InvoiceItem invoiceItem, Iterable<PluginProperty> pluginProperties);
 
+    /**
+     * Resolve tax dates for all invoice items of an invoice in one call.
+     * 
+     * <p>
+     * This method must be thread-safe. This default implementation calls
+     * {@link #taxDateForInvoiceItem(UUID, Account, Invoice, InvoiceItem, Iterable)} for each item;
+     * implementations can override to share work between the items.
+     * </p>
+     * 
+     * @param kbTenantId
+     *            the tenant ID
+     * @param account
+     *            the account
+     * @param invoice
+     *            the invoice
+     * @param invoiceItems
+     *            the invoice items
+     * @param pluginProperties
+     *            any available active plugin properties
+     * @return the tax dates, mapped by invoice item ID; items without a resolved date are not
+     *         included
+     */
+    default Map<UUID, DateTime> taxDatesForInvoiceItems(UUID kbTenantId, Account account,
+            Invoice invoice, Iterable<InvoiceItem> invoiceItems,
+            Iterable<PluginProperty> pluginProperties) {
+        final Map<UUID, DateTime> result = new LinkedHashMap<>();
+        for (InvoiceItem invoiceItem : invoiceItems) {
+            DateTime taxDate = taxDateForInvoiceItem(kbTenantId, account, invoice, invoiceItem,
+                    pluginProperties);
+            if (taxDate != null) {
+                result.put(invoiceItem.getId(), taxDate);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Test if this resolver holds no state other than what it is initialized with.
+     * 
+     * <p>
+     * Tenants with equal configurations share the same instance of a stateless resolver.
+     * Resolvers that keep any data about tenants or accounts must return {@literal false} so each
+     * tenant gets its own instance. This default implementation returns {@literal false}.
+     * </p>
+     * 
+     * @return {@literal true} if the resolver can be shared by tenants with equal configurations
+     */
+    default boolean isStateless() {
+        return false;
+    }
+
 }
@@ -15,10 +15,14 @@
 
 package org.killbill.billing.plugin.easytax.api;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
 import java.util.UUID;
 
 import org.killbill.billing.account.api.Account;
 import org.killbill.billing.invoice.api.Invoice;
+import org.killbill.billing.invoice.api.InvoiceItem;
 import org.killbill.billing.osgi.api.OSGIKillbill;
 import org.killbill.billing.payment.api.PluginProperty;
 import org.killbill.billing.plugin.easytax.core.EasyTaxConfig;
@@ -66,4 +70,101 @@ public interface EasyTaxTaxZoneResolver {
     String taxZoneForInvoice(UUID kbTenantId, Account account, Invoice invoice,
             Iterable<PluginProperty> pluginProperties);
 
+    /**
+     * Resolve tax zones for individual invoice items in one call, for invoices with items that
+     * are taxed in different tax zones.
+     * 
+     * <p>
+     * This method must be thread-safe. Items without a resolved tax zone are taxed in the zone
+     * returned by {@link #taxZoneForInvoice(UUID, Account, Invoice, Iterable)}. This default
+     * implementation does not resolve any item tax zones.
+     * </p>
+     * 
+     * @param kbTenantId
+     *            the tenant ID
+     * @param account
+     *            the account
+     * @param invoice
+     *            the invoice
+     * @param invoiceItems
+     *            the invoice items to resolve tax zones for
+     * @param pluginProperties
+     *            any available active plugin properties
+     * @return the tax zones, mapped by invoice item ID; items without a resolved tax zone are not
+     *         included
+     */
+    default Map<UUID, String> taxZonesForInvoiceItems(UUID kbTenantId, Account account,
+            Invoice invoice, Collection<InvoiceItem> invoiceItems,
+            Iterable<PluginProperty> pluginProperties) {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Resolve the tax zones of a set of accounts in bulk, ahead of calls to
+     * {@link #taxZoneForInvoice(UUID, Account, Invoice, Iterable)} for those accounts.
+     * 
+     * <p>
+     * This method must be thread-safe. It is only a hint: resolvers that cannot resolve zones in
+     * bulk can ignore it, which is what this default implementation does.
+     * </p>
+     * 
+     * @param kbTenantId
+     *            the tenant ID
+     * @param kbAccountIds
+     *            the IDs of the accounts about to be invoiced
+     * @return the number of accounts prefetched
+     */
+    default int prefetchTaxZones(UUID kbTenantId, Collection<UUID> kbAccountIds) {
+        return 0;
+    }
+
+    /**
+     * Notification that an account, or one of its custom fields, has changed.
+     * 
+     * <p>
+     * This method must be thread-safe. Resolvers that cache account data should discard any data
+     * cached for the account. This default implementation does nothing.
+     * </p>
+     * 
+     * @param kbTenantId
+     *            the tenant ID
+     * @param kbAccountId
+     *            the ID of the account that changed
+     */
+    default void accountChanged(UUID kbTenantId, UUID kbAccountId) {
+        // nothing to do
+    }
+
+    /**
+     * Test if the tax zones resolved by this resolver can be cached per account for a short time.
+     * 
+     * <p>
+     * Resolvers that call Kill Bill APIs to resolve a tax zone that depends only on the account
+     * should return {@literal true}, so that callers such as a
+     * {@link org.killbill.billing.plugin.easytax.core.CompositeTaxZoneResolver} can avoid
+     * repeating those calls. This default implementation returns {@literal false}.
+     * </p>
+     * 
+     * @return {@literal true} if resolved tax zones can be cached by account
+     */
+    default boolean isCacheable() {
+        return false;
+    }
+
+    /**
+     * Test if this resolver holds no state other than what it is initialized with.
+     * 
+     * <p>
+     * Tenants with equal configurations share the same instance of a stateless resolver.
+     * Resolvers that keep any data about tenants or accounts, such as a cache, must return
+     * {@literal false} so each tenant gets its own instance. This default implementation returns
+     * {@literal false}.
+     * </p>
+     * 
+     * @return {@literal true} if the resolver can be shared by tenants with equal configurations
+     */
+    default boolean isStateless() {
+        return false;
+    }
+
 }
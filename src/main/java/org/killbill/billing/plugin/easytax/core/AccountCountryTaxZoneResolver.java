@@ -0,0 +1,55 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.killbill.billing.plugin.easytax.core;
+
+import java.util.UUID;
+
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.invoice.api.Invoice;
+import org.killbill.billing.osgi.api.OSGIKillbill;
+import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.plugin.easytax.api.EasyTaxTaxZoneResolver;
+
+/**
+ * Resolve tax zones as the country of the account.
+ *
+ * @author matt
+ */
+public class AccountCountryTaxZoneResolver implements EasyTaxTaxZoneResolver {
+
+    @Override
+    public void init(OSGIKillbill killbillApi, EasyTaxConfig config) {
+        // nothing to configure
+    }
+
+    @Override
+    public String taxZoneForInvoice(UUID kbTenantId, Account account, Invoice invoice,
+            Iterable<PluginProperty> pluginProperties) {
+        return (account != null ? account.getCountry() : null);
+    }
+
+    /**
+     * Test if this resolver holds no state other than what it is initialized with.
+     *
+     * @return {@literal true}, as tax zones depend only on the account
+     */
+    @Override
+    public boolean isStateless() {
+        return true;
+    }
+
+}
@@ -15,21 +15,57 @@
 
 package org.killbill.billing.plugin.easytax.core;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.killbill.billing.ObjectType;
 import org.killbill.billing.account.api.Account;
 import org.killbill.billing.invoice.api.Invoice;
+import org.killbill.billing.invoice.api.InvoiceItem;
 import org.killbill.billing.osgi.api.OSGIKillbill;
 import org.killbill.billing.payment.api.PluginProperty;
 import org.killbill.billing.plugin.easytax.api.EasyTaxTaxZoneResolver;
 import org.killbill.billing.plugin.easytax.api.EasyTaxTenantContext;
+import org.killbill.billing.util.api.CustomFieldUserApi;
 import org.killbill.billing.util.callcontext.TenantContext;
+import org.killbill.billing.util.customfield.CustomField;
+import org.killbill.billing.util.entity.Pagination;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Resolve tax zones based on a custom field on an account.
  * 
+ * <p>
+ * Tax zones can be prefetched in bulk via {@link #prefetchTaxZones(UUID, Collection)}, which pages
+ * through the tax zone custom fields of the tenant, up to {@link #PREFETCH_MAX_PAGES_PROPERTY}
+ * pages, instead of querying each account; batches of at most {@link #PREFETCH_LOOKUP_MAX_ACCOUNTS}
+ * accounts are looked up one account at a time instead. Only tax zones found in the tenant's
+ * custom fields are prefetched, keyed by tenant and account, so accounts without a tax zone
+ * custom field are still looked up when invoiced. A prefetched tax zone is used by the next
+ * invoice of its account within {@link #PREFETCH_SECONDS_PROPERTY} seconds, and then discarded.
+ * </p>
+ * 
+ * <p>
+ * When the {@link #USE_ITEM_CUSTOM_FIELDS_PROPERTY} is enabled, tax zone custom fields on invoice
+ * items and subscriptions are also used as the tax zones of individual invoice items. All the
+ * custom fields of the account are then fetched in a single call per invoice: the call that
+ * resolves the tax zone of the invoice keeps the item tax zones it finds for the
+ * {@link #taxZonesForInvoiceItems(UUID, Account, Invoice, Collection, Iterable)} call that
+ * follows, which only fetches the custom fields itself when the invoice tax zone was prefetched
+ * or cached.
+ * </p>
+ * 
  * @author matt
  */
 public class AccountCustomFieldTaxZoneResolver implements EasyTaxTaxZoneResolver {
@@ -39,24 +75,104 @@ public class AccountCustomFieldTaxZoneResolver implements EasyTaxTaxZoneResolver
     public static final String USE_ACCOUNT_COUNTRY_PROPERTY = "accountCustomFieldTaxZoneResolver.useAccountCountry";
     // CHECKSTYLE ON: LineLength
 
+    /** The configuration property for a boolean flag to use invoice item custom fields. */
+    // CHECKSTYLE OFF: LineLength
+    public static final String USE_ITEM_CUSTOM_FIELDS_PROPERTY = "accountCustomFieldTaxZoneResolver.useItemCustomFields";
+    // CHECKSTYLE ON: LineLength
+
+    /** The configuration property for the number of seconds prefetched tax zones are valid. */
+    // CHECKSTYLE OFF: LineLength
+    public static final String PREFETCH_SECONDS_PROPERTY = "accountCustomFieldTaxZoneResolver.prefetchSeconds";
+    // CHECKSTYLE ON: LineLength
+
+    /** The default value for the {@link #PREFETCH_SECONDS_PROPERTY}. */
+    public static final String DEFAULT_PREFETCH_SECONDS = "600";
+
+    /** The number of custom fields to fetch per page when prefetching tax zones. */
+    public static final long PREFETCH_PAGE_SIZE = 500;
+
+    /** The configuration property for the maximum number of custom field pages to search. */
+    // CHECKSTYLE OFF: LineLength
+    public static final String PREFETCH_MAX_PAGES_PROPERTY = "accountCustomFieldTaxZoneResolver.prefetchMaxPages";
+    // CHECKSTYLE ON: LineLength
+
+    /** The default value for the {@link #PREFETCH_MAX_PAGES_PROPERTY}. */
+    public static final String DEFAULT_PREFETCH_MAX_PAGES = "20";
+
+    /** The maximum number of accounts to prefetch by looking up each account separately. */
+    public static final int PREFETCH_LOOKUP_MAX_ACCOUNTS = 10;
+
+    /** The number of milliseconds item tax zones fetched with an invoice tax zone are kept. */
+    private static final long ITEM_TAX_ZONES_MILLIS = 60000L;
+
     /** A custom field name that specifies the tax zone to apply. */
     public static final String TAX_ZONE_CUSTOM_FIIELD = "taxCode";
 
+    // CHECKSTYLE OFF: LineLength
+    private final ConcurrentMap<PrefetchKey, PrefetchedTaxZone> prefetched = new ConcurrentHashMap<>();
+    // CHECKSTYLE ON: LineLength
+
+    // CHECKSTYLE OFF: LineLength
+    private final ConcurrentMap<PrefetchKey, FetchedItemTaxZones> fetchedItemTaxZones = new ConcurrentHashMap<>();
+    // CHECKSTYLE ON: LineLength
+
     private OSGIKillbill killbillApi;
-    private EasyTaxConfig config;
+    private boolean useAccountCountryAsTaxZone;
+    private boolean useItemCustomFields;
+    private long prefetchMillis;
+    private int prefetchMaxPages;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
 
     @Override
     public void init(OSGIKillbill killbillApi, EasyTaxConfig config) {
         this.killbillApi = killbillApi;
-        this.config = config;
+        this.useAccountCountryAsTaxZone = "true".equalsIgnoreCase(
+                config.getConfigurationValue(USE_ACCOUNT_COUNTRY_PROPERTY, "true"));
+        this.useItemCustomFields = "true".equalsIgnoreCase(
+                config.getConfigurationValue(USE_ITEM_CUSTOM_FIELDS_PROPERTY, "false"));
+        long prefetchSeconds;
+        try {
+            prefetchSeconds = Long.parseLong(config.getConfigurationValue(
+                    PREFETCH_SECONDS_PROPERTY, DEFAULT_PREFETCH_SECONDS));
+        } catch (NumberFormatException e) {
+            prefetchSeconds = Long.parseLong(DEFAULT_PREFETCH_SECONDS);
+        }
+        this.prefetchMillis = prefetchSeconds * 1000L;
+        int maxPages;
+        try {
+            maxPages = Integer.parseInt(config.getConfigurationValue(PREFETCH_MAX_PAGES_PROPERTY,
+                    DEFAULT_PREFETCH_MAX_PAGES));
+        } catch (NumberFormatException e) {
+            maxPages = Integer.parseInt(DEFAULT_PREFETCH_MAX_PAGES);
+        }
+        this.prefetchMaxPages = maxPages;
     }
 
     @Override
     public String taxZoneForInvoice(UUID kbTenantId, Account account, Invoice invoice,
             Iterable<PluginProperty> properties) {
-        // look first for property-specified zone
-        String taxZone = checkForTaxZoneInCustomFields(account,
-                new EasyTaxTenantContext(kbTenantId, account.getId()));
+        // look first for property-specified zone, prefetched if possible
+        final PrefetchedTaxZone prefetchedTaxZone = prefetched
+                .remove(new PrefetchKey(kbTenantId, account.getId()));
+        String taxZone;
+        if (prefetchedTaxZone != null
+                && prefetchedTaxZone.expires > System.currentTimeMillis()) {
+            taxZone = prefetchedTaxZone.taxZone;
+        } else if (useItemCustomFields) {
+            // fetch all the custom fields of the account once, for the invoice items as well
+            final List<CustomField> fields = this.killbillApi.getCustomFieldUserApi()
+                    .getCustomFieldsForAccount(account.getId(),
+                            new EasyTaxTenantContext(kbTenantId, account.getId()));
+            taxZone = accountTaxZone(account.getId(), fields);
+            final long now = System.currentTimeMillis();
+            fetchedItemTaxZones.values().removeIf(f -> f.expires <= now);
+            fetchedItemTaxZones.put(new PrefetchKey(kbTenantId, account.getId()),
+                    new FetchedItemTaxZones(itemTaxZones(fields), now + ITEM_TAX_ZONES_MILLIS));
+        } else {
+            taxZone = checkForTaxZoneInCustomFields(account.getId(),
+                    new EasyTaxTenantContext(kbTenantId, account.getId()));
+        }
 
         if (taxZone == null && isUseAccountCountryAsTaxZone() && account != null) {
             // fall back to account country
@@ -66,20 +182,165 @@ public class AccountCustomFieldTaxZoneResolver implements EasyTaxTaxZoneResolver
         return taxZone;
     }
 
+    @Override
+    public Map<UUID, String> taxZonesForInvoiceItems(UUID kbTenantId, Account account,
+            Invoice invoice, Collection<InvoiceItem> invoiceItems,
+            Iterable<PluginProperty> pluginProperties) {
+        if (!useItemCustomFields || account == null) {
+            return Collections.emptyMap();
+        }
+        final FetchedItemTaxZones fetched = fetchedItemTaxZones
+                .remove(new PrefetchKey(kbTenantId, account.getId()));
+        if (invoiceItems.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        final Map<UUID, String> taxZonesById;
+        if (fetched != null && fetched.expires > System.currentTimeMillis()) {
+            taxZonesById = fetched.taxZones;
+        } else {
+            taxZonesById = itemTaxZones(this.killbillApi.getCustomFieldUserApi()
+                    .getCustomFieldsForAccount(account.getId(),
+                            new EasyTaxTenantContext(kbTenantId, account.getId())));
+        }
+        if (taxZonesById.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        final Map<UUID, String> result = new HashMap<>();
+        for (InvoiceItem item : invoiceItems) {
+            String taxZone = taxZonesById.get(item.getId());
+            if (taxZone == null && item.getSubscriptionId() != null) {
+                taxZone = taxZonesById.get(item.getSubscriptionId());
+            }
+            if (taxZone != null) {
+                result.put(item.getId(), taxZone);
+            }
+        }
+        return result;
+    }
+
+    private static String accountTaxZone(UUID accountId, List<CustomField> fields) {
+        for (CustomField field : fields) {
+            if (field.getObjectType() == ObjectType.ACCOUNT
+                    && accountId.equals(field.getObjectId())
+                    && TAX_ZONE_CUSTOM_FIIELD.equals(field.getFieldName())) {
+                return field.getFieldValue();
+            }
+        }
+        return null;
+    }
+
+    private static Map<UUID, String> itemTaxZones(List<CustomField> fields) {
+        final Map<UUID, String> taxZonesById = new HashMap<>();
+        for (CustomField field : fields) {
+            if ((field.getObjectType() == ObjectType.INVOICE_ITEM
+                    || field.getObjectType() == ObjectType.SUBSCRIPTION)
+                    && TAX_ZONE_CUSTOM_FIIELD.equals(field.getFieldName())) {
+                taxZonesById.putIfAbsent(field.getObjectId(), field.getFieldValue());
+            }
+        }
+        return taxZonesById;
+    }
+
+    @Override
+    public int prefetchTaxZones(UUID kbTenantId, Collection<UUID> kbAccountIds) {
+        final long now = System.currentTimeMillis();
+        prefetched.values().removeIf(p -> p.expires <= now);
+        if (prefetchMillis < 1 || kbAccountIds.isEmpty()) {
+            return 0;
+        }
+        final Set<UUID> accountIds = new HashSet<>(kbAccountIds);
+        final Map<UUID, String> taxZones = (accountIds.size() <= PREFETCH_LOOKUP_MAX_ACCOUNTS
+                ? lookupTaxZones(kbTenantId, accountIds)
+                : searchTaxZones(kbTenantId, accountIds));
+        final long expires = now + prefetchMillis;
+        for (Map.Entry<UUID, String> me : taxZones.entrySet()) {
+            prefetched.put(new PrefetchKey(kbTenantId, me.getKey()),
+                    new PrefetchedTaxZone(me.getValue(), expires));
+        }
+        return taxZones.size();
+    }
+
+    private Map<UUID, String> lookupTaxZones(UUID kbTenantId, Set<UUID> accountIds) {
+        final Map<UUID, String> taxZones = new HashMap<>(accountIds.size());
+        for (UUID accountId : accountIds) {
+            final String taxZone = checkForTaxZoneInCustomFields(accountId,
+                    new EasyTaxTenantContext(kbTenantId, accountId));
+            if (taxZone != null) {
+                taxZones.put(accountId, taxZone);
+            }
+        }
+        return taxZones;
+    }
+
+    private Map<UUID, String> searchTaxZones(UUID kbTenantId, Set<UUID> accountIds) {
+        final Map<UUID, String> taxZones = new HashMap<>(accountIds.size());
+        final CustomFieldUserApi fieldApi = this.killbillApi.getCustomFieldUserApi();
+        final TenantContext context = new EasyTaxTenantContext(kbTenantId, null);
+        Long offset = 0L;
+        int pages = 0;
+        while (offset != null && (prefetchMaxPages < 1 || pages < prefetchMaxPages)
+                && taxZones.size() < accountIds.size()) {
+            final Pagination<CustomField> page = fieldApi.searchCustomFields(
+                    TAX_ZONE_CUSTOM_FIIELD, offset, PREFETCH_PAGE_SIZE, context);
+            for (CustomField field : page) {
+                // the search is limited to the tenant, so found accounts belong to it
+                if (field.getObjectType() == ObjectType.ACCOUNT
+                        && TAX_ZONE_CUSTOM_FIIELD.equals(field.getFieldName())
+                        && accountIds.contains(field.getObjectId())) {
+                    taxZones.putIfAbsent(field.getObjectId(), field.getFieldValue());
+                }
+            }
+            offset = page.getNextOffset();
+            pages++;
+        }
+        if (offset != null && taxZones.size() < accountIds.size()) {
+            log.warn("Stopped prefetching tax zones of tenant {} after {} custom field pages"
+                    + " with {} of {} accounts found; increase the {} setting to search more",
+                    kbTenantId, pages, taxZones.size(), accountIds.size(),
+                    PREFETCH_MAX_PAGES_PROPERTY);
+        }
+        return taxZones;
+    }
+
+    /**
+     * Discard any prefetched tax zone and fetched item tax zones of an account.
+     * 
+     * @param kbTenantId
+     *            the tenant ID
+     * @param kbAccountId
+     *            the ID of the account that changed
+     */
+    @Override
+    public void accountChanged(UUID kbTenantId, UUID kbAccountId) {
+        final PrefetchKey key = new PrefetchKey(kbTenantId, kbAccountId);
+        prefetched.remove(key);
+        fetchedItemTaxZones.remove(key);
+    }
+
+    /**
+     * Test if the tax zones resolved by this resolver can be cached.
+     * 
+     * @return {@literal true}, as the tax zone depends only on the custom fields of the account
+     */
+    @Override
+    public boolean isCacheable() {
+        return true;
+    }
+
     /**
      * Look for a tax zone configured via custom fields, adding a {@link PluginProperty} for the
      * discovered tax zone, if found.
      * 
-     * @param invoice
-     *            the invoice to inspect
+     * @param accountId
+     *            the ID of the account to inspect
      * @param context
      *            the tenant context
      * @return the discovered tax zone, or {@literal null} if none found
      */
-    private String checkForTaxZoneInCustomFields(final Account account,
+    private String checkForTaxZoneInCustomFields(final UUID accountId,
             final TenantContext context) {
         final Optional<String> customFieldTaxZone = this.killbillApi.getCustomFieldUserApi()
-                .getCustomFieldsForObject(account.getId(), ObjectType.ACCOUNT, context).stream()
+                .getCustomFieldsForObject(accountId, ObjectType.ACCOUNT, context).stream()
                 .filter(f -> TAX_ZONE_CUSTOM_FIIELD.equals(f.getFieldName())).findFirst()
                 .map(f -> f.getFieldValue());
         return customFieldTaxZone.orElse(null);
@@ -96,8 +357,72 @@ public class AccountCustomFieldTaxZoneResolver implements EasyTaxTaxZoneResolver
      * @return {@literal true} to use the account country as the tax zone
      */
     public boolean isUseAccountCountryAsTaxZone() {
-        return "true".equalsIgnoreCase(
-                config.getConfigurationValue(USE_ACCOUNT_COUNTRY_PROPERTY, "true"));
+        return useAccountCountryAsTaxZone;
+    }
+
+    /**
+     * Get the flag to use tax zone custom fields on invoice items and subscriptions as the tax
+     * zones of individual invoice items.
+     * 
+     * <p>
+     * This returns the {@link #USE_ITEM_CUSTOM_FIELDS_PROPERTY}. Defaults to {@literal false}.
+     * </p>
+     * 
+     * @return {@literal true} to use invoice item and subscription custom fields
+     */
+    public boolean isUseItemCustomFields() {
+        return useItemCustomFields;
+    }
+
+    private static final class PrefetchKey {
+
+        private final UUID kbTenantId;
+        private final UUID accountId;
+
+        private PrefetchKey(UUID kbTenantId, UUID accountId) {
+            super();
+            this.kbTenantId = kbTenantId;
+            this.accountId = accountId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(kbTenantId) * 31 + Objects.hashCode(accountId);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof PrefetchKey)) {
+                return false;
+            }
+            PrefetchKey other = (PrefetchKey) obj;
+            return Objects.equals(kbTenantId, other.kbTenantId)
+                    && Objects.equals(accountId, other.accountId);
+        }
+    }
+
+    private static final class PrefetchedTaxZone {
+
+        private final String taxZone;
+        private final long expires;
+
+        private PrefetchedTaxZone(String taxZone, long expires) {
+            super();
+            this.taxZone = taxZone;
+            this.expires = expires;
+        }
+    }
+
+    private static final class FetchedItemTaxZones {
+
+        private final Map<UUID, String> taxZones;
+        private final long expires;
+
+        private FetchedItemTaxZones(Map<UUID, String> taxZones, long expires) {
+            super();
+            this.taxZones = taxZones;
+            this.expires = expires;
+        }
     }
 
 }
@@ -0,0 +1,312 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.killbill.billing.plugin.easytax.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.invoice.api.Invoice;
+import org.killbill.billing.invoice.api.InvoiceItem;
+import org.killbill.billing.osgi.api.OSGIKillbill;
+import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.plugin.easytax.api.EasyTaxTaxZoneResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolve tax zones by trying a chain of other resolvers in order, until one resolves a tax zone.
+ *
+ * <p>
+ * The chain is configured by the {@link #RESOLVERS_PROPERTY} as a comma-delimited list of
+ * {@link EasyTaxTaxZoneResolver} class names, each of which is initialized with the same
+ * configuration as this resolver, except that the account country fallback of the
+ * {@link AccountCustomFieldTaxZoneResolver} and {@link PostalCodeTaxZoneResolver} stages defaults
+ * to {@literal false}, so the following stages are tried when they find no tax zone. Likewise a
+ * {@link ParentAccountTaxZoneResolver} stage chained after an
+ * {@link AccountCustomFieldTaxZoneResolver} stage walks only the parent accounts by default, as
+ * the custom field of the account itself has already been tried. The results of stages that are
+ * {@link EasyTaxTaxZoneResolver#isCacheable() cacheable}, including the absence of a tax zone, are
+ * cached per account for {@link #CACHE_SECONDS_PROPERTY} seconds, so expensive stages are not
+ * called again for every invoice of an account, while cheap stages are always called.
+ * </p>
+ *
+ * <p>
+ * The tax zones of individual invoice items are resolved by asking every stage, in order, for the
+ * items still without a tax zone. Item tax zones are never cached.
+ * </p>
+ *
+ * @author matt
+ */
+public class CompositeTaxZoneResolver implements EasyTaxTaxZoneResolver {
+
+    /** The configuration property for the comma-delimited resolver class names to chain. */
+    public static final String RESOLVERS_PROPERTY = "compositeTaxZoneResolver.resolvers";
+
+    /** The configuration property for the number of seconds to cache cacheable stage results. */
+    public static final String CACHE_SECONDS_PROPERTY = "compositeTaxZoneResolver.cacheSeconds";
+
+    /** The default value for the {@link #RESOLVERS_PROPERTY}. */
+    public static final String DEFAULT_RESOLVERS = PluginPropertyTaxZoneResolver.class.getName()
+            + "," + AccountCustomFieldTaxZoneResolver.class.getName() + ","
+            + ParentAccountTaxZoneResolver.class.getName() + ","
+            + AccountCountryTaxZoneResolver.class.getName();
+
+    /** The default value for the {@link #CACHE_SECONDS_PROPERTY}. */
+    public static final int DEFAULT_CACHE_SECONDS = 300;
+
+    /** The account country fallback property of each resolver class, disabled by default. */
+    private static final Map<Class<?>, String> USE_ACCOUNT_COUNTRY_PROPERTIES;
+    static {
+        Map<Class<?>, String> props = new HashMap<>(2);
+        props.put(AccountCustomFieldTaxZoneResolver.class,
+                AccountCustomFieldTaxZoneResolver.USE_ACCOUNT_COUNTRY_PROPERTY);
+        props.put(PostalCodeTaxZoneResolver.class,
+                PostalCodeTaxZoneResolver.USE_ACCOUNT_COUNTRY_PROPERTY);
+        USE_ACCOUNT_COUNTRY_PROPERTIES = Collections.unmodifiableMap(props);
+    }
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private List<Stage> stages = Collections.emptyList();
+
+    @Override
+    public void init(OSGIKillbill killbillApi, EasyTaxConfig config) {
+        final long cacheMillis = config.getIntConfigurationValue(CACHE_SECONDS_PROPERTY,
+                DEFAULT_CACHE_SECONDS) * 1000L;
+        final List<Stage> stages = new ArrayList<>();
+        boolean accountCustomFieldStage = false;
+        for (String className : config.getConfigurationValue(RESOLVERS_PROPERTY, DEFAULT_RESOLVERS)
+                .split(",")) {
+            className = className.trim();
+            if (className.isEmpty()) {
+                continue;
+            }
+            EasyTaxTaxZoneResolver resolver;
+            try {
+                Class<?> clazz = getClass().getClassLoader().loadClass(className);
+                if (CompositeTaxZoneResolver.class.isAssignableFrom(clazz)) {
+                    // would be initialized with the same configuration, recursively
+                    log.error("Cannot chain tax zone resolver class [{}]; skipping", className);
+                    continue;
+                }
+                resolver = (EasyTaxTaxZoneResolver) clazz.newInstance();
+            } catch (InstantiationException | IllegalAccessException | ClassNotFoundException
+                    | ClassCastException e) {
+                log.error("Error instantiating tax zone resolver class [{}]; skipping", className,
+                        e);
+                continue;
+            }
+            EasyTaxConfig stageConfig = config;
+            final String useAccountCountryProperty = USE_ACCOUNT_COUNTRY_PROPERTIES
+                    .get(resolver.getClass());
+            if (useAccountCountryProperty != null) {
+                stageConfig = stageConfig.withDefaultConfigurationValue(useAccountCountryProperty,
+                        "false");
+            }
+            if (accountCustomFieldStage && resolver instanceof ParentAccountTaxZoneResolver) {
+                stageConfig = stageConfig.withDefaultConfigurationValue(
+                        ParentAccountTaxZoneResolver.INCLUDE_ACCOUNT_PROPERTY, "false");
+            }
+            resolver.init(killbillApi, stageConfig);
+            if (resolver instanceof AccountCustomFieldTaxZoneResolver) {
+                accountCustomFieldStage = true;
+            }
+            stages.add(new Stage(resolver, resolver.isCacheable() ? cacheMillis : 0));
+        }
+        if (stages.isEmpty()) {
+            log.warn("No tax zone resolvers configured via the {} property", RESOLVERS_PROPERTY);
+        }
+        this.stages = Collections.unmodifiableList(stages);
+    }
+
+    @Override
+    public String taxZoneForInvoice(UUID kbTenantId, Account account, Invoice invoice,
+            Iterable<PluginProperty> pluginProperties) {
+        for (Stage stage : stages) {
+            String taxZone = stage.taxZoneForInvoice(kbTenantId, account, invoice,
+                    pluginProperties);
+            if (taxZone != null && !taxZone.isEmpty()) {
+                return taxZone;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Map<UUID, String> taxZonesForInvoiceItems(UUID kbTenantId, Account account,
+            Invoice invoice, Collection<InvoiceItem> invoiceItems,
+            Iterable<PluginProperty> pluginProperties) {
+        Map<UUID, String> result = null;
+        Collection<InvoiceItem> remaining = invoiceItems;
+        for (Stage stage : stages) {
+            if (remaining.isEmpty()) {
+                break;
+            }
+            final Map<UUID, String> taxZones = stage.resolver.taxZonesForInvoiceItems(kbTenantId,
+                    account, invoice, remaining, pluginProperties);
+            if (taxZones == null || taxZones.isEmpty()) {
+                continue;
+            }
+            if (result == null) {
+                result = new HashMap<>(taxZones);
+            } else {
+                result.putAll(taxZones);
+            }
+            final List<InvoiceItem> unresolved = new ArrayList<>(remaining.size());
+            for (InvoiceItem item : remaining) {
+                if (!result.containsKey(item.getId())) {
+                    unresolved.add(item);
+                }
+            }
+            remaining = unresolved;
+        }
+        return (result != null ? result : Collections.emptyMap());
+    }
+
+    @Override
+    public int prefetchTaxZones(UUID kbTenantId, Collection<UUID> kbAccountIds) {
+        int result = 0;
+        for (Stage stage : stages) {
+            result = Math.max(result, stage.resolver.prefetchTaxZones(kbTenantId, kbAccountIds));
+        }
+        return result;
+    }
+
+    /**
+     * Discard the cached results of an account, and pass the notification on to all stages.
+     *
+     * <p>
+     * Only the caches of the node that receives the account change event are discarded; the
+     * cached results on other nodes are used until they expire.
+     * </p>
+     *
+     * @param kbTenantId
+     *            the tenant ID
+     * @param kbAccountId
+     *            the ID of the account that changed
+     */
+    @Override
+    public void accountChanged(UUID kbTenantId, UUID kbAccountId) {
+        for (Stage stage : stages) {
+            if (stage.cache != null) {
+                stage.cache.remove(kbAccountId);
+            }
+            stage.resolver.accountChanged(kbTenantId, kbAccountId);
+        }
+    }
+
+    /**
+     * Test if all the chained resolvers are cacheable.
+     *
+     * @return {@literal true} if the results of all stages can be cached by account
+     */
+    @Override
+    public boolean isCacheable() {
+        for (Stage stage : stages) {
+            if (!stage.resolver.isCacheable()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Test if all the chained resolvers are stateless and no stage results are cached.
+     *
+     * @return {@literal true} if this resolver can be shared by tenants with equal configurations
+     */
+    @Override
+    public boolean isStateless() {
+        for (Stage stage : stages) {
+            if (stage.cache != null || !stage.resolver.isStateless()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the chained resolvers.
+     *
+     * @return the resolvers, in the order they are tried
+     */
+    public List<EasyTaxTaxZoneResolver> getResolvers() {
+        final List<EasyTaxTaxZoneResolver> result = new ArrayList<>(stages.size());
+        for (Stage stage : stages) {
+            result.add(stage.resolver);
+        }
+        return result;
+    }
+
+    private static final class Stage {
+
+        private final EasyTaxTaxZoneResolver resolver;
+        private final long cacheMillis;
+        private final ConcurrentMap<UUID, CachedTaxZone> cache;
+        private volatile long nextSweep;
+
+        private Stage(EasyTaxTaxZoneResolver resolver, long cacheMillis) {
+            super();
+            this.resolver = resolver;
+            this.cacheMillis = cacheMillis;
+            this.cache = (cacheMillis > 0 ? new ConcurrentHashMap<>() : null);
+        }
+
+        private String taxZoneForInvoice(UUID kbTenantId, Account account, Invoice invoice,
+                Iterable<PluginProperty> pluginProperties) {
+            if (cache == null || account == null || account.getId() == null) {
+                return resolver.taxZoneForInvoice(kbTenantId, account, invoice, pluginProperties);
+            }
+            final long now = System.currentTimeMillis();
+            CachedTaxZone cached = cache.get(account.getId());
+            if (cached != null && cached.kbTenantId.equals(kbTenantId) && cached.expires > now) {
+                return cached.taxZone;
+            }
+            final String taxZone = resolver.taxZoneForInvoice(kbTenantId, account, invoice,
+                    pluginProperties);
+            if (now >= nextSweep) {
+                nextSweep = now + cacheMillis;
+                cache.values().removeIf(c -> c.expires <= now);
+            }
+            cache.put(account.getId(), new CachedTaxZone(kbTenantId, taxZone, now + cacheMillis));
+            return taxZone;
+        }
+    }
+
+    private static final class CachedTaxZone {
+
+        private final UUID kbTenantId;
+        private final String taxZone;
+        private final long expires;
+
+        private CachedTaxZone(UUID kbTenantId, String taxZone, long expires) {
+            super();
+            this.kbTenantId = kbTenantId;
+            this.taxZone = taxZone;
+            this.expires = expires;
+        }
+    }
+
+}
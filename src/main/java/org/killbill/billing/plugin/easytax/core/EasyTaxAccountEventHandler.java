@@ -0,0 +1,59 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.killbill.billing.plugin.easytax.core;
+
+import org.killbill.billing.notification.plugin.api.ExtBusEvent;
+import org.killbill.billing.notification.plugin.api.ExtBusEventType;
+import org.killbill.billing.osgi.libs.killbill.OSGIKillbillEventDispatcher;
+import org.killbill.billing.plugin.easytax.api.EasyTaxTaxCalculator;
+
+/**
+ * Event handler that passes account and custom field changes on to the tax zone resolvers, so
+ * they can discard any data cached for the changed account.
+ *
+ * @author matt
+ */
+public class EasyTaxAccountEventHandler
+        implements OSGIKillbillEventDispatcher.OSGIKillbillEventHandler {
+
+    private final EasyTaxTaxCalculator calculator;
+
+    /**
+     * Constructor.
+     *
+     * @param calculator
+     *            the calculator whose tax zone resolvers to notify
+     */
+    public EasyTaxAccountEventHandler(EasyTaxTaxCalculator calculator) {
+        super();
+        this.calculator = calculator;
+    }
+
+    @Override
+    public void handleKillbillEvent(ExtBusEvent event) {
+        final ExtBusEventType type = event.getEventType();
+        if (type != ExtBusEventType.ACCOUNT_CHANGE && type != ExtBusEventType.CUSTOM_FIELD_CREATION
+                && type != ExtBusEventType.CUSTOM_FIELD_DELETION) {
+            return;
+        }
+        if (event.getTenantId() == null || event.getAccountId() == null) {
+            return;
+        }
+        calculator.accountChanged(event.getTenantId(), event.getAccountId());
+    }
+
+}
@@ -15,9 +15,14 @@
 
 package org.killbill.billing.plugin.easytax.core;
 
+import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Collections;
 import java.util.Hashtable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.Servlet;
 import javax.servlet.http.HttpServlet;
@@ -28,19 +33,34 @@ import org.killbill.billing.invoice.plugin.api.InvoicePluginApi;
 import org.killbill.billing.osgi.api.OSGIPluginProperties;
 import org.killbill.billing.osgi.libs.killbill.KillbillActivatorBase;
 import org.killbill.billing.plugin.api.notification.PluginConfigurationEventHandler;
+import org.killbill.billing.plugin.easytax.api.EasyTaxDao;
 import org.killbill.billing.plugin.easytax.api.EasyTaxInvoicePluginApi;
+import org.killbill.billing.plugin.easytax.api.EasyTaxTaxCalculator;
 import org.killbill.billing.plugin.easytax.api.EasyTaxTaxDateResolver;
 import org.killbill.billing.plugin.easytax.api.EasyTaxTaxZoneResolver;
+import org.killbill.billing.plugin.easytax.dao.CachingEasyTaxDao;
+import org.killbill.billing.plugin.easytax.dao.FileEasyTaxDao;
 import org.killbill.billing.plugin.easytax.dao.JooqEasyTaxDao;
 import org.killbill.clock.Clock;
 import org.killbill.clock.DefaultClock;
 import org.osgi.framework.BundleContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class EasyTaxActivator extends KillbillActivatorBase {
 
     public static final String PLUGIN_NAME = "killbill-easytax";
 
+    /** The maximum number of tax code stages to remove per transaction. */
+    private static final int TAX_CODE_STAGE_EXPIRE_BATCH_SIZE = 100;
+
+    /** The maximum number of tax code changes to remove per transaction. */
+    private static final int TAX_CODE_CHANGE_REMOVE_BATCH_SIZE = 1000;
+
     private EasyTaxConfigurationHandler configurationHandler;
+    private ScheduledExecutorService maintenanceExecutor;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
 
     @Override
     public void start(final BundleContext context) throws Exception {
@@ -48,7 +68,7 @@ public class EasyTaxActivator extends KillbillActivatorBase {
 
         final DataSource ds = dataSource.getDataSource();
         final SQLDialect dialect = detectSqlDialect(ds);
-        final JooqEasyTaxDao dao = new JooqEasyTaxDao(ds, dialect);
+        final JooqEasyTaxDao jooqDao = new JooqEasyTaxDao(ds, dialect);
         final Clock clock = new DefaultClock();
 
         configurationHandler = new EasyTaxConfigurationHandler(PLUGIN_NAME, killbillAPI,
@@ -58,26 +78,128 @@ public class EasyTaxActivator extends KillbillActivatorBase {
                 .createConfigurable(configProperties.getProperties());
         configurationHandler.setDefaultConfigurable(globalConfig);
 
+        final EasyTaxDao dao = createDao(globalConfig, jooqDao);
+
         ServiceResolver<EasyTaxTaxZoneResolver> taxZoneResolverService = new ServiceResolver<>(
                 context, EasyTaxTaxZoneResolver.class, null);
         ServiceResolver<EasyTaxTaxDateResolver> taxDateResolverService = new ServiceResolver<>(
                 context, EasyTaxTaxDateResolver.class, null);
 
-        final InvoicePluginApi invoicePluginApi = new EasyTaxInvoicePluginApi(configurationHandler,
-                dao, taxZoneResolverService, taxDateResolverService, killbillAPI, configProperties,
-                logService, clock);
+        final EasyTaxInvoicePluginApi invoicePluginApi = new EasyTaxInvoicePluginApi(
+                configurationHandler, dao, taxZoneResolverService, taxDateResolverService,
+                killbillAPI, configProperties, logService, clock);
         registerInvoicePluginApi(context, invoicePluginApi);
 
-        final HttpServlet servlet = new EasyTaxServlet(dao, clock, killbillAPI.getSecurityApi());
+        final EasyTaxServlet servlet = new EasyTaxServlet(dao, clock,
+                killbillAPI.getSecurityApi());
+        servlet.setTaxCalculator(invoicePluginApi.getCalculator());
         registerServlet(context, servlet);
 
-        registerEventHandler();
+        registerEventHandlers(invoicePluginApi.getCalculator());
+
+        scheduleMaintenanceTasks(globalConfig, jooqDao, clock);
+
+        registerWarmUp(globalConfig, dao, dao != jooqDao, invoicePluginApi.getCalculator());
+    }
+
+    private void registerWarmUp(final EasyTaxConfig config, final EasyTaxDao dao,
+            final boolean preloadTaxCodes, final EasyTaxTaxCalculator calculator) {
+        final boolean warmUp = config.isWarmUp();
+        configurationHandler.addConfigurationListener((kbTenantId, tenantConfig) -> {
+            calculator.configurationChanged(kbTenantId, tenantConfig);
+            if (warmUp && kbTenantId != null) {
+                maintenanceExecutor().execute(new EasyTaxWarmUp(dao, calculator,
+                        Collections.singleton(kbTenantId), preloadTaxCodes));
+            }
+        });
+        if (warmUp) {
+            maintenanceExecutor()
+                    .execute(new EasyTaxWarmUp(dao, calculator, null, preloadTaxCodes));
+        }
+    }
+
+    private EasyTaxDao createDao(final EasyTaxConfig config, final JooqEasyTaxDao jooqDao) {
+        final String taxCodesFile = config.getTaxCodesFile();
+        if (taxCodesFile != null) {
+            return new FileEasyTaxDao(jooqDao, Paths.get(taxCodesFile),
+                    TimeUnit.SECONDS.toMillis(config.getTaxCodesFileCheckSeconds()));
+        }
+        final int cacheSeconds = config.getTaxCodesCacheSeconds();
+        if (cacheSeconds > 0) {
+            return new CachingEasyTaxDao(jooqDao, TimeUnit.SECONDS.toMillis(cacheSeconds),
+                    config.isTaxCodesCacheCompact());
+        }
+        return jooqDao;
+    }
+
+    @Override
+    public void stop(final BundleContext context) throws Exception {
+        if (maintenanceExecutor != null) {
+            maintenanceExecutor.shutdownNow();
+            maintenanceExecutor = null;
+        }
+        super.stop(context);
+    }
+
+    private synchronized ScheduledExecutorService maintenanceExecutor() {
+        if (maintenanceExecutor == null) {
+            maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "EasyTax-Maintenance");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return maintenanceExecutor;
+    }
+
+    private void scheduleMaintenanceTasks(final EasyTaxConfig config, final JooqEasyTaxDao dao,
+            final Clock clock) {
+        if (!config.isMaintenanceTasks()) {
+            log.info("Maintenance tasks disabled on this node via the {} property",
+                    EasyTaxConfig.MAINTENANCE_TASKS_PROPERTY);
+            return;
+        }
+        final int archiveDays = config.getTaxationArchiveDays();
+        if (archiveDays > 0) {
+            final int batchSize = config.getTaxationArchiveBatchSize();
+            final long interval = TimeUnit.HOURS
+                    .toMinutes(Math.max(1, config.getTaxationArchiveIntervalHours()));
+            maintenanceExecutor().scheduleWithFixedDelay(
+                    new EasyTaxBatchTask("taxation archive", clock,
+                            now -> dao.archiveTaxations(now.minusDays(archiveDays), batchSize)),
+                    1, interval, TimeUnit.MINUTES);
+        }
+        final int compactThreshold = config.getTaxationCompactThreshold();
+        final int compactInterval = config.getTaxationCompactIntervalHours();
+        if (compactThreshold > 0 && compactInterval > 0) {
+            final int batchSize = config.getTaxationCompactBatchSize();
+            maintenanceExecutor().scheduleWithFixedDelay(
+                    new EasyTaxBatchTask("taxation compaction", clock,
+                            now -> dao.compactTaxations(compactThreshold, batchSize)),
+                    2, TimeUnit.HOURS.toMinutes(compactInterval), TimeUnit.MINUTES);
+        }
+        final int stageExpireHours = config.getTaxCodeStageExpireHours();
+        if (stageExpireHours > 0) {
+            maintenanceExecutor().scheduleWithFixedDelay(
+                    new EasyTaxBatchTask("tax code stage expiry", clock,
+                            now -> dao.removeTaxCodeStages(now.minusHours(stageExpireHours),
+                                    TAX_CODE_STAGE_EXPIRE_BATCH_SIZE)),
+                    3, TimeUnit.HOURS.toMinutes(1), TimeUnit.MINUTES);
+        }
+        final int changeRetentionDays = config.getTaxCodeChangeRetentionDays();
+        if (changeRetentionDays > 0) {
+            maintenanceExecutor().scheduleWithFixedDelay(
+                    new EasyTaxBatchTask("tax code change removal", clock,
+                            now -> dao.removeTaxCodeChanges(now.minusDays(changeRetentionDays),
+                                    TAX_CODE_CHANGE_REMOVE_BATCH_SIZE)),
+                    4, TimeUnit.DAYS.toMinutes(1), TimeUnit.MINUTES);
+        }
     }
 
-    private void registerEventHandler() {
+    private void registerEventHandlers(final EasyTaxTaxCalculator calculator) {
         final PluginConfigurationEventHandler handler = new PluginConfigurationEventHandler(
                 configurationHandler);
-        dispatcher.registerEventHandlers(handler);
+        dispatcher.registerEventHandlers(handler, new EasyTaxAccountEventHandler(calculator));
     }
 
     private void registerInvoicePluginApi(final BundleContext context, final InvoicePluginApi api) {
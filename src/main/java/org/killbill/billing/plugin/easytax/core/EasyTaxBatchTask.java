@@ -0,0 +1,105 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.killbill.billing.plugin.easytax.core;
+
+import java.sql.SQLException;
+
+import org.joda.time.DateTime;
+import org.killbill.clock.Clock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Maintenance task that runs a batch operation repeatedly until it has nothing left to do.
+ *
+ * <p>
+ * Each run passes the current time of the clock to every batch, so that all batches of a run
+ * work on the same cut-off date, and stops once a batch returns {@literal 0} or fails.
+ * </p>
+ *
+ * @author matt
+ */
+public class EasyTaxBatchTask implements Runnable {
+
+    /**
+     * A batch operation, such as a DAO method that processes a limited number of records.
+     */
+    @FunctionalInterface
+    public interface Batch {
+
+        /**
+         * Process one batch.
+         *
+         * @param now
+         *            the time the task started running
+         * @return the number of records processed, or {@literal 0} if none are left
+         * @throws SQLException
+         *             if any SQL error occurs
+         */
+        int execute(DateTime now) throws SQLException;
+    }
+
+    private final String name;
+    private final Clock clock;
+    private final Batch batch;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    /**
+     * Constructor.
+     *
+     * @param name
+     *            a name for the task, used in log messages
+     * @param clock
+     *            the clock to use
+     * @param batch
+     *            the batch operation to run
+     */
+    public EasyTaxBatchTask(String name, Clock clock, Batch batch) {
+        super();
+        this.name = name;
+        this.clock = clock;
+        this.batch = batch;
+    }
+
+    @Override
+    public void run() {
+        final DateTime now = clock.getUTCNow();
+        int total = 0;
+        try {
+            int count;
+            do {
+                count = batch.execute(now);
+                total += count;
+            } while (count > 0);
+        } catch (SQLException | RuntimeException e) {
+            log.error("Error running {} task after {} records", name, total, e);
+        }
+        if (total > 0) {
+            log.info("The {} task processed {} records", name, total);
+        }
+    }
+
+    /**
+     * Get the task name.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+}
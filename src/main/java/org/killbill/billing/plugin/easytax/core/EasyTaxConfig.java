@@ -26,6 +26,12 @@ import org.killbill.billing.plugin.easytax.api.EasyTaxTaxZoneResolver;
 /**
  * Configurable properties for the EasyTax plugin.
  * 
+ * <p>
+ * Instances are immutable snapshots of the configuration: the plugin properties are copied when
+ * constructed, and the settings used when calculating tax for every invoice item are parsed once,
+ * so a new instance is created whenever the configuration of a tenant changes.
+ * </p>
+ * 
  * @author matt
  */
 public class EasyTaxConfig {
@@ -45,6 +51,98 @@ public class EasyTaxConfig {
     /** The configuration property for the tax rounding method to use. */
     public static final String TAX_ROUNDING_MODE_PROPERTY = "taxRoundingMode";
 
+    /**
+     * The configuration property for the minimum age, in days, of taxation records to archive.
+     */
+    public static final String TAXATION_ARCHIVE_DAYS_PROPERTY = "taxationArchiveDays";
+
+    /**
+     * The configuration property for the maximum number of invoices to archive per transaction.
+     */
+    public static final String TAXATION_ARCHIVE_BATCH_SIZE_PROPERTY = "taxationArchiveBatchSize";
+
+    /**
+     * The configuration property for the number of hours between taxation archive runs.
+     */
+    // CHECKSTYLE OFF: LineLength
+    public static final String TAXATION_ARCHIVE_INTERVAL_HOURS_PROPERTY = "taxationArchiveIntervalHours";
+    // CHECKSTYLE ON: LineLength
+
+    /**
+     * The configuration property for the number of taxation records an invoice must have to be
+     * compacted into a single record.
+     */
+    public static final String TAXATION_COMPACT_THRESHOLD_PROPERTY = "taxationCompactThreshold";
+
+    /**
+     * The configuration property for the maximum number of invoices to compact per sweep batch.
+     */
+    // CHECKSTYLE OFF: LineLength
+    public static final String TAXATION_COMPACT_BATCH_SIZE_PROPERTY = "taxationCompactBatchSize";
+
+    /**
+     * The configuration property for the number of hours between taxation compaction sweeps.
+     */
+    public static final String TAXATION_COMPACT_INTERVAL_HOURS_PROPERTY = "taxationCompactIntervalHours";
+    // CHECKSTYLE ON: LineLength
+
+    /**
+     * The configuration property for the number of hours after which an abandoned tax code stage
+     * is removed.
+     */
+    public static final String TAX_CODE_STAGE_EXPIRE_HOURS_PROPERTY = "taxCodeStageExpireHours";
+
+    /**
+     * The configuration property for the number of days after which superseded tax code changes
+     * are removed from the change log.
+     */
+    // CHECKSTYLE OFF: LineLength
+    public static final String TAX_CODE_CHANGE_RETENTION_DAYS_PROPERTY = "taxCodeChangeRetentionDays";
+    // CHECKSTYLE ON: LineLength
+
+    /**
+     * The configuration property for the path to a CSV file to load tax codes from, instead of
+     * the database.
+     */
+    public static final String TAX_CODES_FILE_PROPERTY = "taxCodesFile";
+
+    /**
+     * The configuration property for the number of seconds between checks for changes to the tax
+     * codes file.
+     */
+    // CHECKSTYLE OFF: LineLength
+    public static final String TAX_CODES_FILE_CHECK_SECONDS_PROPERTY = "taxCodesFileCheckSeconds";
+    // CHECKSTYLE ON: LineLength
+
+    /**
+     * The configuration property for the number of seconds to cache the tax codes of a tenant in
+     * memory.
+     */
+    public static final String TAX_CODES_CACHE_SECONDS_PROPERTY = "taxCodesCacheSeconds";
+
+    /**
+     * The configuration property to cache the tax codes of a tenant in a compact, off-heap form.
+     */
+    public static final String TAX_CODES_CACHE_COMPACT_PROPERTY = "taxCodesCacheCompact";
+
+    /**
+     * The configuration property to prepare tenants for calculating tax in the background when
+     * the plugin starts and when a tenant's configuration changes.
+     */
+    public static final String WARM_UP_PROPERTY = "warmUp";
+
+    /**
+     * The configuration property to run the background maintenance tasks, such as archiving
+     * taxation records, on this node.
+     */
+    public static final String MAINTENANCE_TASKS_PROPERTY = "maintenanceTasks";
+
+    /**
+     * The configuration property for the tax zone hierarchy, as a comma-delimited list of
+     * {@literal zone:parent} pairs.
+     */
+    public static final String TAX_ZONE_PARENTS_PROPERTY = "taxZoneParents";
+
     /**
      * The default value for the {@code taxScale} property.
      */
@@ -55,6 +153,71 @@ public class EasyTaxConfig {
      */
     public static final String DEFAULT_TAX_ROUNDING_MODE = RoundingMode.HALF_UP.name();
 
+    /**
+     * The default value for the {@code taxationArchiveDays} configuration property.
+     */
+    public static final int DEFAULT_TAXATION_ARCHIVE_DAYS = 0;
+
+    /**
+     * The default value for the {@code taxationArchiveBatchSize} configuration property.
+     */
+    public static final int DEFAULT_TAXATION_ARCHIVE_BATCH_SIZE = 500;
+
+    /**
+     * The default value for the {@code taxationArchiveIntervalHours} configuration property.
+     */
+    public static final int DEFAULT_TAXATION_ARCHIVE_INTERVAL_HOURS = 24;
+
+    /**
+     * The default value for the {@code taxationCompactThreshold} configuration property.
+     */
+    public static final int DEFAULT_TAXATION_COMPACT_THRESHOLD = 0;
+
+    /**
+     * The default value for the {@code taxationCompactBatchSize} configuration property.
+     */
+    public static final int DEFAULT_TAXATION_COMPACT_BATCH_SIZE = 100;
+
+    /**
+     * The default value for the {@code taxationCompactIntervalHours} configuration property.
+     */
+    public static final int DEFAULT_TAXATION_COMPACT_INTERVAL_HOURS = 24;
+
+    /**
+     * The default value for the {@code taxCodeStageExpireHours} configuration property.
+     */
+    public static final int DEFAULT_TAX_CODE_STAGE_EXPIRE_HOURS = 24;
+
+    /**
+     * The default value for the {@code taxCodeChangeRetentionDays} configuration property.
+     */
+    public static final int DEFAULT_TAX_CODE_CHANGE_RETENTION_DAYS = 0;
+
+    /**
+     * The default value for the {@code taxCodesFileCheckSeconds} configuration property.
+     */
+    public static final int DEFAULT_TAX_CODES_FILE_CHECK_SECONDS = 60;
+
+    /**
+     * The default value for the {@code taxCodesCacheSeconds} configuration property.
+     */
+    public static final int DEFAULT_TAX_CODES_CACHE_SECONDS = 0;
+
+    /**
+     * The default value for the {@code taxCodesCacheCompact} configuration property.
+     */
+    public static final String DEFAULT_TAX_CODES_CACHE_COMPACT = "false";
+
+    /**
+     * The default value for the {@code warmUp} configuration property.
+     */
+    public static final String DEFAULT_WARM_UP = "false";
+
+    /**
+     * The default value for the {@code maintenanceTasks} configuration property.
+     */
+    public static final String DEFAULT_MAINTENANCE_TASKS = "true";
+
     /**
      * The default {@link EasyTaxTaxZoneResolver} class name.
      */
@@ -67,10 +230,58 @@ public class EasyTaxConfig {
     public static final String DEFAULT_TAX_DATE_RESOLVER = SimpleTaxDateResolver.class.getName();
 
     private final Properties properties;
+    private final String taxZoneResolver;
+    private final String taxDateResolver;
+    private final RoundingMode taxRoundingMode;
+    private final int taxScale;
+    private final TaxZoneHierarchy taxZoneHierarchy;
 
+    /**
+     * Constructor.
+     * 
+     * @param properties
+     *            the configuration properties
+     * @throws IllegalArgumentException
+     *             if the {@link #TAX_ZONE_PARENTS_PROPERTY} is not valid
+     */
     public EasyTaxConfig(final Properties properties) {
         super();
-        this.properties = properties;
+        this.properties = new Properties();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(PROPERTY_PREFIX)) {
+                this.properties.setProperty(key, properties.getProperty(key));
+            }
+        }
+        this.taxZoneResolver = getConfigurationValue(TAX_ZONE_RESOLVER_PROPERTY,
+                DEFAULT_TAX_ZONE_RESOLVER);
+        this.taxDateResolver = getConfigurationValue(TAX_DATE_RESOLVER_PROPERTY,
+                DEFAULT_TAX_DATE_RESOLVER);
+        this.taxRoundingMode = parseTaxRoundingMode();
+        this.taxScale = parseTaxScale();
+        this.taxZoneHierarchy = parseTaxZoneHierarchy();
+    }
+
+    @Override
+    public int hashCode() {
+        return properties.hashCode();
+    }
+
+    /**
+     * Test for equality.
+     * 
+     * <p>
+     * Two configurations are equal if they have the same plugin properties.
+     * </p>
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof EasyTaxConfig)) {
+            return false;
+        }
+        return properties.equals(((EasyTaxConfig) obj).properties);
     }
 
     /**
@@ -83,8 +294,7 @@ public class EasyTaxConfig {
      * @return the name of the tax zone resolver class to use
      */
     public String getTaxZoneResolver() {
-        return properties.getProperty(PROPERTY_PREFIX + TAX_ZONE_RESOLVER_PROPERTY,
-                DEFAULT_TAX_ZONE_RESOLVER);
+        return taxZoneResolver;
     }
 
     /**
@@ -97,8 +307,7 @@ public class EasyTaxConfig {
      * @return the name of the tax zone resolver class to use
      */
     public String getTaxDateResolver() {
-        return properties.getProperty(PROPERTY_PREFIX + TAX_DATE_RESOLVER_PROPERTY,
-                DEFAULT_TAX_DATE_RESOLVER);
+        return taxDateResolver;
     }
 
     /**
@@ -111,6 +320,10 @@ public class EasyTaxConfig {
      * @return the rounding mode
      */
     public RoundingMode getTaxRoundingMode() {
+        return taxRoundingMode;
+    }
+
+    private RoundingMode parseTaxRoundingMode() {
         String mode = getConfigurationValue(TAX_ROUNDING_MODE_PROPERTY, DEFAULT_TAX_ROUNDING_MODE);
         RoundingMode result;
         try {
@@ -131,6 +344,10 @@ public class EasyTaxConfig {
      * @return the tax scale
      */
     public int getTaxScale() {
+        return taxScale;
+    }
+
+    private int parseTaxScale() {
         String scale = getConfigurationValue(TAX_SCALE_PROPERTY, DEFAULT_TAX_SCALE);
         int result;
         try {
@@ -141,6 +358,241 @@ public class EasyTaxConfig {
         return result;
     }
 
+    /**
+     * Get the hierarchy of nested tax zones.
+     * 
+     * <p>
+     * This returns the {@link #TAX_ZONE_PARENTS_PROPERTY}, parsed via
+     * {@link TaxZoneHierarchy#parse(String)}. Defaults to {@link TaxZoneHierarchy#EMPTY}. A
+     * configuration with an invalid value is rejected by the constructor.
+     * </p>
+     * 
+     * @return the tax zone hierarchy, never {@literal null}
+     */
+    public TaxZoneHierarchy getTaxZoneHierarchy() {
+        return taxZoneHierarchy;
+    }
+
+    private TaxZoneHierarchy parseTaxZoneHierarchy() {
+        String value = getConfigurationValue(TAX_ZONE_PARENTS_PROPERTY, null);
+        try {
+            return TaxZoneHierarchy.parse(value);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid " + TAX_ZONE_PARENTS_PROPERTY
+                    + " configuration value [" + value + "]: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Get the minimum age, in days, of taxation records to move to the taxation archive.
+     * 
+     * <p>
+     * This returns the {@link #TAXATION_ARCHIVE_DAYS_PROPERTY}. Defaults to {@literal 0}, which
+     * disables archiving.
+     * </p>
+     * 
+     * @return the archive age, in days
+     */
+    public int getTaxationArchiveDays() {
+        return getIntConfigurationValue(TAXATION_ARCHIVE_DAYS_PROPERTY,
+                DEFAULT_TAXATION_ARCHIVE_DAYS);
+    }
+
+    /**
+     * Get the maximum number of invoices to archive taxation records for in one transaction.
+     * 
+     * <p>
+     * This returns the {@link #TAXATION_ARCHIVE_BATCH_SIZE_PROPERTY}. Defaults to {@literal 500}.
+     * </p>
+     * 
+     * @return the archive batch size
+     */
+    public int getTaxationArchiveBatchSize() {
+        return getIntConfigurationValue(TAXATION_ARCHIVE_BATCH_SIZE_PROPERTY,
+                DEFAULT_TAXATION_ARCHIVE_BATCH_SIZE);
+    }
+
+    /**
+     * Get the number of hours to wait between taxation archive runs.
+     * 
+     * <p>
+     * This returns the {@link #TAXATION_ARCHIVE_INTERVAL_HOURS_PROPERTY}. Defaults to
+     * {@literal 24}.
+     * </p>
+     * 
+     * @return the archive interval, in hours
+     */
+    public int getTaxationArchiveIntervalHours() {
+        return getIntConfigurationValue(TAXATION_ARCHIVE_INTERVAL_HOURS_PROPERTY,
+                DEFAULT_TAXATION_ARCHIVE_INTERVAL_HOURS);
+    }
+
+    /**
+     * Get the number of taxation records an invoice must have before they are compacted into a
+     * single record.
+     * 
+     * <p>
+     * This returns the {@link #TAXATION_COMPACT_THRESHOLD_PROPERTY}. Defaults to {@literal 0},
+     * which disables compaction.
+     * </p>
+     * 
+     * @return the compaction threshold
+     */
+    public int getTaxationCompactThreshold() {
+        return getIntConfigurationValue(TAXATION_COMPACT_THRESHOLD_PROPERTY,
+                DEFAULT_TAXATION_COMPACT_THRESHOLD);
+    }
+
+    /**
+     * Get the maximum number of invoices to compact per taxation compaction sweep batch.
+     * 
+     * <p>
+     * This returns the {@link #TAXATION_COMPACT_BATCH_SIZE_PROPERTY}. Defaults to {@literal 100}.
+     * </p>
+     * 
+     * @return the compaction batch size
+     */
+    public int getTaxationCompactBatchSize() {
+        return getIntConfigurationValue(TAXATION_COMPACT_BATCH_SIZE_PROPERTY,
+                DEFAULT_TAXATION_COMPACT_BATCH_SIZE);
+    }
+
+    /**
+     * Get the number of hours to wait between taxation compaction sweeps.
+     * 
+     * <p>
+     * This returns the {@link #TAXATION_COMPACT_INTERVAL_HOURS_PROPERTY}. Defaults to
+     * {@literal 24}.
+     * </p>
+     * 
+     * @return the compaction interval, in hours
+     */
+    public int getTaxationCompactIntervalHours() {
+        return getIntConfigurationValue(TAXATION_COMPACT_INTERVAL_HOURS_PROPERTY,
+                DEFAULT_TAXATION_COMPACT_INTERVAL_HOURS);
+    }
+
+    /**
+     * Get the number of hours after which a tax code stage that has not been added to is removed.
+     * 
+     * <p>
+     * This returns the {@link #TAX_CODE_STAGE_EXPIRE_HOURS_PROPERTY}. Defaults to {@literal 24}.
+     * A value of {@literal 0} disables removing abandoned stages.
+     * </p>
+     * 
+     * @return the stage expiry, in hours
+     */
+    public int getTaxCodeStageExpireHours() {
+        return getIntConfigurationValue(TAX_CODE_STAGE_EXPIRE_HOURS_PROPERTY,
+                DEFAULT_TAX_CODE_STAGE_EXPIRE_HOURS);
+    }
+
+    /**
+     * Get the number of days after which superseded tax code changes are removed.
+     * 
+     * <p>
+     * This returns the {@link #TAX_CODE_CHANGE_RETENTION_DAYS_PROPERTY}. Defaults to
+     * {@literal 0}, which disables removing tax code changes.
+     * </p>
+     * 
+     * @return the change retention, in days
+     */
+    public int getTaxCodeChangeRetentionDays() {
+        return getIntConfigurationValue(TAX_CODE_CHANGE_RETENTION_DAYS_PROPERTY,
+                DEFAULT_TAX_CODE_CHANGE_RETENTION_DAYS);
+    }
+
+    /**
+     * Get the path to a CSV file to load tax codes from.
+     * 
+     * <p>
+     * This returns the {@link #TAX_CODES_FILE_PROPERTY}. When configured, tax codes are loaded
+     * from this file instead of the database, and cannot be modified via the plugin.
+     * </p>
+     * 
+     * @return the tax codes file path, or {@literal null} if tax codes are stored in the database
+     */
+    public String getTaxCodesFile() {
+        String path = getConfigurationValue(TAX_CODES_FILE_PROPERTY, null);
+        return (path != null && !path.trim().isEmpty() ? path.trim() : null);
+    }
+
+    /**
+     * Get the number of seconds to wait between checks for changes to the tax codes file.
+     * 
+     * <p>
+     * This returns the {@link #TAX_CODES_FILE_CHECK_SECONDS_PROPERTY}. Defaults to
+     * {@literal 60}.
+     * </p>
+     * 
+     * @return the check interval, in seconds
+     */
+    public int getTaxCodesFileCheckSeconds() {
+        return getIntConfigurationValue(TAX_CODES_FILE_CHECK_SECONDS_PROPERTY,
+                DEFAULT_TAX_CODES_FILE_CHECK_SECONDS);
+    }
+
+    /**
+     * Get the number of seconds to cache the tax codes of a tenant in memory.
+     * 
+     * <p>
+     * This returns the {@link #TAX_CODES_CACHE_SECONDS_PROPERTY}. Defaults to {@literal 0}, which
+     * disables caching.
+     * </p>
+     * 
+     * @return the cache time-to-live, in seconds
+     */
+    public int getTaxCodesCacheSeconds() {
+        return getIntConfigurationValue(TAX_CODES_CACHE_SECONDS_PROPERTY,
+                DEFAULT_TAX_CODES_CACHE_SECONDS);
+    }
+
+    /**
+     * Get the flag to cache the tax codes of a tenant in a compact, off-heap form.
+     * 
+     * <p>
+     * This returns the {@link #TAX_CODES_CACHE_COMPACT_PROPERTY}. Defaults to {@literal false}.
+     * Only used when {@link #getTaxCodesCacheSeconds()} is greater than {@literal 0}.
+     * </p>
+     * 
+     * @return {@literal true} to cache tax codes in a compact form
+     */
+    public boolean isTaxCodesCacheCompact() {
+        return Boolean.parseBoolean(getConfigurationValue(TAX_CODES_CACHE_COMPACT_PROPERTY,
+                DEFAULT_TAX_CODES_CACHE_COMPACT).trim());
+    }
+
+    /**
+     * Get the flag to prepare tenants for calculating tax in the background.
+     * 
+     * <p>
+     * This returns the {@link #WARM_UP_PROPERTY}. Defaults to {@literal false}.
+     * </p>
+     * 
+     * @return {@literal true} to warm up tenants when the plugin starts and when a tenant's
+     *         configuration changes
+     */
+    public boolean isWarmUp() {
+        return Boolean
+                .parseBoolean(getConfigurationValue(WARM_UP_PROPERTY, DEFAULT_WARM_UP).trim());
+    }
+
+    /**
+     * Get the flag to run the background maintenance tasks on this node.
+     * 
+     * <p>
+     * This returns the {@link #MAINTENANCE_TASKS_PROPERTY}. Defaults to {@literal true}. The tasks
+     * do not coordinate between nodes, so in a cluster this can be set to {@literal false} on all
+     * but one node.
+     * </p>
+     * 
+     * @return {@literal true} to schedule the maintenance tasks when the plugin starts
+     */
+    public boolean isMaintenanceTasks() {
+        return Boolean.parseBoolean(getConfigurationValue(MAINTENANCE_TASKS_PROPERTY,
+                DEFAULT_MAINTENANCE_TASKS).trim());
+    }
+
     /**
      * Get a general configuration value.
      * 
@@ -154,4 +606,45 @@ public class EasyTaxConfig {
         return properties.getProperty(PROPERTY_PREFIX + key, defaultValue);
     }
 
+    /**
+     * Get a general configuration value as an integer.
+     * 
+     * @param key
+     *            the key, which should not include {@link EasyTaxConfig#PROPERTY_PREFIX}
+     * @param defaultValue
+     *            a default value to use if the property is not available or is not a valid
+     *            integer
+     * @return the discovered value, or {@code defaultValue} if not available
+     */
+    public int getIntConfigurationValue(String key, int defaultValue) {
+        String value = getConfigurationValue(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Get a copy of this configuration with a default value for a property.
+     * 
+     * @param key
+     *            the key, which should not include {@link EasyTaxConfig#PROPERTY_PREFIX}
+     * @param value
+     *            the value to use if the property is not available
+     * @return the configuration, or this instance if the property is already available
+     */
+    EasyTaxConfig withDefaultConfigurationValue(String key, String value) {
+        if (properties.containsKey(PROPERTY_PREFIX + key)) {
+            return this;
+        }
+        Properties props = new Properties();
+        props.putAll(properties);
+        props.setProperty(PROPERTY_PREFIX + key, value);
+        return new EasyTaxConfig(props);
+    }
+
 }
@@ -15,21 +15,53 @@
 
 package org.killbill.billing.plugin.easytax.core;
 
+import java.util.List;
 import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.annotation.Nullable;
 
 import org.killbill.billing.osgi.libs.killbill.OSGIKillbillAPI;
 import org.killbill.billing.osgi.libs.killbill.OSGIKillbillLogService;
 import org.killbill.billing.plugin.api.notification.PluginTenantConfigurableConfigurationHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Plugin configuration handler.
  * 
+ * <p>
+ * Registered {@link ConfigurationListener} instances are notified after the configuration of a
+ * tenant has been (re)loaded.
+ * </p>
+ * 
  * @author matt
  */
 @SuppressWarnings("deprecation")
 public class EasyTaxConfigurationHandler
         extends PluginTenantConfigurableConfigurationHandler<EasyTaxConfig> {
 
+    /**
+     * API for being notified of tenant configuration changes.
+     */
+    public interface ConfigurationListener {
+
+        /**
+         * Called after the configuration of a tenant has been loaded.
+         * 
+         * @param kbTenantId
+         *            the tenant ID, or {@literal null} for the global configuration
+         * @param config
+         *            the new configuration
+         */
+        void configurationChanged(@Nullable UUID kbTenantId, EasyTaxConfig config);
+    }
+
+    private final List<ConfigurationListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
     public EasyTaxConfigurationHandler(final String pluginName,
             final OSGIKillbillAPI osgiKillbillApi,
             final OSGIKillbillLogService osgiKillbillLogService) {
@@ -40,4 +72,35 @@ public class EasyTaxConfigurationHandler
     protected EasyTaxConfig createConfigurable(final Properties properties) {
         return new EasyTaxConfig(properties);
     }
+
+    @Override
+    protected void configure(@Nullable final UUID kbTenantId) {
+        try {
+            super.configure(kbTenantId);
+        } catch (IllegalArgumentException e) {
+            log.error("Rejected invalid configuration of tenant {}: {}", kbTenantId,
+                    e.getMessage());
+            throw e;
+        }
+        final EasyTaxConfig config = getConfigurable(kbTenantId);
+        for (ConfigurationListener listener : listeners) {
+            try {
+                listener.configurationChanged(kbTenantId, config);
+            } catch (RuntimeException e) {
+                log.error("Error notifying configuration listener of tenant {} change", kbTenantId,
+                        e);
+            }
+        }
+    }
+
+    /**
+     * Register a listener to be notified of tenant configuration changes.
+     * 
+     * @param listener
+     *            the listener to add
+     */
+    public void addConfigurationListener(ConfigurationListener listener) {
+        listeners.add(listener);
+    }
+
 }
@@ -0,0 +1,259 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.killbill.billing.plugin.easytax.core;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.osgi.api.OSGIKillbill;
+import org.killbill.billing.plugin.easytax.api.EasyTaxTaxDateResolver;
+import org.killbill.billing.plugin.easytax.api.EasyTaxTaxZoneResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry of the tax zone and tax date resolvers created from the configuration of each tenant.
+ *
+ * <p>
+ * The resolvers of a tenant are created together from the tenant's configuration when first
+ * needed, and are replaced together when {@link #configurationChanged(UUID, EasyTaxConfig)} is
+ * called, so a tenant never uses resolvers created from two different configurations. Tenants
+ * with equal configurations share the same instances of resolvers that declare themselves
+ * {@link EasyTaxTaxZoneResolver#isStateless() stateless}, while all other resolvers, such as those
+ * that cache account data, are created for each tenant.
+ * </p>
+ *
+ * @author matt
+ */
+public class EasyTaxResolverRegistry {
+
+    private final OSGIKillbill killbillApi;
+    private final EasyTaxConfigurationHandler configurationHandler;
+    private final ConcurrentMap<UUID, TenantResolvers> tenants = new ConcurrentHashMap<>();
+    private final ConcurrentMap<ResolverKey, Object> instances = new ConcurrentHashMap<>();
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    /**
+     * Constructor.
+     *
+     * @param killbillApi
+     *            the Killbill API to initialize resolvers with
+     * @param configurationHandler
+     *            the configuration handler to get tenant configurations from
+     */
+    public EasyTaxResolverRegistry(OSGIKillbill killbillApi,
+            EasyTaxConfigurationHandler configurationHandler) {
+        super();
+        this.killbillApi = killbillApi;
+        this.configurationHandler = configurationHandler;
+    }
+
+    /**
+     * Get the tax zone resolver of a tenant.
+     *
+     * @param kbTenantId
+     *            the tenant ID
+     * @return the resolver, never {@literal null}
+     */
+    public EasyTaxTaxZoneResolver taxZoneResolver(UUID kbTenantId) {
+        return tenantResolvers(kbTenantId).zoneResolver;
+    }
+
+    /**
+     * Get the tax date resolver of a tenant.
+     *
+     * @param kbTenantId
+     *            the tenant ID
+     * @return the resolver, never {@literal null}
+     */
+    public EasyTaxTaxDateResolver taxDateResolver(UUID kbTenantId) {
+        return tenantResolvers(kbTenantId).dateResolver;
+    }
+
+    private TenantResolvers tenantResolvers(UUID kbTenantId) {
+        return tenants.computeIfAbsent(kbTenantId,
+                k -> createResolvers(k, configurationHandler.getConfigurable(k)));
+    }
+
+    /**
+     * Replace the resolvers of a tenant after its configuration has changed.
+     *
+     * <p>
+     * When {@code kbTenantId} is {@literal null} the global configuration has changed, which any
+     * tenant may inherit, so the resolvers of all tenants are discarded and created again when
+     * next needed.
+     * </p>
+     *
+     * @param kbTenantId
+     *            the tenant ID, or {@literal null} for the global configuration
+     * @param config
+     *            the new configuration
+     */
+    public void configurationChanged(@Nullable UUID kbTenantId, EasyTaxConfig config) {
+        if (kbTenantId == null) {
+            tenants.clear();
+        } else {
+            tenants.put(kbTenantId, createResolvers(kbTenantId, config));
+        }
+        removeUnusedInstances();
+        log.info("Resolvers updated for tenant {}; {} tenants use {} resolver instances",
+                kbTenantId, getTenantCount(), getInstanceCount());
+    }
+
+    /**
+     * Notify the tax zone resolver of a tenant that an account has changed.
+     *
+     * <p>
+     * Nothing is done if the tenant's resolvers have not been created yet, as they cannot have
+     * cached anything about the account.
+     * </p>
+     *
+     * @param kbTenantId
+     *            the tenant ID
+     * @param kbAccountId
+     *            the ID of the account that changed
+     * @see EasyTaxTaxZoneResolver#accountChanged(UUID, UUID)
+     */
+    public void accountChanged(UUID kbTenantId, UUID kbAccountId) {
+        final TenantResolvers resolvers = tenants.get(kbTenantId);
+        if (resolvers != null) {
+            resolvers.zoneResolver.accountChanged(kbTenantId, kbAccountId);
+        }
+    }
+
+    private synchronized void removeUnusedInstances() {
+        final Set<Object> used = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (TenantResolvers resolvers : tenants.values()) {
+            used.add(resolvers.zoneResolver);
+            used.add(resolvers.dateResolver);
+        }
+        instances.values().removeIf(instance -> !used.contains(instance));
+    }
+
+    /**
+     * Get the number of tenants with resolvers.
+     *
+     * @return the tenant count
+     */
+    public int getTenantCount() {
+        return tenants.size();
+    }
+
+    /**
+     * Get the number of distinct resolver instances used by all tenants.
+     *
+     * @return the resolver instance count
+     */
+    public int getInstanceCount() {
+        return instances.size();
+    }
+
+    private TenantResolvers createResolvers(UUID kbTenantId, EasyTaxConfig config) {
+        final EasyTaxTaxZoneResolver zoneResolver = resolver(EasyTaxTaxZoneResolver.class,
+                config.getTaxZoneResolver(), config, kbTenantId,
+                AccountCustomFieldTaxZoneResolver::new, r -> r.init(killbillApi, config),
+                EasyTaxTaxZoneResolver::isStateless);
+        final EasyTaxTaxDateResolver dateResolver = resolver(EasyTaxTaxDateResolver.class,
+                config.getTaxDateResolver(), config, kbTenantId, SimpleTaxDateResolver::new,
+                r -> r.init(killbillApi, config), EasyTaxTaxDateResolver::isStateless);
+        return new TenantResolvers(zoneResolver, dateResolver);
+    }
+
+    private <T> T resolver(Class<T> type, String className, EasyTaxConfig config,
+            UUID kbTenantId, Supplier<T> defaultResolver, Consumer<T> initializer,
+            Predicate<T> stateless) {
+        final ResolverKey sharedKey = new ResolverKey(type, className, config, null);
+        final Object shared = instances.get(sharedKey);
+        if (shared != null) {
+            return type.cast(shared);
+        }
+        T resolver;
+        try {
+            resolver = type.cast(EasyTaxResolverRegistry.class.getClassLoader()
+                    .loadClass(className).newInstance());
+        } catch (InstantiationException | IllegalAccessException | ClassNotFoundException
+                | ClassCastException e) {
+            log.error("Error instantiating {} class [{}]; using default", type.getSimpleName(),
+                    className, e);
+            resolver = defaultResolver.get();
+        }
+        initializer.accept(resolver);
+
+        // only stateless resolvers are shared; others are kept apart for each tenant
+        final ResolverKey key = (stateless.test(resolver) ? sharedKey
+                : new ResolverKey(type, className, config, kbTenantId));
+        final Object existing = instances.putIfAbsent(key, resolver);
+        return type.cast(existing != null ? existing : resolver);
+    }
+
+    private static final class TenantResolvers {
+
+        private final EasyTaxTaxZoneResolver zoneResolver;
+        private final EasyTaxTaxDateResolver dateResolver;
+
+        private TenantResolvers(EasyTaxTaxZoneResolver zoneResolver,
+                EasyTaxTaxDateResolver dateResolver) {
+            super();
+            this.zoneResolver = zoneResolver;
+            this.dateResolver = dateResolver;
+        }
+    }
+
+    private static final class ResolverKey {
+
+        private final Class<?> type;
+        private final String className;
+        private final EasyTaxConfig config;
+        private final UUID kbTenantId;
+
+        private ResolverKey(Class<?> type, String className, EasyTaxConfig config,
+                UUID kbTenantId) {
+            super();
+            this.type = type;
+            this.className = className;
+            this.config = config;
+            this.kbTenantId = kbTenantId;
+        }
+
+        @Override
+        public int hashCode() {
+            return ((type.hashCode() * 31 + className.hashCode()) * 31 + config.hashCode()) * 31
+                    + Objects.hashCode(kbTenantId);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ResolverKey)) {
+                return false;
+            }
+            ResolverKey other = (ResolverKey) obj;
+            return type.equals(other.type) && className.equals(other.className)
+                    && config.equals(other.config) && Objects.equals(kbTenantId, other.kbTenantId);
+        }
+    }
+
+}
@@ -16,6 +16,8 @@
 package org.killbill.billing.plugin.easytax.core;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.sql.SQLException;
 import java.util.ArrayList;
@@ -29,6 +31,8 @@ import java.util.TimeZone;
 import java.util.UUID;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import javax.annotation.Nonnull;
 import javax.servlet.ServletException;
@@ -41,6 +45,9 @@ import org.joda.time.DateTimeZone;
 import org.joda.time.format.ISODateTimeFormat;
 import org.killbill.billing.plugin.core.PluginServlet;
 import org.killbill.billing.plugin.easytax.api.EasyTaxDao;
+import org.killbill.billing.plugin.easytax.api.EasyTaxTaxCalculator;
+import org.killbill.billing.plugin.easytax.api.EasyTaxTaxCodeOverlapException;
+import org.killbill.billing.plugin.easytax.api.EasyTaxTaxCodeValidationException;
 import org.killbill.billing.plugin.easytax.api.EasyTaxTenantContext;
 import org.killbill.billing.security.Logical;
 import org.killbill.billing.security.Permission;
@@ -52,7 +59,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.module.SimpleModule;
@@ -78,9 +88,61 @@ public class EasyTaxServlet extends PluginServlet {
      */
     public static final String VALID_DATE = "validDate";
 
+    /**
+     * A ISO8601 date/time request parameter to find tax codes as they were known at that time.
+     */
+    public static final String KNOWN_DATE_PARAM = "knownDate";
+
     /** The JSON content type with UTF-8 encoding. */
     public static final String APPLICATION_JSON_UTF8 = APPLICATION_JSON + ";charset=UTF-8";
 
+    /** The newline-delimited JSON content type with UTF-8 encoding. */
+    public static final String APPLICATION_NDJSON_UTF8 = "application/x-ndjson;charset=UTF-8";
+
+    /**
+     * A boolean request parameter to replace all existing tax codes when importing a snapshot.
+     */
+    public static final String REPLACE_PARAM = "replace";
+
+    /**
+     * A tenant ID request parameter to copy a tax code snapshot from.
+     */
+    public static final String SOURCE_TENANT_ID_PARAM = "sourceTenantId";
+
+    /**
+     * A boolean request parameter to only validate uploaded tax codes, without saving them.
+     */
+    public static final String VALIDATE_ONLY_PARAM = "validateOnly";
+
+    /**
+     * A change sequence request parameter to get the tax code changes made after.
+     */
+    public static final String SINCE_SEQUENCE_PARAM = "sinceSequence";
+
+    /**
+     * A request parameter for the maximum number of tax code changes to return.
+     */
+    public static final String MAX_PARAM = "max";
+
+    /** The default maximum number of tax code changes to return. */
+    public static final int DEFAULT_MAX_CHANGES = 1000;
+
+    /** The URL path for tax code snapshots. */
+    public static final String TAX_CODE_SNAPSHOT_PATH = "/taxCodeSnapshot";
+
+    /** The URL path for rolling over tax codes to a new tax rate. */
+    public static final String TAX_CODE_ROLL_OVER_PATH = "/taxCodeRollOver";
+
+    /** The URL path for the tax code change log. */
+    public static final String TAX_CODE_CHANGES_PATH = "/taxCodeChanges";
+
+    /** The URL path for prefetching the tax zones of accounts about to be invoiced. */
+    public static final String TAX_ZONE_PREFETCH_PATH = "/taxZonePrefetch";
+
+    private static final String GZIP_ENCODING = "gzip";
+
+    private static final Pattern ZERO_QUALITY_PATTERN = Pattern.compile("q\\s*=\\s*0(\\.0*)?");
+
     private static final ObjectMapper JSON_MAPPER = defaultObjectMapper();
 
     private static ObjectMapper defaultObjectMapper() {
@@ -108,11 +170,27 @@ public class EasyTaxServlet extends PluginServlet {
     private static final Pattern TAX_CODES_URL_PATTERN = Pattern
             .compile("/taxCodes(/([^/]+)(/([^/]+))?(/([^/]+))?)?");
 
+    /**
+     * Regexp for tax code stage URLs like {@literal /taxCodeStages/{stageId}/{action}}.
+     */
+    private static final Pattern TAX_CODE_STAGES_URL_PATTERN = Pattern
+            .compile("/taxCodeStages(/([^/]+)(/(activate|validation))?)?");
+
+    private static final String STAGE_ACTIVATE_ACTION = "activate";
+
+    private static final String STAGE_VALIDATION_ACTION = "validation";
+
+    /** The HTTP status for a request that failed validation. */
+    private static final int UNPROCESSABLE_ENTITY_STATUS = 422;
+
     private final Logger log = LoggerFactory.getLogger(getClass());
 
     private final EasyTaxDao dao;
     private final Clock clock;
     private final SecurityApi securityApi;
+    private final EasyTaxTaxCodeValidator taxCodeValidator = new EasyTaxTaxCodeValidator();
+
+    private EasyTaxTaxCalculator taxCalculator;
 
     private List<Permission> requiredModifyPermissions = Arrays
             .asList(Permission.CATALOG_CAN_UPLOAD);
@@ -174,8 +252,33 @@ public class EasyTaxServlet extends PluginServlet {
      * on their valid date range</li>
      * <li><code>validNow</code> - if {@literal true} then restrict the returned codes to those
      * whose valid date range contains the current system time</li>
+     * <li><code>knownDate</code> - a date in ISO8601 format to return the codes as they were saved
+     * at that time, rather than as they are now; a {@literal 400} response is returned if the
+     * tax code change log does not go back that far</li>
      * </ul>
      * 
+     * <p>
+     * The path <code>/taxCodeSnapshot</code> returns a snapshot of all tax codes for the active
+     * tenant as newline-delimited JSON, with one {@link EasyTaxTaxCode} object per line. The
+     * snapshot is gzip-encoded if the {@code Accept-Encoding} header allows {@literal gzip}. The
+     * tenant ID and creation date of the tax codes are omitted from the snapshot.
+     * </p>
+     * 
+     * <p>
+     * The path <code>/taxCodeStages/{stageId}</code> returns the staged tax codes of a stage, and
+     * <code>/taxCodeStages/{stageId}/validation</code> returns a JSON object with an <b>errors</b>
+     * array property of any validation errors of the staged tax codes.
+     * </p>
+     * 
+     * <p>
+     * The path <code>/taxCodeChanges</code> returns an array of {@link EasyTaxTaxCodeChange}
+     * objects, ordered by sequence, for the changes made to the tax codes of the active tenant
+     * after the sequence given by a <code>sinceSequence</code> parameter (or all changes if not
+     * provided), up to a maximum given by a <code>max</code> parameter (or {@literal 1000} if not
+     * provided). Consumers can pass the sequence of the last change returned to get the next
+     * changes.
+     * </p>
+     * 
      * @param req
      *            the request
      * @param resp
@@ -195,6 +298,26 @@ public class EasyTaxServlet extends PluginServlet {
         }
 
         final String pathInfo = req.getPathInfo();
+        if (TAX_CODE_SNAPSHOT_PATH.equals(pathInfo)) {
+            exportTaxCodes(tenant, req, resp);
+            return;
+        }
+        if (TAX_CODE_CHANGES_PATH.equals(pathInfo)) {
+            respondTaxCodeChanges(tenant, req, resp);
+            return;
+        }
+        final Matcher stageMatcher = TAX_CODE_STAGES_URL_PATTERN.matcher(pathInfo);
+        if (stageMatcher.matches()) {
+            final UUID stageId = stageId(stageMatcher.group(2));
+            final String action = stageMatcher.group(4);
+            if (stageId != null && action == null) {
+                respondStagedTaxCodes(tenant, stageId, resp);
+                return;
+            } else if (stageId != null && STAGE_VALIDATION_ACTION.equals(action)) {
+                respondTaxCodeStageValidation(tenant, stageId, resp);
+                return;
+            }
+        }
         final Matcher matcher = TAX_CODES_URL_PATTERN.matcher(pathInfo);
         if (matcher.matches()) {
             String taxZone = matcher.group(2);
@@ -209,8 +332,14 @@ public class EasyTaxServlet extends PluginServlet {
                 date = ISODateTimeFormat.dateOptionalTimeParser()
                         .parseDateTime(req.getParameter(VALID_DATE)).withZone(DateTimeZone.UTC);
             }
+            DateTime knownDate = null;
+            if (req.getParameter(KNOWN_DATE_PARAM) != null) {
+                knownDate = ISODateTimeFormat.dateOptionalTimeParser()
+                        .parseDateTime(req.getParameter(KNOWN_DATE_PARAM))
+                        .withZone(DateTimeZone.UTC);
+            }
 
-            respondTaxCodes(tenant, taxZone, productName, taxCode, date, resp);
+            respondTaxCodes(tenant, taxZone, productName, taxCode, date, knownDate, resp);
         } else {
             buildNotFoundResponse("Resource " + pathInfo + " not found", resp);
         }
@@ -237,6 +366,53 @@ public class EasyTaxServlet extends PluginServlet {
      * <b>created_date</b> and <b>tenant_id</b>, which will be populated automatically.
      * </p>
      * 
+     * <p>
+     * The path <code>/taxCodeSnapshot</code> imports a snapshot as returned by
+     * {@link #doGet(HttpServletRequest, HttpServletResponse)}. The request body is expected to
+     * contain newline-delimited JSON, optionally gzip-encoded if the {@code Content-Encoding}
+     * header is {@literal gzip}. Alternatively, if a <code>sourceTenantId</code> parameter is
+     * provided then all tax codes of that tenant are copied instead, which requires the same
+     * permissions on both tenants. If a <code>replace</code> parameter is {@literal true} then all
+     * existing tax codes of the active tenant are deleted first. The response is a JSON object
+     * with a <b>count</b> property of the number of imported tax codes. A snapshot that cannot be
+     * parsed results in a {@literal 400} response, and one with invalid tax codes (for example a
+     * missing tax zone or a negative tax rate) results in a {@literal 422} response with a JSON
+     * object with an <b>errors</b> array property, and nothing is imported.
+     * </p>
+     * 
+     * <p>
+     * The path <code>/taxCodeStages</code> creates a new stage from an array of
+     * {@link EasyTaxTaxCode} objects in the request body, and responds with the location of the
+     * new stage. The path <code>/taxCodeStages/{stageId}</code> adds more tax codes to an existing
+     * stage. The path <code>/taxCodeStages/{stageId}/activate</code> validates the staged tax
+     * codes, and if valid replaces all tax codes of the active tenant with them in a single
+     * transaction; otherwise a {@literal 422} response with a JSON object with an <b>errors</b>
+     * array property is returned.
+     * </p>
+     * 
+     * <p>
+     * The path <code>/taxCodeRollOver</code> accepts a {@link EasyTaxTaxCodeRollOver} object in
+     * the request body, and closes off all matching open-ended tax codes at its effective date,
+     * adding successor tax codes with the new tax rate, in a single transaction. The response is a
+     * JSON object with a <b>count</b> property of the number of tax codes rolled over.
+     * </p>
+     * 
+     * <p>
+     * The path <code>/taxZonePrefetch</code> accepts an array of account IDs in the request body,
+     * for example the accounts of an upcoming bill run, and resolves their tax zones in bulk so
+     * computing tax for their invoices does not need to look them up one at a time. The response
+     * is a JSON object with a <b>count</b> property of the number of accounts prefetched.
+     * </p>
+     * 
+     * <p>
+     * When uploading an array of tax codes or a snapshot, or copying the tax codes of another
+     * tenant, a {@literal 409} response with a JSON object with an <b>errors</b> array property is
+     * returned if the tax codes would have overlapping validity date ranges, and nothing is saved.
+     * If a <code>validateOnly</code> parameter is {@literal true} then the uploaded tax codes are
+     * only validated, combined with the existing tax codes unless replacing them, and a JSON
+     * object with an <b>errors</b> array property is returned without saving anything.
+     * </p>
+     * 
      * @param req
      *            the request
      * @param resp
@@ -254,11 +430,39 @@ public class EasyTaxServlet extends PluginServlet {
             buildNotFoundResponse("No tenant specified", resp);
             return;
         }
-        if (notAllowed(tenant, this.requiredModifyPermissions, req, resp)) {
+        if (notAllowed(tenant.getId(), this.requiredModifyPermissions, req, resp)) {
             return;
         }
 
         final String pathInfo = req.getPathInfo();
+        if (TAX_CODE_SNAPSHOT_PATH.equals(pathInfo)) {
+            importTaxCodes(tenant, req, resp);
+            return;
+        }
+        if (TAX_CODE_ROLL_OVER_PATH.equals(pathInfo)) {
+            rollOverTaxCodes(tenant, req, resp);
+            return;
+        }
+        if (TAX_ZONE_PREFETCH_PATH.equals(pathInfo) && taxCalculator != null) {
+            prefetchTaxZones(tenant, req, resp);
+            return;
+        }
+        final Matcher stageMatcher = TAX_CODE_STAGES_URL_PATTERN.matcher(pathInfo);
+        if (stageMatcher.matches()) {
+            final String stageIdValue = stageMatcher.group(2);
+            final UUID stageId = stageId(stageIdValue);
+            final String action = stageMatcher.group(4);
+            if (stageIdValue == null) {
+                stageTaxCodes(tenant, UUID.randomUUID(), true, req, resp);
+                return;
+            } else if (stageId != null && action == null) {
+                stageTaxCodes(tenant, stageId, false, req, resp);
+                return;
+            } else if (stageId != null && STAGE_ACTIVATE_ACTION.equals(action)) {
+                activateTaxCodeStage(tenant, stageId, resp);
+                return;
+            }
+        }
         final Matcher matcher = TAX_CODES_URL_PATTERN.matcher(pathInfo);
         if (matcher.matches()) {
             String taxZone = matcher.group(2);
@@ -274,6 +478,71 @@ public class EasyTaxServlet extends PluginServlet {
         }
     }
 
+    /**
+     * Synchronize the tax codes with a complete set of desired tax codes.
+     * 
+     * <p>
+     * The request body is expected to contain an array of {@link EasyTaxTaxCode} objects, as with
+     * {@link #doPost(HttpServletRequest, HttpServletResponse)}, that represent the complete set of
+     * desired tax codes. Only the differences to the existing tax codes are applied: missing codes
+     * are added, changed codes are updated, and codes not present in the request are deleted. The
+     * supported path patterns are:
+     * </p>
+     * 
+     * <table>
+     * <tbody>
+     * <tr>
+     * <td><code>/taxCodes</code></td>
+     * <td>all tax codes for the active tenant</td>
+     * </tr>
+     * <tr>
+     * <td><code>/taxCodes/{taxZone}</code></td>
+     * <td>all tax codes for the active tenant and tax zone <code>taxZone</code>; the tax zone of
+     * all request tax codes is set to <code>taxZone</code></td>
+     * </tr>
+     * </tbody>
+     * </table>
+     * 
+     * <p>
+     * The response is a JSON object with <b>inserted</b>, <b>updated</b>, <b>deleted</b>, and
+     * <b>unchanged</b> count properties. A {@literal 409} response with a JSON object with an
+     * <b>errors</b> array property is returned if the desired tax codes have overlapping validity
+     * date ranges. If a <code>validateOnly</code> parameter is {@literal true} then the desired
+     * tax codes are only validated, and a JSON object with an <b>errors</b> array property is
+     * returned without changing anything.
+     * </p>
+     * 
+     * @param req
+     *            the request
+     * @param resp
+     *            the response
+     * @throws ServletException
+     *             if a servlet error occurs
+     * @throws IOException
+     *             if an IO error occurs
+     */
+    @Override
+    protected void doPut(final HttpServletRequest req, final HttpServletResponse resp)
+            throws ServletException, IOException {
+        final Tenant tenant = getTenant(req);
+        if (tenant == null) {
+            buildNotFoundResponse("No tenant specified", resp);
+            return;
+        }
+        if (notAllowed(tenant.getId(), this.requiredModifyPermissions, req, resp)) {
+            return;
+        }
+
+        final String pathInfo = req.getPathInfo();
+        final Matcher matcher = TAX_CODES_URL_PATTERN.matcher(pathInfo);
+        if (matcher.matches() && matcher.group(4) == null) {
+            String taxZone = matcher.group(2);
+            syncTaxCodes(tenant, taxZone, req, resp);
+        } else {
+            buildNotFoundResponse("Resource " + pathInfo + " not found", resp);
+        }
+    }
+
     /**
      * Delete one or more tax codes.
      * 
@@ -302,6 +571,10 @@ public class EasyTaxServlet extends PluginServlet {
      * <td>all tax codes for the active tenant, tax zone <code>taxZone</code>, product
      * <code>productName</code>, and code <code>taxCode</code></td>
      * </tr>
+     * <tr>
+     * <td><code>/taxCodeStages/{stageId}</code></td>
+     * <td>all staged tax codes of the stage <code>stageId</code>, without activating them</td>
+     * </tr>
      * </tbody>
      * </table>
      * 
@@ -322,11 +595,19 @@ public class EasyTaxServlet extends PluginServlet {
             buildNotFoundResponse("No tenant specified", resp);
             return;
         }
-        if (notAllowed(tenant, this.requiredModifyPermissions, req, resp)) {
+        if (notAllowed(tenant.getId(), this.requiredModifyPermissions, req, resp)) {
             return;
         }
 
         final String pathInfo = req.getPathInfo();
+        final Matcher stageMatcher = TAX_CODE_STAGES_URL_PATTERN.matcher(pathInfo);
+        if (stageMatcher.matches()) {
+            final UUID stageId = stageId(stageMatcher.group(2));
+            if (stageId != null && stageMatcher.group(4) == null) {
+                deleteTaxCodeStage(tenant, stageId, resp);
+                return;
+            }
+        }
         final Matcher matcher = TAX_CODES_URL_PATTERN.matcher(pathInfo);
         if (matcher.matches()) {
             String taxZone = matcher.group(2);
@@ -340,11 +621,19 @@ public class EasyTaxServlet extends PluginServlet {
 
     private void respondTaxCodes(final Tenant tenant, final String taxZone,
             final String productName, final String taxCode, final DateTime validDate,
-            final HttpServletResponse resp) throws IOException {
+            final DateTime knownDate, final HttpServletResponse resp) throws IOException {
         final List<EasyTaxTaxCode> taxCodesRecords;
         try {
-            taxCodesRecords = dao.getTaxCodes(tenant.getId(), taxZone, productName, taxCode,
-                    validDate);
+            if (knownDate != null) {
+                taxCodesRecords = dao.getTaxCodes(tenant.getId(), taxZone, productName, taxCode,
+                        validDate, knownDate);
+            } else {
+                taxCodesRecords = dao.getTaxCodes(tenant.getId(), taxZone, productName, taxCode,
+                        validDate);
+            }
+        } catch (final EasyTaxTaxCodeValidationException e) {
+            buildBadRequestResponse(e.getMessage(), resp);
+            return;
         } catch (final SQLException e) {
             buildErrorResponse(e, resp);
             return;
@@ -391,7 +680,15 @@ public class EasyTaxServlet extends PluginServlet {
             code.setCreatedDate(now);
         }
         try {
+            if (isValidateOnly(req)) {
+                respondErrors(HttpServletResponse.SC_OK, validateTaxCodes(tenantId, taxCodes, true),
+                        resp);
+                return;
+            }
             dao.saveTaxCodes(taxCodes);
+        } catch (final EasyTaxTaxCodeOverlapException e) {
+            respondErrors(HttpServletResponse.SC_CONFLICT, e.getOverlaps(), resp);
+            return;
         } catch (final SQLException e) {
             buildErrorResponse(e, resp);
             return;
@@ -400,6 +697,72 @@ public class EasyTaxServlet extends PluginServlet {
         buildOKResponse(null, resp);
     }
 
+    private static boolean isValidateOnly(final ServletRequest req) {
+        return "true".equalsIgnoreCase(req.getParameter(VALIDATE_ONLY_PARAM));
+    }
+
+    private List<String> validateTaxCodes(final UUID tenantId, final List<EasyTaxTaxCode> taxCodes,
+            final boolean merge) throws SQLException {
+        final Set<String> errors = new LinkedHashSet<>(taxCodeValidator.validate(taxCodes));
+        if (merge) {
+            errors.addAll(taxCodeValidator
+                    .validateOverlaps(dao.getTaxCodes(tenantId, null, null, null, null), taxCodes));
+        }
+        return new ArrayList<>(errors);
+    }
+
+    private void respondErrors(final int status, final List<String> errors,
+            final HttpServletResponse resp) throws IOException {
+        final byte[] data = JSON_MAPPER
+                .writeValueAsBytes(Collections.singletonMap("errors", errors));
+        resp.setContentType(APPLICATION_JSON_UTF8);
+        buildResponse(status, data, resp);
+    }
+
+    private void buildBadRequestResponse(final String error, final HttpServletResponse resp)
+            throws IOException {
+        respondErrors(HttpServletResponse.SC_BAD_REQUEST, Collections.singletonList(error), resp);
+    }
+
+    private void syncTaxCodes(final Tenant tenant, final String taxZone,
+            final ServletRequest req, final HttpServletResponse resp) throws IOException {
+        final List<EasyTaxTaxCode> taxCodes = JSON_MAPPER.readValue(getRequestData(req),
+                TAX_CODE_LIST_MAPPING_TYPE);
+        if (taxCodes == null) {
+            // an empty array removes all tax codes, so a missing body must not be taken as one
+            buildBadRequestResponse("Missing tax codes", resp);
+            return;
+        }
+        DateTime now = clock.getUTCNow();
+        UUID tenantId = tenant.getId();
+        for (EasyTaxTaxCode code : taxCodes) {
+            code.setKbTenantId(tenantId);
+            code.setCreatedDate(now);
+            if (taxZone != null) {
+                code.setTaxZone(taxZone);
+            }
+        }
+        final EasyTaxTaxCodeDiff diff;
+        try {
+            if (isValidateOnly(req)) {
+                respondErrors(HttpServletResponse.SC_OK,
+                        validateTaxCodes(tenantId, taxCodes, false), resp);
+                return;
+            }
+            diff = dao.syncTaxCodes(tenantId, taxZone, taxCodes);
+        } catch (final EasyTaxTaxCodeOverlapException e) {
+            respondErrors(HttpServletResponse.SC_CONFLICT, e.getOverlaps(), resp);
+            return;
+        } catch (final SQLException e) {
+            buildErrorResponse(e, resp);
+            return;
+        }
+
+        final byte[] data = JSON_MAPPER.writeValueAsBytes(diff);
+        resp.setContentType(APPLICATION_JSON_UTF8);
+        buildOKResponse(data, resp);
+    }
+
     private void deleteTaxCodes(final Tenant tenant, final String taxZone, final String productName,
             final String taxCode, final HttpServletResponse resp) throws IOException {
         try {
@@ -412,9 +775,306 @@ public class EasyTaxServlet extends PluginServlet {
         buildOKResponse(null, resp);
     }
 
-    private boolean notAllowed(Tenant tenant, List<Permission> required, HttpServletRequest req,
+    private static UUID stageId(final String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return UUID.fromString(value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private void stageTaxCodes(final Tenant tenant, final UUID stageId, final boolean create,
+            final ServletRequest req, final HttpServletResponse resp) throws IOException {
+        final List<EasyTaxTaxCode> taxCodes = JSON_MAPPER.readValue(getRequestData(req),
+                TAX_CODE_LIST_MAPPING_TYPE);
+        if (taxCodes == null) {
+            return;
+        }
+        DateTime now = clock.getUTCNow();
+        for (EasyTaxTaxCode code : taxCodes) {
+            code.setCreatedDate(now);
+        }
+        final int count;
+        try {
+            count = dao.stageTaxCodes(tenant.getId(), stageId, taxCodes);
+        } catch (final SQLException e) {
+            buildErrorResponse(e, resp);
+            return;
+        }
+
+        if (create) {
+            buildCreatedResponse("/plugins/killbill-easytax/taxCodeStages/" + stageId, resp);
+        } else {
+            respondCount(count, resp);
+        }
+    }
+
+    private void respondStagedTaxCodes(final Tenant tenant, final UUID stageId,
+            final HttpServletResponse resp) throws IOException {
+        final List<EasyTaxTaxCode> taxCodes;
+        try {
+            taxCodes = dao.getStagedTaxCodes(tenant.getId(), stageId);
+        } catch (final SQLException e) {
+            buildErrorResponse(e, resp);
+            return;
+        }
+
+        final byte[] data = JSON_MAPPER.writeValueAsBytes(taxCodes);
+        resp.setContentType(APPLICATION_JSON_UTF8);
+        buildOKResponse(data, resp);
+    }
+
+    private void respondTaxCodeStageValidation(final Tenant tenant, final UUID stageId,
+            final HttpServletResponse resp) throws IOException {
+        final List<String> errors;
+        try {
+            errors = taxCodeValidator.validate(dao.getStagedTaxCodes(tenant.getId(), stageId));
+        } catch (final SQLException e) {
+            buildErrorResponse(e, resp);
+            return;
+        }
+
+        respondErrors(HttpServletResponse.SC_OK, errors, resp);
+    }
+
+    private void activateTaxCodeStage(final Tenant tenant, final UUID stageId,
+            final HttpServletResponse resp) throws IOException {
+        final int count;
+        try {
+            // the staged tax codes are validated within the activation transaction
+            count = dao.activateTaxCodeStage(tenant.getId(), stageId);
+        } catch (final EasyTaxTaxCodeValidationException e) {
+            respondErrors(UNPROCESSABLE_ENTITY_STATUS, e.getErrors(), resp);
+            return;
+        } catch (final SQLException e) {
+            buildErrorResponse(e, resp);
+            return;
+        }
+        if (count < 1) {
+            buildNotFoundResponse("Stage " + stageId + " not found", resp);
+            return;
+        }
+
+        respondCount(count, resp);
+    }
+
+    private void deleteTaxCodeStage(final Tenant tenant, final UUID stageId,
+            final HttpServletResponse resp) throws IOException {
+        try {
+            dao.removeTaxCodeStage(tenant.getId(), stageId);
+        } catch (final SQLException e) {
+            buildErrorResponse(e, resp);
+            return;
+        }
+
+        buildOKResponse(null, resp);
+    }
+
+    private void respondCount(final int count, final HttpServletResponse resp)
+            throws IOException {
+        final byte[] data = JSON_MAPPER.writeValueAsBytes(Collections.singletonMap("count", count));
+        resp.setContentType(APPLICATION_JSON_UTF8);
+        buildOKResponse(data, resp);
+    }
+
+    private void respondTaxCodeChanges(final Tenant tenant, final ServletRequest req,
+            final HttpServletResponse resp) throws IOException {
+        final long sinceSequence;
+        final int max;
+        try {
+            final String since = req.getParameter(SINCE_SEQUENCE_PARAM);
+            sinceSequence = (since != null ? Long.parseLong(since) : 0L);
+            final String maxParam = req.getParameter(MAX_PARAM);
+            max = (maxParam != null ? Integer.parseInt(maxParam) : DEFAULT_MAX_CHANGES);
+        } catch (NumberFormatException e) {
+            buildBadRequestResponse(
+                    "Invalid " + SINCE_SEQUENCE_PARAM + " or " + MAX_PARAM + " value", resp);
+            return;
+        }
+        if (max < 1) {
+            buildBadRequestResponse("Invalid " + MAX_PARAM + " value", resp);
+            return;
+        }
+        final List<EasyTaxTaxCodeChange> changes;
+        try {
+            changes = dao.getTaxCodeChanges(tenant.getId(), sinceSequence, max);
+        } catch (final SQLException e) {
+            buildErrorResponse(e, resp);
+            return;
+        }
+
+        final byte[] data = JSON_MAPPER.writeValueAsBytes(changes);
+        resp.setContentType(APPLICATION_JSON_UTF8);
+        buildOKResponse(data, resp);
+    }
+
+    private void exportTaxCodes(final Tenant tenant, final HttpServletRequest req,
+            final HttpServletResponse resp) throws IOException {
+        final List<EasyTaxTaxCode> taxCodes;
+        try {
+            taxCodes = dao.getTaxCodes(tenant.getId(), null, null, null, null);
+        } catch (final SQLException e) {
+            buildErrorResponse(e, resp);
+            return;
+        }
+
+        final boolean gzip = acceptsGzip(req);
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.setContentType(APPLICATION_NDJSON_UTF8);
+        resp.setHeader("Vary", "Accept-Encoding");
+        if (gzip) {
+            resp.setHeader("Content-Encoding", GZIP_ENCODING);
+        }
+        try (OutputStream out = (gzip ? new GZIPOutputStream(resp.getOutputStream())
+                : resp.getOutputStream());
+                JsonGenerator generator = JSON_MAPPER.getFactory().createGenerator(out)) {
+            for (EasyTaxTaxCode code : taxCodes) {
+                code.setKbTenantId(null);
+                code.setCreatedDate(null);
+                JSON_MAPPER.writeValue(generator, code);
+                generator.writeRaw('\n');
+            }
+        }
+    }
+
+    /**
+     * Test if a request accepts a gzip-encoded response.
+     *
+     * @param req
+     *            the request
+     * @return {@literal true} if the {@code Accept-Encoding} header lists {@literal gzip} without
+     *         a zero quality value
+     */
+    private static boolean acceptsGzip(final HttpServletRequest req) {
+        final String accept = req.getHeader("Accept-Encoding");
+        if (accept == null) {
+            return false;
+        }
+        for (String encoding : accept.split(",")) {
+            final String[] params = encoding.split(";");
+            if (!GZIP_ENCODING.equalsIgnoreCase(params[0].trim())) {
+                continue;
+            }
+            for (int i = 1; i < params.length; i++) {
+                if (ZERO_QUALITY_PATTERN.matcher(params[i].trim()).matches()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private void rollOverTaxCodes(final Tenant tenant, final ServletRequest req,
+            final HttpServletResponse resp) throws IOException {
+        final EasyTaxTaxCodeRollOver rollOver = JSON_MAPPER.readValue(getRequestData(req),
+                EasyTaxTaxCodeRollOver.class);
+        if (rollOver == null || rollOver.getEffectiveDate() == null) {
+            buildBadRequestResponse("Missing effective_date value", resp);
+            return;
+        }
+        if ((rollOver.getTaxRate() == null) == (rollOver.getTaxRateDelta() == null)) {
+            buildBadRequestResponse("Exactly one of tax_rate or tax_rate_delta is required", resp);
+            return;
+        }
+        final int count;
+        try {
+            count = dao.rollOverTaxCodes(tenant.getId(), rollOver);
+        } catch (final EasyTaxTaxCodeOverlapException e) {
+            respondErrors(HttpServletResponse.SC_CONFLICT, e.getOverlaps(), resp);
+            return;
+        } catch (final SQLException e) {
+            buildErrorResponse(e, resp);
+            return;
+        }
+
+        respondCount(count, resp);
+    }
+
+    private void prefetchTaxZones(final Tenant tenant, final ServletRequest req,
+            final HttpServletResponse resp) throws IOException {
+        final UUID[] accountIds = JSON_MAPPER.readValue(getRequestData(req), UUID[].class);
+        if (accountIds == null) {
+            buildBadRequestResponse("Missing account IDs", resp);
+            return;
+        }
+        respondCount(taxCalculator.prefetchTaxZones(tenant.getId(), Arrays.asList(accountIds)),
+                resp);
+    }
+
+    private void importTaxCodes(final Tenant tenant, final HttpServletRequest req,
+            final HttpServletResponse resp) throws IOException {
+        final boolean replace = "true".equalsIgnoreCase(req.getParameter(REPLACE_PARAM));
+        final String sourceTenantIdParam = req.getParameter(SOURCE_TENANT_ID_PARAM);
+        int count;
+        if (sourceTenantIdParam != null) {
+            final UUID sourceTenantId;
+            try {
+                sourceTenantId = UUID.fromString(sourceTenantIdParam);
+            } catch (IllegalArgumentException e) {
+                buildBadRequestResponse("Invalid " + SOURCE_TENANT_ID_PARAM + " value", resp);
+                return;
+            }
+            if (notAllowed(sourceTenantId, this.requiredModifyPermissions, req, resp)) {
+                return;
+            }
+            try {
+                count = dao.copyTaxCodes(sourceTenantId, tenant.getId(), replace);
+            } catch (final EasyTaxTaxCodeOverlapException e) {
+                respondErrors(HttpServletResponse.SC_CONFLICT, e.getOverlaps(), resp);
+                return;
+            } catch (final SQLException e) {
+                buildErrorResponse(e, resp);
+                return;
+            }
+        } else {
+            final List<EasyTaxTaxCode> taxCodes;
+            InputStream in = req.getInputStream();
+            if (GZIP_ENCODING.equalsIgnoreCase(req.getHeader("Content-Encoding"))) {
+                in = new GZIPInputStream(in);
+            }
+            try (MappingIterator<EasyTaxTaxCode> itr = JSON_MAPPER
+                    .readerFor(EasyTaxTaxCode.class).readValues(in)) {
+                taxCodes = itr.readAll();
+            } catch (JsonProcessingException e) {
+                buildBadRequestResponse("Invalid tax code snapshot: " + e.getOriginalMessage(),
+                        resp);
+                return;
+            }
+            final DateTime now = clock.getUTCNow();
+            for (EasyTaxTaxCode code : taxCodes) {
+                code.setCreatedDate(now);
+            }
+            try {
+                if (isValidateOnly(req)) {
+                    respondErrors(HttpServletResponse.SC_OK,
+                            validateTaxCodes(tenant.getId(), taxCodes, !replace), resp);
+                    return;
+                }
+                final List<String> errors = taxCodeValidator.validate(taxCodes);
+                if (!errors.isEmpty()) {
+                    respondErrors(UNPROCESSABLE_ENTITY_STATUS, errors, resp);
+                    return;
+                }
+                count = dao.importTaxCodes(tenant.getId(), taxCodes, replace);
+            } catch (final EasyTaxTaxCodeOverlapException e) {
+                respondErrors(HttpServletResponse.SC_CONFLICT, e.getOverlaps(), resp);
+                return;
+            } catch (final SQLException e) {
+                buildErrorResponse(e, resp);
+                return;
+            }
+        }
+
+        respondCount(count, resp);
+    }
+
+    private boolean notAllowed(UUID tenantId, List<Permission> required, HttpServletRequest req,
             HttpServletResponse resp) throws IOException {
-        int result = checkPermission(tenant, required, req);
+        int result = checkPermission(tenantId, required, req);
         if (result != 0) {
             buildResponse(result, null, resp);
             return true;
@@ -422,7 +1082,7 @@ public class EasyTaxServlet extends PluginServlet {
         return false;
     }
 
-    private int checkPermission(Tenant tenant, List<Permission> required, HttpServletRequest req) {
+    private int checkPermission(UUID tenantId, List<Permission> required, HttpServletRequest req) {
         if (required.isEmpty()) {
             return 0;
         }
@@ -445,7 +1105,7 @@ public class EasyTaxServlet extends PluginServlet {
             }
 
             securityApi.login(credentialComponents[0], credentialComponents[1]);
-            TenantContext context = new EasyTaxTenantContext(tenant.getId(), null);
+            TenantContext context = new EasyTaxTenantContext(tenantId, null);
             securityApi.checkCurrentUserPermissions(required, Logical.AND, context);
             return 0;
         } catch (Exception e) {
@@ -469,6 +1129,20 @@ public class EasyTaxServlet extends PluginServlet {
         return set;
     }
 
+    /**
+     * Set the tax calculator to prefetch tax zones with.
+     * 
+     * <p>
+     * If not configured, the <code>/taxZonePrefetch</code> path is not available.
+     * </p>
+     * 
+     * @param taxCalculator
+     *            the tax calculator to use
+     */
+    public void setTaxCalculator(EasyTaxTaxCalculator taxCalculator) {
+        this.taxCalculator = taxCalculator;
+    }
+
     /**
      * Set a {@code Set} of permissions that are required to perform modifications.
      * 
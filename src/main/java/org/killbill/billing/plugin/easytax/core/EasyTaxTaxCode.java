@@ -33,6 +33,13 @@ import com.fasterxml.jackson.annotation.JsonView;
         "tax_rate", "valid_from_date", "valid_to_date" })
 public class EasyTaxTaxCode {
 
+    /**
+     * The product name of tax codes that apply to all products in their tax zone.
+     *
+     * @see TaxCodePrecedence
+     */
+    public static final String ANY_PRODUCT_NAME = "*";
+
     /** A supporting JSON view for full details. */
     public static final class FullView {
         // nothing
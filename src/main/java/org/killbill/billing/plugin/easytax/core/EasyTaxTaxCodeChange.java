@@ -0,0 +1,90 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.killbill.billing.plugin.easytax.core;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+/**
+ * Data bean for tax code change log records.
+ *
+ * <p>
+ * Each change captures the state of a tax code as it was inserted or updated, or as it was just
+ * before it was deleted. The <i>created date</i> is the date the change was made, and the
+ * <i>sequence</i> orders the changes of a tenant in the order they were committed.
+ * </p>
+ *
+ * @author matt
+ */
+@JsonPropertyOrder({ "sequence", "change_type", "created_date", "tenant_id", "tax_zone",
+        "product_name", "tax_code", "tax_rate", "valid_from_date", "valid_to_date" })
+public class EasyTaxTaxCodeChange extends EasyTaxTaxCode {
+
+    /** The type of change made to a tax code. */
+    public enum ChangeType {
+        INSERT, UPDATE, DELETE;
+    }
+
+    @JsonProperty("sequence")
+    private long sequence;
+
+    @JsonProperty("change_type")
+    private ChangeType changeType;
+
+    /**
+     * Default constructor.
+     */
+    public EasyTaxTaxCodeChange() {
+        super();
+    }
+
+    /**
+     * Construct from a changed tax code.
+     *
+     * @param changeType
+     *            the type of change
+     * @param taxCode
+     *            the tax code data to copy
+     */
+    public EasyTaxTaxCodeChange(ChangeType changeType, EasyTaxTaxCode taxCode) {
+        super(taxCode);
+        setChangeType(changeType);
+    }
+
+    @Override
+    public String toString() {
+        return "EasyTaxTaxCodeChange{sequence=" + sequence + ", changeType=" + changeType
+                + ", taxZone=" + getTaxZone() + ", productName=" + getProductName()
+                + ", taxCode=" + getTaxCode() + ", taxRate=" + getTaxRate() + "}";
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public ChangeType getChangeType() {
+        return changeType;
+    }
+
+    public void setChangeType(ChangeType changeType) {
+        this.changeType = changeType;
+    }
+
+}
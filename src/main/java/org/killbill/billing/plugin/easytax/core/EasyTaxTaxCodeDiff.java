@@ -0,0 +1,184 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.killbill.billing.plugin.easytax.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.joda.time.DateTime;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+/**
+ * The difference between a current set of tax codes and a desired set of tax codes.
+ *
+ * <p>
+ * Tax codes are matched by their <i>tax zone</i>, <i>product name</i>, <i>tax code</i>, and
+ * <i>valid from</i> date values, as outlined in {@link EasyTaxTaxCode#equals(Object)}; the tenant
+ * ID is <b>not</b> considered. A matched tax code is considered changed if its <i>tax rate</i> or
+ * <i>valid to</i> date differ.
+ * </p>
+ *
+ * @author matt
+ */
+@JsonPropertyOrder({ "inserted", "updated", "deleted", "unchanged" })
+public class EasyTaxTaxCodeDiff {
+
+    private final List<EasyTaxTaxCode> inserts;
+    private final List<EasyTaxTaxCode> updates;
+    private final List<EasyTaxTaxCode> deletes;
+    private final int unchangedCount;
+
+    /**
+     * Constructor.
+     *
+     * @param inserts
+     *            the desired tax codes that do not exist
+     * @param updates
+     *            the desired tax codes that exist but have changed
+     * @param deletes
+     *            the existing tax codes that are not desired
+     * @param unchangedCount
+     *            the number of desired tax codes that exist without any change
+     */
+    public EasyTaxTaxCodeDiff(List<EasyTaxTaxCode> inserts, List<EasyTaxTaxCode> updates,
+            List<EasyTaxTaxCode> deletes, int unchangedCount) {
+        super();
+        this.inserts = Collections.unmodifiableList(inserts);
+        this.updates = Collections.unmodifiableList(updates);
+        this.deletes = Collections.unmodifiableList(deletes);
+        this.unchangedCount = unchangedCount;
+    }
+
+    /**
+     * Compute the difference between a current and desired set of tax codes.
+     *
+     * <p>
+     * If {@code desired} contains more than one tax code with the same identity, the last one
+     * wins.
+     * </p>
+     *
+     * @param current
+     *            the current tax codes
+     * @param desired
+     *            the desired tax codes
+     * @return the difference, never {@literal null}
+     */
+    public static EasyTaxTaxCodeDiff diff(Iterable<EasyTaxTaxCode> current,
+            Iterable<EasyTaxTaxCode> desired) {
+        final Map<String, EasyTaxTaxCode> existing = new LinkedHashMap<>();
+        for (EasyTaxTaxCode code : current) {
+            existing.put(identityKey(code), code);
+        }
+        final Map<String, EasyTaxTaxCode> wanted = new LinkedHashMap<>();
+        for (EasyTaxTaxCode code : desired) {
+            wanted.put(identityKey(code), code);
+        }
+        final List<EasyTaxTaxCode> inserts = new ArrayList<>();
+        final List<EasyTaxTaxCode> updates = new ArrayList<>();
+        int unchanged = 0;
+        for (Map.Entry<String, EasyTaxTaxCode> me : wanted.entrySet()) {
+            EasyTaxTaxCode old = existing.remove(me.getKey());
+            if (old == null) {
+                inserts.add(me.getValue());
+            } else if (isChanged(old, me.getValue())) {
+                updates.add(me.getValue());
+            } else {
+                unchanged++;
+            }
+        }
+        return new EasyTaxTaxCodeDiff(inserts, updates, new ArrayList<>(existing.values()),
+                unchanged);
+    }
+
+    static String identityKey(EasyTaxTaxCode code) {
+        return code.getTaxZone() + '\0' + code.getProductName() + '\0' + code.getTaxCode() + '\0'
+                + (code.getValidFromDate() != null ? code.getValidFromDate().getMillis() : null);
+    }
+
+    private static boolean isChanged(EasyTaxTaxCode old, EasyTaxTaxCode code) {
+        if (old.getTaxRate() == null || code.getTaxRate() == null) {
+            if (old.getTaxRate() != code.getTaxRate()) {
+                return true;
+            }
+        } else if (old.getTaxRate().compareTo(code.getTaxRate()) != 0) {
+            return true;
+        }
+        final DateTime oldValidTo = old.getValidToDate();
+        final DateTime validTo = code.getValidToDate();
+        if (oldValidTo == null || validTo == null) {
+            return (oldValidTo != validTo);
+        }
+        return !oldValidTo.isEqual(validTo);
+    }
+
+    /**
+     * Test if there are no differences.
+     *
+     * @return {@literal true} if there are no inserts, updates, or deletes
+     */
+    @JsonIgnore
+    public boolean isEmpty() {
+        return (inserts.isEmpty() && updates.isEmpty() && deletes.isEmpty());
+    }
+
+    @JsonIgnore
+    public List<EasyTaxTaxCode> getInserts() {
+        return inserts;
+    }
+
+    @JsonIgnore
+    public List<EasyTaxTaxCode> getUpdates() {
+        return updates;
+    }
+
+    @JsonIgnore
+    public List<EasyTaxTaxCode> getDeletes() {
+        return deletes;
+    }
+
+    @JsonProperty("inserted")
+    public int getInsertCount() {
+        return inserts.size();
+    }
+
+    @JsonProperty("updated")
+    public int getUpdateCount() {
+        return updates.size();
+    }
+
+    @JsonProperty("deleted")
+    public int getDeleteCount() {
+        return deletes.size();
+    }
+
+    @JsonProperty("unchanged")
+    public int getUnchangedCount() {
+        return unchangedCount;
+    }
+
+    @Override
+    public String toString() {
+        return "EasyTaxTaxCodeDiff{inserted=" + inserts.size() + ", updated=" + updates.size()
+                + ", deleted=" + deletes.size() + ", unchanged=" + unchangedCount + "}";
+    }
+
+}
@@ -0,0 +1,139 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.killbill.billing.plugin.easytax.core;
+
+import java.math.BigDecimal;
+
+import org.joda.time.DateTime;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+/**
+ * Data bean for a tax rate change applied to a set of open-ended tax codes.
+ *
+ * <p>
+ * All tax codes matching the optional <i>tax zone</i>, <i>product name</i>, and <i>tax code</i>
+ * criteria that have no <i>valid to</i> date and are valid from before the <i>effective date</i>
+ * are rolled over: they are closed off at the <i>effective date</i>, and a successor tax code
+ * valid from the <i>effective date</i> is created for each. The successor tax rate is either the
+ * <i>tax rate</i>, or if that is not provided the closed tax code's rate plus the <i>tax rate
+ * delta</i>.
+ * </p>
+ *
+ * <p>
+ * The <i>product name</i> may contain {@literal *} wildcard characters to match any number of
+ * characters, for example {@literal memory-*}. A product name of just {@literal *} is not a
+ * pattern: it matches only the tax codes for any product ({@link EasyTaxTaxCode#ANY_PRODUCT_NAME}),
+ * while leaving out the product name matches the tax codes of all products.
+ * </p>
+ *
+ * @author matt
+ */
+@JsonPropertyOrder({ "tax_zone", "product_name", "tax_code", "effective_date", "tax_rate",
+        "tax_rate_delta" })
+public class EasyTaxTaxCodeRollOver {
+
+    /** The wildcard character supported in product names. */
+    public static final char WILDCARD = '*';
+
+    @JsonProperty("tax_zone")
+    private String taxZone;
+
+    @JsonProperty("product_name")
+    private String productName;
+
+    @JsonProperty("tax_code")
+    private String taxCode;
+
+    @JsonProperty("effective_date")
+    private DateTime effectiveDate;
+
+    @JsonProperty("tax_rate")
+    private BigDecimal taxRate;
+
+    @JsonProperty("tax_rate_delta")
+    private BigDecimal taxRateDelta;
+
+    /**
+     * Test if the product name criteria is a wildcard pattern.
+     *
+     * @return {@literal true} if the product name contains a {@link #WILDCARD} character and is
+     *         not the {@link EasyTaxTaxCode#ANY_PRODUCT_NAME}
+     */
+    @JsonIgnore
+    public boolean isProductNamePattern() {
+        return (productName != null && productName.indexOf(WILDCARD) >= 0
+                && !EasyTaxTaxCode.ANY_PRODUCT_NAME.equals(productName));
+    }
+
+    @Override
+    public String toString() {
+        return "EasyTaxTaxCodeRollOver{taxZone=" + taxZone + ", productName=" + productName
+                + ", taxCode=" + taxCode + ", effectiveDate=" + effectiveDate + ", taxRate="
+                + taxRate + ", taxRateDelta=" + taxRateDelta + "}";
+    }
+
+    public String getTaxZone() {
+        return taxZone;
+    }
+
+    public void setTaxZone(String taxZone) {
+        this.taxZone = taxZone;
+    }
+
+    public String getProductName() {
+        return productName;
+    }
+
+    public void setProductName(String productName) {
+        this.productName = productName;
+    }
+
+    public String getTaxCode() {
+        return taxCode;
+    }
+
+    public void setTaxCode(String taxCode) {
+        this.taxCode = taxCode;
+    }
+
+    public DateTime getEffectiveDate() {
+        return effectiveDate;
+    }
+
+    public void setEffectiveDate(DateTime effectiveDate) {
+        this.effectiveDate = effectiveDate;
+    }
+
+    public BigDecimal getTaxRate() {
+        return taxRate;
+    }
+
+    public void setTaxRate(BigDecimal taxRate) {
+        this.taxRate = taxRate;
+    }
+
+    public BigDecimal getTaxRateDelta() {
+        return taxRateDelta;
+    }
+
+    public void setTaxRateDelta(BigDecimal taxRateDelta) {
+        this.taxRateDelta = taxRateDelta;
+    }
+
+}
@@ -0,0 +1,179 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.killbill.billing.plugin.easytax.core;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.joda.time.DateTime;
+
+/**
+ * Validate a complete set of tax codes before it is put into effect.
+ *
+ * <p>
+ * The following rules are checked:
+ * </p>
+ *
+ * <ol>
+ * <li>the <i>tax zone</i>, <i>product name</i>, and <i>tax code</i> must not be empty</li>
+ * <li>the <i>tax rate</i> must be provided and must not be negative</li>
+ * <li>the <i>valid from</i> date must be provided, and any <i>valid to</i> date must be after
+ * it</li>
+ * <li>no two tax codes may share the same identity, as outlined in
+ * {@link EasyTaxTaxCode#equals(Object)}</li>
+ * <li>no two tax codes with the same <i>tax zone</i>, <i>product name</i>, and <i>tax code</i> may
+ * have overlapping validity date ranges</li>
+ * </ol>
+ *
+ * <p>
+ * Overlaps are found by grouping the tax codes by tax zone, product name, and tax code, sorting
+ * each group by valid from date, and then comparing each tax code to the latest valid to date seen
+ * so far in its group. This takes {@literal O(n log n)} time rather than comparing every pair of
+ * tax codes.
+ * </p>
+ *
+ * @author matt
+ */
+public class EasyTaxTaxCodeValidator {
+
+    /**
+     * Validate a set of tax codes.
+     *
+     * @param taxCodes
+     *            the tax codes to validate
+     * @return the validation error messages, or an empty list if the tax codes are valid
+     */
+    public List<String> validate(Iterable<EasyTaxTaxCode> taxCodes) {
+        final List<String> errors = new ArrayList<>();
+        final Set<String> identities = new HashSet<>();
+        final List<EasyTaxTaxCode> valid = new ArrayList<>();
+        for (EasyTaxTaxCode code : taxCodes) {
+            if (isEmpty(code.getTaxZone()) || isEmpty(code.getProductName())
+                    || isEmpty(code.getTaxCode())) {
+                errors.add("Missing tax zone, product name, or tax code: " + code);
+                continue;
+            }
+            if (code.getTaxRate() == null || code.getTaxRate().compareTo(BigDecimal.ZERO) < 0) {
+                errors.add("Missing or negative tax rate: " + code);
+            }
+            if (code.getValidFromDate() == null) {
+                errors.add("Missing valid from date: " + code);
+                continue;
+            }
+            if (code.getValidToDate() != null
+                    && !code.getValidToDate().isAfter(code.getValidFromDate())) {
+                errors.add("Valid to date " + code.getValidToDate()
+                        + " is not after valid from date " + code.getValidFromDate() + ": "
+                        + code);
+            }
+            if (!identities.add(EasyTaxTaxCodeDiff.identityKey(code))) {
+                errors.add("Duplicate tax code valid from " + code.getValidFromDate() + ": "
+                        + code);
+                continue;
+            }
+            valid.add(code);
+        }
+        errors.addAll(validateOverlaps(valid));
+        return errors;
+    }
+
+    /**
+     * Validate that a set of tax codes has no overlapping validity date ranges.
+     *
+     * <p>
+     * Tax codes without a valid from date are ignored.
+     * </p>
+     *
+     * @param taxCodes
+     *            the tax codes to validate
+     * @return the overlap error messages, or an empty list if there are no overlaps
+     */
+    public List<String> validateOverlaps(Iterable<EasyTaxTaxCode> taxCodes) {
+        final Map<String, List<EasyTaxTaxCode>> index = new LinkedHashMap<>();
+        for (EasyTaxTaxCode code : taxCodes) {
+            if (code.getValidFromDate() == null) {
+                continue;
+            }
+            index.computeIfAbsent(code.getTaxZone() + '\0' + code.getProductName() + '\0'
+                    + code.getTaxCode(), k -> new ArrayList<>()).add(code);
+        }
+        final List<String> errors = new ArrayList<>();
+        for (List<EasyTaxTaxCode> codes : index.values()) {
+            if (codes.size() < 2) {
+                continue;
+            }
+            codes.sort(Comparator.comparing(EasyTaxTaxCode::getValidFromDate));
+            EasyTaxTaxCode latest = null;
+            for (EasyTaxTaxCode code : codes) {
+                if (latest != null && (latest.getValidToDate() == null
+                        || latest.getValidToDate().isAfter(code.getValidFromDate()))) {
+                    errors.add("Validity of " + describe(code) + " overlaps " + describe(latest));
+                }
+                if (latest == null || (latest.getValidToDate() != null
+                        && (code.getValidToDate() == null
+                                || code.getValidToDate().isAfter(latest.getValidToDate())))) {
+                    latest = code;
+                }
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * Validate that applying changes to a set of tax codes would not result in overlapping
+     * validity date ranges.
+     *
+     * <p>
+     * The changes are merged into the current tax codes first, with any change replacing the
+     * current tax code of the same identity, as outlined in {@link EasyTaxTaxCode#equals(Object)}
+     * but ignoring the tenant ID.
+     * </p>
+     *
+     * @param current
+     *            the current tax codes
+     * @param changes
+     *            the tax codes to add or update
+     * @return the overlap error messages, or an empty list if there are no overlaps
+     */
+    public List<String> validateOverlaps(Iterable<EasyTaxTaxCode> current,
+            Iterable<EasyTaxTaxCode> changes) {
+        final Map<String, EasyTaxTaxCode> merged = new LinkedHashMap<>();
+        for (EasyTaxTaxCode code : current) {
+            merged.put(EasyTaxTaxCodeDiff.identityKey(code), code);
+        }
+        for (EasyTaxTaxCode code : changes) {
+            merged.put(EasyTaxTaxCodeDiff.identityKey(code), code);
+        }
+        return validateOverlaps(merged.values());
+    }
+
+    private static String describe(EasyTaxTaxCode code) {
+        final DateTime validTo = code.getValidToDate();
+        return code.getTaxZone() + "/" + code.getProductName() + "/" + code.getTaxCode() + " ["
+                + code.getValidFromDate() + " - " + (validTo != null ? validTo : "") + ")";
+    }
+
+    private static boolean isEmpty(String s) {
+        return (s == null || s.isEmpty());
+    }
+
+}
@@ -32,7 +32,7 @@ import com.fasterxml.jackson.annotation.JsonPropertyOrder;
  * @author matt
  */
 @JsonPropertyOrder({ "created_date", "tenant_id", "account_id", "invoice_id", "total_tax",
-        "invoice_item_ids" })
+        "invoice_item_ids", "content_hash" })
 public class EasyTaxTaxation {
 
     @JsonProperty("record_id")
@@ -56,6 +56,9 @@ public class EasyTaxTaxation {
     @JsonProperty("invoice_item_ids")
     private Map<UUID, Set<UUID>> invoiceItemIds;
 
+    @JsonProperty("content_hash")
+    private String contentHash;
+
     /**
      * Default constructor.
      */
@@ -92,6 +95,7 @@ public class EasyTaxTaxation {
         setKbInvoiceId(other.getKbInvoiceId());
         setKbTenantId(other.getKbTenantId());
         setTotalTax(other.getTotalTax());
+        setContentHash(other.getContentHash());
 
         if (other.getInvoiceItemIds() != null) {
             setInvoiceItemIds(new HashMap<>(other.getInvoiceItemIds()));
@@ -189,6 +193,26 @@ public class EasyTaxTaxation {
         this.invoiceItemIds = invoiceItemIds;
     }
 
+    /**
+     * Get a hash of the taxable content of this taxation.
+     * 
+     * <p>
+     * This hash is used to prevent the same taxation from being added more than once to an
+     * invoice, and thus must not depend on the (randomly assigned) IDs of generated tax invoice
+     * items. The hash is saved apart from the taxation record, and is not returned by
+     * {@code EasyTaxDao.getTaxation()}.
+     * </p>
+     * 
+     * @return the content hash, or {@literal null} if not available
+     */
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
     public BigDecimal getTotalTax() {
         return totalTax;
     }
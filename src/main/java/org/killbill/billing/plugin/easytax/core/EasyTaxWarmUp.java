@@ -0,0 +1,107 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.killbill.billing.plugin.easytax.core;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.plugin.easytax.api.EasyTaxDao;
+import org.killbill.billing.plugin.easytax.api.EasyTaxTaxCalculator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Task to prepare tenants for calculating tax ahead of their first invoice.
+ *
+ * <p>
+ * For each tenant the configuration is loaded and the tax zone and tax date resolvers are created
+ * via {@link EasyTaxTaxCalculator#warmUp(UUID)}. When the DAO caches tax codes in memory, all tax
+ * codes of the tenant are also loaded into the cache. Progress is logged every
+ * {@link #PROGRESS_INTERVAL} tenants.
+ * </p>
+ *
+ * @author matt
+ */
+public class EasyTaxWarmUp implements Runnable {
+
+    /** The number of tenants to warm up between progress log messages. */
+    public static final int PROGRESS_INTERVAL = 100;
+
+    private final EasyTaxDao dao;
+    private final EasyTaxTaxCalculator calculator;
+    private final Collection<UUID> kbTenantIds;
+    private final boolean preloadTaxCodes;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    /**
+     * Constructor.
+     *
+     * @param dao
+     *            the DAO to use
+     * @param calculator
+     *            the calculator to warm up
+     * @param kbTenantIds
+     *            the IDs of the tenants to warm up, or {@literal null} for all tenants with tax
+     *            codes
+     * @param preloadTaxCodes
+     *            {@literal true} to load all tax codes of each tenant, when the DAO caches them
+     */
+    public EasyTaxWarmUp(EasyTaxDao dao, EasyTaxTaxCalculator calculator,
+            @Nullable Collection<UUID> kbTenantIds, boolean preloadTaxCodes) {
+        super();
+        this.dao = dao;
+        this.calculator = calculator;
+        this.kbTenantIds = kbTenantIds;
+        this.preloadTaxCodes = preloadTaxCodes;
+    }
+
+    @Override
+    public void run() {
+        final long start = System.currentTimeMillis();
+        final Collection<UUID> tenantIds;
+        try {
+            tenantIds = (kbTenantIds != null ? kbTenantIds : dao.getTaxCodeTenantIds());
+        } catch (SQLException | RuntimeException e) {
+            log.error("Error listing tenants to warm up", e);
+            return;
+        }
+        int count = 0;
+        int failed = 0;
+        int taxCodes = 0;
+        for (UUID kbTenantId : tenantIds) {
+            try {
+                calculator.warmUp(kbTenantId);
+                if (preloadTaxCodes) {
+                    taxCodes += dao.getTaxCodes(kbTenantId, null, null, null, null).size();
+                }
+            } catch (SQLException | RuntimeException e) {
+                log.warn("Error warming up tenant {}", kbTenantId, e);
+                failed++;
+            }
+            count++;
+            if (count % PROGRESS_INTERVAL == 0 && count < tenantIds.size()) {
+                log.info("Warmed up {} of {} tenants", count, tenantIds.size());
+            }
+        }
+        log.info("Warmed up {} tenants ({} failed) with {} tax codes in {}ms", count, failed,
+                taxCodes, System.currentTimeMillis() - start);
+    }
+
+}
@@ -0,0 +1,172 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.killbill.billing.plugin.easytax.core;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+/**
+ * Tax amount calculation using scaled {@code long} arithmetic.
+ *
+ * <p>
+ * The result of {@link #multiply(BigDecimal, BigDecimal, int, RoundingMode)} is always equal to,
+ * including the scale of, {@code taxRate.multiply(amount).setScale(scale, roundingMode)}. When the
+ * unscaled values and their product fit in a {@code long} the rounding is done directly on the
+ * product; otherwise, or when the rounding mode is {@link RoundingMode#UNNECESSARY} and rounding
+ * would be needed, the calculation falls back to {@code BigDecimal}.
+ * </p>
+ *
+ * @author matt
+ */
+public final class FixedPointTaxAmount {
+
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        long p = 1;
+        for (int i = 0; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = p;
+            p *= 10;
+        }
+    }
+
+    private FixedPointTaxAmount() {
+        // not available
+    }
+
+    /**
+     * Multiply a tax rate by an amount and round the result to a given scale.
+     *
+     * @param taxRate
+     *            the tax rate
+     * @param amount
+     *            the amount to tax
+     * @param scale
+     *            the scale of the result
+     * @param roundingMode
+     *            the rounding mode to use
+     * @return the tax amount, with a scale of {@code scale}
+     * @throws ArithmeticException
+     *             if {@code roundingMode} is {@link RoundingMode#UNNECESSARY} and rounding is
+     *             necessary
+     */
+    public static BigDecimal multiply(BigDecimal taxRate, BigDecimal amount, int scale,
+            RoundingMode roundingMode) {
+        BigDecimal result = multiplyFixedPoint(taxRate, amount, scale, roundingMode);
+        if (result == null) {
+            result = taxRate.multiply(amount).setScale(scale, roundingMode);
+        }
+        return result;
+    }
+
+    /**
+     * Multiply using {@code long} arithmetic.
+     *
+     * @return the result, or {@literal null} if the calculation must be done with
+     *         {@code BigDecimal}
+     */
+    private static BigDecimal multiplyFixedPoint(BigDecimal taxRate, BigDecimal amount, int scale,
+            RoundingMode roundingMode) {
+        final BigInteger unscaledRate = taxRate.unscaledValue();
+        final BigInteger unscaledAmount = amount.unscaledValue();
+        if (unscaledRate.bitLength() > 63 || unscaledAmount.bitLength() > 63) {
+            return null;
+        }
+        final long product;
+        try {
+            product = Math.multiplyExact(unscaledRate.longValue(), unscaledAmount.longValue());
+        } catch (ArithmeticException e) {
+            return null;
+        }
+        final long scaleChange = (long) scale - taxRate.scale() - amount.scale();
+        if (scaleChange >= 0) {
+            if (scaleChange >= POWERS_OF_TEN.length) {
+                return null;
+            }
+            try {
+                return BigDecimal.valueOf(
+                        Math.multiplyExact(product, POWERS_OF_TEN[(int) scaleChange]), scale);
+            } catch (ArithmeticException e) {
+                return null;
+            }
+        }
+        if (-scaleChange >= POWERS_OF_TEN.length) {
+            return null;
+        }
+        final long divisor = POWERS_OF_TEN[(int) -scaleChange];
+        final long quotient = product / divisor;
+        final long remainder = product % divisor;
+        if (remainder == 0) {
+            return BigDecimal.valueOf(quotient, scale);
+        }
+        final Boolean awayFromZero = roundAwayFromZero(product < 0, quotient,
+                Math.abs(remainder), divisor, roundingMode);
+        if (awayFromZero == null) {
+            return null;
+        }
+        return BigDecimal.valueOf(
+                awayFromZero.booleanValue() ? quotient + (product < 0 ? -1 : 1) : quotient, scale);
+    }
+
+    /**
+     * Decide if a truncated quotient must be rounded away from zero.
+     *
+     * @param negative
+     *            {@literal true} if the exact result is negative
+     * @param quotient
+     *            the quotient, truncated towards zero
+     * @param remainder
+     *            the absolute value of the non-zero remainder
+     * @param divisor
+     *            the divisor
+     * @param roundingMode
+     *            the rounding mode
+     * @return {@literal true} to round away from zero, {@literal false} to keep the truncated
+     *         quotient, or {@literal null} if the rounding mode does not allow rounding
+     */
+    private static Boolean roundAwayFromZero(boolean negative, long quotient, long remainder,
+            long divisor, RoundingMode roundingMode) {
+        // compare the remainder to half the divisor without overflowing
+        final int half = Long.compare(remainder, divisor - remainder);
+        switch (roundingMode) {
+            case UP:
+                return Boolean.TRUE;
+
+            case DOWN:
+                return Boolean.FALSE;
+
+            case CEILING:
+                return !negative;
+
+            case FLOOR:
+                return negative;
+
+            case HALF_UP:
+                return half >= 0;
+
+            case HALF_DOWN:
+                return half > 0;
+
+            case HALF_EVEN:
+                return half > 0 || (half == 0 && (quotient & 1) != 0);
+
+            default:
+                return null;
+        }
+    }
+
+}
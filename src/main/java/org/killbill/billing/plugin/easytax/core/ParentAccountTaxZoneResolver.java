@@ -0,0 +1,261 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.killbill.billing.plugin.easytax.core;
+
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.killbill.billing.ObjectType;
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.account.api.AccountApiException;
+import org.killbill.billing.invoice.api.Invoice;
+import org.killbill.billing.osgi.api.OSGIKillbill;
+import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.plugin.easytax.api.EasyTaxTaxZoneResolver;
+import org.killbill.billing.plugin.easytax.api.EasyTaxTenantContext;
+import org.killbill.billing.util.callcontext.TenantContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolve tax zones based on a custom field on an account or on its nearest parent account.
+ *
+ * <p>
+ * Child accounts, such as the accounts of a reseller's customers, inherit the tax zone of their
+ * parent account unless they have a tax zone custom field themselves. The parent account ID and
+ * tax zone custom field of every account visited are cached in an account hierarchy map for
+ * {@link #CACHE_SECONDS_PROPERTY} seconds, so walking up a deep hierarchy does not call the
+ * account and custom field APIs again for every invoice. Cached accounts are discarded as soon
+ * as {@link #accountChanged(UUID, UUID)} is called for them.
+ * </p>
+ *
+ * <p>
+ * Kill Bill delivers each account change event to a single node, so only the cache of the node
+ * that receives the event is invalidated. The caches of other nodes keep the old hierarchy data
+ * until it expires, which is why the {@link #DEFAULT_CACHE_SECONDS} is short.
+ * </p>
+ *
+ * <p>
+ * When the {@link #INCLUDE_ACCOUNT_PROPERTY} is disabled only the parent accounts are walked,
+ * starting from the parent of the account, for chains where an earlier resolver has already
+ * tried the tax zone custom field of the account itself.
+ * </p>
+ *
+ * @author matt
+ */
+public class ParentAccountTaxZoneResolver implements EasyTaxTaxZoneResolver {
+
+    /** The configuration property for the number of seconds to cache account hierarchy data. */
+    // CHECKSTYLE OFF: LineLength
+    public static final String CACHE_SECONDS_PROPERTY = "parentAccountTaxZoneResolver.cacheSeconds";
+    // CHECKSTYLE ON: LineLength
+
+    /** The configuration property for the maximum number of parent accounts to walk up. */
+    public static final String MAX_DEPTH_PROPERTY = "parentAccountTaxZoneResolver.maxDepth";
+
+    /** The configuration property for a boolean flag to use the account's own custom field. */
+    // CHECKSTYLE OFF: LineLength
+    public static final String INCLUDE_ACCOUNT_PROPERTY = "parentAccountTaxZoneResolver.includeAccount";
+    // CHECKSTYLE ON: LineLength
+
+    /** The default value for the {@link #CACHE_SECONDS_PROPERTY}. */
+    public static final int DEFAULT_CACHE_SECONDS = 300;
+
+    /** The default value for the {@link #MAX_DEPTH_PROPERTY}. */
+    public static final int DEFAULT_MAX_DEPTH = 10;
+
+    private final ConcurrentMap<UUID, CachedAccount> accounts = new ConcurrentHashMap<>();
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private OSGIKillbill killbillApi;
+    private long cacheMillis;
+    private int maxDepth;
+    private boolean includeAccount;
+    private volatile long nextSweep;
+
+    @Override
+    public void init(OSGIKillbill killbillApi, EasyTaxConfig config) {
+        this.killbillApi = killbillApi;
+        this.cacheMillis = config.getIntConfigurationValue(CACHE_SECONDS_PROPERTY,
+                DEFAULT_CACHE_SECONDS) * 1000L;
+        this.maxDepth = config.getIntConfigurationValue(MAX_DEPTH_PROPERTY, DEFAULT_MAX_DEPTH);
+        this.includeAccount = "true".equalsIgnoreCase(
+                config.getConfigurationValue(INCLUDE_ACCOUNT_PROPERTY, "true"));
+    }
+
+    @Override
+    public String taxZoneForInvoice(UUID kbTenantId, Account account, Invoice invoice,
+            Iterable<PluginProperty> pluginProperties) {
+        if (account == null || account.getId() == null) {
+            return null;
+        }
+        final long now = System.currentTimeMillis();
+        if (now >= nextSweep) {
+            nextSweep = now + cacheMillis;
+            accounts.values().removeIf(a -> a.expires <= now);
+        }
+        final TenantContext context = new EasyTaxTenantContext(kbTenantId, account.getId());
+        final Set<UUID> visited = new HashSet<>();
+        visited.add(account.getId());
+        CachedAccount node;
+        int depth = 0;
+        if (includeAccount) {
+            node = cachedAccount(kbTenantId, account, context, now);
+        } else if (account.getParentAccountId() != null && maxDepth > 0
+                && visited.add(account.getParentAccountId())) {
+            node = cachedAccount(kbTenantId, account.getParentAccountId(), context, now);
+            depth = 1;
+        } else {
+            node = null;
+        }
+        for (; node != null; depth++) {
+            if (node.taxZone != null) {
+                return node.taxZone;
+            }
+            if (node.parentAccountId == null || depth >= maxDepth
+                    || !visited.add(node.parentAccountId)) {
+                break;
+            }
+            node = cachedAccount(kbTenantId, node.parentAccountId, context, now);
+        }
+        return null;
+    }
+
+    /**
+     * Discard the cached hierarchy data of an account.
+     *
+     * <p>
+     * The tax zones of child accounts are resolved by walking the cached hierarchy every time, so
+     * discarding only the changed account is enough for its children to see the change.
+     * </p>
+     *
+     * @param kbTenantId
+     *            the tenant ID
+     * @param kbAccountId
+     *            the ID of the account that changed
+     */
+    @Override
+    public void accountChanged(UUID kbTenantId, UUID kbAccountId) {
+        accounts.remove(kbAccountId);
+    }
+
+    /**
+     * Test if the tax zones resolved by this resolver can be cached.
+     *
+     * @return {@literal false}, as the tax zone depends on the parent accounts, which this
+     *         resolver caches itself
+     */
+    @Override
+    public boolean isCacheable() {
+        return false;
+    }
+
+    /**
+     * Get the include account flag.
+     *
+     * <p>
+     * This returns the {@link #INCLUDE_ACCOUNT_PROPERTY}. Defaults to {@literal true}.
+     * </p>
+     *
+     * @return {@literal true} to use the tax zone custom field of the account itself, before
+     *         those of its parents
+     */
+    public boolean isIncludeAccount() {
+        return includeAccount;
+    }
+
+    /**
+     * Get the number of accounts in the cached account hierarchy.
+     *
+     * @return the cached account count
+     */
+    public int getCachedAccountCount() {
+        return accounts.size();
+    }
+
+    private CachedAccount cachedAccount(UUID kbTenantId, Account account,
+            TenantContext context, long now) {
+        CachedAccount cached = cached(kbTenantId, account.getId(), now);
+        if (cached == null) {
+            cached = cache(kbTenantId, account, context, now);
+        }
+        return cached;
+    }
+
+    private CachedAccount cachedAccount(UUID kbTenantId, UUID accountId, TenantContext context,
+            long now) {
+        CachedAccount cached = cached(kbTenantId, accountId, now);
+        if (cached == null) {
+            final Account account;
+            try {
+                account = killbillApi.getAccountUserApi().getAccountById(accountId, context);
+            } catch (AccountApiException e) {
+                log.warn("Parent account {} not available: {}", accountId, e.getMessage());
+                return null;
+            }
+            cached = cache(kbTenantId, account, context, now);
+        }
+        return cached;
+    }
+
+    private CachedAccount cached(UUID kbTenantId, UUID accountId, long now) {
+        final CachedAccount cached = accounts.get(accountId);
+        return (cached != null && cached.kbTenantId.equals(kbTenantId) && cached.expires > now
+                ? cached
+                : null);
+    }
+
+    private CachedAccount cache(UUID kbTenantId, Account account, TenantContext context,
+            long now) {
+        final Optional<String> taxZone = killbillApi.getCustomFieldUserApi()
+                .getCustomFieldsForObject(account.getId(), ObjectType.ACCOUNT, context).stream()
+                .filter(f -> AccountCustomFieldTaxZoneResolver.TAX_ZONE_CUSTOM_FIIELD
+                        .equals(f.getFieldName()))
+                .findFirst().map(f -> f.getFieldValue());
+        final CachedAccount cached = new CachedAccount(kbTenantId, account.getId(),
+                account.getParentAccountId(), taxZone.orElse(null), now + cacheMillis);
+        if (cacheMillis > 0) {
+            accounts.put(account.getId(), cached);
+        }
+        return cached;
+    }
+
+    private static final class CachedAccount {
+
+        private final UUID kbTenantId;
+        private final UUID accountId;
+        private final UUID parentAccountId;
+        private final String taxZone;
+        private final long expires;
+
+        private CachedAccount(UUID kbTenantId, UUID accountId, UUID parentAccountId,
+                String taxZone, long expires) {
+            super();
+            this.kbTenantId = kbTenantId;
+            this.accountId = accountId;
+            this.parentAccountId = parentAccountId;
+            this.taxZone = taxZone;
+            this.expires = expires;
+        }
+    }
+
+}
@@ -0,0 +1,140 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.killbill.billing.plugin.easytax.core;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.invoice.api.Invoice;
+import org.killbill.billing.invoice.api.InvoiceItem;
+import org.killbill.billing.osgi.api.OSGIKillbill;
+import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.plugin.easytax.api.EasyTaxTaxZoneResolver;
+
+/**
+ * Resolve tax zones from a plugin property passed to the invoice API call.
+ *
+ * <p>
+ * The tax zone of individual invoice items can be passed as plugin properties named after the
+ * {@link #getPropertyName() property name}, a period, and the ID of the invoice item or of its
+ * subscription, for example {@literal taxZone.4a5bc2e0-...}.
+ * </p>
+ *
+ * @author matt
+ */
+public class PluginPropertyTaxZoneResolver implements EasyTaxTaxZoneResolver {
+
+    /** The configuration property for the name of the plugin property holding the tax zone. */
+    // CHECKSTYLE OFF: LineLength
+    public static final String PROPERTY_NAME_PROPERTY = "pluginPropertyTaxZoneResolver.propertyName";
+    // CHECKSTYLE ON: LineLength
+
+    /** The default value for the {@link #PROPERTY_NAME_PROPERTY}. */
+    public static final String DEFAULT_PROPERTY_NAME = "taxZone";
+
+    private String propertyName;
+
+    @Override
+    public void init(OSGIKillbill killbillApi, EasyTaxConfig config) {
+        this.propertyName = config.getConfigurationValue(PROPERTY_NAME_PROPERTY,
+                DEFAULT_PROPERTY_NAME);
+    }
+
+    @Override
+    public String taxZoneForInvoice(UUID kbTenantId, Account account, Invoice invoice,
+            Iterable<PluginProperty> pluginProperties) {
+        if (pluginProperties == null) {
+            return null;
+        }
+        for (PluginProperty property : pluginProperties) {
+            if (propertyName.equals(property.getKey()) && property.getValue() != null) {
+                String taxZone = property.getValue().toString().trim();
+                if (!taxZone.isEmpty()) {
+                    return taxZone;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Map<UUID, String> taxZonesForInvoiceItems(UUID kbTenantId, Account account,
+            Invoice invoice, Collection<InvoiceItem> invoiceItems,
+            Iterable<PluginProperty> pluginProperties) {
+        if (pluginProperties == null) {
+            return Collections.emptyMap();
+        }
+        final String prefix = propertyName + '.';
+        Map<String, String> taxZonesById = null;
+        for (PluginProperty property : pluginProperties) {
+            if (property.getKey() != null && property.getKey().startsWith(prefix)
+                    && property.getValue() != null) {
+                String taxZone = property.getValue().toString().trim();
+                if (!taxZone.isEmpty()) {
+                    if (taxZonesById == null) {
+                        taxZonesById = new HashMap<>();
+                    }
+                    taxZonesById.putIfAbsent(property.getKey().substring(prefix.length()),
+                            taxZone);
+                }
+            }
+        }
+        if (taxZonesById == null) {
+            return Collections.emptyMap();
+        }
+        final Map<UUID, String> result = new HashMap<>();
+        for (InvoiceItem item : invoiceItems) {
+            String taxZone = taxZonesById.get(item.getId().toString());
+            if (taxZone == null && item.getSubscriptionId() != null) {
+                taxZone = taxZonesById.get(item.getSubscriptionId().toString());
+            }
+            if (taxZone != null) {
+                result.put(item.getId(), taxZone);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Test if this resolver holds no state other than what it is initialized with.
+     *
+     * @return {@literal true}, as tax zones depend only on the configuration and the plugin
+     *         properties
+     */
+    @Override
+    public boolean isStateless() {
+        return true;
+    }
+
+    /**
+     * Get the name of the plugin property holding the tax zone.
+     *
+     * <p>
+     * This returns the {@link #PROPERTY_NAME_PROPERTY}. Defaults to {@literal taxZone}.
+     * </p>
+     *
+     * @return the plugin property name
+     */
+    public String getPropertyName() {
+        return propertyName;
+    }
+
+}
@@ -0,0 +1,324 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.killbill.billing.plugin.easytax.core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Sorted index of postal code ranges per country, mapped to tax zones.
+ *
+ * <p>
+ * Postal codes are compared ignoring case, spaces, and hyphens, and may contain up to
+ * {@link #MAX_LENGTH} letters or digits. A range matches all postal codes that start with a prefix
+ * between its inclusive start and end values, which must have the same length; for example the
+ * range {@literal 94100} - {@literal 94199} matches {@literal 94107-1234}, and the range
+ * {@literal V6B} - {@literal V6B} matches {@literal V6B 1A1}. When ranges of different lengths
+ * match, the longest (most specific) range wins. Ranges of the same country and length cannot
+ * overlap.
+ * </p>
+ *
+ * <p>
+ * Each prefix is encoded as a base-36 number in a {@code long}, so that numeric order matches
+ * the alphanumeric order of prefixes of the same length, and the ranges of each country and
+ * length are stored in sorted primitive arrays searched with a binary search. Each range uses 20
+ * bytes, and looking up a postal code does not allocate any objects.
+ * </p>
+ *
+ * @author matt
+ */
+public final class PostalCodeRangeIndex {
+
+    /** The maximum number of significant characters in a postal code range. */
+    public static final int MAX_LENGTH = 12;
+
+    /** The header value of the first column in a postal code ranges file. */
+    public static final String HEADER_COUNTRY = "country";
+
+    private static final int RADIX = 36;
+
+    private final Map<String, Group[]> byCountry;
+    private final String[] taxZones;
+    private final int size;
+
+    private PostalCodeRangeIndex(Map<String, Group[]> byCountry, String[] taxZones, int size) {
+        super();
+        this.byCountry = byCountry;
+        this.taxZones = taxZones;
+        this.size = size;
+    }
+
+    /**
+     * Get an index without any ranges.
+     *
+     * @return the empty index
+     */
+    public static PostalCodeRangeIndex empty() {
+        return new PostalCodeRangeIndex(Collections.emptyMap(), new String[0], 0);
+    }
+
+    /**
+     * Load an index from a CSV file.
+     *
+     * @param file
+     *            the file to load
+     * @return the index
+     * @throws IOException
+     *             if the file cannot be read or contains an invalid range
+     * @see #parse(Reader)
+     */
+    public static PostalCodeRangeIndex load(Path file) throws IOException {
+        try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return parse(in);
+        }
+    }
+
+    /**
+     * Parse an index from CSV data.
+     *
+     * <p>
+     * The data must contain the columns {@code country}, {@code from_postal_code},
+     * {@code to_postal_code}, and {@code tax_zone}, in that order. The {@code to_postal_code}
+     * column may be left empty to match just the {@code from_postal_code} prefix. An optional
+     * header row starting with {@code country}, empty lines, and lines starting with {@literal #}
+     * are ignored. Values cannot contain commas, and are not quoted.
+     * </p>
+     *
+     * @param in
+     *            the data to parse
+     * @return the index
+     * @throws IOException
+     *             if the data cannot be read or contains an invalid range
+     */
+    public static PostalCodeRangeIndex parse(Reader in) throws IOException {
+        final BufferedReader reader = (in instanceof BufferedReader ? (BufferedReader) in
+                : new BufferedReader(in));
+        final Map<String, Integer> zoneIndexes = new LinkedHashMap<>();
+        final Map<String, Map<Integer, List<Range>>> ranges = new HashMap<>();
+        int count = 0;
+        int lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.charAt(0) == '#'
+                    || (lineNumber == 1 && line.startsWith(HEADER_COUNTRY))) {
+                continue;
+            }
+            final String[] fields = line.split(",", -1);
+            if (fields.length != 4) {
+                throw new IOException("Invalid postal code range on line " + lineNumber
+                        + ": expected 4 columns but found " + fields.length);
+            }
+            final String country = fields[0].trim().toUpperCase(Locale.ROOT);
+            final String from = fields[1].trim();
+            final String to = (fields[2].trim().isEmpty() ? from : fields[2].trim());
+            final String taxZone = fields[3].trim();
+            final int length = significantLength(from);
+            if (country.isEmpty() || taxZone.isEmpty() || length < 1 || length > MAX_LENGTH
+                    || significantLength(to) != length) {
+                throw new IOException("Invalid postal code range on line " + lineNumber);
+            }
+            final long fromKey = encode(from, length);
+            final long toKey = encode(to, length);
+            if (fromKey < 0 || toKey < fromKey) {
+                throw new IOException("Invalid postal code range on line " + lineNumber);
+            }
+            final int zone = zoneIndexes.computeIfAbsent(taxZone, k -> zoneIndexes.size());
+            ranges.computeIfAbsent(country, k -> new HashMap<>())
+                    .computeIfAbsent(length, k -> new ArrayList<>())
+                    .add(new Range(fromKey, toKey, zone, lineNumber));
+            count++;
+        }
+
+        final Map<String, Group[]> byCountry = new HashMap<>(ranges.size());
+        for (Map.Entry<String, Map<Integer, List<Range>>> me : ranges.entrySet()) {
+            final List<Group> groups = new ArrayList<>(me.getValue().size());
+            for (Map.Entry<Integer, List<Range>> ge : me.getValue().entrySet()) {
+                groups.add(group(ge.getKey(), ge.getValue()));
+            }
+            // most specific first
+            groups.sort((l, r) -> Integer.compare(r.length, l.length));
+            byCountry.put(me.getKey(), groups.toArray(new Group[groups.size()]));
+        }
+        return new PostalCodeRangeIndex(byCountry,
+                zoneIndexes.keySet().toArray(new String[zoneIndexes.size()]), count);
+    }
+
+    private static Group group(int length, List<Range> ranges) throws IOException {
+        ranges.sort((l, r) -> Long.compare(l.from, r.from));
+        final int n = ranges.size();
+        final long[] from = new long[n];
+        final long[] to = new long[n];
+        final int[] zone = new int[n];
+        for (int i = 0; i < n; i++) {
+            Range range = ranges.get(i);
+            if (i > 0 && range.from <= to[i - 1]) {
+                throw new IOException("Postal code range on line " + range.lineNumber
+                        + " overlaps the range on line " + ranges.get(i - 1).lineNumber);
+            }
+            from[i] = range.from;
+            to[i] = range.to;
+            zone[i] = range.zone;
+        }
+        return new Group(length, from, to, zone);
+    }
+
+    /**
+     * Find the tax zone of a postal code.
+     *
+     * @param country
+     *            the country code
+     * @param postalCode
+     *            the postal code
+     * @return the tax zone of the most specific matching range, or {@literal null} if no range
+     *         matches
+     */
+    public String taxZone(String country, String postalCode) {
+        if (country == null || postalCode == null) {
+            return null;
+        }
+        Group[] groups = byCountry.get(country);
+        if (groups == null) {
+            groups = byCountry.get(country.toUpperCase(Locale.ROOT));
+            if (groups == null) {
+                return null;
+            }
+        }
+        for (Group group : groups) {
+            final long key = encode(postalCode, group.length);
+            if (key < 0) {
+                continue;
+            }
+            final int i = upperBound(group.from, key) - 1;
+            if (i >= 0 && key <= group.to[i]) {
+                return taxZones[group.zone[i]];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the number of ranges in the index.
+     *
+     * @return the range count
+     */
+    public int size() {
+        return size;
+    }
+
+    private static int upperBound(long[] keys, long key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int significantLength(String postalCode) {
+        int length = 0;
+        for (int i = 0, len = postalCode.length(); i < len; i++) {
+            char c = postalCode.charAt(i);
+            if (c != ' ' && c != '-') {
+                length++;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Encode the first significant characters of a postal code as a base-36 number.
+     *
+     * @param postalCode
+     *            the postal code
+     * @param length
+     *            the number of significant characters to encode
+     * @return the encoded prefix, or {@literal -1} if the postal code is too short or contains a
+     *         character other than a letter, digit, space, or hyphen
+     */
+    private static long encode(String postalCode, int length) {
+        long result = 0;
+        int n = 0;
+        for (int i = 0, len = postalCode.length(); i < len && n < length; i++) {
+            char c = postalCode.charAt(i);
+            int digit;
+            if (c >= '0' && c <= '9') {
+                digit = c - '0';
+            } else if (c >= 'A' && c <= 'Z') {
+                digit = c - 'A' + 10;
+            } else if (c >= 'a' && c <= 'z') {
+                digit = c - 'a' + 10;
+            } else if (c == ' ' || c == '-') {
+                continue;
+            } else {
+                return -1;
+            }
+            result = result * RADIX + digit;
+            n++;
+        }
+        return (n == length ? result : -1);
+    }
+
+    private static final class Range {
+
+        private final long from;
+        private final long to;
+        private final int zone;
+        private final int lineNumber;
+
+        private Range(long from, long to, int zone, int lineNumber) {
+            super();
+            this.from = from;
+            this.to = to;
+            this.zone = zone;
+            this.lineNumber = lineNumber;
+        }
+    }
+
+    private static final class Group {
+
+        private final int length;
+        private final long[] from;
+        private final long[] to;
+        private final int[] zone;
+
+        private Group(int length, long[] from, long[] to, int[] zone) {
+            super();
+            this.length = length;
+            this.from = from;
+            this.to = to;
+            this.zone = zone;
+        }
+    }
+
+}
@@ -0,0 +1,196 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.killbill.billing.plugin.easytax.core;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.UUID;
+
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.invoice.api.Invoice;
+import org.killbill.billing.osgi.api.OSGIKillbill;
+import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.plugin.easytax.api.EasyTaxTaxZoneResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolve tax zones from the country and postal code of an account.
+ *
+ * <p>
+ * The postal code ranges are loaded from the CSV file configured by the {@link #FILE_PROPERTY},
+ * as described in {@link PostalCodeRangeIndex#parse(java.io.Reader)}. If the file cannot be
+ * loaded {@link #init(OSGIKillbill, EasyTaxConfig)} throws an {@link IllegalStateException}.
+ * </p>
+ *
+ * <p>
+ * The file is checked for changes at most once per {@link #FILE_CHECK_SECONDS_PROPERTY} seconds,
+ * and is loaded again whenever its modification date or size changes. If the changed file cannot
+ * be loaded an error is logged and the previously loaded ranges are used.
+ * </p>
+ *
+ * @author matt
+ */
+public class PostalCodeTaxZoneResolver implements EasyTaxTaxZoneResolver {
+
+    /** The configuration property for the path to the postal code ranges file. */
+    public static final String FILE_PROPERTY = "postalCodeTaxZoneResolver.file";
+
+    /** The configuration property for a boolean flag to use the account country. */
+    // CHECKSTYLE OFF: LineLength
+    public static final String USE_ACCOUNT_COUNTRY_PROPERTY = "postalCodeTaxZoneResolver.useAccountCountry";
+
+    /** The configuration property for the minimum seconds between checks for file changes. */
+    public static final String FILE_CHECK_SECONDS_PROPERTY = "postalCodeTaxZoneResolver.fileCheckSeconds";
+    // CHECKSTYLE ON: LineLength
+
+    /** The default value for the {@link #FILE_CHECK_SECONDS_PROPERTY}. */
+    public static final int DEFAULT_FILE_CHECK_SECONDS = 60;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private Path file;
+    private long checkIntervalMillis;
+    private boolean useAccountCountryAsTaxZone;
+
+    private volatile PostalCodeRangeIndex index;
+    private volatile long modified;
+    private volatile long size;
+    private volatile long nextCheckTime;
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalStateException
+     *             if a postal code ranges file is configured but cannot be loaded
+     */
+    @Override
+    public void init(OSGIKillbill killbillApi, EasyTaxConfig config) {
+        this.useAccountCountryAsTaxZone = "true".equalsIgnoreCase(
+                config.getConfigurationValue(USE_ACCOUNT_COUNTRY_PROPERTY, "true"));
+        this.checkIntervalMillis = config.getIntConfigurationValue(FILE_CHECK_SECONDS_PROPERTY,
+                DEFAULT_FILE_CHECK_SECONDS) * 1000L;
+        final String path = config.getConfigurationValue(FILE_PROPERTY, null);
+        if (path == null || path.trim().isEmpty()) {
+            log.warn("No postal code ranges file configured via the {} property", FILE_PROPERTY);
+            this.file = null;
+            this.index = PostalCodeRangeIndex.empty();
+            return;
+        }
+        this.file = Paths.get(path.trim());
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            load(attrs);
+        } catch (IOException | RuntimeException e) {
+            throw new IllegalStateException("Error loading postal code ranges file " + file, e);
+        } finally {
+            nextCheckTime = System.currentTimeMillis() + checkIntervalMillis;
+        }
+    }
+
+    private void load(BasicFileAttributes attrs) throws IOException {
+        final long start = System.currentTimeMillis();
+        PostalCodeRangeIndex loaded = PostalCodeRangeIndex.load(file);
+        this.modified = attrs.lastModifiedTime().toMillis();
+        this.size = attrs.size();
+        this.index = loaded;
+        log.info("Loaded {} postal code ranges from file {} in {}ms", loaded.size(), file,
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Get the postal code ranges, re-loading the file first if it has changed.
+     *
+     * <p>
+     * The file is checked for changes at most once per configured check interval.
+     * </p>
+     *
+     * @return the index
+     */
+    private PostalCodeRangeIndex index() {
+        final long now = System.currentTimeMillis();
+        if (file == null || now < nextCheckTime) {
+            return index;
+        }
+        synchronized (this) {
+            if (now < nextCheckTime) {
+                return index;
+            }
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                if (modified != attrs.lastModifiedTime().toMillis() || size != attrs.size()) {
+                    load(attrs);
+                }
+            } catch (IOException | RuntimeException e) {
+                log.error("Error re-loading postal code ranges file {}; using previously loaded "
+                        + "ranges", file, e);
+            } finally {
+                nextCheckTime = now + checkIntervalMillis;
+            }
+        }
+        return index;
+    }
+
+    @Override
+    public String taxZoneForInvoice(UUID kbTenantId, Account account, Invoice invoice,
+            Iterable<PluginProperty> pluginProperties) {
+        if (account == null) {
+            return null;
+        }
+        String taxZone = index().taxZone(account.getCountry(), account.getPostalCode());
+        if (taxZone == null && useAccountCountryAsTaxZone) {
+            taxZone = account.getCountry();
+        }
+        return taxZone;
+    }
+
+    /**
+     * Test if this resolver holds no state other than what it is initialized with.
+     *
+     * @return {@literal true}, as tax zones depend only on the configured postal code ranges file
+     *         and the account
+     */
+    @Override
+    public boolean isStateless() {
+        return true;
+    }
+
+    /**
+     * Get the flag to use the account's country as the tax zone if no postal code range matches.
+     *
+     * <p>
+     * This returns the {@link #USE_ACCOUNT_COUNTRY_PROPERTY}. Defaults to {@literal true}.
+     * </p>
+     *
+     * @return {@literal true} to use the account country as the tax zone
+     */
+    public boolean isUseAccountCountryAsTaxZone() {
+        return useAccountCountryAsTaxZone;
+    }
+
+    /**
+     * Get the loaded postal code ranges, re-loading the file first if it has changed.
+     *
+     * @return the index, never {@literal null} after {@link #init(OSGIKillbill, EasyTaxConfig)}
+     */
+    public PostalCodeRangeIndex getIndex() {
+        return index();
+    }
+
+}
@@ -15,6 +15,9 @@
 
 package org.killbill.billing.plugin.easytax.core;
 
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.UUID;
 
 import org.joda.time.DateTime;
@@ -161,6 +164,57 @@ public class SimpleTaxDateResolver implements EasyTaxTaxDateResolver {
     @Override
     public DateTime taxDateForInvoiceItem(UUID kbTenantId, Account account, Invoice invoice,
             InvoiceItem item, Iterable<PluginProperty> pluginProperties) {
+        LocalDate applicableDate = applicableDate(invoice, item);
+        if (applicableDate != null) {
+            return applicableDate.toDateTimeAtStartOfDay(taxationTimeZone(account));
+        }
+        return createdDate(invoice, item);
+    }
+
+    /**
+     * Resolve tax dates for all invoice items of an invoice in one call.
+     * 
+     * <p>
+     * The taxation time zone is resolved once, and the start of day of each distinct date is
+     * computed once, so items sharing the same date share the same tax date instance.
+     * </p>
+     */
+    @Override
+    public Map<UUID, DateTime> taxDatesForInvoiceItems(UUID kbTenantId, Account account,
+            Invoice invoice, Iterable<InvoiceItem> invoiceItems,
+            Iterable<PluginProperty> pluginProperties) {
+        final DateTimeZone taxationTimeZone = taxationTimeZone(account);
+        final Map<LocalDate, DateTime> startOfDays = new HashMap<>(4);
+        final Map<UUID, DateTime> result = new LinkedHashMap<>();
+        for (InvoiceItem item : invoiceItems) {
+            LocalDate applicableDate = applicableDate(invoice, item);
+            DateTime taxDate = (applicableDate != null
+                    ? startOfDays.computeIfAbsent(applicableDate,
+                            d -> d.toDateTimeAtStartOfDay(taxationTimeZone))
+                    : createdDate(invoice, item));
+            if (taxDate != null) {
+                result.put(item.getId(), taxDate);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Test if this resolver holds no state other than what it is initialized with.
+     *
+     * @return {@literal true}, as tax dates depend only on the configuration and the invoice
+     */
+    @Override
+    public boolean isStateless() {
+        return true;
+    }
+
+    private DateTimeZone taxationTimeZone(Account account) {
+        DateTimeZone taxationTimeZone = account.getTimeZone();
+        return (taxationTimeZone != null ? taxationTimeZone : defaultTimeZone);
+    }
+
+    private LocalDate applicableDate(Invoice invoice, InvoiceItem item) {
         LocalDate applicableDate = null;
         switch (mode) {
             case Invoice:
@@ -185,13 +239,10 @@ public class SimpleTaxDateResolver implements EasyTaxTaxDateResolver {
         if (applicableDate == null && fallBackToInvoiceDate) {
             applicableDate = invoice.getInvoiceDate();
         }
-        if (applicableDate != null) {
-            DateTimeZone taxationTimeZone = account.getTimeZone();
-            if (taxationTimeZone == null) {
-                taxationTimeZone = defaultTimeZone;
-            }
-            return applicableDate.toDateTimeAtStartOfDay(taxationTimeZone);
-        }
+        return applicableDate;
+    }
+
+    private DateTime createdDate(Invoice invoice, InvoiceItem item) {
         // use item or invoice creation dates
         if (fallBackToInvoiceItemCreatedDate && item.getCreatedDate() != null) {
             return item.getCreatedDate();
@@ -0,0 +1,75 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *  
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.killbill.billing.plugin.easytax.core;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of locks, shared by keys based on their hash codes.
+ * 
+ * <p>
+ * This allows work on the same key to be serialized without holding a lock per key, while work on
+ * different keys is only serialized when the keys happen to share a stripe.
+ * </p>
+ * 
+ * @author matt
+ */
+public class StripedLock {
+
+    private final Lock[] locks;
+
+    /**
+     * Constructor.
+     * 
+     * @param stripes
+     *            the minimum number of stripes to use; will be rounded up to a power of two
+     */
+    public StripedLock(int stripes) {
+        super();
+        int size = 1;
+        while (size < stripes) {
+            size <<= 1;
+        }
+        locks = new Lock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Get the lock to use for a given key.
+     * 
+     * @param key
+     *            the key
+     * @return the lock, never {@literal null}
+     */
+    public Lock lockFor(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return locks[h & (locks.length - 1)];
+    }
+
+    /**
+     * Get the number of stripes.
+     * 
+     * @return the stripe count
+     */
+    public int getStripeCount() {
+        return locks.length;
+    }
+
+}
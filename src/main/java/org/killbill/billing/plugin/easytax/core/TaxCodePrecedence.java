@@ -0,0 +1,83 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.killbill.billing.plugin.easytax.core;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Precedence rules for tax codes that apply to the same invoice item.
+ *
+ * <p>
+ * A tax code with the {@link EasyTaxTaxCode#ANY_PRODUCT_NAME} product name applies to all products
+ * in its tax zone, unless a tax code for the specific product with the same tax zone and tax code
+ * also applies, in which case the product-specific tax code takes precedence.
+ * </p>
+ *
+ * @author matt
+ */
+public final class TaxCodePrecedence {
+
+    private TaxCodePrecedence() {
+        // not available
+    }
+
+    /**
+     * Test if a tax code applies to all products.
+     *
+     * @param taxCode
+     *            the tax code
+     * @return {@literal true} if the tax code has the {@link EasyTaxTaxCode#ANY_PRODUCT_NAME}
+     *         product name
+     */
+    public static boolean isAnyProduct(EasyTaxTaxCode taxCode) {
+        return EasyTaxTaxCode.ANY_PRODUCT_NAME.equals(taxCode.getProductName());
+    }
+
+    /**
+     * Remove the any-product tax codes that are overridden by a product-specific tax code.
+     *
+     * @param taxCodes
+     *            the tax codes that apply to an invoice item, which are modified in place; the
+     *            order of the remaining tax codes is preserved
+     * @return {@literal true} if any tax code was removed
+     */
+    public static boolean removeOverridden(List<EasyTaxTaxCode> taxCodes) {
+        Set<String> specific = null;
+        boolean anyProduct = false;
+        for (EasyTaxTaxCode code : taxCodes) {
+            if (isAnyProduct(code)) {
+                anyProduct = true;
+            } else {
+                if (specific == null) {
+                    specific = new HashSet<>();
+                }
+                specific.add(key(code));
+            }
+        }
+        if (!anyProduct || specific == null) {
+            return false;
+        }
+        final Set<String> overriding = specific;
+        return taxCodes.removeIf(code -> isAnyProduct(code) && overriding.contains(key(code)));
+    }
+
+    private static String key(EasyTaxTaxCode code) {
+        return code.getTaxZone() + '\0' + code.getTaxCode();
+    }
+
+}
@@ -0,0 +1,129 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.killbill.billing.plugin.easytax.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable hierarchy of nested tax zones, such as country, state, county, and city.
+ *
+ * <p>
+ * The tax codes of a tax zone apply to all the tax zones nested within it, so the tax codes that
+ * apply to a tax zone are those of the zone itself and all of its ancestors. The ancestry of every
+ * tax zone with a parent is computed once, when the hierarchy is parsed.
+ * </p>
+ *
+ * @author matt
+ */
+public final class TaxZoneHierarchy {
+
+    /** A hierarchy without any nested tax zones. */
+    public static final TaxZoneHierarchy EMPTY = new TaxZoneHierarchy(Collections.emptyMap());
+
+    private final Map<String, List<String>> ancestries;
+
+    private TaxZoneHierarchy(Map<String, List<String>> ancestries) {
+        super();
+        this.ancestries = ancestries;
+    }
+
+    /**
+     * Parse a hierarchy from a list of tax zone and parent tax zone pairs.
+     *
+     * <p>
+     * The value is a comma-delimited list of {@literal zone:parent} pairs, for example
+     * {@literal US-CA-SF:US-CA, US-CA:US}. Whitespace around zones is ignored.
+     * </p>
+     *
+     * @param value
+     *            the value to parse, or {@literal null}
+     * @return the hierarchy, never {@literal null}
+     * @throws IllegalArgumentException
+     *             if a pair is invalid, a zone has more than one parent, or a zone is its own
+     *             ancestor
+     */
+    public static TaxZoneHierarchy parse(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return EMPTY;
+        }
+        final Map<String, String> parents = new HashMap<>();
+        for (String pair : value.split(",")) {
+            if (pair.trim().isEmpty()) {
+                continue;
+            }
+            int sep = pair.indexOf(':');
+            String zone = (sep < 0 ? "" : pair.substring(0, sep).trim());
+            String parent = (sep < 0 ? "" : pair.substring(sep + 1).trim());
+            if (zone.isEmpty() || parent.isEmpty()) {
+                throw new IllegalArgumentException("Invalid tax zone pair [" + pair.trim() + "]");
+            }
+            String existing = parents.put(zone, parent);
+            if (existing != null && !existing.equals(parent)) {
+                throw new IllegalArgumentException(
+                        "Tax zone [" + zone + "] has more than one parent");
+            }
+        }
+        final Map<String, List<String>> ancestries = new HashMap<>(parents.size());
+        for (String zone : parents.keySet()) {
+            final Set<String> ancestry = new LinkedHashSet<>();
+            for (String z = zone; z != null; z = parents.get(z)) {
+                if (!ancestry.add(z)) {
+                    throw new IllegalArgumentException(
+                            "Tax zone [" + zone + "] is its own ancestor");
+                }
+            }
+            ancestries.put(zone, Collections.unmodifiableList(new ArrayList<>(ancestry)));
+        }
+        return new TaxZoneHierarchy(Collections.unmodifiableMap(ancestries));
+    }
+
+    /**
+     * Get a tax zone and all of its ancestors.
+     *
+     * @param taxZone
+     *            the tax zone
+     * @return the tax zone followed by its parent, grandparent, and so on
+     */
+    public List<String> ancestry(String taxZone) {
+        List<String> result = ancestries.get(taxZone);
+        return (result != null ? result : Collections.singletonList(taxZone));
+    }
+
+    /**
+     * Test if the hierarchy does not contain any nested tax zones.
+     *
+     * @return {@literal true} if no tax zone has a parent
+     */
+    public boolean isEmpty() {
+        return ancestries.isEmpty();
+    }
+
+    /**
+     * Get the number of tax zones that have a parent.
+     *
+     * @return the count of nested tax zones
+     */
+    public int size() {
+        return ancestries.size();
+    }
+
+}
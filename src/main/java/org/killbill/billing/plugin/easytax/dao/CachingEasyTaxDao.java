@@ -0,0 +1,355 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.killbill.billing.plugin.easytax.dao;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nullable;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.plugin.easytax.api.EasyTaxDao;
+import org.killbill.billing.plugin.easytax.core.EasyTaxTaxCode;
+import org.killbill.billing.plugin.easytax.core.EasyTaxTaxCodeDiff;
+import org.killbill.billing.plugin.easytax.core.EasyTaxTaxCodeRollOver;
+import org.killbill.billing.plugin.easytax.core.TaxZoneHierarchy;
+
+/**
+ * {@link EasyTaxDao} that caches the complete set of tax codes of each tenant in memory,
+ * delegating all other methods to another {@link EasyTaxDao}.
+ *
+ * <p>
+ * The cache is an immutable map that is replaced as a whole (copy-on-write) whenever a tenant's
+ * tax codes are loaded or invalidated, so readers never block and always see a complete set of
+ * tax codes for a tenant. A tenant's cached tax codes are invalidated when they are modified via
+ * this DAO, and are otherwise re-loaded once the configured time-to-live has elapsed, so that
+ * changes made by other nodes are eventually seen.
+ * </p>
+ *
+ * <p>
+ * A {@link TaxCodeTimeline} is pre-computed for each tax zone and product name when a tenant's
+ * tax codes are loaded, so finding the tax codes of a tax zone and product name for a given date,
+ * as done when calculating tax, is a binary search.
+ * </p>
+ *
+ * <p>
+ * When configured to be compact, each tenant's tax codes are instead held in a
+ * {@link CompactTaxCodeStore}, outside the Java heap, and tax code objects are only created for
+ * the tax codes returned by {@link #getTaxCodes(UUID, String, String, String, DateTime)}.
+ * </p>
+ *
+ * @author matt
+ */
+public class CachingEasyTaxDao extends DelegatingEasyTaxDao {
+
+    private final long ttlMillis;
+    private final boolean compact;
+
+    private volatile Map<UUID, CachedTaxCodes> cache = Collections.emptyMap();
+    private long generation;
+
+    /**
+     * Constructor.
+     *
+     * @param delegate
+     *            the DAO to delegate to
+     * @param ttlMillis
+     *            the maximum number of milliseconds to cache the tax codes of a tenant for
+     */
+    public CachingEasyTaxDao(EasyTaxDao delegate, long ttlMillis) {
+        this(delegate, ttlMillis, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param delegate
+     *            the DAO to delegate to
+     * @param ttlMillis
+     *            the maximum number of milliseconds to cache the tax codes of a tenant for
+     * @param compact
+     *            {@literal true} to cache the tax codes in a {@link CompactTaxCodeStore}
+     */
+    public CachingEasyTaxDao(EasyTaxDao delegate, long ttlMillis, boolean compact) {
+        super(delegate);
+        this.ttlMillis = ttlMillis;
+        this.compact = compact;
+    }
+
+    @Override
+    public List<EasyTaxTaxCode> getTaxCodes(UUID kbTenantId, @Nullable String taxZone,
+            @Nullable String productName, @Nullable String taxCode, @Nullable DateTime date)
+            throws SQLException {
+        final CachedTaxCodes entry = entry(kbTenantId);
+        if (entry.store != null) {
+            return entry.store.getTaxCodes(taxZone, productName, taxCode, date);
+        }
+        return TaxCodeFilter.filter(entry.taxCodes, entry.timelines, taxZone, productName,
+                taxCode, date);
+    }
+
+    /**
+     * Find the tax codes that apply to a tax zone and all the tax zones it is nested within.
+     *
+     * <p>
+     * The timelines of the product name and any product, of the tax zone and its ancestors, are
+     * merged into a single timeline the first time a tax zone and product name are looked up, and
+     * the merged timeline is cached along with the tenant's tax codes, so subsequent lookups are a
+     * single binary search.
+     * </p>
+     */
+    @Override
+    public List<EasyTaxTaxCode> getApplicableTaxCodes(UUID kbTenantId,
+            TaxZoneHierarchy hierarchy, String taxZone, String productName, DateTime date)
+            throws SQLException {
+        final CachedTaxCodes entry = entry(kbTenantId);
+        if (entry.store != null || taxZone == null || productName == null || date == null) {
+            return super.getApplicableTaxCodes(kbTenantId, hierarchy, taxZone, productName, date);
+        }
+        return TaxCodeFilter.filter(
+                entry.flattenedTimelines(hierarchy).timeline(taxZone, productName), null, date);
+    }
+
+    private CachedTaxCodes entry(UUID kbTenantId) throws SQLException {
+        final long now = System.currentTimeMillis();
+        CachedTaxCodes entry = cache.get(kbTenantId);
+        if (entry == null || entry.expires <= now) {
+            final long gen = generation();
+            List<EasyTaxTaxCode> codes = getDelegate().getTaxCodes(kbTenantId, null, null, null,
+                    null);
+            entry = cachedTaxCodes(kbTenantId, codes, now + ttlMillis);
+            put(kbTenantId, entry, gen);
+        }
+        return entry;
+    }
+
+    private CachedTaxCodes cachedTaxCodes(UUID kbTenantId, List<EasyTaxTaxCode> codes,
+            long expires) {
+        if (compact) {
+            CompactTaxCodeStore store = CompactTaxCodeStore.build(kbTenantId, codes);
+            if (store != null) {
+                return new CachedTaxCodes(null, null, store, expires);
+            }
+        }
+        return new CachedTaxCodes(Collections.unmodifiableList(codes),
+                TaxCodeTimeline.index(codes), null, expires);
+    }
+
+    @Override
+    public List<EasyTaxTaxCode> getTaxCodes(UUID kbTenantId, @Nullable String taxZone,
+            @Nullable String productName, @Nullable String taxCode, @Nullable DateTime date,
+            @Nullable DateTime knownDate) throws SQLException {
+        if (knownDate == null) {
+            return getTaxCodes(kbTenantId, taxZone, productName, taxCode, date);
+        }
+        // historic queries are not cached
+        return super.getTaxCodes(kbTenantId, taxZone, productName, taxCode, date, knownDate);
+    }
+
+    private synchronized long generation() {
+        return generation;
+    }
+
+    private synchronized void put(UUID kbTenantId, CachedTaxCodes entry, long gen) {
+        if (gen != generation) {
+            // tax codes modified while loading; don't cache possibly stale data
+            return;
+        }
+        Map<UUID, CachedTaxCodes> copy = new HashMap<>(cache);
+        copy.put(kbTenantId, entry);
+        cache = Collections.unmodifiableMap(copy);
+    }
+
+    /**
+     * Remove the cached tax codes of a set of tenants.
+     *
+     * @param kbTenantIds
+     *            the IDs of the tenants to invalidate
+     */
+    public synchronized void invalidate(Set<UUID> kbTenantIds) {
+        generation++;
+        Map<UUID, CachedTaxCodes> copy = new HashMap<>(cache);
+        copy.keySet().removeAll(kbTenantIds);
+        cache = Collections.unmodifiableMap(copy);
+    }
+
+    private void invalidate(UUID kbTenantId) {
+        invalidate(Collections.singleton(kbTenantId));
+    }
+
+    @Override
+    public void saveTaxCode(EasyTaxTaxCode taxCode) throws SQLException {
+        try {
+            super.saveTaxCode(taxCode);
+        } finally {
+            invalidate(taxCode.getKbTenantId());
+        }
+    }
+
+    @Override
+    public void saveTaxCodes(Iterable<EasyTaxTaxCode> taxCodes) throws SQLException {
+        try {
+            super.saveTaxCodes(taxCodes);
+        } finally {
+            Set<UUID> tenantIds = new LinkedHashSet<>();
+            for (EasyTaxTaxCode taxCode : taxCodes) {
+                tenantIds.add(taxCode.getKbTenantId());
+            }
+            invalidate(tenantIds);
+        }
+    }
+
+    @Override
+    public int removeTaxCodes(UUID kbTenantId, @Nullable String taxZone,
+            @Nullable String productName, @Nullable String taxCode) throws SQLException {
+        try {
+            return super.removeTaxCodes(kbTenantId, taxZone, productName, taxCode);
+        } finally {
+            invalidate(kbTenantId);
+        }
+    }
+
+    @Override
+    public int importTaxCodes(UUID kbTenantId, Iterable<EasyTaxTaxCode> taxCodes, boolean replace)
+            throws SQLException {
+        try {
+            return super.importTaxCodes(kbTenantId, taxCodes, replace);
+        } finally {
+            invalidate(kbTenantId);
+        }
+    }
+
+    @Override
+    public EasyTaxTaxCodeDiff syncTaxCodes(UUID kbTenantId, @Nullable String taxZone,
+            Iterable<EasyTaxTaxCode> taxCodes) throws SQLException {
+        try {
+            return super.syncTaxCodes(kbTenantId, taxZone, taxCodes);
+        } finally {
+            invalidate(kbTenantId);
+        }
+    }
+
+    @Override
+    public int copyTaxCodes(UUID fromKbTenantId, UUID toKbTenantId, boolean replace)
+            throws SQLException {
+        try {
+            return super.copyTaxCodes(fromKbTenantId, toKbTenantId, replace);
+        } finally {
+            invalidate(toKbTenantId);
+        }
+    }
+
+    @Override
+    public int activateTaxCodeStage(UUID kbTenantId, UUID stageId) throws SQLException {
+        try {
+            return super.activateTaxCodeStage(kbTenantId, stageId);
+        } finally {
+            invalidate(kbTenantId);
+        }
+    }
+
+    @Override
+    public int rollOverTaxCodes(UUID kbTenantId, EasyTaxTaxCodeRollOver rollOver)
+            throws SQLException {
+        try {
+            return super.rollOverTaxCodes(kbTenantId, rollOver);
+        } finally {
+            invalidate(kbTenantId);
+        }
+    }
+
+    private static final class CachedTaxCodes {
+
+        private final List<EasyTaxTaxCode> taxCodes;
+        private final Map<String, TaxCodeTimeline> timelines;
+        private final CompactTaxCodeStore store;
+        private final long expires;
+        private volatile FlattenedTimelines flattened;
+
+        private CachedTaxCodes(List<EasyTaxTaxCode> taxCodes,
+                Map<String, TaxCodeTimeline> timelines, CompactTaxCodeStore store,
+                long expires) {
+            super();
+            this.taxCodes = taxCodes;
+            this.timelines = timelines;
+            this.store = store;
+            this.expires = expires;
+        }
+
+        private FlattenedTimelines flattenedTimelines(TaxZoneHierarchy hierarchy) {
+            FlattenedTimelines result = flattened;
+            if (result == null || result.hierarchy != hierarchy) {
+                // the hierarchy changed with the configuration; start over
+                result = new FlattenedTimelines(hierarchy, timelines);
+                flattened = result;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Lazily merged timelines of each tax zone and its ancestors in a hierarchy, for each product
+     * name and any product.
+     */
+    private static final class FlattenedTimelines {
+
+        private final TaxZoneHierarchy hierarchy;
+        private final Map<String, TaxCodeTimeline> timelines;
+        private final ConcurrentMap<String, Optional<TaxCodeTimeline>> merged;
+
+        private FlattenedTimelines(TaxZoneHierarchy hierarchy,
+                Map<String, TaxCodeTimeline> timelines) {
+            super();
+            this.hierarchy = hierarchy;
+            this.timelines = timelines;
+            this.merged = new ConcurrentHashMap<>();
+        }
+
+        private TaxCodeTimeline timeline(String taxZone, String productName) {
+            final String key = TaxCodeTimeline.key(taxZone, productName);
+            return merged.computeIfAbsent(key, k -> {
+                final List<TaxCodeTimeline> ancestry = new ArrayList<>();
+                for (String zone : hierarchy.ancestry(taxZone)) {
+                    TaxCodeTimeline timeline = timelines
+                            .get(TaxCodeTimeline.key(zone, productName));
+                    if (timeline != null) {
+                        ancestry.add(timeline);
+                    }
+                    if (!EasyTaxTaxCode.ANY_PRODUCT_NAME.equals(productName)) {
+                        timeline = timelines.get(
+                                TaxCodeTimeline.key(zone, EasyTaxTaxCode.ANY_PRODUCT_NAME));
+                        if (timeline != null) {
+                            ancestry.add(timeline);
+                        }
+                    }
+                }
+                return (ancestry.isEmpty() ? Optional.empty()
+                        : Optional.of(TaxCodeTimeline.merge(ancestry)));
+            }).orElse(null);
+        }
+    }
+
+}
@@ -0,0 +1,300 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.killbill.billing.plugin.easytax.dao;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.plugin.easytax.core.EasyTaxTaxCode;
+
+/**
+ * An immutable, compact store of the tax codes of a single tenant.
+ *
+ * <p>
+ * The tax codes are held as fixed-size records in a direct (off-heap) {@link ByteBuffer}. The tax
+ * zone, product name, and tax code strings are dictionary encoded as {@code int} indexes into a
+ * single shared array of distinct strings, the tax rate as its unscaled {@code long} value and
+ * scale, and the dates as epoch milliseconds. A second direct buffer holds the record indexes
+ * sorted by tax zone and product name, so the tax codes of a tax zone and product name are found
+ * with a binary search. {@link EasyTaxTaxCode} objects are only created for the tax codes returned
+ * by {@link #getTaxCodes(String, String, String, DateTime)}.
+ * </p>
+ *
+ * <p>
+ * Dates are returned in the default time zone, the same as dates loaded from the database.
+ * </p>
+ *
+ * @author matt
+ */
+final class CompactTaxCodeStore {
+
+    private static final int ZONE_OFFSET = 0;
+    private static final int PRODUCT_OFFSET = 4;
+    private static final int CODE_OFFSET = 8;
+    private static final int RATE_OFFSET = 12;
+    private static final int RATE_SCALE_OFFSET = 20;
+    private static final int VALID_FROM_OFFSET = 24;
+    private static final int VALID_TO_OFFSET = 32;
+    private static final int CREATED_OFFSET = 40;
+    private static final int RECORD_SIZE = 48;
+
+    /** Marker for a {@literal null} string, date, or rate scale. */
+    private static final int NULL_INDEX = -1;
+    private static final long NULL_DATE = Long.MIN_VALUE;
+    private static final int NULL_SCALE = Integer.MIN_VALUE;
+
+    private final UUID kbTenantId;
+    private final String[] strings;
+    private final Map<String, Integer> stringIndexes;
+    private final ByteBuffer records;
+    private final ByteBuffer zoneProductIndex;
+    private final int count;
+
+    private CompactTaxCodeStore(UUID kbTenantId, String[] strings,
+            Map<String, Integer> stringIndexes, ByteBuffer records, ByteBuffer zoneProductIndex,
+            int count) {
+        super();
+        this.kbTenantId = kbTenantId;
+        this.strings = strings;
+        this.stringIndexes = stringIndexes;
+        this.records = records;
+        this.zoneProductIndex = zoneProductIndex;
+        this.count = count;
+    }
+
+    /**
+     * Build a store from the tax codes of a tenant.
+     *
+     * @param kbTenantId
+     *            the tenant ID
+     * @param taxCodes
+     *            the tax codes of the tenant
+     * @return the store, or {@literal null} if a tax rate is too large to store compactly
+     */
+    static CompactTaxCodeStore build(UUID kbTenantId, List<EasyTaxTaxCode> taxCodes) {
+        final int count = taxCodes.size();
+        final Map<String, Integer> stringIndexes = new HashMap<>();
+        final List<String> strings = new ArrayList<>();
+        final ByteBuffer records = ByteBuffer.allocateDirect(Math.max(1, count * RECORD_SIZE));
+        for (int i = 0; i < count; i++) {
+            final EasyTaxTaxCode code = taxCodes.get(i);
+            final int pos = i * RECORD_SIZE;
+            final BigDecimal rate = code.getTaxRate();
+            if (rate != null) {
+                final BigInteger unscaled = rate.unscaledValue();
+                if (unscaled.bitLength() > 63) {
+                    return null;
+                }
+                records.putLong(pos + RATE_OFFSET, unscaled.longValue());
+                records.putInt(pos + RATE_SCALE_OFFSET, rate.scale());
+            } else {
+                records.putInt(pos + RATE_SCALE_OFFSET, NULL_SCALE);
+            }
+            records.putInt(pos + ZONE_OFFSET, intern(code.getTaxZone(), strings, stringIndexes));
+            records.putInt(pos + PRODUCT_OFFSET,
+                    intern(code.getProductName(), strings, stringIndexes));
+            records.putInt(pos + CODE_OFFSET, intern(code.getTaxCode(), strings, stringIndexes));
+            records.putLong(pos + VALID_FROM_OFFSET, millis(code.getValidFromDate()));
+            records.putLong(pos + VALID_TO_OFFSET, millis(code.getValidToDate()));
+            records.putLong(pos + CREATED_OFFSET, millis(code.getCreatedDate()));
+        }
+
+        final Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (l, r) -> {
+            int result = Integer.compare(records.getInt(l * RECORD_SIZE + ZONE_OFFSET),
+                    records.getInt(r * RECORD_SIZE + ZONE_OFFSET));
+            if (result == 0) {
+                result = Integer.compare(records.getInt(l * RECORD_SIZE + PRODUCT_OFFSET),
+                        records.getInt(r * RECORD_SIZE + PRODUCT_OFFSET));
+            }
+            return (result != 0 ? result : Integer.compare(l, r));
+        });
+        final ByteBuffer zoneProductIndex = ByteBuffer.allocateDirect(Math.max(1, count * 4));
+        for (int i = 0; i < count; i++) {
+            zoneProductIndex.putInt(i * 4, order[i]);
+        }
+
+        return new CompactTaxCodeStore(kbTenantId, strings.toArray(new String[strings.size()]),
+                stringIndexes, records, zoneProductIndex, count);
+    }
+
+    private static int intern(String s, List<String> strings, Map<String, Integer> indexes) {
+        if (s == null) {
+            return NULL_INDEX;
+        }
+        Integer idx = indexes.get(s);
+        if (idx == null) {
+            idx = strings.size();
+            strings.add(s);
+            indexes.put(s, idx);
+        }
+        return idx;
+    }
+
+    private static long millis(DateTime date) {
+        return (date != null ? date.getMillis() : NULL_DATE);
+    }
+
+    private static DateTime dateTime(long millis) {
+        return (millis != NULL_DATE ? new DateTime(millis) : null);
+    }
+
+    /**
+     * Get the number of tax codes in the store.
+     *
+     * @return the tax code count
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Get tax codes, filtered the same way as
+     * {@link TaxCodeFilter#filter(List, String, String, String, DateTime)}.
+     *
+     * @param taxZone
+     *            an optional tax zone to limit the results to
+     * @param productName
+     *            an optional product name to limit the results to
+     * @param taxCode
+     *            an optional tax code to limit the results to
+     * @param date
+     *            an optional validity date to limit the results to
+     * @return new instances of the matching tax codes, in store order unless {@code date}
+     *         provided, then ordered by valid from date in descending order
+     */
+    List<EasyTaxTaxCode> getTaxCodes(@Nullable String taxZone, @Nullable String productName,
+            @Nullable String taxCode, @Nullable DateTime date) {
+        final int zoneIdx = indexOf(taxZone);
+        final int productIdx = indexOf(productName);
+        final int codeIdx = indexOf(taxCode);
+        final List<EasyTaxTaxCode> results = new ArrayList<>();
+        if ((taxZone != null && zoneIdx == NULL_INDEX)
+                || (productName != null && productIdx == NULL_INDEX)
+                || (taxCode != null && codeIdx == NULL_INDEX)) {
+            return results;
+        }
+        final long dateMillis = (date != null ? date.getMillis() : 0);
+
+        int[] matches = new int[8];
+        int matchCount = 0;
+        int from = 0;
+        int to = count;
+        if (taxZone != null) {
+            from = lowerBound(zoneIdx, (productName != null ? productIdx : Integer.MIN_VALUE));
+            to = lowerBound(zoneIdx + (productName != null ? 0 : 1),
+                    (productName != null ? productIdx + 1 : Integer.MIN_VALUE));
+        }
+        for (int i = from; i < to; i++) {
+            final int record = (taxZone != null ? zoneProductIndex.getInt(i * 4) : i);
+            final int pos = record * RECORD_SIZE;
+            if (productName != null && records.getInt(pos + PRODUCT_OFFSET) != productIdx) {
+                continue;
+            }
+            if (taxCode != null && records.getInt(pos + CODE_OFFSET) != codeIdx) {
+                continue;
+            }
+            if (date != null) {
+                final long validFrom = records.getLong(pos + VALID_FROM_OFFSET);
+                final long validTo = records.getLong(pos + VALID_TO_OFFSET);
+                if (validFrom > dateMillis || (validTo != NULL_DATE && validTo <= dateMillis)) {
+                    continue;
+                }
+            }
+            if (matchCount == matches.length) {
+                matches = Arrays.copyOf(matches, matchCount * 2);
+            }
+            matches[matchCount++] = record;
+        }
+        if (taxZone != null && productName == null) {
+            // the zone index is ordered by product, so restore the store order
+            Arrays.sort(matches, 0, matchCount);
+        }
+        for (int i = 0; i < matchCount; i++) {
+            results.add(taxCodeAt(matches[i]));
+        }
+        if (date != null) {
+            results.sort(Comparator.comparing(EasyTaxTaxCode::getValidFromDate).reversed());
+        }
+        return results;
+    }
+
+    private int indexOf(String s) {
+        if (s == null) {
+            return NULL_INDEX;
+        }
+        Integer idx = stringIndexes.get(s);
+        return (idx != null ? idx.intValue() : NULL_INDEX);
+    }
+
+    /**
+     * Find the position of the first index entry at or after a tax zone and product.
+     */
+    private int lowerBound(int zoneIdx, int productIdx) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            final int pos = zoneProductIndex.getInt(mid * 4) * RECORD_SIZE;
+            int cmp = Integer.compare(records.getInt(pos + ZONE_OFFSET), zoneIdx);
+            if (cmp == 0) {
+                cmp = Integer.compare(records.getInt(pos + PRODUCT_OFFSET), productIdx);
+            }
+            if (cmp < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private EasyTaxTaxCode taxCodeAt(int record) {
+        final int pos = record * RECORD_SIZE;
+        final EasyTaxTaxCode code = new EasyTaxTaxCode();
+        code.setKbTenantId(kbTenantId);
+        code.setTaxZone(stringAt(records.getInt(pos + ZONE_OFFSET)));
+        code.setProductName(stringAt(records.getInt(pos + PRODUCT_OFFSET)));
+        code.setTaxCode(stringAt(records.getInt(pos + CODE_OFFSET)));
+        final int scale = records.getInt(pos + RATE_SCALE_OFFSET);
+        if (scale != NULL_SCALE) {
+            code.setTaxRate(BigDecimal.valueOf(records.getLong(pos + RATE_OFFSET), scale));
+        }
+        code.setValidFromDate(dateTime(records.getLong(pos + VALID_FROM_OFFSET)));
+        code.setValidToDate(dateTime(records.getLong(pos + VALID_TO_OFFSET)));
+        code.setCreatedDate(dateTime(records.getLong(pos + CREATED_OFFSET)));
+        return code;
+    }
+
+    private String stringAt(int idx) {
+        return (idx != NULL_INDEX ? strings[idx] : null);
+    }
+
+}
@@ -0,0 +1,191 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *  
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.killbill.billing.plugin.easytax.dao;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.plugin.easytax.api.EasyTaxDao;
+import org.killbill.billing.plugin.easytax.core.EasyTaxTaxCode;
+import org.killbill.billing.plugin.easytax.core.EasyTaxTaxCodeChange;
+import org.killbill.billing.plugin.easytax.core.EasyTaxTaxCodeDiff;
+import org.killbill.billing.plugin.easytax.core.EasyTaxTaxCodeRollOver;
+import org.killbill.billing.plugin.easytax.core.EasyTaxTaxation;
+
+/**
+ * {@link EasyTaxDao} that delegates all methods to another {@link EasyTaxDao}.
+ * 
+ * <p>
+ * This is designed to be extended by implementations that want to handle only some of the DAO
+ * methods themselves.
+ * </p>
+ * 
+ * @author matt
+ */
+public class DelegatingEasyTaxDao implements EasyTaxDao {
+
+    private final EasyTaxDao delegate;
+
+    /**
+     * Constructor.
+     * 
+     * @param delegate
+     *            the DAO to delegate to
+     */
+    public DelegatingEasyTaxDao(EasyTaxDao delegate) {
+        super();
+        this.delegate = delegate;
+    }
+
+    /**
+     * Get the DAO delegated to.
+     * 
+     * @return the delegate
+     */
+    protected EasyTaxDao getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void saveTaxCode(EasyTaxTaxCode taxCode) throws SQLException {
+        delegate.saveTaxCode(taxCode);
+    }
+
+    @Override
+    public void saveTaxCodes(Iterable<EasyTaxTaxCode> taxCodes) throws SQLException {
+        delegate.saveTaxCodes(taxCodes);
+    }
+
+    @Override
+    public int removeTaxCodes(UUID kbTenantId, @Nullable String taxZone,
+            @Nullable String productName, @Nullable String taxCode) throws SQLException {
+        return delegate.removeTaxCodes(kbTenantId, taxZone, productName, taxCode);
+    }
+
+    @Override
+    public List<EasyTaxTaxCode> getTaxCodes(UUID kbTenantId, @Nullable String taxZone,
+            @Nullable String productName, @Nullable String taxCode, @Nullable DateTime date)
+            throws SQLException {
+        return delegate.getTaxCodes(kbTenantId, taxZone, productName, taxCode, date);
+    }
+
+    @Override
+    public List<EasyTaxTaxCode> getTaxCodes(UUID kbTenantId, @Nullable String taxZone,
+            @Nullable String productName, @Nullable String taxCode, @Nullable DateTime date,
+            @Nullable DateTime knownDate) throws SQLException {
+        return delegate.getTaxCodes(kbTenantId, taxZone, productName, taxCode, date, knownDate);
+    }
+
+    @Override
+    public int importTaxCodes(UUID kbTenantId, Iterable<EasyTaxTaxCode> taxCodes, boolean replace)
+            throws SQLException {
+        return delegate.importTaxCodes(kbTenantId, taxCodes, replace);
+    }
+
+    @Override
+    public EasyTaxTaxCodeDiff syncTaxCodes(UUID kbTenantId, @Nullable String taxZone,
+            Iterable<EasyTaxTaxCode> taxCodes) throws SQLException {
+        return delegate.syncTaxCodes(kbTenantId, taxZone, taxCodes);
+    }
+
+    @Override
+    public int copyTaxCodes(UUID fromKbTenantId, UUID toKbTenantId, boolean replace)
+            throws SQLException {
+        return delegate.copyTaxCodes(fromKbTenantId, toKbTenantId, replace);
+    }
+
+    @Override
+    public int stageTaxCodes(UUID kbTenantId, UUID stageId, Iterable<EasyTaxTaxCode> taxCodes)
+            throws SQLException {
+        return delegate.stageTaxCodes(kbTenantId, stageId, taxCodes);
+    }
+
+    @Override
+    public List<EasyTaxTaxCode> getStagedTaxCodes(UUID kbTenantId, UUID stageId)
+            throws SQLException {
+        return delegate.getStagedTaxCodes(kbTenantId, stageId);
+    }
+
+    @Override
+    public int activateTaxCodeStage(UUID kbTenantId, UUID stageId) throws SQLException {
+        return delegate.activateTaxCodeStage(kbTenantId, stageId);
+    }
+
+    @Override
+    public int removeTaxCodeStage(UUID kbTenantId, UUID stageId) throws SQLException {
+        return delegate.removeTaxCodeStage(kbTenantId, stageId);
+    }
+
+    @Override
+    public int removeTaxCodeStages(DateTime olderThan, int maxStages) throws SQLException {
+        return delegate.removeTaxCodeStages(olderThan, maxStages);
+    }
+
+    @Override
+    public int rollOverTaxCodes(UUID kbTenantId, EasyTaxTaxCodeRollOver rollOver)
+            throws SQLException {
+        return delegate.rollOverTaxCodes(kbTenantId, rollOver);
+    }
+
+    @Override
+    public List<EasyTaxTaxCodeChange> getTaxCodeChanges(UUID kbTenantId, long sinceSequence,
+            int max) throws SQLException {
+        return delegate.getTaxCodeChanges(kbTenantId, sinceSequence, max);
+    }
+
+    @Override
+    public int removeTaxCodeChanges(DateTime olderThan, int maxChanges) throws SQLException {
+        return delegate.removeTaxCodeChanges(olderThan, maxChanges);
+    }
+
+    @Override
+    public Set<UUID> getTaxCodeTenantIds() throws SQLException {
+        return delegate.getTaxCodeTenantIds();
+    }
+
+    @Override
+    public void addTaxation(EasyTaxTaxation taxation) throws SQLException {
+        delegate.addTaxation(taxation);
+    }
+
+    @Override
+    public List<EasyTaxTaxation> getTaxation(UUID kbTenantId, UUID kbAccountId, UUID kbInvoiceId)
+            throws SQLException {
+        return delegate.getTaxation(kbTenantId, kbAccountId, kbInvoiceId);
+    }
+
+    @Override
+    public int archiveTaxations(DateTime olderThan, int maxInvoices) throws SQLException {
+        return delegate.archiveTaxations(olderThan, maxInvoices);
+    }
+
+    @Override
+    public int compactTaxation(UUID kbTenantId, UUID kbAccountId, UUID kbInvoiceId)
+            throws SQLException {
+        return delegate.compactTaxation(kbTenantId, kbAccountId, kbInvoiceId);
+    }
+
+    @Override
+    public int compactTaxations(int minRecords, int maxInvoices) throws SQLException {
+        return delegate.compactTaxations(minRecords, maxInvoices);
+    }
+
+}
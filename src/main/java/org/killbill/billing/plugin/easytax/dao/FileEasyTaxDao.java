@@ -0,0 +1,369 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.killbill.billing.plugin.easytax.dao;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.plugin.easytax.api.EasyTaxDao;
+import org.killbill.billing.plugin.easytax.core.EasyTaxTaxCode;
+import org.killbill.billing.plugin.easytax.core.EasyTaxTaxCodeChange;
+import org.killbill.billing.plugin.easytax.core.EasyTaxTaxCodeDiff;
+import org.killbill.billing.plugin.easytax.core.EasyTaxTaxCodeRollOver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link EasyTaxDao} that loads tax codes from a CSV file, delegating all taxation methods to
+ * another {@link EasyTaxDao}.
+ *
+ * <p>
+ * The CSV file must contain the columns {@code tenant_id}, {@code tax_zone},
+ * {@code product_name}, {@code tax_code}, {@code tax_rate}, {@code valid_from_date}, and
+ * {@code valid_to_date}, in that order. Dates are ISO 8601 timestamps and the
+ * {@code valid_to_date} column may be left empty. An optional header row starting with
+ * {@code tenant_id}, empty lines, and lines starting with {@literal #} are ignored. Values cannot
+ * contain commas, and are not quoted. Lines with more columns than these are rejected.
+ * </p>
+ *
+ * <p>
+ * The file is memory-mapped and parsed in full when first needed, and is then re-loaded whenever
+ * its modification date or size changes. Each line is decoded directly from the mapped file, and
+ * the loaded tax codes are indexed by tenant, tax zone, and product name so queries do not scan
+ * every tax code. The file is checked for changes at most once per
+ * configured check interval. The tax codes are read-only: all methods that modify tax codes throw
+ * a {@link SQLFeatureNotSupportedException}.
+ * </p>
+ *
+ * @author matt
+ */
+public class FileEasyTaxDao extends DelegatingEasyTaxDao {
+
+    /** The header value of the first column in the tax codes file. */
+    public static final String HEADER_TENANT_ID = "tenant_id";
+
+    private static final int COLUMN_COUNT = 7;
+
+    private final Path file;
+    private final long checkIntervalMillis;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private volatile TaxCodes taxCodes;
+    private volatile long nextCheckTime;
+
+    /**
+     * Constructor.
+     *
+     * @param delegate
+     *            the DAO to delegate taxation methods to
+     * @param file
+     *            the CSV file to load the tax codes from
+     * @param checkIntervalMillis
+     *            the minimum number of milliseconds between checks for changes to the file
+     */
+    public FileEasyTaxDao(EasyTaxDao delegate, Path file, long checkIntervalMillis) {
+        super(delegate);
+        this.file = file;
+        this.checkIntervalMillis = checkIntervalMillis;
+    }
+
+    /**
+     * Get the path to the tax codes file.
+     *
+     * @return the file
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public void saveTaxCode(EasyTaxTaxCode taxCode) throws SQLException {
+        throw readOnlyException();
+    }
+
+    @Override
+    public void saveTaxCodes(Iterable<EasyTaxTaxCode> taxCodes) throws SQLException {
+        throw readOnlyException();
+    }
+
+    @Override
+    public int removeTaxCodes(UUID kbTenantId, @Nullable String taxZone,
+            @Nullable String productName, @Nullable String taxCode) throws SQLException {
+        throw readOnlyException();
+    }
+
+    @Override
+    public int importTaxCodes(UUID kbTenantId, Iterable<EasyTaxTaxCode> taxCodes, boolean replace)
+            throws SQLException {
+        throw readOnlyException();
+    }
+
+    @Override
+    public EasyTaxTaxCodeDiff syncTaxCodes(UUID kbTenantId, @Nullable String taxZone,
+            Iterable<EasyTaxTaxCode> taxCodes) throws SQLException {
+        throw readOnlyException();
+    }
+
+    @Override
+    public int copyTaxCodes(UUID fromKbTenantId, UUID toKbTenantId, boolean replace)
+            throws SQLException {
+        throw readOnlyException();
+    }
+
+    @Override
+    public int stageTaxCodes(UUID kbTenantId, UUID stageId, Iterable<EasyTaxTaxCode> taxCodes)
+            throws SQLException {
+        throw readOnlyException();
+    }
+
+    @Override
+    public int activateTaxCodeStage(UUID kbTenantId, UUID stageId) throws SQLException {
+        throw readOnlyException();
+    }
+
+    @Override
+    public int rollOverTaxCodes(UUID kbTenantId, EasyTaxTaxCodeRollOver rollOver)
+            throws SQLException {
+        throw readOnlyException();
+    }
+
+    @Override
+    public List<EasyTaxTaxCodeChange> getTaxCodeChanges(UUID kbTenantId, long sinceSequence,
+            int max) throws SQLException {
+        // tax codes loaded from file never change
+        return Collections.emptyList();
+    }
+
+    @Override
+    public Set<UUID> getTaxCodeTenantIds() throws SQLException {
+        return Collections.unmodifiableSet(taxCodes().byTenant.keySet());
+    }
+
+    private SQLFeatureNotSupportedException readOnlyException() {
+        return new SQLFeatureNotSupportedException(
+                "Tax codes are read-only, loaded from file " + file);
+    }
+
+    @Override
+    public List<EasyTaxTaxCode> getTaxCodes(UUID kbTenantId, @Nullable String taxZone,
+            @Nullable String productName, @Nullable String taxCode, @Nullable DateTime date)
+            throws SQLException {
+        final TaxCodes loaded = taxCodes();
+        final List<EasyTaxTaxCode> tenantCodes = loaded.byTenant.get(kbTenantId);
+        if (tenantCodes == null) {
+            return Collections.emptyList();
+        }
+        if (taxZone != null && (productName == null || date == null)) {
+            final List<EasyTaxTaxCode> zoneCodes = loaded.byZone.get(kbTenantId).get(taxZone);
+            if (zoneCodes == null) {
+                return Collections.emptyList();
+            }
+            return TaxCodeFilter.filter(zoneCodes, taxZone, productName, taxCode, date);
+        }
+        return TaxCodeFilter.filter(tenantCodes, loaded.timelines.get(kbTenantId), taxZone,
+                productName, taxCode, date);
+    }
+
+    @Override
+    public List<EasyTaxTaxCode> getTaxCodes(UUID kbTenantId, @Nullable String taxZone,
+            @Nullable String productName, @Nullable String taxCode, @Nullable DateTime date,
+            @Nullable DateTime knownDate) throws SQLException {
+        // no history is kept of the file, so the loaded tax codes are the only ones known
+        return getTaxCodes(kbTenantId, taxZone, productName, taxCode, date);
+    }
+
+    /**
+     * Get the loaded tax codes, loading them from the file if it has changed.
+     *
+     * <p>
+     * If re-loading the file fails, the previously loaded tax codes continue to be used.
+     * </p>
+     *
+     * @return the tax codes
+     * @throws SQLException
+     *             if the file has never been loaded successfully and cannot be loaded now
+     */
+    private TaxCodes taxCodes() throws SQLException {
+        final long now = System.currentTimeMillis();
+        TaxCodes current = taxCodes;
+        if (current != null && now < nextCheckTime) {
+            return current;
+        }
+        synchronized (this) {
+            current = taxCodes;
+            if (current != null && now < nextCheckTime) {
+                return current;
+            }
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                long modified = attrs.lastModifiedTime().toMillis();
+                if (current == null || current.modified != modified
+                        || current.size != attrs.size()) {
+                    current = load(modified, attrs.size());
+                    taxCodes = current;
+                }
+            } catch (IOException | RuntimeException e) {
+                if (current == null) {
+                    throw new SQLException("Error loading tax codes file " + file, e);
+                }
+                log.error("Error re-loading tax codes file {}; using previously loaded tax codes",
+                        file, e);
+            } finally {
+                nextCheckTime = now + checkIntervalMillis;
+            }
+        }
+        return current;
+    }
+
+    private TaxCodes load(final long modified, final long size) throws IOException {
+        final MappedByteBuffer data;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+        final DateTime createdDate = new DateTime(modified);
+        final Map<UUID, List<EasyTaxTaxCode>> byTenant = new HashMap<>();
+        final String[] fields = new String[COLUMN_COUNT];
+        int count = 0;
+        int lineNumber = 0;
+        final int len = data.limit();
+        int pos = 0;
+        while (pos < len) {
+            // a newline byte never occurs within a multi-byte UTF-8 character
+            int end = pos;
+            while (end < len && data.get(end) != '\n') {
+                end++;
+            }
+            lineNumber++;
+            int lineEnd = (end > pos && data.get(end - 1) == '\r' ? end - 1 : end);
+            String line = decodeLine(data, pos, lineEnd, decoder).trim();
+            pos = end + 1;
+            if (line.isEmpty() || line.charAt(0) == '#'
+                    || (lineNumber == 1 && line.startsWith(HEADER_TENANT_ID))) {
+                continue;
+            }
+            EasyTaxTaxCode code;
+            try {
+                code = parseLine(line, fields);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(
+                        "Invalid tax code on line " + lineNumber + ": " + e.getMessage(), e);
+            }
+            code.setCreatedDate(createdDate);
+            byTenant.computeIfAbsent(code.getKbTenantId(), k -> new ArrayList<>()).add(code);
+            count++;
+        }
+        log.info("Loaded {} tax codes for {} tenants from file {}", count, byTenant.size(), file);
+        final Map<UUID, Map<String, List<EasyTaxTaxCode>>> byZone = new HashMap<>(
+                byTenant.size());
+        final Map<UUID, Map<String, TaxCodeTimeline>> timelines = new HashMap<>(byTenant.size());
+        for (Map.Entry<UUID, List<EasyTaxTaxCode>> me : byTenant.entrySet()) {
+            Map<String, List<EasyTaxTaxCode>> zones = new HashMap<>();
+            for (EasyTaxTaxCode code : me.getValue()) {
+                zones.computeIfAbsent(code.getTaxZone(), k -> new ArrayList<>()).add(code);
+            }
+            byZone.put(me.getKey(), zones);
+            timelines.put(me.getKey(), TaxCodeTimeline.index(me.getValue()));
+        }
+        return new TaxCodes(modified, size, byTenant, byZone, timelines);
+    }
+
+    private static String decodeLine(ByteBuffer data, int start, int end, CharsetDecoder decoder)
+            throws IOException {
+        if (start == end) {
+            return "";
+        }
+        ByteBuffer line = data.duplicate();
+        line.limit(end).position(start);
+        return decoder.decode(line).toString();
+    }
+
+    private static EasyTaxTaxCode parseLine(String line, String[] fields) {
+        int col = 0;
+        int start = 0;
+        while (true) {
+            int comma = line.indexOf(',', start);
+            if (comma < 0) {
+                fields[col++] = line.substring(start).trim();
+                break;
+            }
+            if (col == COLUMN_COUNT - 1) {
+                throw new IllegalArgumentException(
+                        "expected at most " + COLUMN_COUNT + " columns but found more");
+            }
+            fields[col++] = line.substring(start, comma).trim();
+            start = comma + 1;
+        }
+        if (col < COLUMN_COUNT - 1) {
+            throw new IllegalArgumentException("expected at least " + (COLUMN_COUNT - 1)
+                    + " columns but found " + col);
+        }
+        EasyTaxTaxCode code = new EasyTaxTaxCode();
+        code.setKbTenantId(UUID.fromString(fields[0]));
+        code.setTaxZone(fields[1]);
+        code.setProductName(fields[2]);
+        code.setTaxCode(fields[3]);
+        code.setTaxRate(new BigDecimal(fields[4]));
+        code.setValidFromDate(new DateTime(fields[5]));
+        if (col == COLUMN_COUNT && !fields[6].isEmpty()) {
+            code.setValidToDate(new DateTime(fields[6]));
+        }
+        return code;
+    }
+
+    private static final class TaxCodes {
+
+        private final long modified;
+        private final long size;
+        private final Map<UUID, List<EasyTaxTaxCode>> byTenant;
+        private final Map<UUID, Map<String, List<EasyTaxTaxCode>>> byZone;
+        private final Map<UUID, Map<String, TaxCodeTimeline>> timelines;
+
+        private TaxCodes(long modified, long size, Map<UUID, List<EasyTaxTaxCode>> byTenant,
+                Map<UUID, Map<String, List<EasyTaxTaxCode>>> byZone,
+                Map<UUID, Map<String, TaxCodeTimeline>> timelines) {
+            super();
+            this.modified = modified;
+            this.size = size;
+            this.byTenant = byTenant;
+            this.byZone = byZone;
+            this.timelines = timelines;
+        }
+    }
+
+}
@@ -15,17 +15,29 @@
 
 package org.killbill.billing.plugin.easytax.dao;
 
+import static org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxCodeChanges.EASYTAX_TAX_CODE_CHANGES;
+import static org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxCodeStages.EASYTAX_TAX_CODE_STAGES;
+import static org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxCodeTenants.EASYTAX_TAX_CODE_TENANTS;
 import static org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxCodes.EASYTAX_TAX_CODES;
+import static org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxationHashes.EASYTAX_TAXATION_HASHES;
 import static org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxations.EASYTAX_TAXATIONS;
+import static org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxationsArchive.EASYTAX_TAXATIONS_ARCHIVE;
 
 import java.io.IOException;
+import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -33,17 +45,45 @@ import javax.annotation.Nullable;
 import javax.sql.DataSource;
 
 import org.joda.time.DateTime;
+import org.jooq.Condition;
 import org.jooq.Configuration;
 import org.jooq.DSLContext;
-import org.jooq.DeleteConditionStep;
+import org.jooq.Field;
+import org.jooq.InsertValuesStep10;
+import org.jooq.InsertValuesStep8;
+import org.jooq.InsertValuesStep9;
+import org.jooq.Query;
+import org.jooq.Record2;
+import org.jooq.Record3;
+import org.jooq.Result;
+import org.jooq.Row2;
 import org.jooq.SQLDialect;
 import org.jooq.SelectConditionStep;
+import org.jooq.TransactionalCallable;
 import org.jooq.TransactionalRunnable;
+import org.jooq.exception.DataAccessException;
+import org.jooq.exception.SQLStateClass;
 import org.jooq.impl.DSL;
+import org.jooq.types.ULong;
 import org.killbill.billing.plugin.dao.PluginDao;
 import org.killbill.billing.plugin.easytax.api.EasyTaxDao;
+import org.killbill.billing.plugin.easytax.api.EasyTaxTaxCodeOverlapException;
+import org.killbill.billing.plugin.easytax.api.EasyTaxTaxCodeValidationException;
 import org.killbill.billing.plugin.easytax.core.EasyTaxTaxCode;
+import org.killbill.billing.plugin.easytax.core.EasyTaxTaxCodeChange;
+import org.killbill.billing.plugin.easytax.core.EasyTaxTaxCodeChange.ChangeType;
+import org.killbill.billing.plugin.easytax.core.EasyTaxTaxCodeDiff;
+import org.killbill.billing.plugin.easytax.core.EasyTaxTaxCodeRollOver;
+import org.killbill.billing.plugin.easytax.core.EasyTaxTaxCodeValidator;
 import org.killbill.billing.plugin.easytax.core.EasyTaxTaxation;
+import org.killbill.billing.plugin.easytax.core.TaxCodePrecedence;
+import org.killbill.billing.plugin.easytax.core.TaxZoneHierarchy;
+import org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxCodeChanges;
+import org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxCodes;
+import org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxations;
+import org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxationsArchive;
+import org.killbill.billing.plugin.easytax.dao.gen.tables.records.EasytaxTaxCodeChangesRecord;
+import org.killbill.billing.plugin.easytax.dao.gen.tables.records.EasytaxTaxCodeStagesRecord;
 import org.killbill.billing.plugin.easytax.dao.gen.tables.records.EasytaxTaxCodesRecord;
 import org.killbill.billing.plugin.easytax.dao.gen.tables.records.EasytaxTaxationsRecord;
 import org.slf4j.Logger;
@@ -54,6 +94,11 @@ import com.fasterxml.jackson.core.type.TypeReference;
 /**
  * Jooq implementation of {@link EasyTaxDao}.
  * 
+ * <p>
+ * All modifications of tax codes are also appended to the tax code change log, in the same
+ * transaction as the modification itself.
+ * </p>
+ * 
  * @author matt
  * @version 2
  */
@@ -64,7 +109,14 @@ public class JooqEasyTaxDao extends PluginDao implements EasyTaxDao {
     };
     // CHECKSTYLE ON: LineLength
 
+    /** The maximum number of rows written per batched statement when writing tax codes. */
+    private static final int WRITE_BATCH_SIZE = 500;
+
+    /** The escape character used in product name {@literal LIKE} patterns. */
+    private static final char LIKE_ESCAPE = '!';
+
     private final Logger log = LoggerFactory.getLogger(getClass());
+    private final EasyTaxTaxCodeValidator taxCodeValidator = new EasyTaxTaxCodeValidator();
 
     public JooqEasyTaxDao(final DataSource dataSource) throws SQLException {
         super(dataSource);
@@ -85,74 +137,194 @@ public class JooqEasyTaxDao extends PluginDao implements EasyTaxDao {
         execute(dataSource.getConnection(), new WithConnectionCallback<Void>() {
             @Override
             public Void withConnection(final Connection conn) throws SQLException {
-                DSL.using(conn, dialect, settings).transaction(new TransactionalRunnable() {
-                    @Override
-                    public void run(final Configuration configuration) throws Exception {
-                        final DSLContext dslContext = DSL.using(configuration);
-                        for (EasyTaxTaxCode taxCode : taxCodes) {
-                            DateTime date = taxCode.getCreatedDate() != null
-                                    ? taxCode.getCreatedDate()
-                                    : now;
-                            saveTaxCodeInternal(taxCode, date, dslContext);
+                final DSLContext dslContext = DSL.using(conn, dialect, settings);
+                for (String kbTenantId : taxCodeTenantIds(taxCodes)) {
+                    insertTaxCodeTenant(kbTenantId, now, dslContext);
+                }
+                try {
+                    dslContext.transaction(new TransactionalRunnable() {
+                        @Override
+                        public void run(final Configuration configuration) throws Exception {
+                            saveTaxCodes(taxCodes, now, DSL.using(configuration));
                         }
-                    }
-                });
+                    });
+                } catch (DataAccessException e) {
+                    throw unwrapTaxCodeException(e);
+                }
                 return null;
             }
         });
     }
 
-    private void saveTaxCodeInternal(final EasyTaxTaxCode taxCode, final DateTime date,
+    private void saveTaxCodes(final Iterable<EasyTaxTaxCode> taxCodes, final DateTime now,
+            final DSLContext dslContext) throws EasyTaxTaxCodeOverlapException {
+        // lock in a consistent order, so concurrent saves for several tenants do not deadlock
+        for (String kbTenantId : taxCodeTenantIds(taxCodes)) {
+            lockTaxCodeTenant(kbTenantId, dslContext);
+        }
+        checkOverlaps(taxCodes, dslContext);
+        final Map<String, List<EasyTaxTaxCodeChange>> changes = new LinkedHashMap<>();
+        for (EasyTaxTaxCode taxCode : taxCodes) {
+            DateTime date = taxCode.getCreatedDate() != null ? taxCode.getCreatedDate() : now;
+            ChangeType type = saveTaxCodeInternal(taxCode, date, dslContext);
+            if (type == null) {
+                continue;
+            }
+            changes.computeIfAbsent(taxCode.getKbTenantId().toString(), k -> new ArrayList<>())
+                    .add(new EasyTaxTaxCodeChange(type, taxCode));
+        }
+        for (Map.Entry<String, List<EasyTaxTaxCodeChange>> me : changes.entrySet()) {
+            logTaxCodeChanges(me.getKey(), me.getValue(), dslContext);
+        }
+    }
+
+    private void checkOverlaps(final Iterable<EasyTaxTaxCode> taxCodes,
+            final DSLContext dslContext) throws EasyTaxTaxCodeOverlapException {
+        final Map<UUID, List<EasyTaxTaxCode>> tenantTaxCodes = new LinkedHashMap<>();
+        for (EasyTaxTaxCode taxCode : taxCodes) {
+            tenantTaxCodes.computeIfAbsent(taxCode.getKbTenantId(), k -> new ArrayList<>())
+                    .add(taxCode);
+        }
+        final List<String> overlaps = new ArrayList<>();
+        for (Map.Entry<UUID, List<EasyTaxTaxCode>> me : tenantTaxCodes.entrySet()) {
+            final Set<String> taxZones = new HashSet<>();
+            for (EasyTaxTaxCode taxCode : me.getValue()) {
+                taxZones.add(taxCode.getTaxZone());
+            }
+            // only need the existing tax codes of the affected tax zone, if there is just one
+            final String taxZone = (taxZones.size() == 1 ? taxZones.iterator().next() : null);
+            overlaps.addAll(taxCodeValidator.validateOverlaps(
+                    selectTaxCodesForUpdate(me.getKey().toString(), taxZone, dslContext),
+                    me.getValue()));
+        }
+        checkOverlaps(overlaps);
+    }
+
+    private static void checkOverlaps(final List<String> overlaps)
+            throws EasyTaxTaxCodeOverlapException {
+        if (!overlaps.isEmpty()) {
+            throw new EasyTaxTaxCodeOverlapException(overlaps);
+        }
+    }
+
+    /**
+     * Get the overlap or validation exception that caused a transaction to roll back.
+     * 
+     * @param e
+     *            the transaction exception
+     * @return {@code e} if it was not caused by an overlap or validation exception
+     * @throws EasyTaxTaxCodeOverlapException
+     *             if {@code e} was caused by an overlap exception
+     * @throws EasyTaxTaxCodeValidationException
+     *             if {@code e} was caused by a validation exception
+     */
+    private static DataAccessException unwrapTaxCodeException(final DataAccessException e)
+            throws EasyTaxTaxCodeOverlapException, EasyTaxTaxCodeValidationException {
+        if (e.getCause() instanceof EasyTaxTaxCodeOverlapException) {
+            throw (EasyTaxTaxCodeOverlapException) e.getCause();
+        }
+        if (e.getCause() instanceof EasyTaxTaxCodeValidationException) {
+            throw (EasyTaxTaxCodeValidationException) e.getCause();
+        }
+        return e;
+    }
+
+    /**
+     * Insert or update a tax code.
+     * 
+     * @param taxCode
+     *            the tax code to save
+     * @param date
+     *            the created date to save
+     * @param dslContext
+     *            the transaction context
+     * @return the change made, or {@literal null} if an identical tax code already exists
+     */
+    private ChangeType saveTaxCodeInternal(final EasyTaxTaxCode taxCode, final DateTime date,
             final DSLContext dslContext) {
+        final Condition identity = EASYTAX_TAX_CODES.KB_TENANT_ID
+                .equal(taxCode.getKbTenantId().toString())
+                .and(EASYTAX_TAX_CODES.TAX_ZONE.equal(taxCode.getTaxZone()))
+                .and(EASYTAX_TAX_CODES.PRODUCT_NAME.equal(taxCode.getProductName()))
+                .and(EASYTAX_TAX_CODES.TAX_CODE.equal(taxCode.getTaxCode()))
+                .and(EASYTAX_TAX_CODES.VALID_FROM_DATE.equal(taxCode.getValidFromDate()));
         int updateCount = dslContext.update(EASYTAX_TAX_CODES)
                 .set(EASYTAX_TAX_CODES.TAX_RATE, taxCode.getTaxRate())
                 .set(EASYTAX_TAX_CODES.VALID_FROM_DATE, taxCode.getValidFromDate())
                 .set(EASYTAX_TAX_CODES.VALID_TO_DATE, taxCode.getValidToDate())
-                .set(EASYTAX_TAX_CODES.CREATED_DATE, date)
-                .where(EASYTAX_TAX_CODES.KB_TENANT_ID.equal(taxCode.getKbTenantId().toString()))
-                .and(EASYTAX_TAX_CODES.TAX_ZONE.equal(taxCode.getTaxZone()))
-                .and(EASYTAX_TAX_CODES.PRODUCT_NAME.equal(taxCode.getProductName()))
-                .and(EASYTAX_TAX_CODES.TAX_CODE.equal(taxCode.getTaxCode()))
-                .and(EASYTAX_TAX_CODES.VALID_FROM_DATE.equal(taxCode.getValidFromDate())).execute();
-
-        if (updateCount < 1) {
-            dslContext
-                    .insertInto(EASYTAX_TAX_CODES, EASYTAX_TAX_CODES.KB_TENANT_ID,
-                            EASYTAX_TAX_CODES.TAX_ZONE, EASYTAX_TAX_CODES.PRODUCT_NAME,
-                            EASYTAX_TAX_CODES.TAX_CODE, EASYTAX_TAX_CODES.TAX_RATE,
-                            EASYTAX_TAX_CODES.VALID_FROM_DATE, EASYTAX_TAX_CODES.VALID_TO_DATE,
-                            EASYTAX_TAX_CODES.CREATED_DATE)
-                    .values(taxCode.getKbTenantId().toString(), taxCode.getTaxZone(),
-                            taxCode.getProductName(), taxCode.getTaxCode(), taxCode.getTaxRate(),
-                            taxCode.getValidFromDate(), taxCode.getValidToDate(), date)
-                    .execute();
+                .set(EASYTAX_TAX_CODES.CREATED_DATE, date).where(identity)
+                .and(EASYTAX_TAX_CODES.TAX_RATE.notEqual(taxCode.getTaxRate())
+                        .or(EASYTAX_TAX_CODES.VALID_TO_DATE
+                                .isDistinctFrom(taxCode.getValidToDate())))
+                .execute();
+        if (updateCount > 0) {
+            return ChangeType.UPDATE;
+        }
+        if (dslContext.fetchExists(EASYTAX_TAX_CODES, identity)) {
+            // nothing changed
+            return null;
         }
+
+        dslContext
+                .insertInto(EASYTAX_TAX_CODES, EASYTAX_TAX_CODES.KB_TENANT_ID,
+                        EASYTAX_TAX_CODES.TAX_ZONE, EASYTAX_TAX_CODES.PRODUCT_NAME,
+                        EASYTAX_TAX_CODES.TAX_CODE, EASYTAX_TAX_CODES.TAX_RATE,
+                        EASYTAX_TAX_CODES.VALID_FROM_DATE, EASYTAX_TAX_CODES.VALID_TO_DATE,
+                        EASYTAX_TAX_CODES.CREATED_DATE)
+                .values(taxCode.getKbTenantId().toString(), taxCode.getTaxZone(),
+                        taxCode.getProductName(), taxCode.getTaxCode(), taxCode.getTaxRate(),
+                        taxCode.getValidFromDate(), taxCode.getValidToDate(), date)
+                .execute();
+        return ChangeType.INSERT;
     }
 
     @Override
     public int removeTaxCodes(final UUID kbTenantId, @Nullable final String taxZone,
             @Nullable final String productName, @Nullable final String taxCode)
             throws SQLException {
+        final DateTime now = new DateTime();
         return execute(dataSource.getConnection(), new WithConnectionCallback<Integer>() {
             @Override
             public Integer withConnection(final Connection conn) throws SQLException {
-                DeleteConditionStep<EasytaxTaxCodesRecord> delete = DSL
-                        .using(conn, dialect, settings).delete(EASYTAX_TAX_CODES)
-                        .where(EASYTAX_TAX_CODES.KB_TENANT_ID.equal(kbTenantId.toString()));
-                if (taxZone != null) {
-                    delete = delete.and(EASYTAX_TAX_CODES.TAX_ZONE.equal(taxZone));
-                }
-                if (productName != null) {
-                    delete = delete.and(EASYTAX_TAX_CODES.PRODUCT_NAME.equal(productName));
-                }
-                if (taxCode != null) {
-                    delete = delete.and(EASYTAX_TAX_CODES.TAX_CODE.equal(taxCode));
-                }
-                return delete.execute();
+                final DSLContext dslContext = DSL.using(conn, dialect, settings);
+                insertTaxCodeTenant(kbTenantId.toString(), now, dslContext);
+                return dslContext
+                        .transactionResult(new TransactionalCallable<Integer>() {
+                            @Override
+                            public Integer run(final Configuration configuration)
+                                    throws Exception {
+                                return removeTaxCodes(kbTenantId.toString(), taxZone,
+                                        productName, taxCode, DSL.using(configuration));
+                            }
+                        });
             }
         });
     }
 
+    private int removeTaxCodes(final String kbTenantId, final String taxZone,
+            final String productName, final String taxCode, final DSLContext dslContext) {
+        lockTaxCodeTenant(kbTenantId, dslContext);
+        Condition condition = EASYTAX_TAX_CODES.KB_TENANT_ID.equal(kbTenantId);
+        if (taxZone != null) {
+            condition = condition.and(EASYTAX_TAX_CODES.TAX_ZONE.equal(taxZone));
+        }
+        if (productName != null) {
+            condition = condition.and(EASYTAX_TAX_CODES.PRODUCT_NAME.equal(productName));
+        }
+        if (taxCode != null) {
+            condition = condition.and(EASYTAX_TAX_CODES.TAX_CODE.equal(taxCode));
+        }
+        final List<EasyTaxTaxCode> deleted = dslContext.selectFrom(EASYTAX_TAX_CODES)
+                .where(condition).orderBy(EASYTAX_TAX_CODES.RECORD_ID.asc()).forUpdate().fetch()
+                .stream().map(JooqEasyTaxDao::taxCode).collect(Collectors.toList());
+        if (deleted.isEmpty()) {
+            return 0;
+        }
+        final int count = dslContext.deleteFrom(EASYTAX_TAX_CODES).where(condition).execute();
+        logTaxCodeChanges(kbTenantId, changes(ChangeType.DELETE, deleted), dslContext);
+        return count;
+    }
+
     @Override
     public List<EasyTaxTaxCode> getTaxCodes(final UUID kbTenantId, @Nullable final String taxZone,
             @Nullable final String productName, @Nullable String taxCode, @Nullable DateTime date)
@@ -190,7 +362,945 @@ public class JooqEasyTaxDao extends PluginDao implements EasyTaxDao {
         }
         List<EasyTaxTaxCode> results = new ArrayList<>();
         for (EasytaxTaxCodesRecord record : records) {
-            EasyTaxTaxCode result = new EasyTaxTaxCode();
+            results.add(taxCode(record));
+        }
+        return results;
+    }
+
+    /**
+     * Find the tax codes that apply to a tax zone and all the tax zones it is nested within.
+     *
+     * <p>
+     * The tax codes of all the tax zones, for both the product name and any product, are found
+     * with a single query. Without a product name, the tax codes of all products are found.
+     * </p>
+     */
+    @Override
+    public List<EasyTaxTaxCode> getApplicableTaxCodes(final UUID kbTenantId,
+            final TaxZoneHierarchy hierarchy, final String taxZone, final String productName,
+            final DateTime date) throws SQLException {
+        final List<String> zones = hierarchy.ancestry(taxZone);
+        List<EasytaxTaxCodesRecord> records = execute(dataSource.getConnection(),
+                new WithConnectionCallback<List<EasytaxTaxCodesRecord>>() {
+                    @Override
+                    public List<EasytaxTaxCodesRecord> withConnection(final Connection conn)
+                            throws SQLException {
+                        return DSL.using(conn, dialect, settings).selectFrom(EASYTAX_TAX_CODES)
+                                .where(EASYTAX_TAX_CODES.KB_TENANT_ID.equal(kbTenantId.toString()))
+                                .and(EASYTAX_TAX_CODES.TAX_ZONE.in(zones))
+                                .and(productName != null
+                                        ? EASYTAX_TAX_CODES.PRODUCT_NAME.in(productName,
+                                                EasyTaxTaxCode.ANY_PRODUCT_NAME)
+                                        : DSL.trueCondition())
+                                .and(EASYTAX_TAX_CODES.VALID_FROM_DATE.lessOrEqual(date))
+                                .and(EASYTAX_TAX_CODES.VALID_TO_DATE.isNull()
+                                        .or(EASYTAX_TAX_CODES.VALID_TO_DATE.greaterThan(date)))
+                                .fetch();
+                    }
+                });
+        if (records == null || records.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<EasyTaxTaxCode> results = new ArrayList<>(records.size());
+        for (EasytaxTaxCodesRecord record : records) {
+            results.add(taxCode(record));
+        }
+        if (productName != null) {
+            TaxCodePrecedence.removeOverridden(results);
+        }
+        // order by valid from date, then from the tax zone to its outermost ancestor, then
+        // product-specific before any product
+        results.sort(Comparator.comparing(EasyTaxTaxCode::getValidFromDate).reversed()
+                .thenComparingInt(code -> zones.indexOf(code.getTaxZone()))
+                .thenComparing(TaxCodePrecedence::isAnyProduct));
+        return results;
+    }
+
+    @Override
+    public List<EasyTaxTaxCode> getTaxCodes(final UUID kbTenantId, @Nullable final String taxZone,
+            @Nullable final String productName, @Nullable final String taxCode,
+            @Nullable final DateTime date, @Nullable final DateTime knownDate)
+            throws SQLException {
+        if (knownDate == null) {
+            return getTaxCodes(kbTenantId, taxZone, productName, taxCode, date);
+        }
+        List<EasytaxTaxCodesRecord> records = execute(dataSource.getConnection(),
+                new WithConnectionCallback<List<EasytaxTaxCodesRecord>>() {
+                    @Override
+                    public List<EasytaxTaxCodesRecord> withConnection(final Connection conn)
+                            throws SQLException {
+                        final DSLContext dslContext = DSL.using(conn, dialect, settings);
+                        checkKnownSince(kbTenantId.toString(), knownDate, dslContext);
+                        return selectKnownTaxCodes(kbTenantId.toString(), taxZone, productName,
+                                taxCode, date, knownDate, dslContext);
+                    }
+                });
+        if (records == null || records.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return records.stream().map(JooqEasyTaxDao::taxCode).collect(Collectors.toList());
+    }
+
+    /**
+     * Verify the tax code change log of a tenant describes its tax codes at a given time.
+     * 
+     * @param kbTenantId
+     *            the tenant ID
+     * @param knownDate
+     *            the date to verify
+     * @param dslContext
+     *            the context
+     * @throws EasyTaxTaxCodeValidationException
+     *             if {@code knownDate} is before the tenant's known since date
+     */
+    private static void checkKnownSince(final String kbTenantId, final DateTime knownDate,
+            final DSLContext dslContext) throws EasyTaxTaxCodeValidationException {
+        final DateTime knownSince = dslContext.select(EASYTAX_TAX_CODE_TENANTS.KNOWN_SINCE)
+                .from(EASYTAX_TAX_CODE_TENANTS)
+                .where(EASYTAX_TAX_CODE_TENANTS.KB_TENANT_ID.equal(kbTenantId))
+                .fetchOne(EASYTAX_TAX_CODE_TENANTS.KNOWN_SINCE);
+        if (knownSince != null && knownDate.isBefore(knownSince)) {
+            throw new EasyTaxTaxCodeValidationException(Collections.singletonList("Known date "
+                    + knownDate + " is before the tax code change log starts at " + knownSince));
+        }
+    }
+
+    /**
+     * Select the tax codes known at a given time from the tax code change log.
+     * 
+     * <p>
+     * The latest change of each tax code made at or before {@code knownDate} holds the state of
+     * that tax code at the time, unless it is a delete. Every change of the tenant made at or
+     * before {@code knownDate} that matches the optional criteria is scanned, and for each the
+     * absence of a later change of the same tax code is checked with an index range probe on the
+     * {@code easytax_tax_code_changes_code_idx} index. The cost of the query thus grows with the
+     * number of logged changes of the matching tax codes, not just the number of tax codes, which
+     * the change log retention (see {@link #removeTaxCodeChanges(DateTime, int)}) keeps in check.
+     * </p>
+     */
+    private static List<EasytaxTaxCodesRecord> selectKnownTaxCodes(final String kbTenantId,
+            final String taxZone, final String productName, final String taxCode,
+            final DateTime date, final DateTime knownDate, final DSLContext dslContext) {
+        final EasytaxTaxCodeChanges c = EASYTAX_TAX_CODE_CHANGES.as("c");
+        final EasytaxTaxCodeChanges later = EASYTAX_TAX_CODE_CHANGES.as("later");
+        SelectConditionStep<EasytaxTaxCodeChangesRecord> select = dslContext.selectFrom(c)
+                .where(c.KB_TENANT_ID.equal(kbTenantId))
+                .and(c.CREATED_DATE.lessOrEqual(knownDate));
+        if (taxZone != null) {
+            select = select.and(c.TAX_ZONE.equal(taxZone));
+        }
+        if (productName != null) {
+            select = select.and(c.PRODUCT_NAME.equal(productName));
+        }
+        if (taxCode != null) {
+            select = select.and(c.TAX_CODE.equal(taxCode));
+        }
+        select = select.andNotExists(dslContext.selectOne().from(later)
+                .where(later.KB_TENANT_ID.equal(c.KB_TENANT_ID))
+                .and(later.TAX_ZONE.equal(c.TAX_ZONE))
+                .and(later.PRODUCT_NAME.equal(c.PRODUCT_NAME))
+                .and(later.TAX_CODE.equal(c.TAX_CODE))
+                .and(later.VALID_FROM_DATE.equal(c.VALID_FROM_DATE))
+                .and(later.CHANGE_SEQ.greaterThan(c.CHANGE_SEQ))
+                .and(later.CREATED_DATE.lessOrEqual(knownDate)))
+                .and(c.CHANGE_TYPE.notEqual(ChangeType.DELETE.name()));
+        final List<EasytaxTaxCodeChangesRecord> records;
+        if (date != null) {
+            records = select.and(c.VALID_FROM_DATE.lessOrEqual(date))
+                    .and(c.VALID_TO_DATE.isNull().or(c.VALID_TO_DATE.greaterThan(date)))
+                    .orderBy(c.VALID_FROM_DATE.desc()).fetch();
+        } else {
+            records = select.orderBy(c.CHANGE_SEQ.asc()).fetch();
+        }
+        // map change columns into tax code records by name
+        return records.stream().map(r -> r.into(EASYTAX_TAX_CODES)).collect(Collectors.toList());
+    }
+
+    private static EasyTaxTaxCode taxCode(final EasytaxTaxCodesRecord record) {
+        EasyTaxTaxCode result = new EasyTaxTaxCode();
+        result.setCreatedDate(record.getCreatedDate());
+        result.setKbTenantId(UUID.fromString(record.getKbTenantId()));
+        result.setProductName(record.getProductName());
+        result.setTaxZone(record.getTaxZone());
+        result.setTaxCode(record.getTaxCode());
+        result.setTaxRate(record.getTaxRate());
+        result.setValidFromDate(record.getValidFromDate());
+        if (record.getValidToDate() != null) {
+            result.setValidToDate(record.getValidToDate());
+        }
+        return result;
+    }
+
+    @Override
+    public int importTaxCodes(final UUID kbTenantId, final Iterable<EasyTaxTaxCode> taxCodes,
+            final boolean replace) throws SQLException {
+        final DateTime now = new DateTime();
+        return execute(dataSource.getConnection(), new WithConnectionCallback<Integer>() {
+            @Override
+            public Integer withConnection(final Connection conn) throws SQLException {
+                final DSLContext dslContext = DSL.using(conn, dialect, settings);
+                insertTaxCodeTenant(kbTenantId.toString(), now, dslContext);
+                try {
+                    return dslContext
+                            .transactionResult(new TransactionalCallable<Integer>() {
+                                @Override
+                                public Integer run(final Configuration configuration)
+                                        throws Exception {
+                                    return importTaxCodes(kbTenantId.toString(), taxCodes,
+                                            replace, now, DSL.using(configuration));
+                                }
+                            });
+                } catch (DataAccessException e) {
+                    throw unwrapTaxCodeException(e);
+                }
+            }
+        });
+    }
+
+    private int importTaxCodes(final String kbTenantId, final Iterable<EasyTaxTaxCode> taxCodes,
+            final boolean replace, final DateTime now, final DSLContext dslContext)
+            throws EasyTaxTaxCodeOverlapException {
+        lockTaxCodeTenant(kbTenantId, dslContext);
+        final List<EasyTaxTaxCode> desired = new ArrayList<>();
+        for (EasyTaxTaxCode taxCode : taxCodes) {
+            desired.add(taxCode);
+        }
+        final List<EasyTaxTaxCode> current = selectTaxCodesForUpdate(kbTenantId, null,
+                dslContext);
+        final EasyTaxTaxCodeDiff diff;
+        if (replace) {
+            // only the tax codes missing from or different in the snapshot actually change
+            checkOverlaps(taxCodeValidator.validateOverlaps(desired));
+            diff = EasyTaxTaxCodeDiff.diff(current, desired);
+            deleteTaxCodes(kbTenantId, diff.getDeletes(), dslContext);
+        } else {
+            checkOverlaps(taxCodeValidator.validateOverlaps(current, desired));
+            diff = EasyTaxTaxCodeDiff.diff(current, desired);
+        }
+        updateTaxCodes(kbTenantId, diff.getUpdates(), now, dslContext);
+        insertTaxCodes(kbTenantId, diff.getInserts(), now, dslContext);
+        logTaxCodeChanges(kbTenantId, changes(diff), dslContext);
+        return diff.getInserts().size() + diff.getUpdates().size();
+    }
+
+    @Override
+    public EasyTaxTaxCodeDiff syncTaxCodes(final UUID kbTenantId, @Nullable final String taxZone,
+            final Iterable<EasyTaxTaxCode> taxCodes) throws SQLException {
+        final DateTime now = new DateTime();
+        return execute(dataSource.getConnection(),
+                new WithConnectionCallback<EasyTaxTaxCodeDiff>() {
+                    @Override
+                    public EasyTaxTaxCodeDiff withConnection(final Connection conn)
+                            throws SQLException {
+                        final DSLContext dslContext = DSL.using(conn, dialect, settings);
+                        insertTaxCodeTenant(kbTenantId.toString(), now, dslContext);
+                        try {
+                            return dslContext.transactionResult(
+                                    new TransactionalCallable<EasyTaxTaxCodeDiff>() {
+                                        @Override
+                                        public EasyTaxTaxCodeDiff run(
+                                                final Configuration configuration)
+                                                throws Exception {
+                                            return syncTaxCodes(kbTenantId.toString(), taxZone,
+                                                    taxCodes, now, DSL.using(configuration));
+                                        }
+                                    });
+                        } catch (DataAccessException e) {
+                            throw unwrapTaxCodeException(e);
+                        }
+                    }
+                });
+    }
+
+    private EasyTaxTaxCodeDiff syncTaxCodes(final String kbTenantId, final String taxZone,
+            final Iterable<EasyTaxTaxCode> taxCodes, final DateTime now,
+            final DSLContext dslContext) throws EasyTaxTaxCodeOverlapException {
+        lockTaxCodeTenant(kbTenantId, dslContext);
+        checkOverlaps(taxCodeValidator.validateOverlaps(taxCodes));
+        final EasyTaxTaxCodeDiff diff = EasyTaxTaxCodeDiff
+                .diff(selectTaxCodesForUpdate(kbTenantId, taxZone, dslContext), taxCodes);
+        deleteTaxCodes(kbTenantId, diff.getDeletes(), dslContext);
+        updateTaxCodes(kbTenantId, diff.getUpdates(), now, dslContext);
+        insertTaxCodes(kbTenantId, diff.getInserts(), now, dslContext);
+        logTaxCodeChanges(kbTenantId, changes(diff), dslContext);
+        return diff;
+    }
+
+    private List<EasyTaxTaxCode> selectTaxCodesForUpdate(final String kbTenantId,
+            final String taxZone, final DSLContext dslContext) {
+        SelectConditionStep<EasytaxTaxCodesRecord> select = dslContext
+                .selectFrom(EASYTAX_TAX_CODES)
+                .where(EASYTAX_TAX_CODES.KB_TENANT_ID.equal(kbTenantId));
+        if (taxZone != null) {
+            select = select.and(EASYTAX_TAX_CODES.TAX_ZONE.equal(taxZone));
+        }
+        return select.orderBy(EASYTAX_TAX_CODES.RECORD_ID.asc()).forUpdate().fetch().stream()
+                .map(JooqEasyTaxDao::taxCode).collect(Collectors.toList());
+    }
+
+    private static Set<String> taxCodeTenantIds(final Iterable<EasyTaxTaxCode> taxCodes) {
+        final Set<String> result = new TreeSet<>();
+        for (EasyTaxTaxCode taxCode : taxCodes) {
+            result.add(taxCode.getKbTenantId().toString());
+        }
+        return result;
+    }
+
+    /**
+     * Add the tax code lock row of a tenant, if it does not already exist.
+     * 
+     * <p>
+     * This must be called outside of the transaction that then calls
+     * {@link #lockTaxCodeTenant(String, DSLContext)}, so that concurrent first changes to the tax
+     * codes of a tenant do not fail on the unique tenant index.
+     * </p>
+     * 
+     * @param kbTenantId
+     *            the tenant ID
+     * @param now
+     *            the date to use as the creation date
+     * @param dslContext
+     *            the context, not in a transaction
+     */
+    private void insertTaxCodeTenant(final String kbTenantId, final DateTime now,
+            final DSLContext dslContext) {
+        if (dslContext.fetchExists(dslContext.selectOne().from(EASYTAX_TAX_CODE_TENANTS)
+                .where(EASYTAX_TAX_CODE_TENANTS.KB_TENANT_ID.equal(kbTenantId)))) {
+            return;
+        }
+        try {
+            // continue the sequence of any changes logged before the row was added
+            dslContext
+                    .insertInto(EASYTAX_TAX_CODE_TENANTS, EASYTAX_TAX_CODE_TENANTS.KB_TENANT_ID,
+                            EASYTAX_TAX_CODE_TENANTS.CHANGE_SEQ,
+                            EASYTAX_TAX_CODE_TENANTS.CREATED_DATE)
+                    .select(dslContext
+                            .select(DSL.val(kbTenantId, EASYTAX_TAX_CODE_TENANTS.KB_TENANT_ID),
+                                    DSL.coalesce(DSL.max(EASYTAX_TAX_CODE_CHANGES.CHANGE_SEQ),
+                                            DSL.val(0L, EASYTAX_TAX_CODE_CHANGES.CHANGE_SEQ)),
+                                    DSL.val(now, EASYTAX_TAX_CODE_TENANTS.CREATED_DATE))
+                            .from(EASYTAX_TAX_CODE_CHANGES)
+                            .where(EASYTAX_TAX_CODE_CHANGES.KB_TENANT_ID.equal(kbTenantId)))
+                    .execute();
+        } catch (DataAccessException e) {
+            if (e.sqlStateClass() != SQLStateClass.C23_INTEGRITY_CONSTRAINT_VIOLATION) {
+                throw e;
+            }
+            // added by a concurrent change
+        }
+    }
+
+    /**
+     * Lock the tax codes of a tenant until the end of the current transaction.
+     * 
+     * <p>
+     * Locking the existing tax code rows of a tenant does not stop other transactions from
+     * inserting new ones, so every transaction that changes the tax codes of a tenant starts by
+     * locking the tenant's row added by {@link #insertTaxCodeTenant(String, DateTime, DSLContext)}.
+     * The same row holds the last change log sequence of the tenant, which
+     * {@link #logTaxCodeChanges(String, List, DSLContext)} can thus safely increment.
+     * </p>
+     * 
+     * @param kbTenantId
+     *            the tenant ID
+     * @param dslContext
+     *            the transaction context
+     */
+    private void lockTaxCodeTenant(final String kbTenantId, final DSLContext dslContext) {
+        dslContext.select(EASYTAX_TAX_CODE_TENANTS.RECORD_ID).from(EASYTAX_TAX_CODE_TENANTS)
+                .where(EASYTAX_TAX_CODE_TENANTS.KB_TENANT_ID.equal(kbTenantId)).forUpdate()
+                .fetch();
+    }
+
+    private void deleteTaxCodes(final String kbTenantId, final List<EasyTaxTaxCode> taxCodes,
+            final DSLContext dslContext) {
+        final List<Query> deletes = new ArrayList<>();
+        for (EasyTaxTaxCode taxCode : taxCodes) {
+            deletes.add(dslContext.deleteFrom(EASYTAX_TAX_CODES)
+                    .where(EASYTAX_TAX_CODES.KB_TENANT_ID.equal(kbTenantId))
+                    .and(EASYTAX_TAX_CODES.TAX_ZONE.equal(taxCode.getTaxZone()))
+                    .and(EASYTAX_TAX_CODES.PRODUCT_NAME.equal(taxCode.getProductName()))
+                    .and(EASYTAX_TAX_CODES.TAX_CODE.equal(taxCode.getTaxCode()))
+                    .and(EASYTAX_TAX_CODES.VALID_FROM_DATE.equal(taxCode.getValidFromDate())));
+            if (deletes.size() >= WRITE_BATCH_SIZE) {
+                dslContext.batch(deletes).execute();
+                deletes.clear();
+            }
+        }
+        if (!deletes.isEmpty()) {
+            dslContext.batch(deletes).execute();
+        }
+    }
+
+    private void updateTaxCodes(final String kbTenantId, final List<EasyTaxTaxCode> taxCodes,
+            final DateTime now, final DSLContext dslContext) {
+        final List<Query> updates = new ArrayList<>();
+        for (EasyTaxTaxCode taxCode : taxCodes) {
+            updates.add(dslContext.update(EASYTAX_TAX_CODES)
+                    .set(EASYTAX_TAX_CODES.TAX_RATE, taxCode.getTaxRate())
+                    .set(EASYTAX_TAX_CODES.VALID_TO_DATE, taxCode.getValidToDate())
+                    .set(EASYTAX_TAX_CODES.CREATED_DATE,
+                            taxCode.getCreatedDate() != null ? taxCode.getCreatedDate() : now)
+                    .where(EASYTAX_TAX_CODES.KB_TENANT_ID.equal(kbTenantId))
+                    .and(EASYTAX_TAX_CODES.TAX_ZONE.equal(taxCode.getTaxZone()))
+                    .and(EASYTAX_TAX_CODES.PRODUCT_NAME.equal(taxCode.getProductName()))
+                    .and(EASYTAX_TAX_CODES.TAX_CODE.equal(taxCode.getTaxCode()))
+                    .and(EASYTAX_TAX_CODES.VALID_FROM_DATE.equal(taxCode.getValidFromDate())));
+            if (updates.size() >= WRITE_BATCH_SIZE) {
+                dslContext.batch(updates).execute();
+                updates.clear();
+            }
+        }
+        if (!updates.isEmpty()) {
+            dslContext.batch(updates).execute();
+        }
+    }
+
+    private void insertTaxCodes(final String kbTenantId, final List<EasyTaxTaxCode> taxCodes,
+            final DateTime now, final DSLContext dslContext) {
+        for (int i = 0, len = taxCodes.size(); i < len; i += WRITE_BATCH_SIZE) {
+            // CHECKSTYLE OFF: LineLength
+            InsertValuesStep8<EasytaxTaxCodesRecord, String, String, String, String, BigDecimal, DateTime, DateTime, DateTime> insert = dslContext
+                    .insertInto(EASYTAX_TAX_CODES, EASYTAX_TAX_CODES.KB_TENANT_ID,
+                            EASYTAX_TAX_CODES.TAX_ZONE, EASYTAX_TAX_CODES.PRODUCT_NAME,
+                            EASYTAX_TAX_CODES.TAX_CODE, EASYTAX_TAX_CODES.TAX_RATE,
+                            EASYTAX_TAX_CODES.VALID_FROM_DATE, EASYTAX_TAX_CODES.VALID_TO_DATE,
+                            EASYTAX_TAX_CODES.CREATED_DATE);
+            // CHECKSTYLE ON: LineLength
+            for (EasyTaxTaxCode taxCode : taxCodes.subList(i,
+                    Math.min(i + WRITE_BATCH_SIZE, len))) {
+                insert = insert.values(kbTenantId, taxCode.getTaxZone(), taxCode.getProductName(),
+                        taxCode.getTaxCode(), taxCode.getTaxRate(), taxCode.getValidFromDate(),
+                        taxCode.getValidToDate(),
+                        taxCode.getCreatedDate() != null ? taxCode.getCreatedDate() : now);
+            }
+            insert.execute();
+        }
+    }
+
+    @Override
+    public int copyTaxCodes(final UUID fromKbTenantId, final UUID toKbTenantId,
+            final boolean replace) throws SQLException {
+        final DateTime now = new DateTime();
+        return execute(dataSource.getConnection(), new WithConnectionCallback<Integer>() {
+            @Override
+            public Integer withConnection(final Connection conn) throws SQLException {
+                final DSLContext dslContext = DSL.using(conn, dialect, settings);
+                insertTaxCodeTenant(toKbTenantId.toString(), now, dslContext);
+                try {
+                    return dslContext
+                            .transactionResult(new TransactionalCallable<Integer>() {
+                                @Override
+                                public Integer run(final Configuration configuration)
+                                        throws Exception {
+                                    return copyTaxCodes(fromKbTenantId.toString(),
+                                            toKbTenantId.toString(), replace, now,
+                                            DSL.using(configuration));
+                                }
+                            });
+                } catch (DataAccessException e) {
+                    throw unwrapTaxCodeException(e);
+                }
+            }
+        });
+    }
+
+    private int copyTaxCodes(final String fromKbTenantId, final String toKbTenantId,
+            final boolean replace, final DateTime now, final DSLContext dslContext)
+            throws EasyTaxTaxCodeOverlapException {
+        lockTaxCodeTenant(toKbTenantId, dslContext);
+        final List<EasyTaxTaxCodeChange> changes = new ArrayList<>();
+        if (replace) {
+            changes.addAll(changes(ChangeType.DELETE,
+                    selectTaxCodesForUpdate(toKbTenantId, null, dslContext)));
+            dslContext.deleteFrom(EASYTAX_TAX_CODES)
+                    .where(EASYTAX_TAX_CODES.KB_TENANT_ID.equal(toKbTenantId)).execute();
+        }
+        final EasytaxTaxCodes src = EASYTAX_TAX_CODES.as("src");
+        final EasytaxTaxCodes dest = EASYTAX_TAX_CODES.as("dest");
+        SelectConditionStep<EasytaxTaxCodesRecord> select = dslContext.selectFrom(src)
+                .where(src.KB_TENANT_ID.equal(fromKbTenantId));
+        if (!replace) {
+            select = select.andNotExists(dslContext.selectOne().from(dest)
+                    .where(dest.KB_TENANT_ID.equal(toKbTenantId))
+                    .and(dest.TAX_ZONE.equal(src.TAX_ZONE))
+                    .and(dest.PRODUCT_NAME.equal(src.PRODUCT_NAME))
+                    .and(dest.TAX_CODE.equal(src.TAX_CODE))
+                    .and(dest.VALID_FROM_DATE.equal(src.VALID_FROM_DATE)));
+        }
+        // read the copied tax codes into memory so they can be added to the change log
+        final List<EasyTaxTaxCode> copied = select.orderBy(src.RECORD_ID.asc()).fetch().stream()
+                .map(JooqEasyTaxDao::taxCode).collect(Collectors.toList());
+        for (EasyTaxTaxCode taxCode : copied) {
+            taxCode.setCreatedDate(now);
+        }
+        if (!replace) {
+            // copied tax codes are merged with the existing ones, which they might overlap
+            checkOverlaps(taxCodeValidator.validateOverlaps(
+                    selectTaxCodesForUpdate(toKbTenantId, null, dslContext), copied));
+        }
+        insertTaxCodes(toKbTenantId, copied, now, dslContext);
+        changes.addAll(changes(ChangeType.INSERT, copied));
+        logTaxCodeChanges(toKbTenantId, changes, dslContext);
+        return copied.size();
+    }
+
+    @Override
+    public int stageTaxCodes(final UUID kbTenantId, final UUID stageId,
+            final Iterable<EasyTaxTaxCode> taxCodes) throws SQLException {
+        final DateTime now = new DateTime();
+        final List<EasyTaxTaxCode> codes = new ArrayList<>();
+        for (EasyTaxTaxCode taxCode : taxCodes) {
+            codes.add(taxCode);
+        }
+        if (codes.isEmpty()) {
+            return 0;
+        }
+        return execute(dataSource.getConnection(), new WithConnectionCallback<Integer>() {
+            @Override
+            public Integer withConnection(final Connection conn) throws SQLException {
+                return DSL.using(conn, dialect, settings)
+                        .transactionResult(new TransactionalCallable<Integer>() {
+                            @Override
+                            public Integer run(final Configuration configuration)
+                                    throws Exception {
+                                return stageTaxCodes(kbTenantId.toString(), stageId.toString(),
+                                        codes, now, DSL.using(configuration));
+                            }
+                        });
+            }
+        });
+    }
+
+    private int stageTaxCodes(final String kbTenantId, final String stageId,
+            final List<EasyTaxTaxCode> taxCodes, final DateTime now, final DSLContext dslContext) {
+        int count = 0;
+        for (int i = 0, len = taxCodes.size(); i < len; i += WRITE_BATCH_SIZE) {
+            // CHECKSTYLE OFF: LineLength
+            InsertValuesStep9<EasytaxTaxCodeStagesRecord, String, String, String, String, String, BigDecimal, DateTime, DateTime, DateTime> insert = dslContext
+                    .insertInto(EASYTAX_TAX_CODE_STAGES, EASYTAX_TAX_CODE_STAGES.KB_TENANT_ID,
+                            EASYTAX_TAX_CODE_STAGES.STAGE_ID, EASYTAX_TAX_CODE_STAGES.TAX_ZONE,
+                            EASYTAX_TAX_CODE_STAGES.PRODUCT_NAME, EASYTAX_TAX_CODE_STAGES.TAX_CODE,
+                            EASYTAX_TAX_CODE_STAGES.TAX_RATE,
+                            EASYTAX_TAX_CODE_STAGES.VALID_FROM_DATE,
+                            EASYTAX_TAX_CODE_STAGES.VALID_TO_DATE,
+                            EASYTAX_TAX_CODE_STAGES.CREATED_DATE);
+            // CHECKSTYLE ON: LineLength
+            for (EasyTaxTaxCode taxCode : taxCodes.subList(i,
+                    Math.min(i + WRITE_BATCH_SIZE, len))) {
+                insert = insert.values(kbTenantId, stageId, taxCode.getTaxZone(),
+                        taxCode.getProductName(), taxCode.getTaxCode(), taxCode.getTaxRate(),
+                        taxCode.getValidFromDate(), taxCode.getValidToDate(),
+                        taxCode.getCreatedDate() != null ? taxCode.getCreatedDate() : now);
+            }
+            count += insert.execute();
+        }
+        return count;
+    }
+
+    @Override
+    public List<EasyTaxTaxCode> getStagedTaxCodes(final UUID kbTenantId, final UUID stageId)
+            throws SQLException {
+        List<EasytaxTaxCodesRecord> records = execute(dataSource.getConnection(),
+                new WithConnectionCallback<List<EasytaxTaxCodesRecord>>() {
+                    @Override
+                    public List<EasytaxTaxCodesRecord> withConnection(final Connection conn)
+                            throws SQLException {
+                        // map stage columns into tax code records by name
+                        return DSL.using(conn, dialect, settings)
+                                .selectFrom(EASYTAX_TAX_CODE_STAGES)
+                                .where(EASYTAX_TAX_CODE_STAGES.KB_TENANT_ID
+                                        .equal(kbTenantId.toString()))
+                                .and(EASYTAX_TAX_CODE_STAGES.STAGE_ID.equal(stageId.toString()))
+                                .orderBy(EASYTAX_TAX_CODE_STAGES.RECORD_ID.asc()).fetch()
+                                .into(EASYTAX_TAX_CODES);
+                    }
+                });
+        if (records == null || records.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return records.stream().map(JooqEasyTaxDao::taxCode).collect(Collectors.toList());
+    }
+
+    @Override
+    public int activateTaxCodeStage(final UUID kbTenantId, final UUID stageId)
+            throws SQLException {
+        final DateTime now = new DateTime();
+        return execute(dataSource.getConnection(), new WithConnectionCallback<Integer>() {
+            @Override
+            public Integer withConnection(final Connection conn) throws SQLException {
+                final DSLContext dslContext = DSL.using(conn, dialect, settings);
+                insertTaxCodeTenant(kbTenantId.toString(), now, dslContext);
+                try {
+                    return dslContext
+                            .transactionResult(new TransactionalCallable<Integer>() {
+                                @Override
+                                public Integer run(final Configuration configuration)
+                                        throws Exception {
+                                    return activateTaxCodeStage(kbTenantId.toString(),
+                                            stageId.toString(), DSL.using(configuration));
+                                }
+                            });
+                } catch (DataAccessException e) {
+                    throw unwrapTaxCodeException(e);
+                }
+            }
+        });
+    }
+
+    private int activateTaxCodeStage(final String kbTenantId, final String stageId,
+            final DSLContext dslContext) throws EasyTaxTaxCodeValidationException {
+        lockTaxCodeTenant(kbTenantId, dslContext);
+        final Condition stageCondition = EASYTAX_TAX_CODE_STAGES.KB_TENANT_ID.equal(kbTenantId)
+                .and(EASYTAX_TAX_CODE_STAGES.STAGE_ID.equal(stageId));
+        final List<EasyTaxTaxCode> staged = dslContext.selectFrom(EASYTAX_TAX_CODE_STAGES)
+                .where(stageCondition).orderBy(EASYTAX_TAX_CODE_STAGES.RECORD_ID.asc())
+                .forUpdate().fetch().into(EASYTAX_TAX_CODES).stream().map(JooqEasyTaxDao::taxCode)
+                .collect(Collectors.toList());
+        if (staged.isEmpty()) {
+            return 0;
+        }
+        // validate what is activated, not what was read before the stage rows were locked; the
+        // staged tax codes replace all others, so this includes checking them for overlaps
+        final List<String> errors = taxCodeValidator.validate(staged);
+        if (!errors.isEmpty()) {
+            throw new EasyTaxTaxCodeValidationException(errors);
+        }
+        final List<EasyTaxTaxCodeChange> changes = changes(ChangeType.DELETE,
+                selectTaxCodesForUpdate(kbTenantId, null, dslContext));
+        dslContext.deleteFrom(EASYTAX_TAX_CODES)
+                .where(EASYTAX_TAX_CODES.KB_TENANT_ID.equal(kbTenantId)).execute();
+        int count = dslContext
+                .insertInto(EASYTAX_TAX_CODES, EASYTAX_TAX_CODES.KB_TENANT_ID,
+                        EASYTAX_TAX_CODES.TAX_ZONE, EASYTAX_TAX_CODES.PRODUCT_NAME,
+                        EASYTAX_TAX_CODES.TAX_CODE, EASYTAX_TAX_CODES.TAX_RATE,
+                        EASYTAX_TAX_CODES.VALID_FROM_DATE, EASYTAX_TAX_CODES.VALID_TO_DATE,
+                        EASYTAX_TAX_CODES.CREATED_DATE)
+                .select(dslContext
+                        .select(EASYTAX_TAX_CODE_STAGES.KB_TENANT_ID,
+                                EASYTAX_TAX_CODE_STAGES.TAX_ZONE,
+                                EASYTAX_TAX_CODE_STAGES.PRODUCT_NAME,
+                                EASYTAX_TAX_CODE_STAGES.TAX_CODE, EASYTAX_TAX_CODE_STAGES.TAX_RATE,
+                                EASYTAX_TAX_CODE_STAGES.VALID_FROM_DATE,
+                                EASYTAX_TAX_CODE_STAGES.VALID_TO_DATE,
+                                EASYTAX_TAX_CODE_STAGES.CREATED_DATE)
+                        .from(EASYTAX_TAX_CODE_STAGES).where(stageCondition)
+                        .orderBy(EASYTAX_TAX_CODE_STAGES.RECORD_ID.asc()))
+                .execute();
+        dslContext.deleteFrom(EASYTAX_TAX_CODE_STAGES).where(stageCondition).execute();
+        changes.addAll(changes(ChangeType.INSERT, staged));
+        logTaxCodeChanges(kbTenantId, changes, dslContext);
+        log.info("Activated {} staged tax codes from stage {} for tenant {}", count, stageId,
+                kbTenantId);
+        return count;
+    }
+
+    @Override
+    public int removeTaxCodeStage(final UUID kbTenantId, final UUID stageId)
+            throws SQLException {
+        return execute(dataSource.getConnection(), new WithConnectionCallback<Integer>() {
+            @Override
+            public Integer withConnection(final Connection conn) throws SQLException {
+                return DSL.using(conn, dialect, settings).deleteFrom(EASYTAX_TAX_CODE_STAGES)
+                        .where(EASYTAX_TAX_CODE_STAGES.KB_TENANT_ID.equal(kbTenantId.toString()))
+                        .and(EASYTAX_TAX_CODE_STAGES.STAGE_ID.equal(stageId.toString()))
+                        .execute();
+            }
+        });
+    }
+
+    @Override
+    public int removeTaxCodeStages(final DateTime olderThan, final int maxStages)
+            throws SQLException {
+        return execute(dataSource.getConnection(), new WithConnectionCallback<Integer>() {
+            @Override
+            public Integer withConnection(final Connection conn) throws SQLException {
+                return DSL.using(conn, dialect, settings)
+                        .transactionResult(new TransactionalCallable<Integer>() {
+                            @Override
+                            public Integer run(final Configuration configuration)
+                                    throws Exception {
+                                return removeTaxCodeStages(olderThan, maxStages,
+                                        DSL.using(configuration));
+                            }
+                        });
+            }
+        });
+    }
+
+    private int removeTaxCodeStages(final DateTime olderThan, final int maxStages,
+            final DSLContext dslContext) {
+        // find stages with no staged tax codes newer than the expiry date
+        List<Record2<String, String>> stages = dslContext
+                .select(EASYTAX_TAX_CODE_STAGES.KB_TENANT_ID, EASYTAX_TAX_CODE_STAGES.STAGE_ID)
+                .from(EASYTAX_TAX_CODE_STAGES)
+                .groupBy(EASYTAX_TAX_CODE_STAGES.KB_TENANT_ID, EASYTAX_TAX_CODE_STAGES.STAGE_ID)
+                .having(DSL.max(EASYTAX_TAX_CODE_STAGES.CREATED_DATE).lessThan(olderThan))
+                .limit(maxStages).fetch();
+        if (stages.isEmpty()) {
+            return 0;
+        }
+        final List<Row2<String, String>> stageRows = stages.stream()
+                .map(r -> DSL.row(r.value1(), r.value2())).collect(Collectors.toList());
+
+        // the created date condition guards against removing tax codes staged since the query
+        int count = dslContext.deleteFrom(EASYTAX_TAX_CODE_STAGES)
+                .where(DSL.row(EASYTAX_TAX_CODE_STAGES.KB_TENANT_ID,
+                        EASYTAX_TAX_CODE_STAGES.STAGE_ID).in(stageRows))
+                .and(EASYTAX_TAX_CODE_STAGES.CREATED_DATE.lessThan(olderThan)).execute();
+        log.debug("Removed {} staged tax codes for {} stages older than {}", count,
+                stages.size(), olderThan);
+        return count;
+    }
+
+    @Override
+    public int rollOverTaxCodes(final UUID kbTenantId, final EasyTaxTaxCodeRollOver rollOver)
+            throws SQLException {
+        final DateTime now = new DateTime();
+        return execute(dataSource.getConnection(), new WithConnectionCallback<Integer>() {
+            @Override
+            public Integer withConnection(final Connection conn) throws SQLException {
+                final DSLContext dslContext = DSL.using(conn, dialect, settings);
+                insertTaxCodeTenant(kbTenantId.toString(), now, dslContext);
+                try {
+                    return dslContext
+                            .transactionResult(new TransactionalCallable<Integer>() {
+                                @Override
+                                public Integer run(final Configuration configuration)
+                                        throws Exception {
+                                    return rollOverTaxCodes(kbTenantId.toString(), rollOver,
+                                            now, DSL.using(configuration));
+                                }
+                            });
+                } catch (DataAccessException e) {
+                    throw unwrapTaxCodeException(e);
+                }
+            }
+        });
+    }
+
+    private int rollOverTaxCodes(final String kbTenantId, final EasyTaxTaxCodeRollOver rollOver,
+            final DateTime now, final DSLContext dslContext) throws EasyTaxTaxCodeOverlapException {
+        lockTaxCodeTenant(kbTenantId, dslContext);
+        final DateTime effectiveDate = rollOver.getEffectiveDate();
+        final EasytaxTaxCodes src = EASYTAX_TAX_CODES.as("src");
+        final Field<BigDecimal> taxRate = (rollOver.getTaxRate() != null
+                ? DSL.val(rollOver.getTaxRate(), EASYTAX_TAX_CODES.TAX_RATE)
+                : src.TAX_RATE.add(rollOver.getTaxRateDelta()));
+        final List<EasyTaxTaxCode> affected = dslContext.selectFrom(EASYTAX_TAX_CODES)
+                .where(rollOverCondition(EASYTAX_TAX_CODES, kbTenantId, rollOver))
+                .orderBy(EASYTAX_TAX_CODES.RECORD_ID.asc()).forUpdate().fetch().stream()
+                .map(JooqEasyTaxDao::taxCode).collect(Collectors.toList());
+        if (affected.isEmpty()) {
+            return 0;
+        }
+
+        // a tax code valid from the effective date or later, such as the successor of an earlier
+        // roll over with the same effective date, would overlap the open-ended successor
+        final EasytaxTaxCodes later = EASYTAX_TAX_CODES.as("later");
+        final List<String> conflicts = dslContext
+                .selectDistinct(later.TAX_ZONE, later.PRODUCT_NAME, later.TAX_CODE,
+                        later.VALID_FROM_DATE)
+                .from(later).join(src)
+                .on(src.KB_TENANT_ID.equal(later.KB_TENANT_ID))
+                .and(src.TAX_ZONE.equal(later.TAX_ZONE))
+                .and(src.PRODUCT_NAME.equal(later.PRODUCT_NAME))
+                .and(src.TAX_CODE.equal(later.TAX_CODE))
+                .where(rollOverCondition(src, kbTenantId, rollOver))
+                .and(later.VALID_FROM_DATE.greaterOrEqual(effectiveDate))
+                .orderBy(later.TAX_ZONE, later.PRODUCT_NAME, later.TAX_CODE,
+                        later.VALID_FROM_DATE)
+                .fetch(r -> "Roll over of " + r.value1() + "/" + r.value2() + "/" + r.value3()
+                        + " at " + effectiveDate + " overlaps tax code valid from "
+                        + r.value4());
+        checkOverlaps(conflicts);
+
+        final List<EasyTaxTaxCodeChange> changes = new ArrayList<>(affected.size() * 2);
+        for (EasyTaxTaxCode taxCode : affected) {
+            EasyTaxTaxCodeChange change = new EasyTaxTaxCodeChange(ChangeType.UPDATE, taxCode);
+            change.setValidToDate(effectiveDate);
+            changes.add(change);
+        }
+        for (EasyTaxTaxCode taxCode : affected) {
+            EasyTaxTaxCodeChange change = new EasyTaxTaxCodeChange(ChangeType.INSERT, taxCode);
+            change.setTaxRate(rollOver.getTaxRate() != null ? rollOver.getTaxRate()
+                    : taxCode.getTaxRate().add(rollOver.getTaxRateDelta()));
+            change.setValidFromDate(effectiveDate);
+            change.setValidToDate(null);
+            changes.add(change);
+        }
+        checkOverlaps(taxCodeValidator.validateOverlaps(
+                selectTaxCodesForUpdate(kbTenantId, rollOver.getTaxZone(), dslContext), changes));
+
+        // insert successors first; they are valid from the effective date so are not closed below
+        final int inserted = dslContext
+                .insertInto(EASYTAX_TAX_CODES, EASYTAX_TAX_CODES.KB_TENANT_ID,
+                        EASYTAX_TAX_CODES.TAX_ZONE, EASYTAX_TAX_CODES.PRODUCT_NAME,
+                        EASYTAX_TAX_CODES.TAX_CODE, EASYTAX_TAX_CODES.TAX_RATE,
+                        EASYTAX_TAX_CODES.VALID_FROM_DATE, EASYTAX_TAX_CODES.CREATED_DATE)
+                .select(dslContext
+                        .select(src.KB_TENANT_ID, src.TAX_ZONE, src.PRODUCT_NAME, src.TAX_CODE,
+                                taxRate, DSL.val(effectiveDate, EASYTAX_TAX_CODES.VALID_FROM_DATE),
+                                DSL.val(now, EASYTAX_TAX_CODES.CREATED_DATE))
+                        .from(src).where(rollOverCondition(src, kbTenantId, rollOver))
+                        .orderBy(src.RECORD_ID.asc()))
+                .execute();
+        if (inserted < 1) {
+            return 0;
+        }
+        final int closed = dslContext.update(EASYTAX_TAX_CODES)
+                .set(EASYTAX_TAX_CODES.VALID_TO_DATE, effectiveDate)
+                .where(rollOverCondition(EASYTAX_TAX_CODES, kbTenantId, rollOver)).execute();
+        logTaxCodeChanges(kbTenantId, changes, dslContext);
+        log.info("Rolled over {} tax codes for tenant {} at {}", closed, kbTenantId,
+                effectiveDate);
+        return closed;
+    }
+
+    private static Condition rollOverCondition(final EasytaxTaxCodes table,
+            final String kbTenantId, final EasyTaxTaxCodeRollOver rollOver) {
+        Condition condition = table.KB_TENANT_ID.equal(kbTenantId)
+                .and(table.VALID_TO_DATE.isNull())
+                .and(table.VALID_FROM_DATE.lessThan(rollOver.getEffectiveDate()));
+        if (rollOver.getTaxZone() != null) {
+            condition = condition.and(table.TAX_ZONE.equal(rollOver.getTaxZone()));
+        }
+        if (rollOver.isProductNamePattern()) {
+            condition = condition.and(table.PRODUCT_NAME
+                    .like(likePattern(rollOver.getProductName()), LIKE_ESCAPE));
+        } else if (rollOver.getProductName() != null) {
+            condition = condition.and(table.PRODUCT_NAME.equal(rollOver.getProductName()));
+        }
+        if (rollOver.getTaxCode() != null) {
+            condition = condition.and(table.TAX_CODE.equal(rollOver.getTaxCode()));
+        }
+        return condition;
+    }
+
+    private static String likePattern(final String pattern) {
+        final StringBuilder buf = new StringBuilder(pattern.length() + 8);
+        for (int i = 0, len = pattern.length(); i < len; i++) {
+            final char c = pattern.charAt(i);
+            if (c == EasyTaxTaxCodeRollOver.WILDCARD) {
+                buf.append('%');
+            } else {
+                if (c == '%' || c == '_' || c == LIKE_ESCAPE) {
+                    buf.append(LIKE_ESCAPE);
+                }
+                buf.append(c);
+            }
+        }
+        return buf.toString();
+    }
+
+    private static List<EasyTaxTaxCodeChange> changes(final ChangeType type,
+            final List<EasyTaxTaxCode> taxCodes) {
+        final List<EasyTaxTaxCodeChange> changes = new ArrayList<>(taxCodes.size());
+        for (EasyTaxTaxCode taxCode : taxCodes) {
+            changes.add(new EasyTaxTaxCodeChange(type, taxCode));
+        }
+        return changes;
+    }
+
+    private static List<EasyTaxTaxCodeChange> changes(final EasyTaxTaxCodeDiff diff) {
+        final List<EasyTaxTaxCodeChange> changes = changes(ChangeType.DELETE, diff.getDeletes());
+        changes.addAll(changes(ChangeType.UPDATE, diff.getUpdates()));
+        changes.addAll(changes(ChangeType.INSERT, diff.getInserts()));
+        return changes;
+    }
+
+    /**
+     * Append changes to the tax code change log of a tenant.
+     * 
+     * <p>
+     * The next sequences are taken from the tenant row locked by
+     * {@link #lockTaxCodeTenant(String, DSLContext)}, so concurrent transactions modifying the tax
+     * codes of the same tenant assign sequences in commit order, including the first changes of a
+     * tenant. The unique sequence index makes a transaction that nonetheless assigns a duplicate
+     * sequence fail, rather than leave a gap a consumer could skip past.
+     * </p>
+     * 
+     * <p>
+     * The change date, which {@code knownDate} queries compare against, is taken from the clock of
+     * this node once the tenant row is locked, rather than when the modification started, so that
+     * a modification that waited for the lock is not dated before changes with lower sequences.
+     * The change dates of a tenant thus follow the sequence order as long as the clocks of the
+     * nodes modifying its tax codes agree.
+     * </p>
+     * 
+     * @param kbTenantId
+     *            the tenant ID
+     * @param changes
+     *            the changes to log; their sequences will be assigned
+     * @param dslContext
+     *            the transactional context
+     */
+    private void logTaxCodeChanges(final String kbTenantId,
+            final List<EasyTaxTaxCodeChange> changes, final DSLContext dslContext) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        // the tenant row is locked already, so the sequence cannot be taken concurrently
+        final Long last = dslContext.select(EASYTAX_TAX_CODE_TENANTS.CHANGE_SEQ)
+                .from(EASYTAX_TAX_CODE_TENANTS)
+                .where(EASYTAX_TAX_CODE_TENANTS.KB_TENANT_ID.equal(kbTenantId)).forUpdate()
+                .fetchOne(EASYTAX_TAX_CODE_TENANTS.CHANGE_SEQ);
+        if (last == null) {
+            throw new IllegalStateException("Tax code tenant " + kbTenantId + " not found");
+        }
+        long seq = last.longValue();
+        final DateTime now = new DateTime();
+        for (int i = 0, len = changes.size(); i < len; i += WRITE_BATCH_SIZE) {
+            // CHECKSTYLE OFF: LineLength
+            InsertValuesStep10<EasytaxTaxCodeChangesRecord, String, Long, String, String, String, String, BigDecimal, DateTime, DateTime, DateTime> insert = dslContext
+                    .insertInto(EASYTAX_TAX_CODE_CHANGES, EASYTAX_TAX_CODE_CHANGES.KB_TENANT_ID,
+                            EASYTAX_TAX_CODE_CHANGES.CHANGE_SEQ,
+                            EASYTAX_TAX_CODE_CHANGES.CHANGE_TYPE,
+                            EASYTAX_TAX_CODE_CHANGES.TAX_ZONE,
+                            EASYTAX_TAX_CODE_CHANGES.PRODUCT_NAME,
+                            EASYTAX_TAX_CODE_CHANGES.TAX_CODE, EASYTAX_TAX_CODE_CHANGES.TAX_RATE,
+                            EASYTAX_TAX_CODE_CHANGES.VALID_FROM_DATE,
+                            EASYTAX_TAX_CODE_CHANGES.VALID_TO_DATE,
+                            EASYTAX_TAX_CODE_CHANGES.CREATED_DATE);
+            // CHECKSTYLE ON: LineLength
+            for (EasyTaxTaxCodeChange change : changes.subList(i,
+                    Math.min(i + WRITE_BATCH_SIZE, len))) {
+                change.setSequence(++seq);
+                insert = insert.values(kbTenantId, change.getSequence(),
+                        change.getChangeType().name(), change.getTaxZone(),
+                        change.getProductName(), change.getTaxCode(), change.getTaxRate(),
+                        change.getValidFromDate(), change.getValidToDate(), now);
+            }
+            insert.execute();
+        }
+        dslContext.update(EASYTAX_TAX_CODE_TENANTS).set(EASYTAX_TAX_CODE_TENANTS.CHANGE_SEQ, seq)
+                .where(EASYTAX_TAX_CODE_TENANTS.KB_TENANT_ID.equal(kbTenantId)).execute();
+    }
+
+    @Override
+    public List<EasyTaxTaxCodeChange> getTaxCodeChanges(final UUID kbTenantId,
+            final long sinceSequence, final int max) throws SQLException {
+        List<EasytaxTaxCodeChangesRecord> records = execute(dataSource.getConnection(),
+                new WithConnectionCallback<List<EasytaxTaxCodeChangesRecord>>() {
+                    @Override
+                    public List<EasytaxTaxCodeChangesRecord> withConnection(
+                            final Connection conn) throws SQLException {
+                        return DSL.using(conn, dialect, settings)
+                                .selectFrom(EASYTAX_TAX_CODE_CHANGES)
+                                .where(EASYTAX_TAX_CODE_CHANGES.KB_TENANT_ID
+                                        .equal(kbTenantId.toString()))
+                                .and(EASYTAX_TAX_CODE_CHANGES.CHANGE_SEQ.greaterThan(sinceSequence))
+                                .orderBy(EASYTAX_TAX_CODE_CHANGES.CHANGE_SEQ.asc()).limit(max)
+                                .fetch();
+                    }
+                });
+        if (records == null || records.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return records.stream().map(record -> {
+            EasyTaxTaxCodeChange result = new EasyTaxTaxCodeChange();
+            result.setSequence(record.getChangeSeq());
+            result.setChangeType(ChangeType.valueOf(record.getChangeType()));
             result.setCreatedDate(record.getCreatedDate());
             result.setKbTenantId(UUID.fromString(record.getKbTenantId()));
             result.setProductName(record.getProductName());
@@ -198,12 +1308,105 @@ public class JooqEasyTaxDao extends PluginDao implements EasyTaxDao {
             result.setTaxCode(record.getTaxCode());
             result.setTaxRate(record.getTaxRate());
             result.setValidFromDate(record.getValidFromDate());
-            if (record.getValidToDate() != null) {
-                result.setValidToDate(record.getValidToDate());
+            result.setValidToDate(record.getValidToDate());
+            return result;
+        }).collect(Collectors.toList());
+    }
+
+    @Override
+    public int removeTaxCodeChanges(final DateTime olderThan, final int maxChanges)
+            throws SQLException {
+        return execute(dataSource.getConnection(), new WithConnectionCallback<Integer>() {
+            @Override
+            public Integer withConnection(final Connection conn) throws SQLException {
+                return DSL.using(conn, dialect, settings)
+                        .transactionResult(new TransactionalCallable<Integer>() {
+                            @Override
+                            public Integer run(final Configuration configuration)
+                                    throws Exception {
+                                return removeTaxCodeChanges(olderThan, maxChanges,
+                                        DSL.using(configuration));
+                            }
+                        });
             }
-            results.add(result);
+        });
+    }
+
+    private int removeTaxCodeChanges(final DateTime olderThan, final int maxChanges,
+            final DSLContext dslContext) {
+        final EasytaxTaxCodeChanges c = EASYTAX_TAX_CODE_CHANGES.as("c");
+        final EasytaxTaxCodeChanges o = EASYTAX_TAX_CODE_CHANGES.as("o");
+        final Condition sameTaxCode = o.KB_TENANT_ID.equal(c.KB_TENANT_ID)
+                .and(o.TAX_ZONE.equal(c.TAX_ZONE)).and(o.PRODUCT_NAME.equal(c.PRODUCT_NAME))
+                .and(o.TAX_CODE.equal(c.TAX_CODE))
+                .and(o.VALID_FROM_DATE.equal(c.VALID_FROM_DATE))
+                .and(o.CREATED_DATE.lessThan(olderThan));
+
+        // changes superseded by a later change to the same tax code before the expiry date
+        final Result<Record2<ULong, String>> superseded = dslContext
+                .select(c.RECORD_ID, c.KB_TENANT_ID).from(c)
+                .where(c.CREATED_DATE.lessThan(olderThan))
+                .andExists(dslContext.selectOne().from(o).where(sameTaxCode)
+                        .and(o.CHANGE_SEQ.greaterThan(c.CHANGE_SEQ)))
+                .limit(maxChanges).fetch();
+        final Set<String> kbTenantIds = new HashSet<>(superseded.getValues(c.KB_TENANT_ID));
+        int count = deleteTaxCodeChanges(superseded.getValues(c.RECORD_ID), dslContext);
+
+        // then deletes that no earlier change before the expiry date refers to any more
+        if (count < maxChanges) {
+            final Result<Record2<ULong, String>> deletes = dslContext
+                    .select(c.RECORD_ID, c.KB_TENANT_ID).from(c)
+                    .where(c.CREATED_DATE.lessThan(olderThan))
+                    .and(c.CHANGE_TYPE.equal(ChangeType.DELETE.name()))
+                    .andNotExists(dslContext.selectOne().from(o).where(sameTaxCode)
+                            .and(o.CHANGE_SEQ.lessThan(c.CHANGE_SEQ)))
+                    .limit(maxChanges - count).fetch();
+            kbTenantIds.addAll(deletes.getValues(c.KB_TENANT_ID));
+            count += deleteTaxCodeChanges(deletes.getValues(c.RECORD_ID), dslContext);
         }
-        return results;
+
+        // the tax codes of these tenants can no longer be known before the expiry date
+        if (!kbTenantIds.isEmpty()) {
+            dslContext.update(EASYTAX_TAX_CODE_TENANTS)
+                    .set(EASYTAX_TAX_CODE_TENANTS.KNOWN_SINCE, olderThan)
+                    .where(EASYTAX_TAX_CODE_TENANTS.KB_TENANT_ID.in(kbTenantIds))
+                    .and(EASYTAX_TAX_CODE_TENANTS.KNOWN_SINCE.isNull()
+                            .or(EASYTAX_TAX_CODE_TENANTS.KNOWN_SINCE.lessThan(olderThan)))
+                    .execute();
+        }
+        log.debug("Removed {} tax code changes older than {}", count, olderThan);
+        return count;
+    }
+
+    private static int deleteTaxCodeChanges(final List<ULong> recordIds,
+            final DSLContext dslContext) {
+        if (recordIds.isEmpty()) {
+            return 0;
+        }
+        // delete by ID, as MySQL cannot delete from a table it also selects from in a sub-query
+        return dslContext.deleteFrom(EASYTAX_TAX_CODE_CHANGES)
+                .where(EASYTAX_TAX_CODE_CHANGES.RECORD_ID.in(recordIds)).execute();
+    }
+
+    @Override
+    public Set<UUID> getTaxCodeTenantIds() throws SQLException {
+        List<String> tenantIds = execute(dataSource.getConnection(),
+                new WithConnectionCallback<List<String>>() {
+                    @Override
+                    public List<String> withConnection(final Connection conn)
+                            throws SQLException {
+                        return DSL.using(conn, dialect, settings)
+                                .selectDistinct(EASYTAX_TAX_CODES.KB_TENANT_ID)
+                                .from(EASYTAX_TAX_CODES).fetch(EASYTAX_TAX_CODES.KB_TENANT_ID);
+                    }
+                });
+        Set<UUID> result = new LinkedHashSet<>();
+        if (tenantIds != null) {
+            for (String tenantId : tenantIds) {
+                result.add(UUID.fromString(tenantId));
+            }
+        }
+        return result;
     }
 
     @Override
@@ -213,21 +1416,86 @@ public class JooqEasyTaxDao extends PluginDao implements EasyTaxDao {
         execute(dataSource.getConnection(), new WithConnectionCallback<Void>() {
             @Override
             public Void withConnection(final Connection conn) throws SQLException {
-                DSL.using(conn, dialect, settings)
-                        .insertInto(EASYTAX_TAXATIONS, EASYTAX_TAXATIONS.KB_TENANT_ID,
-                                EASYTAX_TAXATIONS.KB_ACCOUNT_ID, EASYTAX_TAXATIONS.KB_INVOICE_ID,
-                                EASYTAX_TAXATIONS.KB_INVOICE_ITEM_IDS, EASYTAX_TAXATIONS.TOTAL_TAX,
-                                EASYTAX_TAXATIONS.CREATED_DATE)
-                        .values(taxation.getKbTenantId().toString(),
-                                taxation.getKbAccountId().toString(),
-                                taxation.getKbInvoiceId().toString(), invoiceItemIdTaxMappingJson,
-                                taxation.getTotalTax(), taxation.getCreatedDate())
-                        .execute();
+                try {
+                    DSL.using(conn, dialect, settings).transaction(new TransactionalRunnable() {
+                        @Override
+                        public void run(final Configuration configuration) throws Exception {
+                            addTaxation(taxation, invoiceItemIdTaxMappingJson,
+                                    DSL.using(configuration));
+                        }
+                    });
+                } catch (DataAccessException e) {
+                    if (e.sqlStateClass() == SQLStateClass.C23_INTEGRITY_CONSTRAINT_VIOLATION) {
+                        throw new SQLIntegrityConstraintViolationException(
+                                "Taxation already exists for invoice " + taxation.getKbInvoiceId()
+                                        + " with content hash " + taxation.getContentHash(),
+                                e.sqlState(), e);
+                    }
+                    throw e;
+                }
                 return null;
             }
         });
     }
 
+    private void addTaxation(final EasyTaxTaxation taxation,
+            final String invoiceItemIdTaxMappingJson, final DSLContext dslContext) {
+        // the hash row is inserted first, so a duplicate is rejected before the taxation row
+        if (taxation.getContentHash() != null) {
+            dslContext
+                    .insertInto(EASYTAX_TAXATION_HASHES, EASYTAX_TAXATION_HASHES.KB_TENANT_ID,
+                            EASYTAX_TAXATION_HASHES.KB_INVOICE_ID,
+                            EASYTAX_TAXATION_HASHES.CONTENT_HASH,
+                            EASYTAX_TAXATION_HASHES.CREATED_DATE)
+                    .values(taxation.getKbTenantId().toString(),
+                            taxation.getKbInvoiceId().toString(), taxation.getContentHash(),
+                            taxation.getCreatedDate())
+                    .execute();
+        }
+        dslContext
+                .insertInto(EASYTAX_TAXATIONS, EASYTAX_TAXATIONS.KB_TENANT_ID,
+                        EASYTAX_TAXATIONS.KB_ACCOUNT_ID, EASYTAX_TAXATIONS.KB_INVOICE_ID,
+                        EASYTAX_TAXATIONS.KB_INVOICE_ITEM_IDS, EASYTAX_TAXATIONS.TOTAL_TAX,
+                        EASYTAX_TAXATIONS.CREATED_DATE)
+                .values(taxation.getKbTenantId().toString(),
+                        taxation.getKbAccountId().toString(),
+                        taxation.getKbInvoiceId().toString(), invoiceItemIdTaxMappingJson,
+                        taxation.getTotalTax(), taxation.getCreatedDate())
+                .execute();
+
+        // an archived invoice taxed again is restored, so all its records are in one table
+        restoreArchivedTaxations(taxation.getKbTenantId().toString(),
+                taxation.getKbAccountId().toString(), taxation.getKbInvoiceId().toString(),
+                dslContext);
+    }
+
+    private void restoreArchivedTaxations(final String kbTenantId, final String kbAccountId,
+            final String kbInvoiceId, final DSLContext dslContext) {
+        final Condition archived = EASYTAX_TAXATIONS_ARCHIVE.KB_TENANT_ID.equal(kbTenantId)
+                .and(EASYTAX_TAXATIONS_ARCHIVE.KB_ACCOUNT_ID.equal(kbAccountId))
+                .and(EASYTAX_TAXATIONS_ARCHIVE.KB_INVOICE_ID.equal(kbInvoiceId));
+        int count = dslContext
+                .insertInto(EASYTAX_TAXATIONS, EASYTAX_TAXATIONS.RECORD_ID,
+                        EASYTAX_TAXATIONS.KB_TENANT_ID, EASYTAX_TAXATIONS.KB_ACCOUNT_ID,
+                        EASYTAX_TAXATIONS.KB_INVOICE_ID, EASYTAX_TAXATIONS.KB_INVOICE_ITEM_IDS,
+                        EASYTAX_TAXATIONS.TOTAL_TAX, EASYTAX_TAXATIONS.CREATED_DATE)
+                .select(dslContext
+                        .select(EASYTAX_TAXATIONS_ARCHIVE.RECORD_ID,
+                                EASYTAX_TAXATIONS_ARCHIVE.KB_TENANT_ID,
+                                EASYTAX_TAXATIONS_ARCHIVE.KB_ACCOUNT_ID,
+                                EASYTAX_TAXATIONS_ARCHIVE.KB_INVOICE_ID,
+                                EASYTAX_TAXATIONS_ARCHIVE.KB_INVOICE_ITEM_IDS,
+                                EASYTAX_TAXATIONS_ARCHIVE.TOTAL_TAX,
+                                EASYTAX_TAXATIONS_ARCHIVE.CREATED_DATE)
+                        .from(EASYTAX_TAXATIONS_ARCHIVE).where(archived))
+                .execute();
+        if (count > 0) {
+            dslContext.deleteFrom(EASYTAX_TAXATIONS_ARCHIVE).where(archived).execute();
+            log.debug("Restored {} archived taxation records for invoice {}", count,
+                    kbInvoiceId);
+        }
+    }
+
     @Override
     public List<EasyTaxTaxation> getTaxation(final UUID kbTenantId, final UUID kbAccountId,
             final UUID kbInvoiceId) throws SQLException {
@@ -236,11 +1504,29 @@ public class JooqEasyTaxDao extends PluginDao implements EasyTaxDao {
                     @Override
                     public List<EasytaxTaxationsRecord> withConnection(final Connection conn)
                             throws SQLException {
-                        return DSL.using(conn, dialect, settings).selectFrom(EASYTAX_TAXATIONS)
+                        final DSLContext dslContext = DSL.using(conn, dialect, settings);
+                        final List<EasytaxTaxationsRecord> result = dslContext
+                                .selectFrom(EASYTAX_TAXATIONS)
                                 .where(EASYTAX_TAXATIONS.KB_TENANT_ID.equal(kbTenantId.toString()))
                                 .and(EASYTAX_TAXATIONS.KB_ACCOUNT_ID.equal(kbAccountId.toString()))
                                 .and(EASYTAX_TAXATIONS.KB_INVOICE_ID.equal(kbInvoiceId.toString()))
-                                .fetch();
+                                .orderBy(EASYTAX_TAXATIONS.RECORD_ID.asc()).fetch();
+                        if (!result.isEmpty()) {
+                            return result;
+                        }
+
+                        // an invoice's records are either all archived or, once it is taxed
+                        // again, all restored, so the archive is only needed on a miss; archive
+                        // columns are mapped by name and archived records keep their record ID
+                        return dslContext.selectFrom(EASYTAX_TAXATIONS_ARCHIVE)
+                                .where(EASYTAX_TAXATIONS_ARCHIVE.KB_TENANT_ID
+                                        .equal(kbTenantId.toString()))
+                                .and(EASYTAX_TAXATIONS_ARCHIVE.KB_ACCOUNT_ID
+                                        .equal(kbAccountId.toString()))
+                                .and(EASYTAX_TAXATIONS_ARCHIVE.KB_INVOICE_ID
+                                        .equal(kbInvoiceId.toString()))
+                                .orderBy(EASYTAX_TAXATIONS_ARCHIVE.RECORD_ID.asc()).fetch()
+                                .into(EASYTAX_TAXATIONS);
                     }
                 });
         if (records == null || records.isEmpty()) {
@@ -260,6 +1546,182 @@ public class JooqEasyTaxDao extends PluginDao implements EasyTaxDao {
         }).collect(Collectors.toList());
     }
 
+    @Override
+    public int archiveTaxations(final DateTime olderThan, final int maxInvoices)
+            throws SQLException {
+        return execute(dataSource.getConnection(), new WithConnectionCallback<Integer>() {
+            @Override
+            public Integer withConnection(final Connection conn) throws SQLException {
+                return DSL.using(conn, dialect, settings)
+                        .transactionResult(new TransactionalCallable<Integer>() {
+                            @Override
+                            public Integer run(final Configuration configuration)
+                                    throws Exception {
+                                return archiveTaxations(olderThan, maxInvoices,
+                                        DSL.using(configuration));
+                            }
+                        });
+            }
+        });
+    }
+
+    private int archiveTaxations(final DateTime olderThan, final int maxInvoices,
+            final DSLContext dslContext) {
+        // find invoices with no taxation records newer than the archive date
+        final EasytaxTaxations newer = EASYTAX_TAXATIONS.as("newer");
+        List<Record2<String, String>> invoices = dslContext
+                .selectDistinct(EASYTAX_TAXATIONS.KB_ACCOUNT_ID, EASYTAX_TAXATIONS.KB_INVOICE_ID)
+                .from(EASYTAX_TAXATIONS).where(EASYTAX_TAXATIONS.CREATED_DATE.lessThan(olderThan))
+                .andNotExists(dslContext.selectOne().from(newer)
+                        .where(newer.KB_ACCOUNT_ID.equal(EASYTAX_TAXATIONS.KB_ACCOUNT_ID))
+                        .and(newer.KB_INVOICE_ID.equal(EASYTAX_TAXATIONS.KB_INVOICE_ID))
+                        .and(newer.CREATED_DATE.greaterOrEqual(olderThan)))
+                .limit(maxInvoices).fetch();
+        if (invoices.isEmpty()) {
+            return 0;
+        }
+        final List<Row2<String, String>> invoiceRows = invoices.stream()
+                .map(r -> DSL.row(r.value1(), r.value2())).collect(Collectors.toList());
+
+        // the created date condition guards against moving records added since the query above,
+        // and records already in the archive are not copied again
+        final EasytaxTaxationsArchive archived = EASYTAX_TAXATIONS_ARCHIVE.as("archived");
+        dslContext
+                .insertInto(EASYTAX_TAXATIONS_ARCHIVE, EASYTAX_TAXATIONS_ARCHIVE.RECORD_ID,
+                        EASYTAX_TAXATIONS_ARCHIVE.KB_TENANT_ID,
+                        EASYTAX_TAXATIONS_ARCHIVE.KB_ACCOUNT_ID,
+                        EASYTAX_TAXATIONS_ARCHIVE.KB_INVOICE_ID,
+                        EASYTAX_TAXATIONS_ARCHIVE.KB_INVOICE_ITEM_IDS,
+                        EASYTAX_TAXATIONS_ARCHIVE.TOTAL_TAX, EASYTAX_TAXATIONS_ARCHIVE.CREATED_DATE)
+                .select(dslContext
+                        .select(EASYTAX_TAXATIONS.RECORD_ID, EASYTAX_TAXATIONS.KB_TENANT_ID,
+                                EASYTAX_TAXATIONS.KB_ACCOUNT_ID, EASYTAX_TAXATIONS.KB_INVOICE_ID,
+                                EASYTAX_TAXATIONS.KB_INVOICE_ITEM_IDS, EASYTAX_TAXATIONS.TOTAL_TAX,
+                                EASYTAX_TAXATIONS.CREATED_DATE)
+                        .from(EASYTAX_TAXATIONS)
+                        .where(DSL.row(EASYTAX_TAXATIONS.KB_ACCOUNT_ID,
+                                EASYTAX_TAXATIONS.KB_INVOICE_ID).in(invoiceRows))
+                        .and(EASYTAX_TAXATIONS.CREATED_DATE.lessThan(olderThan))
+                        .andNotExists(dslContext.selectOne().from(archived)
+                                .where(archived.RECORD_ID.equal(EASYTAX_TAXATIONS.RECORD_ID))))
+                .execute();
+        int count = dslContext.deleteFrom(EASYTAX_TAXATIONS)
+                .where(DSL.row(EASYTAX_TAXATIONS.KB_ACCOUNT_ID, EASYTAX_TAXATIONS.KB_INVOICE_ID)
+                        .in(invoiceRows))
+                .and(EASYTAX_TAXATIONS.CREATED_DATE.lessThan(olderThan)).execute();
+
+        // content hashes are only needed while an invoice is still being taxed, so the hashes of
+        // archived invoices are removed; an archived invoice taxed again is restored first
+        if (count > 0) {
+            dslContext.deleteFrom(EASYTAX_TAXATION_HASHES)
+                    .where(EASYTAX_TAXATION_HASHES.KB_INVOICE_ID.in(invoices.stream()
+                            .map(Record2::value2).collect(Collectors.toList())))
+                    .execute();
+        }
+        log.debug("Archived {} taxation records for {} invoices older than {}", count,
+                invoices.size(), olderThan);
+        return count;
+    }
+
+    @Override
+    public int compactTaxation(final UUID kbTenantId, final UUID kbAccountId,
+            final UUID kbInvoiceId) throws SQLException {
+        return execute(dataSource.getConnection(), new WithConnectionCallback<Integer>() {
+            @Override
+            public Integer withConnection(final Connection conn) throws SQLException {
+                return DSL.using(conn, dialect, settings)
+                        .transactionResult(new TransactionalCallable<Integer>() {
+                            @Override
+                            public Integer run(final Configuration configuration)
+                                    throws Exception {
+                                return compactTaxation(kbTenantId.toString(),
+                                        kbAccountId.toString(), kbInvoiceId.toString(),
+                                        DSL.using(configuration));
+                            }
+                        });
+            }
+        });
+    }
+
+    @Override
+    public int compactTaxations(final int minRecords, final int maxInvoices)
+            throws SQLException {
+        final List<Record3<String, String, String>> invoices = execute(dataSource.getConnection(),
+                new WithConnectionCallback<List<Record3<String, String, String>>>() {
+                    @Override
+                    public List<Record3<String, String, String>> withConnection(
+                            final Connection conn) throws SQLException {
+                        return DSL.using(conn, dialect, settings)
+                                .select(EASYTAX_TAXATIONS.KB_TENANT_ID,
+                                        EASYTAX_TAXATIONS.KB_ACCOUNT_ID,
+                                        EASYTAX_TAXATIONS.KB_INVOICE_ID)
+                                .from(EASYTAX_TAXATIONS)
+                                .groupBy(EASYTAX_TAXATIONS.KB_TENANT_ID,
+                                        EASYTAX_TAXATIONS.KB_ACCOUNT_ID,
+                                        EASYTAX_TAXATIONS.KB_INVOICE_ID)
+                                .having(DSL.count().greaterOrEqual(Math.max(2, minRecords)))
+                                .limit(maxInvoices).fetch();
+                    }
+                });
+        int count = 0;
+        for (Record3<String, String, String> invoice : invoices) {
+            if (compactTaxation(UUID.fromString(invoice.value1()),
+                    UUID.fromString(invoice.value2()), UUID.fromString(invoice.value3())) > 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private int compactTaxation(final String kbTenantId, final String kbAccountId,
+            final String kbInvoiceId, final DSLContext dslContext) {
+        final List<EasytaxTaxationsRecord> records = dslContext.selectFrom(EASYTAX_TAXATIONS)
+                .where(EASYTAX_TAXATIONS.KB_TENANT_ID.equal(kbTenantId))
+                .and(EASYTAX_TAXATIONS.KB_ACCOUNT_ID.equal(kbAccountId))
+                .and(EASYTAX_TAXATIONS.KB_INVOICE_ID.equal(kbInvoiceId))
+                .orderBy(EASYTAX_TAXATIONS.RECORD_ID.asc()).forUpdate().fetch();
+        if (records.size() < 2) {
+            return 0;
+        }
+        final UUID invoiceId = UUID.fromString(kbInvoiceId);
+        final Map<UUID, Set<UUID>> invoiceItemIds = new LinkedHashMap<>();
+        final List<ULong> removeIds = new ArrayList<>(records.size() - 1);
+        BigDecimal totalTax = null;
+        DateTime createdDate = null;
+        for (EasytaxTaxationsRecord record : records) {
+            Map<UUID, Set<UUID>> mapping = decodeInvoiceItemIdTaxMapping(invoiceId,
+                    record.getKbInvoiceItemIds());
+            if (mapping != null) {
+                for (Map.Entry<UUID, Set<UUID>> entry : mapping.entrySet()) {
+                    invoiceItemIds.computeIfAbsent(entry.getKey(), k -> new HashSet<>())
+                            .addAll(entry.getValue());
+                }
+            }
+            if (record.getTotalTax() != null) {
+                totalTax = (totalTax != null ? totalTax.add(record.getTotalTax())
+                        : record.getTotalTax());
+            }
+            if (createdDate == null || record.getCreatedDate().isAfter(createdDate)) {
+                createdDate = record.getCreatedDate();
+            }
+            if (record != records.get(0)) {
+                removeIds.add(record.getRecordId());
+            }
+        }
+
+        // keep the oldest record, so its record ID remains the invoice's reference
+        dslContext.update(EASYTAX_TAXATIONS)
+                .set(EASYTAX_TAXATIONS.KB_INVOICE_ITEM_IDS,
+                        encodeInvoiceItemIdTaxMapping(invoiceId, invoiceItemIds))
+                .set(EASYTAX_TAXATIONS.TOTAL_TAX, totalTax)
+                .set(EASYTAX_TAXATIONS.CREATED_DATE, createdDate)
+                .where(EASYTAX_TAXATIONS.RECORD_ID.equal(records.get(0).getRecordId())).execute();
+        int count = dslContext.deleteFrom(EASYTAX_TAXATIONS)
+                .where(EASYTAX_TAXATIONS.RECORD_ID.in(removeIds)).execute();
+        log.debug("Compacted {} taxation records for invoice {}", records.size(), kbInvoiceId);
+        return count;
+    }
+
     private String encodeInvoiceItemIdTaxMapping(final UUID kbInvoiceId,
             final Map<UUID, Set<UUID>> invoiceItemIdTaxMapping) {
         String invoiceItemIdTaxMappingJson = null;
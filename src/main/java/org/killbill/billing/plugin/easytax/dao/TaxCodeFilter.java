@@ -0,0 +1,142 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.killbill.billing.plugin.easytax.dao;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.plugin.easytax.api.EasyTaxDao;
+import org.killbill.billing.plugin.easytax.core.EasyTaxTaxCode;
+
+/**
+ * Filter in-memory tax codes the same way
+ * {@link EasyTaxDao#getTaxCodes(java.util.UUID, String, String, String, DateTime)} does.
+ *
+ * @author matt
+ */
+final class TaxCodeFilter {
+
+    private TaxCodeFilter() {
+        // not available
+    }
+
+    /**
+     * Filter a list of tax codes.
+     *
+     * @param taxCodes
+     *            the tax codes to filter, which are not modified
+     * @param taxZone
+     *            an optional tax zone to limit the results to
+     * @param productName
+     *            an optional product name to limit the results to
+     * @param taxCode
+     *            an optional tax code to limit the results to
+     * @param date
+     *            an optional validity date to limit the results to
+     * @return copies of the matching tax codes, in list order unless {@code date} provided, then
+     *         ordered by valid from date in descending order
+     */
+    static List<EasyTaxTaxCode> filter(List<EasyTaxTaxCode> taxCodes, @Nullable String taxZone,
+            @Nullable String productName, @Nullable String taxCode, @Nullable DateTime date) {
+        List<EasyTaxTaxCode> results = new ArrayList<>();
+        for (EasyTaxTaxCode code : taxCodes) {
+            if (taxZone != null && !taxZone.equals(code.getTaxZone())) {
+                continue;
+            }
+            if (productName != null && !productName.equals(code.getProductName())) {
+                continue;
+            }
+            if (taxCode != null && !taxCode.equals(code.getTaxCode())) {
+                continue;
+            }
+            if (date != null && (code.getValidFromDate().isAfter(date)
+                    || (code.getValidToDate() != null && !code.getValidToDate().isAfter(date)))) {
+                continue;
+            }
+            results.add(new EasyTaxTaxCode(code));
+        }
+        if (date != null) {
+            results.sort(Comparator.comparing(EasyTaxTaxCode::getValidFromDate).reversed());
+        }
+        return results;
+    }
+
+    /**
+     * Filter a list of tax codes, using pre-computed timelines when possible.
+     *
+     * <p>
+     * When {@code taxZone}, {@code productName}, and {@code date} are all provided the matching
+     * {@link TaxCodeTimeline} is searched instead of every tax code.
+     * </p>
+     *
+     * @param taxCodes
+     *            the tax codes to filter, which are not modified
+     * @param timelines
+     *            the timelines of {@code taxCodes}, as returned by
+     *            {@link TaxCodeTimeline#index(List)}
+     * @param taxZone
+     *            an optional tax zone to limit the results to
+     * @param productName
+     *            an optional product name to limit the results to
+     * @param taxCode
+     *            an optional tax code to limit the results to
+     * @param date
+     *            an optional validity date to limit the results to
+     * @return copies of the matching tax codes, ordered as with
+     *         {@link #filter(List, String, String, String, DateTime)}
+     */
+    static List<EasyTaxTaxCode> filter(List<EasyTaxTaxCode> taxCodes,
+            Map<String, TaxCodeTimeline> timelines, @Nullable String taxZone,
+            @Nullable String productName, @Nullable String taxCode, @Nullable DateTime date) {
+        if (taxZone == null || productName == null || date == null) {
+            return filter(taxCodes, taxZone, productName, taxCode, date);
+        }
+        return filter(timelines.get(TaxCodeTimeline.key(taxZone, productName)), taxCode, date);
+    }
+
+    /**
+     * Filter the tax codes of a timeline.
+     *
+     * @param timeline
+     *            the timeline to search, or {@literal null} if there are no tax codes
+     * @param taxCode
+     *            an optional tax code to limit the results to
+     * @param date
+     *            the validity date to limit the results to
+     * @return copies of the matching tax codes, in timeline order
+     */
+    static List<EasyTaxTaxCode> filter(@Nullable TaxCodeTimeline timeline,
+            @Nullable String taxCode, DateTime date) {
+        if (timeline == null) {
+            return new ArrayList<>();
+        }
+        final EasyTaxTaxCode[] codes = timeline.taxCodesAt(date.getMillis());
+        final List<EasyTaxTaxCode> results = new ArrayList<>(codes.length);
+        for (EasyTaxTaxCode code : codes) {
+            if (taxCode != null && !taxCode.equals(code.getTaxCode())) {
+                continue;
+            }
+            results.add(new EasyTaxTaxCode(code));
+        }
+        return results;
+    }
+
+}
@@ -0,0 +1,228 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.killbill.billing.plugin.easytax.dao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.killbill.billing.plugin.easytax.core.EasyTaxTaxCode;
+import org.killbill.billing.plugin.easytax.core.TaxCodePrecedence;
+
+/**
+ * An immutable timeline of the tax codes that apply to a single tax zone and product name.
+ *
+ * <p>
+ * The timeline is divided into segments at every valid from and valid to date of the tax codes, so
+ * that the set of applicable tax codes is constant within each segment. Adjacent segments with the
+ * same tax codes are merged. The segment start dates are stored as sorted epoch milliseconds, so
+ * the tax codes for a date are found with a single binary search, without any {@code DateTime}
+ * comparisons.
+ * </p>
+ *
+ * <p>
+ * The tax codes of each segment are ordered by valid from date in descending order, the same as
+ * {@link TaxCodeFilter#filter(List, String, String, String, org.joda.time.DateTime)}. The returned
+ * arrays are shared and must not be modified.
+ * </p>
+ *
+ * @author matt
+ */
+final class TaxCodeTimeline {
+
+    private static final EasyTaxTaxCode[] NO_TAX_CODES = new EasyTaxTaxCode[0];
+
+    private final long[] segmentStarts;
+    private final EasyTaxTaxCode[][] segmentTaxCodes;
+
+    private TaxCodeTimeline(long[] segmentStarts, EasyTaxTaxCode[][] segmentTaxCodes) {
+        super();
+        this.segmentStarts = segmentStarts;
+        this.segmentTaxCodes = segmentTaxCodes;
+    }
+
+    /**
+     * Get the index key for a tax zone and product name.
+     *
+     * @param taxZone
+     *            the tax zone
+     * @param productName
+     *            the product name
+     * @return the key
+     */
+    static String key(String taxZone, String productName) {
+        return taxZone + '\0' + productName;
+    }
+
+    /**
+     * Build timelines for all the tax zones and product names in a list of tax codes.
+     *
+     * @param taxCodes
+     *            the tax codes, which must all have a valid from date
+     * @return the timelines, by {@link #key(String, String)}
+     */
+    static Map<String, TaxCodeTimeline> index(List<EasyTaxTaxCode> taxCodes) {
+        final Map<String, List<EasyTaxTaxCode>> groups = new HashMap<>();
+        for (EasyTaxTaxCode code : taxCodes) {
+            groups.computeIfAbsent(key(code.getTaxZone(), code.getProductName()),
+                    k -> new ArrayList<>()).add(code);
+        }
+        final Map<String, TaxCodeTimeline> result = new HashMap<>(groups.size());
+        for (Map.Entry<String, List<EasyTaxTaxCode>> me : groups.entrySet()) {
+            result.put(me.getKey(), build(me.getValue()));
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Build a timeline from the tax codes of a single tax zone and product name.
+     *
+     * @param taxCodes
+     *            the tax codes, which must all have a valid from date
+     * @return the timeline
+     */
+    static TaxCodeTimeline build(List<EasyTaxTaxCode> taxCodes) {
+        final List<EasyTaxTaxCode> codes = new ArrayList<>(taxCodes);
+        // stable sort, so codes valid from the same date keep their list order
+        codes.sort(Comparator.comparing(EasyTaxTaxCode::getValidFromDate).reversed());
+
+        final TreeSet<Long> boundaries = new TreeSet<>();
+        for (EasyTaxTaxCode code : codes) {
+            boundaries.add(code.getValidFromDate().getMillis());
+            if (code.getValidToDate() != null) {
+                boundaries.add(code.getValidToDate().getMillis());
+            }
+        }
+
+        final long[] starts = new long[boundaries.size()];
+        final EasyTaxTaxCode[][] segments = new EasyTaxTaxCode[boundaries.size()][];
+        final List<EasyTaxTaxCode> applicable = new ArrayList<>();
+        int count = 0;
+        for (Long boundary : boundaries) {
+            final long start = boundary.longValue();
+            applicable.clear();
+            for (EasyTaxTaxCode code : codes) {
+                if (code.getValidFromDate().getMillis() <= start && (code.getValidToDate() == null
+                        || code.getValidToDate().getMillis() > start)) {
+                    applicable.add(code);
+                }
+            }
+            if (count > 0 && sameTaxCodes(segments[count - 1], applicable)) {
+                continue;
+            }
+            starts[count] = start;
+            segments[count] = (applicable.isEmpty() ? NO_TAX_CODES
+                    : applicable.toArray(new EasyTaxTaxCode[applicable.size()]));
+            count++;
+        }
+        return new TaxCodeTimeline(Arrays.copyOf(starts, count), Arrays.copyOf(segments, count));
+    }
+
+    /**
+     * Merge the timelines of several tax zones or product names into a single timeline of all
+     * their tax codes.
+     *
+     * <p>
+     * Any-product tax codes overridden by a product-specific tax code are removed from each merged
+     * segment, as described in {@link TaxCodePrecedence}. The tax codes of each merged segment are
+     * ordered by valid from date in descending order, and then by the order of {@code timelines}.
+     * </p>
+     *
+     * @param timelines
+     *            the timelines to merge
+     * @return the merged timeline
+     */
+    static TaxCodeTimeline merge(List<TaxCodeTimeline> timelines) {
+        if (timelines.size() == 1) {
+            return timelines.get(0);
+        }
+        final TreeSet<Long> boundaries = new TreeSet<>();
+        for (TaxCodeTimeline timeline : timelines) {
+            for (long start : timeline.segmentStarts) {
+                boundaries.add(start);
+            }
+        }
+
+        final long[] starts = new long[boundaries.size()];
+        final EasyTaxTaxCode[][] segments = new EasyTaxTaxCode[boundaries.size()][];
+        final List<EasyTaxTaxCode> applicable = new ArrayList<>();
+        int count = 0;
+        for (Long boundary : boundaries) {
+            final long start = boundary.longValue();
+            applicable.clear();
+            for (TaxCodeTimeline timeline : timelines) {
+                applicable.addAll(Arrays.asList(timeline.taxCodesAt(start)));
+            }
+            TaxCodePrecedence.removeOverridden(applicable);
+            // stable sort, so codes valid from the same date keep their timeline order
+            applicable.sort(Comparator.comparing(EasyTaxTaxCode::getValidFromDate).reversed());
+            if (count > 0 && sameTaxCodes(segments[count - 1], applicable)) {
+                continue;
+            }
+            starts[count] = start;
+            segments[count] = (applicable.isEmpty() ? NO_TAX_CODES
+                    : applicable.toArray(new EasyTaxTaxCode[applicable.size()]));
+            count++;
+        }
+        return new TaxCodeTimeline(Arrays.copyOf(starts, count), Arrays.copyOf(segments, count));
+    }
+
+    private static boolean sameTaxCodes(EasyTaxTaxCode[] segment, List<EasyTaxTaxCode> codes) {
+        if (segment.length != codes.size()) {
+            return false;
+        }
+        for (int i = 0; i < segment.length; i++) {
+            if (segment[i] != codes.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the tax codes that apply at a given date.
+     *
+     * @param epochMillis
+     *            the date, as milliseconds since the epoch
+     * @return the applicable tax codes, never {@literal null}; the array must not be modified
+     */
+    EasyTaxTaxCode[] taxCodesAt(long epochMillis) {
+        int idx = Arrays.binarySearch(segmentStarts, epochMillis);
+        if (idx < 0) {
+            // not a segment start, so use the segment before the insertion point
+            idx = -idx - 2;
+            if (idx < 0) {
+                return NO_TAX_CODES;
+            }
+        }
+        return segmentTaxCodes[idx];
+    }
+
+    /**
+     * Get the number of segments in the timeline.
+     *
+     * @return the segment count
+     */
+    int getSegmentCount() {
+        return segmentStarts.length;
+    }
+
+}
@@ -13,8 +13,13 @@ import javax.annotation.Generated;
 import org.jooq.Catalog;
 import org.jooq.Table;
 import org.jooq.impl.SchemaImpl;
+import org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxCodeChanges;
+import org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxCodeStages;
+import org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxCodeTenants;
 import org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxCodes;
+import org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxationHashes;
 import org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxations;
+import org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxationsArchive;
 
 
 /**
@@ -42,11 +47,36 @@ public class DefaultSchema extends SchemaImpl {
      */
     public final EasytaxTaxations EASYTAX_TAXATIONS = org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxations.EASYTAX_TAXATIONS;
 
+    /**
+     * The table <code>easytax_taxations_archive</code>.
+     */
+    public final EasytaxTaxationsArchive EASYTAX_TAXATIONS_ARCHIVE = org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxationsArchive.EASYTAX_TAXATIONS_ARCHIVE;
+
     /**
      * The table <code>easytax_tax_codes</code>.
      */
     public final EasytaxTaxCodes EASYTAX_TAX_CODES = org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxCodes.EASYTAX_TAX_CODES;
 
+    /**
+     * The table <code>easytax_tax_code_stages</code>.
+     */
+    public final EasytaxTaxCodeStages EASYTAX_TAX_CODE_STAGES = org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxCodeStages.EASYTAX_TAX_CODE_STAGES;
+
+    /**
+     * The table <code>easytax_tax_code_changes</code>.
+     */
+    public final EasytaxTaxCodeChanges EASYTAX_TAX_CODE_CHANGES = org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxCodeChanges.EASYTAX_TAX_CODE_CHANGES;
+
+    /**
+     * The table <code>easytax_taxation_hashes</code>.
+     */
+    public final EasytaxTaxationHashes EASYTAX_TAXATION_HASHES = org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxationHashes.EASYTAX_TAXATION_HASHES;
+
+    /**
+     * The table <code>easytax_tax_code_tenants</code>.
+     */
+    public final EasytaxTaxCodeTenants EASYTAX_TAX_CODE_TENANTS = org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxCodeTenants.EASYTAX_TAX_CODE_TENANTS;
+
     /**
      * No further instances allowed
      */
@@ -73,6 +103,11 @@ public class DefaultSchema extends SchemaImpl {
     private final List<Table<?>> getTables0() {
         return Arrays.<Table<?>>asList(
             EasytaxTaxations.EASYTAX_TAXATIONS,
-            EasytaxTaxCodes.EASYTAX_TAX_CODES);
+            EasytaxTaxationsArchive.EASYTAX_TAXATIONS_ARCHIVE,
+            EasytaxTaxCodes.EASYTAX_TAX_CODES,
+            EasytaxTaxCodeStages.EASYTAX_TAX_CODE_STAGES,
+            EasytaxTaxCodeChanges.EASYTAX_TAX_CODE_CHANGES,
+            EasytaxTaxationHashes.EASYTAX_TAXATION_HASHES,
+            EasytaxTaxCodeTenants.EASYTAX_TAX_CODE_TENANTS);
     }
 }
@@ -10,9 +10,19 @@ import org.jooq.Identity;
 import org.jooq.UniqueKey;
 import org.jooq.impl.AbstractKeys;
 import org.jooq.types.ULong;
+import org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxCodeChanges;
+import org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxCodeStages;
+import org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxCodeTenants;
 import org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxCodes;
+import org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxationHashes;
 import org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxations;
+import org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxationsArchive;
+import org.killbill.billing.plugin.easytax.dao.gen.tables.records.EasytaxTaxCodeChangesRecord;
+import org.killbill.billing.plugin.easytax.dao.gen.tables.records.EasytaxTaxCodeStagesRecord;
+import org.killbill.billing.plugin.easytax.dao.gen.tables.records.EasytaxTaxCodeTenantsRecord;
 import org.killbill.billing.plugin.easytax.dao.gen.tables.records.EasytaxTaxCodesRecord;
+import org.killbill.billing.plugin.easytax.dao.gen.tables.records.EasytaxTaxationHashesRecord;
+import org.killbill.billing.plugin.easytax.dao.gen.tables.records.EasytaxTaxationsArchiveRecord;
 import org.killbill.billing.plugin.easytax.dao.gen.tables.records.EasytaxTaxationsRecord;
 
 
@@ -36,6 +46,10 @@ public class Keys {
 
     public static final Identity<EasytaxTaxationsRecord, ULong> IDENTITY_EASYTAX_TAXATIONS = Identities0.IDENTITY_EASYTAX_TAXATIONS;
     public static final Identity<EasytaxTaxCodesRecord, ULong> IDENTITY_EASYTAX_TAX_CODES = Identities0.IDENTITY_EASYTAX_TAX_CODES;
+    public static final Identity<EasytaxTaxCodeStagesRecord, ULong> IDENTITY_EASYTAX_TAX_CODE_STAGES = Identities0.IDENTITY_EASYTAX_TAX_CODE_STAGES;
+    public static final Identity<EasytaxTaxCodeTenantsRecord, ULong> IDENTITY_EASYTAX_TAX_CODE_TENANTS = Identities0.IDENTITY_EASYTAX_TAX_CODE_TENANTS;
+    public static final Identity<EasytaxTaxCodeChangesRecord, ULong> IDENTITY_EASYTAX_TAX_CODE_CHANGES = Identities0.IDENTITY_EASYTAX_TAX_CODE_CHANGES;
+    public static final Identity<EasytaxTaxationHashesRecord, ULong> IDENTITY_EASYTAX_TAXATION_HASHES = Identities0.IDENTITY_EASYTAX_TAXATION_HASHES;
 
     // -------------------------------------------------------------------------
     // UNIQUE and PRIMARY KEY definitions
@@ -43,8 +57,20 @@ public class Keys {
 
     public static final UniqueKey<EasytaxTaxationsRecord> KEY_EASYTAX_TAXATIONS_PRIMARY = UniqueKeys0.KEY_EASYTAX_TAXATIONS_PRIMARY;
     public static final UniqueKey<EasytaxTaxationsRecord> KEY_EASYTAX_TAXATIONS_RECORD_ID = UniqueKeys0.KEY_EASYTAX_TAXATIONS_RECORD_ID;
+    public static final UniqueKey<EasytaxTaxationsArchiveRecord> KEY_EASYTAX_TAXATIONS_ARCHIVE_PRIMARY = UniqueKeys0.KEY_EASYTAX_TAXATIONS_ARCHIVE_PRIMARY;
     public static final UniqueKey<EasytaxTaxCodesRecord> KEY_EASYTAX_TAX_CODES_PRIMARY = UniqueKeys0.KEY_EASYTAX_TAX_CODES_PRIMARY;
     public static final UniqueKey<EasytaxTaxCodesRecord> KEY_EASYTAX_TAX_CODES_RECORD_ID = UniqueKeys0.KEY_EASYTAX_TAX_CODES_RECORD_ID;
+    public static final UniqueKey<EasytaxTaxCodeStagesRecord> KEY_EASYTAX_TAX_CODE_STAGES_PRIMARY = UniqueKeys0.KEY_EASYTAX_TAX_CODE_STAGES_PRIMARY;
+    public static final UniqueKey<EasytaxTaxCodeStagesRecord> KEY_EASYTAX_TAX_CODE_STAGES_RECORD_ID = UniqueKeys0.KEY_EASYTAX_TAX_CODE_STAGES_RECORD_ID;
+    public static final UniqueKey<EasytaxTaxCodeTenantsRecord> KEY_EASYTAX_TAX_CODE_TENANTS_PRIMARY = UniqueKeys0.KEY_EASYTAX_TAX_CODE_TENANTS_PRIMARY;
+    public static final UniqueKey<EasytaxTaxCodeTenantsRecord> KEY_EASYTAX_TAX_CODE_TENANTS_RECORD_ID = UniqueKeys0.KEY_EASYTAX_TAX_CODE_TENANTS_RECORD_ID;
+    public static final UniqueKey<EasytaxTaxCodeTenantsRecord> KEY_EASYTAX_TAX_CODE_TENANTS_EASYTAX_TAX_CODE_TENANTS_TENANT_IDX = UniqueKeys0.KEY_EASYTAX_TAX_CODE_TENANTS_EASYTAX_TAX_CODE_TENANTS_TENANT_IDX;
+    public static final UniqueKey<EasytaxTaxCodeChangesRecord> KEY_EASYTAX_TAX_CODE_CHANGES_PRIMARY = UniqueKeys0.KEY_EASYTAX_TAX_CODE_CHANGES_PRIMARY;
+    public static final UniqueKey<EasytaxTaxCodeChangesRecord> KEY_EASYTAX_TAX_CODE_CHANGES_RECORD_ID = UniqueKeys0.KEY_EASYTAX_TAX_CODE_CHANGES_RECORD_ID;
+    public static final UniqueKey<EasytaxTaxCodeChangesRecord> KEY_EASYTAX_TAX_CODE_CHANGES_EASYTAX_TAX_CODE_CHANGES_SEQ_IDX = UniqueKeys0.KEY_EASYTAX_TAX_CODE_CHANGES_EASYTAX_TAX_CODE_CHANGES_SEQ_IDX;
+    public static final UniqueKey<EasytaxTaxationHashesRecord> KEY_EASYTAX_TAXATION_HASHES_PRIMARY = UniqueKeys0.KEY_EASYTAX_TAXATION_HASHES_PRIMARY;
+    public static final UniqueKey<EasytaxTaxationHashesRecord> KEY_EASYTAX_TAXATION_HASHES_RECORD_ID = UniqueKeys0.KEY_EASYTAX_TAXATION_HASHES_RECORD_ID;
+    public static final UniqueKey<EasytaxTaxationHashesRecord> KEY_EASYTAX_TAXATION_HASHES_EASYTAX_TAXATION_HASHES_INVOICE_HASH_IDX = UniqueKeys0.KEY_EASYTAX_TAXATION_HASHES_EASYTAX_TAXATION_HASHES_INVOICE_HASH_IDX;
 
     // -------------------------------------------------------------------------
     // FOREIGN KEY definitions
@@ -58,12 +84,28 @@ public class Keys {
     private static class Identities0 extends AbstractKeys {
         public static Identity<EasytaxTaxationsRecord, ULong> IDENTITY_EASYTAX_TAXATIONS = createIdentity(EasytaxTaxations.EASYTAX_TAXATIONS, EasytaxTaxations.EASYTAX_TAXATIONS.RECORD_ID);
         public static Identity<EasytaxTaxCodesRecord, ULong> IDENTITY_EASYTAX_TAX_CODES = createIdentity(EasytaxTaxCodes.EASYTAX_TAX_CODES, EasytaxTaxCodes.EASYTAX_TAX_CODES.RECORD_ID);
+        public static Identity<EasytaxTaxCodeStagesRecord, ULong> IDENTITY_EASYTAX_TAX_CODE_STAGES = createIdentity(EasytaxTaxCodeStages.EASYTAX_TAX_CODE_STAGES, EasytaxTaxCodeStages.EASYTAX_TAX_CODE_STAGES.RECORD_ID);
+        public static Identity<EasytaxTaxCodeTenantsRecord, ULong> IDENTITY_EASYTAX_TAX_CODE_TENANTS = createIdentity(EasytaxTaxCodeTenants.EASYTAX_TAX_CODE_TENANTS, EasytaxTaxCodeTenants.EASYTAX_TAX_CODE_TENANTS.RECORD_ID);
+        public static Identity<EasytaxTaxCodeChangesRecord, ULong> IDENTITY_EASYTAX_TAX_CODE_CHANGES = createIdentity(EasytaxTaxCodeChanges.EASYTAX_TAX_CODE_CHANGES, EasytaxTaxCodeChanges.EASYTAX_TAX_CODE_CHANGES.RECORD_ID);
+        public static Identity<EasytaxTaxationHashesRecord, ULong> IDENTITY_EASYTAX_TAXATION_HASHES = createIdentity(EasytaxTaxationHashes.EASYTAX_TAXATION_HASHES, EasytaxTaxationHashes.EASYTAX_TAXATION_HASHES.RECORD_ID);
     }
 
     private static class UniqueKeys0 extends AbstractKeys {
         public static final UniqueKey<EasytaxTaxationsRecord> KEY_EASYTAX_TAXATIONS_PRIMARY = createUniqueKey(EasytaxTaxations.EASYTAX_TAXATIONS, "KEY_easytax_taxations_PRIMARY", EasytaxTaxations.EASYTAX_TAXATIONS.RECORD_ID);
         public static final UniqueKey<EasytaxTaxationsRecord> KEY_EASYTAX_TAXATIONS_RECORD_ID = createUniqueKey(EasytaxTaxations.EASYTAX_TAXATIONS, "KEY_easytax_taxations_record_id", EasytaxTaxations.EASYTAX_TAXATIONS.RECORD_ID);
+        public static final UniqueKey<EasytaxTaxationsArchiveRecord> KEY_EASYTAX_TAXATIONS_ARCHIVE_PRIMARY = createUniqueKey(EasytaxTaxationsArchive.EASYTAX_TAXATIONS_ARCHIVE, "KEY_easytax_taxations_archive_PRIMARY", EasytaxTaxationsArchive.EASYTAX_TAXATIONS_ARCHIVE.RECORD_ID, EasytaxTaxationsArchive.EASYTAX_TAXATIONS_ARCHIVE.CREATED_DATE);
         public static final UniqueKey<EasytaxTaxCodesRecord> KEY_EASYTAX_TAX_CODES_PRIMARY = createUniqueKey(EasytaxTaxCodes.EASYTAX_TAX_CODES, "KEY_easytax_tax_codes_PRIMARY", EasytaxTaxCodes.EASYTAX_TAX_CODES.RECORD_ID);
         public static final UniqueKey<EasytaxTaxCodesRecord> KEY_EASYTAX_TAX_CODES_RECORD_ID = createUniqueKey(EasytaxTaxCodes.EASYTAX_TAX_CODES, "KEY_easytax_tax_codes_record_id", EasytaxTaxCodes.EASYTAX_TAX_CODES.RECORD_ID);
+        public static final UniqueKey<EasytaxTaxCodeStagesRecord> KEY_EASYTAX_TAX_CODE_STAGES_PRIMARY = createUniqueKey(EasytaxTaxCodeStages.EASYTAX_TAX_CODE_STAGES, "KEY_easytax_tax_code_stages_PRIMARY", EasytaxTaxCodeStages.EASYTAX_TAX_CODE_STAGES.RECORD_ID);
+        public static final UniqueKey<EasytaxTaxCodeStagesRecord> KEY_EASYTAX_TAX_CODE_STAGES_RECORD_ID = createUniqueKey(EasytaxTaxCodeStages.EASYTAX_TAX_CODE_STAGES, "KEY_easytax_tax_code_stages_record_id", EasytaxTaxCodeStages.EASYTAX_TAX_CODE_STAGES.RECORD_ID);
+        public static final UniqueKey<EasytaxTaxCodeTenantsRecord> KEY_EASYTAX_TAX_CODE_TENANTS_PRIMARY = createUniqueKey(EasytaxTaxCodeTenants.EASYTAX_TAX_CODE_TENANTS, "KEY_easytax_tax_code_tenants_PRIMARY", EasytaxTaxCodeTenants.EASYTAX_TAX_CODE_TENANTS.RECORD_ID);
+        public static final UniqueKey<EasytaxTaxCodeTenantsRecord> KEY_EASYTAX_TAX_CODE_TENANTS_RECORD_ID = createUniqueKey(EasytaxTaxCodeTenants.EASYTAX_TAX_CODE_TENANTS, "KEY_easytax_tax_code_tenants_record_id", EasytaxTaxCodeTenants.EASYTAX_TAX_CODE_TENANTS.RECORD_ID);
+        public static final UniqueKey<EasytaxTaxCodeTenantsRecord> KEY_EASYTAX_TAX_CODE_TENANTS_EASYTAX_TAX_CODE_TENANTS_TENANT_IDX = createUniqueKey(EasytaxTaxCodeTenants.EASYTAX_TAX_CODE_TENANTS, "KEY_easytax_tax_code_tenants_easytax_tax_code_tenants_tenant_idx", EasytaxTaxCodeTenants.EASYTAX_TAX_CODE_TENANTS.KB_TENANT_ID);
+        public static final UniqueKey<EasytaxTaxCodeChangesRecord> KEY_EASYTAX_TAX_CODE_CHANGES_PRIMARY = createUniqueKey(EasytaxTaxCodeChanges.EASYTAX_TAX_CODE_CHANGES, "KEY_easytax_tax_code_changes_PRIMARY", EasytaxTaxCodeChanges.EASYTAX_TAX_CODE_CHANGES.RECORD_ID);
+        public static final UniqueKey<EasytaxTaxCodeChangesRecord> KEY_EASYTAX_TAX_CODE_CHANGES_RECORD_ID = createUniqueKey(EasytaxTaxCodeChanges.EASYTAX_TAX_CODE_CHANGES, "KEY_easytax_tax_code_changes_record_id", EasytaxTaxCodeChanges.EASYTAX_TAX_CODE_CHANGES.RECORD_ID);
+        public static final UniqueKey<EasytaxTaxCodeChangesRecord> KEY_EASYTAX_TAX_CODE_CHANGES_EASYTAX_TAX_CODE_CHANGES_SEQ_IDX = createUniqueKey(EasytaxTaxCodeChanges.EASYTAX_TAX_CODE_CHANGES, "KEY_easytax_tax_code_changes_easytax_tax_code_changes_seq_idx", EasytaxTaxCodeChanges.EASYTAX_TAX_CODE_CHANGES.KB_TENANT_ID, EasytaxTaxCodeChanges.EASYTAX_TAX_CODE_CHANGES.CHANGE_SEQ);
+        public static final UniqueKey<EasytaxTaxationHashesRecord> KEY_EASYTAX_TAXATION_HASHES_PRIMARY = createUniqueKey(EasytaxTaxationHashes.EASYTAX_TAXATION_HASHES, "KEY_easytax_taxation_hashes_PRIMARY", EasytaxTaxationHashes.EASYTAX_TAXATION_HASHES.RECORD_ID);
+        public static final UniqueKey<EasytaxTaxationHashesRecord> KEY_EASYTAX_TAXATION_HASHES_RECORD_ID = createUniqueKey(EasytaxTaxationHashes.EASYTAX_TAXATION_HASHES, "KEY_easytax_taxation_hashes_record_id", EasytaxTaxationHashes.EASYTAX_TAXATION_HASHES.RECORD_ID);
+        public static final UniqueKey<EasytaxTaxationHashesRecord> KEY_EASYTAX_TAXATION_HASHES_EASYTAX_TAXATION_HASHES_INVOICE_HASH_IDX = createUniqueKey(EasytaxTaxationHashes.EASYTAX_TAXATION_HASHES, "KEY_easytax_taxation_hashes_easytax_taxation_hashes_invoice_hash_idx", EasytaxTaxationHashes.EASYTAX_TAXATION_HASHES.KB_TENANT_ID, EasytaxTaxationHashes.EASYTAX_TAXATION_HASHES.KB_INVOICE_ID, EasytaxTaxationHashes.EASYTAX_TAXATION_HASHES.CONTENT_HASH);
     }
 }
@@ -6,8 +6,13 @@ package org.killbill.billing.plugin.easytax.dao.gen;
 
 import javax.annotation.Generated;
 
+import org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxCodeChanges;
+import org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxCodeStages;
+import org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxCodeTenants;
 import org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxCodes;
+import org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxationHashes;
 import org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxations;
+import org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxationsArchive;
 
 
 /**
@@ -28,8 +33,33 @@ public class Tables {
      */
     public static final EasytaxTaxations EASYTAX_TAXATIONS = org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxations.EASYTAX_TAXATIONS;
 
+    /**
+     * The table <code>easytax_taxations_archive</code>.
+     */
+    public static final EasytaxTaxationsArchive EASYTAX_TAXATIONS_ARCHIVE = org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxationsArchive.EASYTAX_TAXATIONS_ARCHIVE;
+
     /**
      * The table <code>easytax_tax_codes</code>.
      */
     public static final EasytaxTaxCodes EASYTAX_TAX_CODES = org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxCodes.EASYTAX_TAX_CODES;
+
+    /**
+     * The table <code>easytax_tax_code_stages</code>.
+     */
+    public static final EasytaxTaxCodeStages EASYTAX_TAX_CODE_STAGES = org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxCodeStages.EASYTAX_TAX_CODE_STAGES;
+
+    /**
+     * The table <code>easytax_tax_code_changes</code>.
+     */
+    public static final EasytaxTaxCodeChanges EASYTAX_TAX_CODE_CHANGES = org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxCodeChanges.EASYTAX_TAX_CODE_CHANGES;
+
+    /**
+     * The table <code>easytax_taxation_hashes</code>.
+     */
+    public static final EasytaxTaxationHashes EASYTAX_TAXATION_HASHES = org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxationHashes.EASYTAX_TAXATION_HASHES;
+
+    /**
+     * The table <code>easytax_tax_code_tenants</code>.
+     */
+    public static final EasytaxTaxCodeTenants EASYTAX_TAX_CODE_TENANTS = org.killbill.billing.plugin.easytax.dao.gen.tables.EasytaxTaxCodeTenants.EASYTAX_TAX_CODE_TENANTS;
 }
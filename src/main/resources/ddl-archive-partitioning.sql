@@ -0,0 +1,21 @@
+/* Optional MySQL/MariaDB partitioning of the easytax_taxations_archive table by created_date.
+ *
+ * The archive table's primary key includes created_date, so it can be range partitioned as-is.
+ * Adjust the partition boundaries to suit the retention policy of the deployment, and periodically
+ * split the pmax partition (ALTER TABLE ... REORGANIZE PARTITION) to add new ranges. Old partitions can then be
+ * removed cheaply with ALTER TABLE ... DROP PARTITION.
+ */
+alter table easytax_taxations_archive
+partition by range columns(created_date) (
+  partition p2017 values less than ('2018-01-01')
+, partition p2018 values less than ('2019-01-01')
+, partition p2019 values less than ('2020-01-01')
+, partition p2020 values less than ('2021-01-01')
+, partition p2021 values less than ('2022-01-01')
+, partition p2022 values less than ('2023-01-01')
+, partition p2023 values less than ('2024-01-01')
+, partition p2024 values less than ('2025-01-01')
+, partition p2025 values less than ('2026-01-01')
+, partition p2026 values less than ('2027-01-01')
+, partition pmax values less than (maxvalue)
+);
@@ -0,0 +1,34 @@
+/* Seed the tax code change log of an installation upgraded from a version without it.
+ *
+ * Run once, after creating the easytax_tax_code_tenants and easytax_tax_code_changes tables from
+ * ddl.sql (without dropping easytax_tax_codes). An INSERT change is added for every tax code of a
+ * tenant that has no changes yet, dated when that tax code was last saved. Earlier versions and
+ * deleted tax codes are not known, so the known_since date of those tenants is set to now and
+ * knownDate queries before then are rejected.
+ */
+insert into easytax_tax_code_tenants (kb_tenant_id, change_seq, created_date)
+select distinct tc.kb_tenant_id, 0, utc_timestamp()
+from easytax_tax_codes tc
+where not exists (
+  select 1 from easytax_tax_code_tenants t where t.kb_tenant_id = tc.kb_tenant_id
+);
+
+insert into easytax_tax_code_changes (kb_tenant_id, change_seq, change_type, tax_zone,
+  product_name, tax_code, tax_rate, valid_from_date, valid_to_date, created_date)
+select tc.kb_tenant_id
+, (select count(*) from easytax_tax_codes p
+   where p.kb_tenant_id = tc.kb_tenant_id and p.record_id <= tc.record_id)
+, 'INSERT', tc.tax_zone, tc.product_name, tc.tax_code, tc.tax_rate, tc.valid_from_date,
+  tc.valid_to_date, tc.created_date
+from easytax_tax_codes tc
+where not exists (
+  select 1 from easytax_tax_code_changes c where c.kb_tenant_id = tc.kb_tenant_id
+);
+
+update easytax_tax_code_tenants t
+set t.change_seq = (
+  select max(c.change_seq) from easytax_tax_code_changes c where c.kb_tenant_id = t.kb_tenant_id
+)
+, t.known_since = utc_timestamp()
+where t.change_seq = 0
+and exists (select 1 from easytax_tax_code_changes c where c.kb_tenant_id = t.kb_tenant_id);
@@ -18,6 +18,40 @@ create table easytax_taxations (
 , primary key(record_id)
 ) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
 create index easytax_taxations_account_invoice_idx on easytax_taxations(kb_account_id, kb_invoice_id);
+create index easytax_taxations_created_idx on easytax_taxations(created_date);
+
+/* Content hashes of added taxation records; unlike easytax_taxations rows these are not
+ * compacted, so the unique index rejects taxing the same content twice. The hashes of an invoice
+ * are deleted when its taxation records are archived.
+ */
+drop table if exists easytax_taxation_hashes;
+create table easytax_taxation_hashes (
+  record_id serial
+, kb_tenant_id char(36) not null
+, kb_invoice_id char(36) not null
+, content_hash char(64) not null
+, created_date datetime not null
+, primary key(record_id)
+) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
+create unique index easytax_taxation_hashes_invoice_hash_idx on easytax_taxation_hashes(kb_tenant_id, kb_invoice_id, content_hash);
+
+/* Archive of easytax_taxations rows for old invoices, keeping their record_id; created_date is
+ * part of the primary key so this table can be partitioned by it, see
+ * ddl-archive-partitioning.sql.
+ */
+drop table if exists easytax_taxations_archive;
+create table easytax_taxations_archive (
+  record_id bigint unsigned not null
+, kb_tenant_id char(36) not null
+, kb_account_id char(36) not null
+, kb_invoice_id char(36) not null
+, kb_invoice_item_ids mediumtext default null
+, total_tax numeric(15,9) default null
+, created_date datetime not null
+, primary key(record_id, created_date)
+) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
+create index easytax_taxations_archive_account_invoice_idx on easytax_taxations_archive(kb_account_id, kb_invoice_id);
+create index easytax_taxations_archive_created_idx on easytax_taxations_archive(created_date);
 
 drop table if exists easytax_tax_codes;
 create table easytax_tax_codes (
@@ -33,3 +67,53 @@ create table easytax_tax_codes (
 , primary key(record_id)
 ) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
 create index easytax_tax_codes_product_idx on easytax_tax_codes(tax_zone, product_name, tax_code);
+
+/* One row per tenant with tax codes, locked to serialize changes to the tenant's tax codes, with
+ * the last change_seq used in easytax_tax_code_changes and the known_since date from which that
+ * change log describes all of the tenant's tax codes (null if since the first change).
+ */
+drop table if exists easytax_tax_code_tenants;
+create table easytax_tax_code_tenants (
+  record_id serial
+, kb_tenant_id char(36) not null
+, change_seq bigint not null
+, created_date datetime not null
+, known_since datetime default null
+, primary key(record_id)
+) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
+create unique index easytax_tax_code_tenants_tenant_idx on easytax_tax_code_tenants(kb_tenant_id);
+
+drop table if exists easytax_tax_code_stages;
+create table easytax_tax_code_stages (
+  record_id serial
+, kb_tenant_id char(36) not null
+, stage_id char(36) not null
+, tax_zone varchar(36) not null
+, product_name varchar(255) not null
+, tax_code varchar(255) not null
+, tax_rate numeric(15,9) not null
+, valid_from_date datetime not null
+, valid_to_date datetime
+, created_date datetime not null
+, primary key(record_id)
+) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
+create index easytax_tax_code_stages_stage_idx on easytax_tax_code_stages(kb_tenant_id, stage_id);
+
+drop table if exists easytax_tax_code_changes;
+create table easytax_tax_code_changes (
+  record_id serial
+, kb_tenant_id char(36) not null
+, change_seq bigint not null
+, change_type varchar(6) not null
+, tax_zone varchar(36) not null
+, product_name varchar(255) not null
+, tax_code varchar(255) not null
+, tax_rate numeric(15,9) not null
+, valid_from_date datetime not null
+, valid_to_date datetime
+, created_date datetime not null
+, primary key(record_id)
+) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
+create unique index easytax_tax_code_changes_seq_idx on easytax_tax_code_changes(kb_tenant_id, change_seq);
+create index easytax_tax_code_changes_code_idx on easytax_tax_code_changes(kb_tenant_id, tax_zone, product_name, tax_code, valid_from_date, change_seq);
+create index easytax_tax_code_changes_created_idx on easytax_tax_code_changes(created_date);
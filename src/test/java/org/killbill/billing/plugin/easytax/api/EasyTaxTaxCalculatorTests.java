@@ -28,13 +28,16 @@ import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.then;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
 
 import java.math.BigDecimal;
+import java.sql.SQLIntegrityConstraintViolationException;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -54,15 +57,19 @@ import org.killbill.billing.invoice.api.Invoice;
 import org.killbill.billing.invoice.api.InvoiceItem;
 import org.killbill.billing.invoice.api.InvoiceItemType;
 import org.killbill.billing.osgi.libs.killbill.OSGIKillbillAPI;
+import org.killbill.billing.payment.api.PluginProperty;
 import org.killbill.billing.plugin.TestUtils;
 import org.killbill.billing.plugin.api.invoice.PluginTaxCalculator;
 import org.killbill.billing.plugin.easytax.CatalogUtils;
 import org.killbill.billing.plugin.easytax.EasyTaxTestUtils;
+import org.killbill.billing.plugin.easytax.core.CompositeTaxZoneResolver;
 import org.killbill.billing.plugin.easytax.core.EasyTaxActivator;
 import org.killbill.billing.plugin.easytax.core.EasyTaxConfig;
 import org.killbill.billing.plugin.easytax.core.EasyTaxConfigurationHandler;
 import org.killbill.billing.plugin.easytax.core.EasyTaxTaxCode;
 import org.killbill.billing.plugin.easytax.core.EasyTaxTaxation;
+import org.killbill.billing.plugin.easytax.core.PluginPropertyTaxZoneResolver;
+import org.killbill.billing.plugin.easytax.core.TaxZoneHierarchy;
 import org.killbill.billing.util.api.CustomFieldUserApi;
 import org.killbill.clock.Clock;
 import org.mockito.ArgumentCaptor;
@@ -210,8 +217,8 @@ public class EasyTaxTaxCalculatorTests {
         final Map<UUID, Collection<InvoiceItem>> adjustmentItems1 = Collections.emptyMap();
 
         // query for applicable tax codes will return GST for account
-        given(dao.getTaxCodes(tenantId, account1.getCountry(), TEST_PRODUCT_NAME, null,
-                invoiceTaxDate)).willReturn(singletonList(nzGst));
+        given(dao.getApplicableTaxCodes(tenantId, TaxZoneHierarchy.EMPTY, account1.getCountry(),
+                TEST_PRODUCT_NAME, invoiceTaxDate)).willReturn(singletonList(nzGst));
 
         // no taxation records exist yet
         given(dao.getTaxation(tenantId, account1.getId(), invoice.getId())).willReturn(emptyList());
@@ -248,6 +255,42 @@ public class EasyTaxTaxCalculatorTests {
                 "Taxation total tax");
     }
 
+    @Test(groups = "fast")
+    public void invoiceItemWithoutPlanOnNewInvoice() throws Exception {
+        // given
+        final PluginTaxCalculator calculator = calculatorWithConfig(config);
+
+        final Invoice invoice = TestUtils.buildInvoice(account1);
+        final DateTime invoiceTaxDate = invoice.getInvoiceDate()
+                .toDateTimeAtStartOfDay(account1.getTimeZone());
+        final InvoiceItem taxableItem1 = TestUtils.buildInvoiceItem(invoice, InvoiceItemType.USAGE,
+                new BigDecimal("100"), null);
+        final Map<UUID, InvoiceItem> taxableItems1 = singletonMap(taxableItem1.getId(),
+                taxableItem1);
+        final Map<UUID, Collection<InvoiceItem>> adjustmentItems1 = Collections.emptyMap();
+
+        // without a product, query for applicable tax codes of all products returns GST
+        given(dao.getApplicableTaxCodes(tenantId, TaxZoneHierarchy.EMPTY, account1.getCountry(),
+                null, invoiceTaxDate)).willReturn(singletonList(nzGst));
+
+        // no taxation records exist yet
+        given(dao.getTaxation(tenantId, account1.getId(), invoice.getId())).willReturn(emptyList());
+
+        // when
+        final List<InvoiceItem> initialTaxItems = calculator.compute(account1, newInvoice1, invoice,
+                taxableItems1, adjustmentItems1, false, emptyList(), tenantId);
+
+        // then
+        assertEquals(initialTaxItems.size(), 1);
+        InvoiceItem taxItem1 = initialTaxItems.get(0);
+        assertEquals(taxItem1.getInvoiceItemType(), InvoiceItemType.TAX);
+        assertBigDecimalEquals(taxItem1.getAmount(),
+                taxableItem1.getAmount().multiply(nzGst.getTaxRate()), 2, "Tax amount");
+        assertEquals(taxItem1.getLinkedItemId(), taxableItem1.getId(), "Linked to taxable item");
+        then(dao).should().getApplicableTaxCodes(tenantId, TaxZoneHierarchy.EMPTY,
+                account1.getCountry(), null, invoiceTaxDate);
+    }
+
     @Test(groups = "fast")
     public void invoiceItemOnNewInvoiceMultipleTaxes() throws Exception {
         // given
@@ -262,8 +305,8 @@ public class EasyTaxTaxCalculatorTests {
         final Map<UUID, Collection<InvoiceItem>> adjustmentItems1 = Collections.emptyMap();
 
         // query for applicable tax codes will return GST for account
-        given(dao.getTaxCodes(tenantId, account1.getCountry(), TEST_PRODUCT_NAME, null,
-                invoiceTaxDate)).willReturn(asList(nzGst, xst));
+        given(dao.getApplicableTaxCodes(tenantId, TaxZoneHierarchy.EMPTY, account1.getCountry(),
+                TEST_PRODUCT_NAME, invoiceTaxDate)).willReturn(asList(nzGst, xst));
 
         // no taxation records exist yet
         given(dao.getTaxation(tenantId, account1.getId(), invoice.getId())).willReturn(emptyList());
@@ -326,8 +369,8 @@ public class EasyTaxTaxCalculatorTests {
                 taxableItem1.getId(), singleton(adjustment1ForInvoiceItem1));
 
         // query for applicable tax codes will return GST for account
-        given(dao.getTaxCodes(tenantId, account1.getCountry(), TEST_PRODUCT_NAME, null,
-                invoiceTaxDate)).willReturn(singletonList(nzGst));
+        given(dao.getApplicableTaxCodes(tenantId, TaxZoneHierarchy.EMPTY, account1.getCountry(),
+                TEST_PRODUCT_NAME, invoiceTaxDate)).willReturn(singletonList(nzGst));
 
         // no taxation records exist yet
         given(dao.getTaxation(tenantId, account1.getId(), invoice.getId())).willReturn(emptyList());
@@ -406,8 +449,8 @@ public class EasyTaxTaxCalculatorTests {
         final Map<UUID, Collection<InvoiceItem>> initialAdjustmentItems = emptyMap();
 
         // query for applicable tax codes will return GST for account
-        given(dao.getTaxCodes(tenantId, account.getCountry(), TEST_PRODUCT_NAME, null,
-                invoiceTaxDate)).willReturn(singletonList(nzGst));
+        given(dao.getApplicableTaxCodes(tenantId, TaxZoneHierarchy.EMPTY, account.getCountry(),
+                TEST_PRODUCT_NAME, invoiceTaxDate)).willReturn(singletonList(nzGst));
 
         // no taxation records exist yet
         given(dao.getTaxation(tenantId, account.getId(), invoice.getId())).willReturn(emptyList());
@@ -573,6 +616,185 @@ public class EasyTaxTaxCalculatorTests {
         assertEquals(adjustments2idemp.size(), 0);
     }
 
+    private EasyTaxTaxation taxationForOtherItem(Invoice invoice) {
+        EasyTaxTaxation taxation = new EasyTaxTaxation(RECORD_ID.incrementAndGet());
+        taxation.setKbTenantId(tenantId);
+        taxation.setKbAccountId(invoice.getAccountId());
+        taxation.setKbInvoiceId(invoice.getId());
+        taxation.setInvoiceItemIds(singletonMap(UUID.randomUUID(), singleton(UUID.randomUUID())));
+        taxation.setTotalTax(BigDecimal.ONE);
+        return taxation;
+    }
+
+    @Test(groups = "fast")
+    public void compactTaxationWhenThresholdReached() throws Exception {
+        // given
+        final Properties props = new Properties();
+        props.setProperty(
+                EasyTaxConfig.PROPERTY_PREFIX + EasyTaxConfig.TAXATION_COMPACT_THRESHOLD_PROPERTY,
+                "2");
+        final PluginTaxCalculator calculator = calculatorWithConfig(new EasyTaxConfig(props));
+
+        final Invoice invoice = TestUtils.buildInvoice(account1);
+        final DateTime invoiceTaxDate = invoice.getInvoiceDate()
+                .toDateTimeAtStartOfDay(account1.getTimeZone());
+        final InvoiceItem taxableItem1 = invoiceItemForTestPlan(invoice, new BigDecimal("100"));
+        final Map<UUID, InvoiceItem> taxableItems1 = singletonMap(taxableItem1.getId(),
+                taxableItem1);
+
+        given(dao.getApplicableTaxCodes(tenantId, TaxZoneHierarchy.EMPTY, account1.getCountry(),
+                TEST_PRODUCT_NAME, invoiceTaxDate)).willReturn(singletonList(nzGst));
+
+        // 1 taxation record exists for some other item
+        given(dao.getTaxation(tenantId, account1.getId(), invoice.getId()))
+                .willReturn(singletonList(taxationForOtherItem(invoice)));
+
+        // when
+        final List<InvoiceItem> taxItems = calculator.compute(account1, newInvoice1, invoice,
+                taxableItems1, emptyMap(), false, emptyList(), tenantId);
+
+        // then
+        assertEquals(taxItems.size(), 1);
+        then(dao).should().addTaxation(any(EasyTaxTaxation.class));
+        then(dao).should().compactTaxation(tenantId, account1.getId(), invoice.getId());
+    }
+
+    @Test(groups = "fast")
+    public void compactTaxationNotNeededBelowThreshold() throws Exception {
+        // given
+        final Properties props = new Properties();
+        props.setProperty(
+                EasyTaxConfig.PROPERTY_PREFIX + EasyTaxConfig.TAXATION_COMPACT_THRESHOLD_PROPERTY,
+                "3");
+        final PluginTaxCalculator calculator = calculatorWithConfig(new EasyTaxConfig(props));
+
+        final Invoice invoice = TestUtils.buildInvoice(account1);
+        final DateTime invoiceTaxDate = invoice.getInvoiceDate()
+                .toDateTimeAtStartOfDay(account1.getTimeZone());
+        final InvoiceItem taxableItem1 = invoiceItemForTestPlan(invoice, new BigDecimal("100"));
+        final Map<UUID, InvoiceItem> taxableItems1 = singletonMap(taxableItem1.getId(),
+                taxableItem1);
+
+        given(dao.getApplicableTaxCodes(tenantId, TaxZoneHierarchy.EMPTY, account1.getCountry(),
+                TEST_PRODUCT_NAME, invoiceTaxDate)).willReturn(singletonList(nzGst));
+        given(dao.getTaxation(tenantId, account1.getId(), invoice.getId()))
+                .willReturn(singletonList(taxationForOtherItem(invoice)));
+
+        // when
+        final List<InvoiceItem> taxItems = calculator.compute(account1, newInvoice1, invoice,
+                taxableItems1, emptyMap(), false, emptyList(), tenantId);
+
+        // then
+        assertEquals(taxItems.size(), 1);
+        then(dao).should().addTaxation(any(EasyTaxTaxation.class));
+        then(dao).should(Mockito.never()).compactTaxation(any(UUID.class), any(UUID.class),
+                any(UUID.class));
+    }
+
+    @Test(groups = "fast")
+    public void taxationContentHashStableAcrossComputes() throws Exception {
+        // given
+        final PluginTaxCalculator calculator = calculatorWithConfig(config);
+
+        final Invoice invoice = TestUtils.buildInvoice(account1);
+        final DateTime invoiceTaxDate = invoice.getInvoiceDate()
+                .toDateTimeAtStartOfDay(account1.getTimeZone());
+        final InvoiceItem taxableItem1 = invoiceItemForTestPlan(invoice, new BigDecimal("100"));
+        final Map<UUID, InvoiceItem> taxableItems1 = singletonMap(taxableItem1.getId(),
+                taxableItem1);
+
+        given(dao.getApplicableTaxCodes(tenantId, TaxZoneHierarchy.EMPTY, account1.getCountry(),
+                TEST_PRODUCT_NAME, invoiceTaxDate)).willReturn(singletonList(nzGst));
+        given(dao.getTaxation(tenantId, account1.getId(), invoice.getId())).willReturn(emptyList());
+
+        // when: compute twice, as if two processes raced on the same invoice
+        final List<InvoiceItem> taxItems1 = calculator.compute(account1, newInvoice1, invoice,
+                taxableItems1, emptyMap(), false, emptyList(), tenantId);
+        final List<InvoiceItem> taxItems2 = calculator.compute(account1, newInvoice1, invoice,
+                taxableItems1, emptyMap(), false, emptyList(), tenantId);
+
+        // then
+        assertEquals(taxItems1.size(), 1);
+        assertEquals(taxItems2.size(), 1);
+        Assert.assertNotEquals(taxItems1.get(0).getId(), taxItems2.get(0).getId(),
+                "Tax item IDs differ");
+
+        ArgumentCaptor<EasyTaxTaxation> taxationCaptor = ArgumentCaptor
+                .forClass(EasyTaxTaxation.class);
+        then(dao).should(Mockito.times(2)).addTaxation(taxationCaptor.capture());
+        final String hash = taxationCaptor.getAllValues().get(0).getContentHash();
+        Assert.assertNotNull(hash, "Content hash set");
+        assertEquals(hash.length(), 64, "Content hash is hex SHA-256");
+        assertEquals(taxationCaptor.getAllValues().get(1).getContentHash(), hash,
+                "Content hash does not depend on tax item IDs");
+    }
+
+    @Test(groups = "fast")
+    public void taxationContentHashIgnoresUntaxedAdjustments() throws Exception {
+        // given
+        final PluginTaxCalculator calculator = calculatorWithConfig(config);
+
+        final Invoice invoice = TestUtils.buildInvoice(account1);
+        final DateTime invoiceTaxDate = invoice.getInvoiceDate()
+                .toDateTimeAtStartOfDay(account1.getTimeZone());
+        final InvoiceItem taxableItem1 = invoiceItemForTestPlan(invoice, new BigDecimal("100"));
+        final Map<UUID, InvoiceItem> taxableItems1 = singletonMap(taxableItem1.getId(),
+                taxableItem1);
+
+        // an adjustment of some other item, which is not taxed by this computation
+        final UUID otherItemId = UUID.randomUUID();
+        final InvoiceItem otherAdjustment = invoiceItemForTestPlan(invoice,
+                InvoiceItemType.ITEM_ADJ, BigDecimal.ONE.negate(), otherItemId);
+        final Map<UUID, Collection<InvoiceItem>> otherAdjustmentItems = singletonMap(otherItemId,
+                singleton(otherAdjustment));
+
+        given(dao.getApplicableTaxCodes(tenantId, TaxZoneHierarchy.EMPTY, account1.getCountry(),
+                TEST_PRODUCT_NAME, invoiceTaxDate)).willReturn(singletonList(nzGst));
+        given(dao.getTaxation(tenantId, account1.getId(), invoice.getId())).willReturn(emptyList());
+
+        // when
+        calculator.compute(account1, newInvoice1, invoice, taxableItems1, emptyMap(), false,
+                emptyList(), tenantId);
+        calculator.compute(account1, newInvoice1, invoice, taxableItems1, otherAdjustmentItems,
+                false, emptyList(), tenantId);
+
+        // then
+        ArgumentCaptor<EasyTaxTaxation> taxationCaptor = ArgumentCaptor
+                .forClass(EasyTaxTaxation.class);
+        then(dao).should(Mockito.times(2)).addTaxation(taxationCaptor.capture());
+        assertEquals(taxationCaptor.getAllValues().get(1).getContentHash(),
+                taxationCaptor.getAllValues().get(0).getContentHash(),
+                "Content hash does not depend on adjustments of untaxed items");
+    }
+
+    @Test(groups = "fast")
+    public void duplicateTaxationReturnsNoItems() throws Exception {
+        // given
+        final PluginTaxCalculator calculator = calculatorWithConfig(config);
+
+        final Invoice invoice = TestUtils.buildInvoice(account1);
+        final DateTime invoiceTaxDate = invoice.getInvoiceDate()
+                .toDateTimeAtStartOfDay(account1.getTimeZone());
+        final InvoiceItem taxableItem1 = invoiceItemForTestPlan(invoice, new BigDecimal("100"));
+        final Map<UUID, InvoiceItem> taxableItems1 = singletonMap(taxableItem1.getId(),
+                taxableItem1);
+
+        given(dao.getApplicableTaxCodes(tenantId, TaxZoneHierarchy.EMPTY, account1.getCountry(),
+                TEST_PRODUCT_NAME, invoiceTaxDate)).willReturn(singletonList(nzGst));
+        given(dao.getTaxation(tenantId, account1.getId(), invoice.getId())).willReturn(emptyList());
+
+        // another process added the same taxation already
+        Mockito.doThrow(new SQLIntegrityConstraintViolationException("Duplicate", "23000"))
+                .when(dao).addTaxation(any(EasyTaxTaxation.class));
+
+        // when
+        final List<InvoiceItem> taxItems = calculator.compute(account1, newInvoice1, invoice,
+                taxableItems1, emptyMap(), false, emptyList(), tenantId);
+
+        // then
+        assertEquals(taxItems.size(), 0, "No duplicate tax items returned");
+    }
+
     private void checkCreatedItems(final Map<UUID, InvoiceItemType> expectedInvoiceItemTypes,
             final Iterable<InvoiceItem> createdItems, final Invoice newInvoice) {
         for (final InvoiceItem invoiceItem : createdItems) {
@@ -581,4 +803,66 @@ public class EasyTaxTaxCalculatorTests {
                     expectedInvoiceItemTypes.get(invoiceItem.getLinkedItemId()));
         }
     }
+
+    @Test(groups = "fast")
+    public void invoiceItemsInDifferentTaxZones() throws Exception {
+        // given
+        Properties props = new Properties();
+        props.setProperty(EasyTaxConfig.PROPERTY_PREFIX + EasyTaxConfig.TAX_ZONE_RESOLVER_PROPERTY,
+                CompositeTaxZoneResolver.class.getName());
+        final PluginTaxCalculator calculator = calculatorWithConfig(new EasyTaxConfig(props));
+
+        final Invoice invoice = TestUtils.buildInvoice(account1);
+        final DateTime invoiceTaxDate = invoice.getInvoiceDate()
+                .toDateTimeAtStartOfDay(account1.getTimeZone());
+        final InvoiceItem taxableItem1 = invoiceItemForTestPlan(invoice, new BigDecimal("100"));
+        final InvoiceItem taxableItem2 = invoiceItemForTestPlan(invoice, new BigDecimal("200"));
+        final InvoiceItem taxableItem3 = invoiceItemForTestPlan(invoice, new BigDecimal("300"));
+        final Map<UUID, InvoiceItem> taxableItems = new LinkedHashMap<>();
+        taxableItems.put(taxableItem1.getId(), taxableItem1);
+        taxableItems.put(taxableItem2.getId(), taxableItem2);
+        taxableItems.put(taxableItem3.getId(), taxableItem3);
+
+        // item 2 is delivered to a different tax zone than the account
+        final List<PluginProperty> properties = singletonList(new PluginProperty(
+                PluginPropertyTaxZoneResolver.DEFAULT_PROPERTY_NAME + "." + taxableItem2.getId(),
+                "DE", false));
+
+        final EasyTaxTaxCode deVat = new EasyTaxTaxCode();
+        deVat.setKbTenantId(tenantId);
+        deVat.setTaxZone("DE");
+        deVat.setProductName(TEST_PRODUCT_NAME);
+        deVat.setTaxCode("VAT");
+        deVat.setTaxRate(new BigDecimal("0.19"));
+        deVat.setValidFromDate(nzGst.getValidFromDate());
+
+        given(dao.getApplicableTaxCodes(tenantId, TaxZoneHierarchy.EMPTY, account1.getCountry(),
+                TEST_PRODUCT_NAME, invoiceTaxDate)).willReturn(singletonList(nzGst));
+        given(dao.getApplicableTaxCodes(tenantId, TaxZoneHierarchy.EMPTY, "DE", TEST_PRODUCT_NAME,
+                invoiceTaxDate)).willReturn(singletonList(deVat));
+        given(dao.getTaxation(tenantId, account1.getId(), invoice.getId())).willReturn(emptyList());
+
+        // when
+        final List<InvoiceItem> taxItems = calculator.compute(account1, newInvoice1, invoice,
+                taxableItems, emptyMap(), false, properties, tenantId);
+
+        // then
+        assertEquals(taxItems.size(), 3, "Tax item per taxable item");
+        assertEquals(taxItems.get(0).getLinkedItemId(), taxableItem1.getId());
+        assertBigDecimalEquals(taxItems.get(0).getAmount(), new BigDecimal("15"), 2,
+                "Item 1 taxed in account tax zone");
+        assertEquals(taxItems.get(1).getLinkedItemId(), taxableItem2.getId());
+        assertBigDecimalEquals(taxItems.get(1).getAmount(), new BigDecimal("38"), 2,
+                "Item 2 taxed in item tax zone");
+        assertEquals(taxItems.get(2).getLinkedItemId(), taxableItem3.getId());
+        assertBigDecimalEquals(taxItems.get(2).getAmount(), new BigDecimal("45"), 2,
+                "Item 3 taxed in account tax zone");
+
+        // tax codes looked up once per distinct tax zone
+        then(dao).should(times(1)).getApplicableTaxCodes(tenantId, TaxZoneHierarchy.EMPTY,
+                account1.getCountry(), TEST_PRODUCT_NAME, invoiceTaxDate);
+        then(dao).should(times(1)).getApplicableTaxCodes(tenantId, TaxZoneHierarchy.EMPTY, "DE",
+                TEST_PRODUCT_NAME, invoiceTaxDate);
+    }
+
 }
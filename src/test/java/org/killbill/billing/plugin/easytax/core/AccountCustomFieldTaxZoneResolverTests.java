@@ -15,22 +15,34 @@
 
 package org.killbill.billing.plugin.easytax.core;
 
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.UUID;
 
 import org.joda.time.DateTimeZone;
 import org.killbill.billing.ObjectType;
 import org.killbill.billing.account.api.Account;
+import org.killbill.billing.invoice.api.InvoiceItem;
 import org.killbill.billing.osgi.api.OSGIKillbill;
 import org.killbill.billing.plugin.easytax.EasyTaxTestUtils;
 import org.killbill.billing.util.api.CustomFieldUserApi;
 import org.killbill.billing.util.callcontext.TenantContext;
 import org.killbill.billing.util.customfield.CustomField;
+import org.killbill.billing.util.entity.Pagination;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.testng.annotations.AfterTest;
@@ -118,4 +130,302 @@ public class AccountCustomFieldTaxZoneResolverTests {
                 "Fallback to account country when no custom field present");
     }
 
+    private CustomField createCustomField(UUID objectId, ObjectType objectType, String name,
+            String value) {
+        CustomField field = createCustomField(name, value);
+        when(field.getObjectId()).thenReturn(objectId);
+        when(field.getObjectType()).thenReturn(objectType);
+        return field;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Pagination<CustomField> createPage(Long nextOffset, CustomField... fields) {
+        Pagination<CustomField> page = Mockito.mock(Pagination.class);
+        when(page.iterator()).thenReturn(Arrays.asList(fields).iterator());
+        when(page.getNextOffset()).thenReturn(nextOffset);
+        return page;
+    }
+
+    @Test(groups = "fast")
+    public void prefetchAccountCustomFields() {
+        // given
+        Account account = EasyTaxTestUtils.createAccount("NZ",
+                DateTimeZone.forID("Pacific/Auckland"));
+        Account account2 = EasyTaxTestUtils.createAccount("AU",
+                DateTimeZone.forID("Australia/Sydney"));
+        CustomFieldUserApi fieldApi = Mockito.mock(CustomFieldUserApi.class);
+        when(killbillApi.getCustomFieldUserApi()).thenReturn(fieldApi);
+        String field = AccountCustomFieldTaxZoneResolver.TAX_ZONE_CUSTOM_FIIELD;
+        Pagination<CustomField> page1 = createPage(2L,
+                createCustomField(UUID.randomUUID(), ObjectType.ACCOUNT, field, "other"),
+                createCustomField(account.getId(), ObjectType.INVOICE, field, "invoice"));
+        Pagination<CustomField> page2 = createPage(null,
+                createCustomField(account.getId(), ObjectType.ACCOUNT, field, TEST_TAX_ZONE));
+        when(fieldApi.searchCustomFields(eq(field), eq(0L),
+                eq(AccountCustomFieldTaxZoneResolver.PREFETCH_PAGE_SIZE), any(TenantContext.class)))
+                        .thenReturn(page1);
+        when(fieldApi.searchCustomFields(eq(field), eq(2L),
+                eq(AccountCustomFieldTaxZoneResolver.PREFETCH_PAGE_SIZE), any(TenantContext.class)))
+                        .thenReturn(page2);
+
+        when(fieldApi.getCustomFieldsForObject(eq(account2.getId()), eq(ObjectType.ACCOUNT),
+                any(TenantContext.class))).thenReturn(Collections.emptyList());
+        List<UUID> accountIds = accountIds(account.getId(), account2.getId());
+
+        // when
+        AccountCustomFieldTaxZoneResolver resolver = createResolver(new Properties());
+        int count = resolver.prefetchTaxZones(tenantId, accountIds);
+        String taxZone = resolver.taxZoneForInvoice(tenantId, account, null,
+                Collections.emptyList());
+        String taxZone2 = resolver.taxZoneForInvoice(tenantId, account2, null,
+                Collections.emptyList());
+
+        // then
+        assertEquals(count, 1, "Prefetched count");
+        assertEquals(taxZone, TEST_TAX_ZONE, "Tax zone resolved from prefetched custom field");
+        assertEquals(taxZone2, account2.getCountry(),
+                "Fallback to account country when no custom field found");
+        Mockito.verify(fieldApi, Mockito.never()).getCustomFieldsForObject(eq(account.getId()),
+                any(ObjectType.class), any(TenantContext.class));
+        Mockito.verify(fieldApi).getCustomFieldsForObject(eq(account2.getId()),
+                eq(ObjectType.ACCOUNT), any(TenantContext.class));
+    }
+
+    private static List<UUID> accountIds(UUID... ids) {
+        // enough accounts to search rather than look up each account
+        List<UUID> result = new ArrayList<>(Arrays.asList(ids));
+        while (result.size() <= AccountCustomFieldTaxZoneResolver.PREFETCH_LOOKUP_MAX_ACCOUNTS) {
+            result.add(UUID.randomUUID());
+        }
+        return result;
+    }
+
+    @Test(groups = "fast")
+    public void prefetchKeyedByTenant() {
+        // given
+        Account account = EasyTaxTestUtils.createAccount("NZ",
+                DateTimeZone.forID("Pacific/Auckland"));
+        CustomFieldUserApi fieldApi = Mockito.mock(CustomFieldUserApi.class);
+        when(killbillApi.getCustomFieldUserApi()).thenReturn(fieldApi);
+        String field = AccountCustomFieldTaxZoneResolver.TAX_ZONE_CUSTOM_FIIELD;
+        Pagination<CustomField> page = createPage(null,
+                createCustomField(account.getId(), ObjectType.ACCOUNT, field, TEST_TAX_ZONE));
+        when(fieldApi.searchCustomFields(eq(field), eq(0L),
+                eq(AccountCustomFieldTaxZoneResolver.PREFETCH_PAGE_SIZE), any(TenantContext.class)))
+                        .thenReturn(page);
+        when(fieldApi.getCustomFieldsForObject(eq(account.getId()), eq(ObjectType.ACCOUNT),
+                any(TenantContext.class))).thenReturn(Collections.emptyList());
+
+        // when
+        AccountCustomFieldTaxZoneResolver resolver = createResolver(new Properties());
+        resolver.prefetchTaxZones(tenantId, accountIds(account.getId()));
+        String taxZone = resolver.taxZoneForInvoice(UUID.randomUUID(), account, null,
+                Collections.emptyList());
+
+        // then
+        assertEquals(taxZone, account.getCountry(), "Other tenant does not use prefetched zone");
+        Mockito.verify(fieldApi).getCustomFieldsForObject(eq(account.getId()),
+                eq(ObjectType.ACCOUNT), any(TenantContext.class));
+    }
+
+    @Test(groups = "fast")
+    public void prefetchSearchPagesLimited() {
+        // given
+        CustomFieldUserApi fieldApi = Mockito.mock(CustomFieldUserApi.class);
+        when(killbillApi.getCustomFieldUserApi()).thenReturn(fieldApi);
+        String field = AccountCustomFieldTaxZoneResolver.TAX_ZONE_CUSTOM_FIIELD;
+        when(fieldApi.searchCustomFields(eq(field), any(Long.class),
+                eq(AccountCustomFieldTaxZoneResolver.PREFETCH_PAGE_SIZE), any(TenantContext.class)))
+                        .thenAnswer(invocation -> createPage(1L));
+
+        // when
+        AccountCustomFieldTaxZoneResolver resolver = createResolver(new Properties());
+        int count = resolver.prefetchTaxZones(tenantId, accountIds());
+
+        // then
+        assertEquals(count, 0, "Nothing prefetched");
+        Mockito.verify(fieldApi,
+                Mockito.times(Integer
+                        .parseInt(AccountCustomFieldTaxZoneResolver.DEFAULT_PREFETCH_MAX_PAGES)))
+                .searchCustomFields(eq(field), any(Long.class),
+                        eq(AccountCustomFieldTaxZoneResolver.PREFETCH_PAGE_SIZE),
+                        any(TenantContext.class));
+    }
+
+    @Test(groups = "fast")
+    public void prefetchSearchPagesUnlimited() {
+        // given
+        CustomFieldUserApi fieldApi = Mockito.mock(CustomFieldUserApi.class);
+        when(killbillApi.getCustomFieldUserApi()).thenReturn(fieldApi);
+        String field = AccountCustomFieldTaxZoneResolver.TAX_ZONE_CUSTOM_FIIELD;
+        when(fieldApi.searchCustomFields(eq(field), any(Long.class),
+                eq(AccountCustomFieldTaxZoneResolver.PREFETCH_PAGE_SIZE), any(TenantContext.class)))
+                        .thenAnswer(invocation -> {
+                            long offset = invocation.getArgumentAt(1, Long.class);
+                            return createPage(offset < 29 ? Long.valueOf(offset + 1) : null);
+                        });
+        Properties props = new Properties();
+        props.setProperty(EasyTaxConfig.PROPERTY_PREFIX
+                + AccountCustomFieldTaxZoneResolver.PREFETCH_MAX_PAGES_PROPERTY, "0");
+
+        // when
+        AccountCustomFieldTaxZoneResolver resolver = createResolver(props);
+        int count = resolver.prefetchTaxZones(tenantId, accountIds());
+
+        // then all pages are searched
+        assertEquals(count, 0, "Nothing prefetched");
+        Mockito.verify(fieldApi, Mockito.times(30)).searchCustomFields(eq(field),
+                any(Long.class), eq(AccountCustomFieldTaxZoneResolver.PREFETCH_PAGE_SIZE),
+                any(TenantContext.class));
+    }
+
+    @Test(groups = "fast")
+    public void prefetchFewAccountsLooksUpEach() {
+        // given
+        Account account = EasyTaxTestUtils.createAccount("NZ",
+                DateTimeZone.forID("Pacific/Auckland"));
+        CustomFieldUserApi fieldApi = Mockito.mock(CustomFieldUserApi.class);
+        when(killbillApi.getCustomFieldUserApi()).thenReturn(fieldApi);
+        CustomField customField = createCustomField(
+                AccountCustomFieldTaxZoneResolver.TAX_ZONE_CUSTOM_FIIELD, TEST_TAX_ZONE);
+        when(fieldApi.getCustomFieldsForObject(eq(account.getId()), eq(ObjectType.ACCOUNT),
+                any(TenantContext.class))).thenReturn(Collections.singletonList(customField));
+
+        // when
+        AccountCustomFieldTaxZoneResolver resolver = createResolver(new Properties());
+        int count = resolver.prefetchTaxZones(tenantId, Collections.singleton(account.getId()));
+        String taxZone = resolver.taxZoneForInvoice(tenantId, account, null,
+                Collections.emptyList());
+
+        // then
+        assertEquals(count, 1, "Prefetched count");
+        assertEquals(taxZone, TEST_TAX_ZONE, "Tax zone resolved from prefetched custom field");
+        Mockito.verify(fieldApi).getCustomFieldsForObject(eq(account.getId()),
+                eq(ObjectType.ACCOUNT), any(TenantContext.class));
+        Mockito.verify(fieldApi, Mockito.never()).searchCustomFields(any(String.class),
+                any(Long.class), any(Long.class), any(TenantContext.class));
+    }
+
+    @Test(groups = "fast")
+    public void prefetchDisabled() {
+        // given
+        Properties props = new Properties();
+        props.setProperty(EasyTaxConfig.PROPERTY_PREFIX
+                + AccountCustomFieldTaxZoneResolver.PREFETCH_SECONDS_PROPERTY, "0");
+
+        // when
+        AccountCustomFieldTaxZoneResolver resolver = createResolver(props);
+        int count = resolver.prefetchTaxZones(tenantId, Collections.singleton(UUID.randomUUID()));
+
+        // then
+        assertEquals(count, 0, "Nothing prefetched");
+        Mockito.verifyZeroInteractions(killbillApi);
+    }
+
+    @Test(groups = "fast")
+    public void itemCustomFields() {
+        // given
+        Account account = EasyTaxTestUtils.createAccount("NZ",
+                DateTimeZone.forID("Pacific/Auckland"));
+        CustomFieldUserApi fieldApi = Mockito.mock(CustomFieldUserApi.class);
+        when(killbillApi.getCustomFieldUserApi()).thenReturn(fieldApi);
+        InvoiceItem item1 = Mockito.mock(InvoiceItem.class);
+        when(item1.getId()).thenReturn(UUID.randomUUID());
+        InvoiceItem item2 = Mockito.mock(InvoiceItem.class);
+        when(item2.getId()).thenReturn(UUID.randomUUID());
+        when(item2.getSubscriptionId()).thenReturn(UUID.randomUUID());
+        InvoiceItem item3 = Mockito.mock(InvoiceItem.class);
+        when(item3.getId()).thenReturn(UUID.randomUUID());
+
+        CustomField itemField = createCustomField(
+                AccountCustomFieldTaxZoneResolver.TAX_ZONE_CUSTOM_FIIELD, "item.zone");
+        when(itemField.getObjectType()).thenReturn(ObjectType.INVOICE_ITEM);
+        when(itemField.getObjectId()).thenReturn(item1.getId());
+        CustomField subscriptionField = createCustomField(
+                AccountCustomFieldTaxZoneResolver.TAX_ZONE_CUSTOM_FIIELD, "subscription.zone");
+        when(subscriptionField.getObjectType()).thenReturn(ObjectType.SUBSCRIPTION);
+        when(subscriptionField.getObjectId()).thenReturn(item2.getSubscriptionId());
+        CustomField accountField = createCustomField(
+                AccountCustomFieldTaxZoneResolver.TAX_ZONE_CUSTOM_FIIELD, TEST_TAX_ZONE);
+        when(accountField.getObjectType()).thenReturn(ObjectType.ACCOUNT);
+        when(accountField.getObjectId()).thenReturn(account.getId());
+        when(fieldApi.getCustomFieldsForAccount(eq(account.getId()), any(TenantContext.class)))
+                .thenReturn(Arrays.asList(itemField, subscriptionField, accountField));
+
+        Properties props = new Properties();
+        props.setProperty(EasyTaxConfig.PROPERTY_PREFIX
+                + AccountCustomFieldTaxZoneResolver.USE_ITEM_CUSTOM_FIELDS_PROPERTY, "true");
+
+        // when
+        AccountCustomFieldTaxZoneResolver resolver = createResolver(props);
+        Map<UUID, String> taxZones = resolver.taxZonesForInvoiceItems(tenantId, account, null,
+                Arrays.asList(item1, item2, item3), Collections.emptyList());
+
+        // then
+        assertEquals(taxZones.size(), 2, "Item tax zones resolved");
+        assertEquals(taxZones.get(item1.getId()), "item.zone", "Invoice item custom field");
+        assertEquals(taxZones.get(item2.getId()), "subscription.zone",
+                "Subscription custom field");
+    }
+
+    @Test(groups = "fast")
+    public void itemCustomFieldsFetchedOncePerInvoice() {
+        // given
+        Account account = EasyTaxTestUtils.createAccount("NZ",
+                DateTimeZone.forID("Pacific/Auckland"));
+        CustomFieldUserApi fieldApi = Mockito.mock(CustomFieldUserApi.class);
+        when(killbillApi.getCustomFieldUserApi()).thenReturn(fieldApi);
+        InvoiceItem item = Mockito.mock(InvoiceItem.class);
+        when(item.getId()).thenReturn(UUID.randomUUID());
+
+        CustomField itemField = createCustomField(
+                AccountCustomFieldTaxZoneResolver.TAX_ZONE_CUSTOM_FIIELD, "item.zone");
+        when(itemField.getObjectType()).thenReturn(ObjectType.INVOICE_ITEM);
+        when(itemField.getObjectId()).thenReturn(item.getId());
+        CustomField accountField = createCustomField(
+                AccountCustomFieldTaxZoneResolver.TAX_ZONE_CUSTOM_FIIELD, TEST_TAX_ZONE);
+        when(accountField.getObjectType()).thenReturn(ObjectType.ACCOUNT);
+        when(accountField.getObjectId()).thenReturn(account.getId());
+        when(fieldApi.getCustomFieldsForAccount(eq(account.getId()), any(TenantContext.class)))
+                .thenReturn(Arrays.asList(itemField, accountField));
+
+        Properties props = new Properties();
+        props.setProperty(EasyTaxConfig.PROPERTY_PREFIX
+                + AccountCustomFieldTaxZoneResolver.USE_ITEM_CUSTOM_FIELDS_PROPERTY, "true");
+
+        // when
+        AccountCustomFieldTaxZoneResolver resolver = createResolver(props);
+        String taxZone = resolver.taxZoneForInvoice(tenantId, account, null,
+                Collections.emptyList());
+        Map<UUID, String> taxZones = resolver.taxZonesForInvoiceItems(tenantId, account, null,
+                Collections.singletonList(item), Collections.emptyList());
+
+        // then
+        assertEquals(taxZone, TEST_TAX_ZONE, "Account custom field");
+        assertEquals(taxZones, Collections.singletonMap(item.getId(), "item.zone"),
+                "Invoice item custom field");
+        verify(fieldApi, times(1)).getCustomFieldsForAccount(eq(account.getId()),
+                any(TenantContext.class));
+        verify(fieldApi, never()).getCustomFieldsForObject(any(UUID.class),
+                any(ObjectType.class), any(TenantContext.class));
+    }
+
+    @Test(groups = "fast")
+    public void itemCustomFieldsDisabledByDefault() {
+        // given
+        Account account = EasyTaxTestUtils.createAccount("NZ",
+                DateTimeZone.forID("Pacific/Auckland"));
+        InvoiceItem item = Mockito.mock(InvoiceItem.class);
+        when(item.getId()).thenReturn(UUID.randomUUID());
+
+        // when
+        AccountCustomFieldTaxZoneResolver resolver = createResolver(new Properties());
+        Map<UUID, String> taxZones = resolver.taxZonesForInvoiceItems(tenantId, account, null,
+                Collections.singletonList(item), Collections.emptyList());
+
+        // then
+        assertTrue(taxZones.isEmpty(), "No item tax zones");
+        verifyZeroInteractions(killbillApi);
+    }
+
 }
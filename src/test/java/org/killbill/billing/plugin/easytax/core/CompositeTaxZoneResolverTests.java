@@ -0,0 +1,355 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.killbill.billing.plugin.easytax.core;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+
+import org.joda.time.DateTimeZone;
+import org.killbill.billing.ObjectType;
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.account.api.AccountApiException;
+import org.killbill.billing.account.api.AccountUserApi;
+import org.killbill.billing.invoice.api.InvoiceItem;
+import org.killbill.billing.osgi.api.OSGIKillbill;
+import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.plugin.easytax.EasyTaxTestUtils;
+import org.killbill.billing.util.api.CustomFieldUserApi;
+import org.killbill.billing.util.callcontext.TenantContext;
+import org.killbill.billing.util.customfield.CustomField;
+import org.mockito.Mockito;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Test cases for the {@link CompositeTaxZoneResolver} class.
+ *
+ * @author matt
+ */
+public class CompositeTaxZoneResolverTests {
+
+    private static final String TEST_TAX_ZONE = "test.zone";
+
+    private OSGIKillbill killbillApi;
+    private CustomFieldUserApi fieldApi;
+    private UUID tenantId;
+    private Account account;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setup() {
+        tenantId = UUID.randomUUID();
+        killbillApi = Mockito.mock(OSGIKillbill.class);
+        fieldApi = Mockito.mock(CustomFieldUserApi.class);
+        when(killbillApi.getCustomFieldUserApi()).thenReturn(fieldApi);
+        account = EasyTaxTestUtils.createAccount("NZ", DateTimeZone.forID("Pacific/Auckland"));
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void teardown() {
+        Mockito.validateMockitoUsage();
+    }
+
+    private CompositeTaxZoneResolver createResolver(Properties properties) {
+        CompositeTaxZoneResolver resolver = new CompositeTaxZoneResolver();
+        resolver.init(killbillApi, new EasyTaxConfig(properties));
+        return resolver;
+    }
+
+    private void givenCustomField(String value) {
+        CustomField field = Mockito.mock(CustomField.class);
+        when(field.getFieldName())
+                .thenReturn(AccountCustomFieldTaxZoneResolver.TAX_ZONE_CUSTOM_FIIELD);
+        when(field.getFieldValue()).thenReturn(value);
+        when(fieldApi.getCustomFieldsForObject(eq(account.getId()), eq(ObjectType.ACCOUNT),
+                any(TenantContext.class))).thenReturn(Collections.singletonList(field));
+    }
+
+    @Test(groups = "fast")
+    public void defaultChain() {
+        // when
+        CompositeTaxZoneResolver resolver = createResolver(new Properties());
+
+        // then
+        assertEquals(resolver.getResolvers().size(), 4, "Resolver count");
+        assertTrue(resolver.getResolvers().get(0) instanceof PluginPropertyTaxZoneResolver,
+                "Plugin property first");
+        assertTrue(resolver.getResolvers().get(1) instanceof AccountCustomFieldTaxZoneResolver,
+                "Account custom field second");
+        assertTrue(resolver.getResolvers().get(2) instanceof ParentAccountTaxZoneResolver,
+                "Parent account third");
+        assertTrue(resolver.getResolvers().get(3) instanceof AccountCountryTaxZoneResolver,
+                "Account country last");
+    }
+
+    @Test(groups = "fast")
+    public void defaultChainWithoutCustomField() {
+        // given
+        when(fieldApi.getCustomFieldsForObject(eq(account.getId()), eq(ObjectType.ACCOUNT),
+                any(TenantContext.class))).thenReturn(Collections.emptyList());
+        CompositeTaxZoneResolver resolver = createResolver(new Properties());
+
+        // when
+        String taxZone = resolver.taxZoneForInvoice(tenantId, account, null,
+                Collections.emptyList());
+
+        // then
+        AccountCustomFieldTaxZoneResolver fieldResolver = (AccountCustomFieldTaxZoneResolver)
+                resolver.getResolvers().get(1);
+        assertFalse(fieldResolver.isUseAccountCountryAsTaxZone(),
+                "Custom field country fallback off in chain");
+        assertNull(fieldResolver.taxZoneForInvoice(tenantId, account, null,
+                Collections.emptyList()), "No tax zone from custom field stage");
+        assertEquals(taxZone, "NZ", "Tax zone resolved from account country stage");
+    }
+
+    @Test(groups = "fast")
+    public void parentAccountStageWalksParentsOnly() throws AccountApiException {
+        // given
+        Account parent = EasyTaxTestUtils.createAccount("NZ",
+                DateTimeZone.forID("Pacific/Auckland"));
+        when(account.getParentAccountId()).thenReturn(parent.getId());
+        AccountUserApi accountApi = Mockito.mock(AccountUserApi.class);
+        when(killbillApi.getAccountUserApi()).thenReturn(accountApi);
+        when(accountApi.getAccountById(eq(parent.getId()), any(TenantContext.class)))
+                .thenReturn(parent);
+        when(fieldApi.getCustomFieldsForObject(eq(account.getId()), eq(ObjectType.ACCOUNT),
+                any(TenantContext.class))).thenReturn(Collections.emptyList());
+        CustomField field = Mockito.mock(CustomField.class);
+        when(field.getFieldName())
+                .thenReturn(AccountCustomFieldTaxZoneResolver.TAX_ZONE_CUSTOM_FIIELD);
+        when(field.getFieldValue()).thenReturn(TEST_TAX_ZONE);
+        when(fieldApi.getCustomFieldsForObject(eq(parent.getId()), eq(ObjectType.ACCOUNT),
+                any(TenantContext.class))).thenReturn(Collections.singletonList(field));
+        CompositeTaxZoneResolver resolver = createResolver(new Properties());
+
+        // when
+        String taxZone = resolver.taxZoneForInvoice(tenantId, account, null,
+                Collections.emptyList());
+
+        // then
+        assertFalse(((ParentAccountTaxZoneResolver) resolver.getResolvers().get(2))
+                .isIncludeAccount(), "Parent account stage excludes the account itself");
+        assertEquals(taxZone, TEST_TAX_ZONE, "Tax zone inherited from parent");
+        verify(fieldApi, times(1)).getCustomFieldsForObject(eq(account.getId()),
+                eq(ObjectType.ACCOUNT), any(TenantContext.class));
+    }
+
+    @Test(groups = "fast")
+    public void configuredCountryFallbackKept() {
+        // given
+        Properties props = new Properties();
+        props.setProperty(EasyTaxConfig.PROPERTY_PREFIX
+                + AccountCustomFieldTaxZoneResolver.USE_ACCOUNT_COUNTRY_PROPERTY, "true");
+
+        // when
+        CompositeTaxZoneResolver resolver = createResolver(props);
+
+        // then
+        assertTrue(((AccountCustomFieldTaxZoneResolver) resolver.getResolvers().get(1))
+                .isUseAccountCountryAsTaxZone(), "Configured country fallback kept");
+    }
+
+    @Test(groups = "fast")
+    public void pluginPropertyShortCircuits() {
+        // given
+        CompositeTaxZoneResolver resolver = createResolver(new Properties());
+        PluginProperty property = new PluginProperty(
+                PluginPropertyTaxZoneResolver.DEFAULT_PROPERTY_NAME, TEST_TAX_ZONE, false);
+
+        // when
+        String taxZone = resolver.taxZoneForInvoice(tenantId, account, null,
+                Collections.singletonList(property));
+
+        // then
+        assertEquals(taxZone, TEST_TAX_ZONE, "Tax zone resolved from plugin property");
+        verifyZeroInteractions(fieldApi);
+    }
+
+    @Test(groups = "fast")
+    public void customFieldCached() {
+        // given
+        givenCustomField(TEST_TAX_ZONE);
+        CompositeTaxZoneResolver resolver = createResolver(new Properties());
+
+        // when
+        String taxZone = resolver.taxZoneForInvoice(tenantId, account, null,
+                Collections.emptyList());
+        String taxZone2 = resolver.taxZoneForInvoice(tenantId, account, null,
+                Collections.emptyList());
+
+        // then
+        assertEquals(taxZone, TEST_TAX_ZONE, "Tax zone resolved from custom field");
+        assertEquals(taxZone2, TEST_TAX_ZONE, "Tax zone resolved from cache");
+        verify(fieldApi, times(1)).getCustomFieldsForObject(eq(account.getId()),
+                eq(ObjectType.ACCOUNT), any(TenantContext.class));
+    }
+
+    @Test(groups = "fast")
+    public void missingCustomFieldCached() {
+        // given
+        when(fieldApi.getCustomFieldsForObject(eq(account.getId()), eq(ObjectType.ACCOUNT),
+                any(TenantContext.class))).thenReturn(Collections.emptyList());
+        CompositeTaxZoneResolver resolver = createResolver(new Properties());
+
+        // when
+        String taxZone = resolver.taxZoneForInvoice(tenantId, account, null,
+                Collections.emptyList());
+        String taxZone2 = resolver.taxZoneForInvoice(tenantId, account, null,
+                Collections.emptyList());
+
+        // then
+        assertEquals(taxZone, "NZ", "Fallback to account country");
+        assertEquals(taxZone2, "NZ", "Fallback to account country");
+        // only by the custom field stage, as the parent account stage walks only parents
+        verify(fieldApi, times(1)).getCustomFieldsForObject(eq(account.getId()),
+                eq(ObjectType.ACCOUNT), any(TenantContext.class));
+    }
+
+    @Test(groups = "fast")
+    public void accountChangedDiscardsCache() {
+        // given
+        givenCustomField(TEST_TAX_ZONE);
+        CompositeTaxZoneResolver resolver = createResolver(new Properties());
+        resolver.taxZoneForInvoice(tenantId, account, null, Collections.emptyList());
+
+        // when
+        resolver.accountChanged(tenantId, account.getId());
+        String taxZone = resolver.taxZoneForInvoice(tenantId, account, null,
+                Collections.emptyList());
+
+        // then
+        assertEquals(taxZone, TEST_TAX_ZONE, "Tax zone resolved from custom field");
+        verify(fieldApi, times(2)).getCustomFieldsForObject(eq(account.getId()),
+                eq(ObjectType.ACCOUNT), any(TenantContext.class));
+    }
+
+    @Test(groups = "fast")
+    public void itemTaxZonesFromPluginProperties() {
+        // given
+        CompositeTaxZoneResolver resolver = createResolver(new Properties());
+        InvoiceItem item1 = Mockito.mock(InvoiceItem.class);
+        when(item1.getId()).thenReturn(UUID.randomUUID());
+        InvoiceItem item2 = Mockito.mock(InvoiceItem.class);
+        when(item2.getId()).thenReturn(UUID.randomUUID());
+        when(item2.getSubscriptionId()).thenReturn(UUID.randomUUID());
+        InvoiceItem item3 = Mockito.mock(InvoiceItem.class);
+        when(item3.getId()).thenReturn(UUID.randomUUID());
+        String prefix = PluginPropertyTaxZoneResolver.DEFAULT_PROPERTY_NAME + ".";
+        List<PluginProperty> properties = Arrays.asList(
+                new PluginProperty(prefix + item1.getId(), TEST_TAX_ZONE, false),
+                new PluginProperty(prefix + item2.getSubscriptionId(), "sub.zone", false));
+
+        // when
+        Map<UUID, String> taxZones = resolver.taxZonesForInvoiceItems(tenantId, account, null,
+                Arrays.asList(item1, item2, item3), properties);
+
+        // then
+        assertEquals(taxZones.size(), 2, "Item tax zones resolved");
+        assertEquals(taxZones.get(item1.getId()), TEST_TAX_ZONE, "Item tax zone");
+        assertEquals(taxZones.get(item2.getId()), "sub.zone", "Subscription tax zone");
+        verifyZeroInteractions(fieldApi);
+    }
+
+    @Test(groups = "fast")
+    public void cacheDisabled() {
+        // given
+        givenCustomField(TEST_TAX_ZONE);
+        Properties props = new Properties();
+        props.setProperty(
+                EasyTaxConfig.PROPERTY_PREFIX + CompositeTaxZoneResolver.CACHE_SECONDS_PROPERTY,
+                "0");
+        CompositeTaxZoneResolver resolver = createResolver(props);
+
+        // when
+        resolver.taxZoneForInvoice(tenantId, account, null, Collections.emptyList());
+        resolver.taxZoneForInvoice(tenantId, account, null, Collections.emptyList());
+
+        // then
+        verify(fieldApi, times(2)).getCustomFieldsForObject(eq(account.getId()),
+                eq(ObjectType.ACCOUNT), any(TenantContext.class));
+    }
+
+    @Test(groups = "fast")
+    public void invalidResolversSkipped() {
+        // given
+        Properties props = new Properties();
+        props.setProperty(
+                EasyTaxConfig.PROPERTY_PREFIX + CompositeTaxZoneResolver.RESOLVERS_PROPERTY,
+                "foo.Bar, " + CompositeTaxZoneResolver.class.getName() + ", "
+                        + AccountCountryTaxZoneResolver.class.getName());
+
+        // when
+        CompositeTaxZoneResolver resolver = createResolver(props);
+        String taxZone = resolver.taxZoneForInvoice(tenantId, account, null,
+                Collections.emptyList());
+
+        // then
+        assertEquals(resolver.getResolvers().size(), 1, "Resolver count");
+        assertEquals(taxZone, "NZ", "Tax zone resolved from account country");
+    }
+
+    @Test(groups = "fast")
+    public void statelessOnlyWithoutCachingStages() {
+        // given
+        Properties props = new Properties();
+        props.setProperty(
+                EasyTaxConfig.PROPERTY_PREFIX + CompositeTaxZoneResolver.RESOLVERS_PROPERTY,
+                PluginPropertyTaxZoneResolver.class.getName() + ", "
+                        + AccountCountryTaxZoneResolver.class.getName());
+
+        // when
+        CompositeTaxZoneResolver stateless = createResolver(props);
+        CompositeTaxZoneResolver caching = createResolver(new Properties());
+
+        // then
+        assertTrue(stateless.isStateless(), "Stateless stages");
+        assertFalse(caching.isStateless(), "Caching custom field stage");
+    }
+
+    @Test(groups = "fast")
+    public void noResolvers() {
+        // given
+        Properties props = new Properties();
+        props.setProperty(
+                EasyTaxConfig.PROPERTY_PREFIX + CompositeTaxZoneResolver.RESOLVERS_PROPERTY,
+                "");
+
+        // when
+        CompositeTaxZoneResolver resolver = createResolver(props);
+
+        // then
+        assertNull(resolver.taxZoneForInvoice(tenantId, account, null, Collections.emptyList()),
+                "No tax zone");
+    }
+
+}
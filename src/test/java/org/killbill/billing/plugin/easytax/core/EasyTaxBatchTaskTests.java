@@ -0,0 +1,92 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.killbill.billing.plugin.easytax.core;
+
+import java.sql.SQLException;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.plugin.easytax.api.EasyTaxDao;
+import org.killbill.clock.Clock;
+import org.mockito.Mockito;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Test cases for the {@link EasyTaxBatchTask} class.
+ *
+ * @author matt
+ */
+public class EasyTaxBatchTaskTests {
+
+    private EasyTaxDao dao;
+    private Clock clock;
+    private DateTime now;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setup() {
+        dao = Mockito.mock(EasyTaxDao.class);
+        now = new DateTime();
+        clock = Mockito.mock(Clock.class);
+        Mockito.when(clock.getUTCNow()).thenReturn(now, now.plusMinutes(1));
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void teardown() {
+        Mockito.verifyNoMoreInteractions(dao);
+        Mockito.validateMockitoUsage();
+    }
+
+    @Test(groups = "fast")
+    public void runUntilNoneLeft() throws SQLException {
+        // given
+        final DateTime olderThan = now.minusDays(90);
+        Mockito.when(dao.archiveTaxations(olderThan, 10)).thenReturn(25, 3, 0);
+
+        // when
+        new EasyTaxBatchTask("test", clock, t -> dao.archiveTaxations(t.minusDays(90), 10))
+                .run();
+
+        // then all batches use the time the run started
+        Mockito.verify(dao, Mockito.times(3)).archiveTaxations(olderThan, 10);
+    }
+
+    @Test(groups = "fast")
+    public void runStopsOnError() throws SQLException {
+        // given
+        Mockito.when(dao.compactTaxations(2, 500)).thenReturn(5)
+                .thenThrow(new SQLException("test"));
+
+        // when
+        new EasyTaxBatchTask("test", clock, t -> dao.compactTaxations(2, 500)).run();
+
+        // then
+        Mockito.verify(dao, Mockito.times(2)).compactTaxations(2, 500);
+    }
+
+    @Test(groups = "fast")
+    public void runStopsOnRuntimeError() throws SQLException {
+        // given
+        Mockito.when(dao.compactTaxations(2, 500)).thenThrow(new IllegalStateException("test"));
+
+        // when
+        new EasyTaxBatchTask("test", clock, t -> dao.compactTaxations(2, 500)).run();
+
+        // then
+        Mockito.verify(dao, Mockito.times(1)).compactTaxations(2, 500);
+    }
+
+}
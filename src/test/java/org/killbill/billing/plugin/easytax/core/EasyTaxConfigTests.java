@@ -0,0 +1,118 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.killbill.billing.plugin.easytax.core;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.Properties;
+
+import org.testng.annotations.Test;
+
+/**
+ * Test cases for the {@link EasyTaxConfig} class.
+ *
+ * @author matt
+ */
+public class EasyTaxConfigTests {
+
+    @Test(groups = "fast")
+    public void defaults() {
+        EasyTaxConfig config = new EasyTaxConfig(new Properties());
+
+        assertEquals(config.getTaxScale(), 2, "Tax scale");
+        assertEquals(config.getTaxRoundingMode(), RoundingMode.HALF_UP, "Rounding mode");
+        assertEquals(config.getTaxZoneResolver(), EasyTaxConfig.DEFAULT_TAX_ZONE_RESOLVER,
+                "Zone resolver");
+        assertEquals(config.getTaxDateResolver(), EasyTaxConfig.DEFAULT_TAX_DATE_RESOLVER,
+                "Date resolver");
+        assertEquals(config.isMaintenanceTasks(), true, "Maintenance tasks");
+    }
+
+    @Test(groups = "fast")
+    public void maintenanceTasksDisabled() {
+        Properties props = new Properties();
+        props.setProperty(EasyTaxConfig.PROPERTY_PREFIX + EasyTaxConfig.MAINTENANCE_TASKS_PROPERTY,
+                "false");
+        EasyTaxConfig config = new EasyTaxConfig(props);
+
+        assertEquals(config.isMaintenanceTasks(), false, "Maintenance tasks");
+    }
+
+    @Test(groups = "fast")
+    public void parsed() {
+        Properties props = new Properties();
+        props.setProperty(EasyTaxConfig.PROPERTY_PREFIX + EasyTaxConfig.TAX_SCALE_PROPERTY, "3");
+        props.setProperty(EasyTaxConfig.PROPERTY_PREFIX + EasyTaxConfig.TAX_ROUNDING_MODE_PROPERTY,
+                "HALF_EVEN");
+        props.setProperty(EasyTaxConfig.PROPERTY_PREFIX + EasyTaxConfig.TAX_ZONE_RESOLVER_PROPERTY,
+                "foo.Bar");
+        EasyTaxConfig config = new EasyTaxConfig(props);
+
+        assertEquals(config.getTaxScale(), 3, "Tax scale");
+        assertEquals(config.getTaxRoundingMode(), RoundingMode.HALF_EVEN, "Rounding mode");
+        assertEquals(config.getTaxZoneResolver(), "foo.Bar", "Zone resolver");
+    }
+
+    @Test(groups = "fast")
+    public void taxZoneHierarchy() {
+        Properties props = new Properties();
+        props.setProperty(EasyTaxConfig.PROPERTY_PREFIX + EasyTaxConfig.TAX_ZONE_PARENTS_PROPERTY,
+                "US-CA-SF:US-CA, US-CA:US");
+        EasyTaxConfig config = new EasyTaxConfig(props);
+
+        assertEquals(config.getTaxZoneHierarchy().ancestry("US-CA-SF"),
+                Arrays.asList("US-CA-SF", "US-CA", "US"), "Ancestry");
+    }
+
+    @Test(groups = "fast")
+    public void invalidValuesUseDefaults() {
+        Properties props = new Properties();
+        props.setProperty(EasyTaxConfig.PROPERTY_PREFIX + EasyTaxConfig.TAX_SCALE_PROPERTY, "x");
+        props.setProperty(EasyTaxConfig.PROPERTY_PREFIX + EasyTaxConfig.TAX_ROUNDING_MODE_PROPERTY,
+                "NEAREST");
+        EasyTaxConfig config = new EasyTaxConfig(props);
+
+        assertEquals(config.getTaxScale(), 2, "Tax scale");
+        assertEquals(config.getTaxRoundingMode(), RoundingMode.HALF_UP, "Rounding mode");
+        assertSame(config.getTaxZoneHierarchy(), TaxZoneHierarchy.EMPTY, "Tax zone hierarchy");
+    }
+
+    @Test(groups = "fast", expectedExceptions = IllegalArgumentException.class,
+            expectedExceptionsMessageRegExp = ".*\\[A:B,B:A\\].*")
+    public void invalidTaxZoneHierarchyRejected() {
+        Properties props = new Properties();
+        props.setProperty(EasyTaxConfig.PROPERTY_PREFIX + EasyTaxConfig.TAX_ZONE_PARENTS_PROPERTY,
+                "A:B,B:A");
+        new EasyTaxConfig(props);
+    }
+
+    @Test(groups = "fast")
+    public void snapshotOfProperties() {
+        Properties props = new Properties();
+        props.setProperty(EasyTaxConfig.PROPERTY_PREFIX + EasyTaxConfig.TAX_SCALE_PROPERTY, "3");
+        EasyTaxConfig config = new EasyTaxConfig(props);
+
+        props.setProperty(EasyTaxConfig.PROPERTY_PREFIX + EasyTaxConfig.TAX_SCALE_PROPERTY, "4");
+        props.setProperty(EasyTaxConfig.PROPERTY_PREFIX + "foo", "bar");
+
+        assertEquals(config.getTaxScale(), 3, "Tax scale unchanged");
+        assertEquals(config.getConfigurationValue("foo", null), null, "New property not seen");
+    }
+
+}
@@ -0,0 +1,144 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.killbill.billing.plugin.easytax.core;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Properties;
+import java.util.UUID;
+
+import org.killbill.billing.osgi.api.OSGIKillbill;
+import org.mockito.Mockito;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Test cases for the {@link EasyTaxResolverRegistry} class.
+ *
+ * @author matt
+ */
+public class EasyTaxResolverRegistryTests {
+
+    private EasyTaxConfigurationHandler configurationHandler;
+    private EasyTaxResolverRegistry registry;
+    private UUID tenantId;
+    private UUID tenantId2;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setup() {
+        configurationHandler = Mockito.mock(EasyTaxConfigurationHandler.class);
+        registry = new EasyTaxResolverRegistry(Mockito.mock(OSGIKillbill.class),
+                configurationHandler);
+        tenantId = UUID.randomUUID();
+        tenantId2 = UUID.randomUUID();
+    }
+
+    private static EasyTaxConfig config(String key, String value) {
+        Properties props = new Properties();
+        if (key != null) {
+            props.setProperty(EasyTaxConfig.PROPERTY_PREFIX + key, value);
+        }
+        return new EasyTaxConfig(props);
+    }
+
+    @Test(groups = "fast")
+    public void sharedForEqualConfigurations() {
+        final String className = AccountCountryTaxZoneResolver.class.getName();
+        Mockito.when(configurationHandler.getConfigurable(tenantId))
+                .thenReturn(config(EasyTaxConfig.TAX_ZONE_RESOLVER_PROPERTY, className));
+        Mockito.when(configurationHandler.getConfigurable(tenantId2))
+                .thenReturn(config(EasyTaxConfig.TAX_ZONE_RESOLVER_PROPERTY, className));
+
+        assertSame(registry.taxZoneResolver(tenantId), registry.taxZoneResolver(tenantId2),
+                "Zone resolver shared");
+        assertSame(registry.taxDateResolver(tenantId), registry.taxDateResolver(tenantId2),
+                "Date resolver shared");
+        assertTrue(registry.taxDateResolver(tenantId) instanceof SimpleTaxDateResolver,
+                "Default date resolver");
+        assertEquals(registry.getTenantCount(), 2, "Tenant count");
+        assertEquals(registry.getInstanceCount(), 2, "Instance count");
+    }
+
+    @Test(groups = "fast")
+    public void statefulNotShared() {
+        Mockito.when(configurationHandler.getConfigurable(tenantId)).thenReturn(config(null, null));
+        Mockito.when(configurationHandler.getConfigurable(tenantId2))
+                .thenReturn(config(null, null));
+
+        assertNotSame(registry.taxZoneResolver(tenantId), registry.taxZoneResolver(tenantId2),
+                "Caching zone resolver not shared");
+        assertSame(registry.taxZoneResolver(tenantId), registry.taxZoneResolver(tenantId),
+                "Zone resolver reused for the same tenant");
+        assertSame(registry.taxDateResolver(tenantId), registry.taxDateResolver(tenantId2),
+                "Date resolver shared");
+        assertTrue(registry.taxZoneResolver(tenantId) instanceof AccountCustomFieldTaxZoneResolver,
+                "Default zone resolver");
+        assertEquals(registry.getInstanceCount(), 3, "Instance count");
+    }
+
+    @Test(groups = "fast")
+    public void replacedOnConfigurationChange() {
+        Mockito.when(configurationHandler.getConfigurable(tenantId)).thenReturn(config(null, null));
+        Mockito.when(configurationHandler.getConfigurable(tenantId2))
+                .thenReturn(config(null, null));
+        Object zoneResolver = registry.taxZoneResolver(tenantId);
+        Object zoneResolver2 = registry.taxZoneResolver(tenantId2);
+        Object dateResolver = registry.taxDateResolver(tenantId);
+
+        registry.configurationChanged(tenantId,
+                config(AccountCustomFieldTaxZoneResolver.USE_ACCOUNT_COUNTRY_PROPERTY, "false"));
+
+        assertNotSame(registry.taxZoneResolver(tenantId), zoneResolver, "New zone resolver");
+        assertNotSame(registry.taxDateResolver(tenantId), dateResolver, "New date resolver");
+        assertSame(registry.taxZoneResolver(tenantId2), zoneResolver2, "Other tenant unchanged");
+        assertSame(registry.taxDateResolver(tenantId2), dateResolver, "Other tenant unchanged");
+        assertEquals(registry.getInstanceCount(), 4, "Instance count");
+
+        registry.configurationChanged(tenantId2,
+                config(AccountCustomFieldTaxZoneResolver.USE_ACCOUNT_COUNTRY_PROPERTY, "false"));
+
+        assertSame(registry.taxDateResolver(tenantId2), registry.taxDateResolver(tenantId),
+                "Date resolver shared again");
+        assertEquals(registry.getInstanceCount(), 3, "Unused instances removed");
+    }
+
+    @Test(groups = "fast")
+    public void unknownClassUsesDefault() {
+        Mockito.when(configurationHandler.getConfigurable(tenantId))
+                .thenReturn(config(EasyTaxConfig.TAX_ZONE_RESOLVER_PROPERTY, "not.a.Resolver"));
+
+        assertTrue(registry.taxZoneResolver(tenantId) instanceof AccountCustomFieldTaxZoneResolver,
+                "Default zone resolver");
+    }
+
+    @Test(groups = "fast")
+    public void globalChangeClearsTenants() {
+        Mockito.when(configurationHandler.getConfigurable(tenantId)).thenReturn(config(null, null));
+        registry.taxZoneResolver(tenantId);
+
+        registry.configurationChanged(null, config(null, null));
+
+        assertEquals(registry.getTenantCount(), 0, "Tenant count");
+        assertEquals(registry.getInstanceCount(), 0, "Instance count");
+
+        registry.taxDateResolver(tenantId);
+        assertEquals(registry.getTenantCount(), 1, "Tenant recreated");
+    }
+
+}
@@ -20,10 +20,12 @@ import static org.killbill.billing.plugin.easytax.EasyTaxTestUtils.assertDateTim
 import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.then;
 import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.BDDMockito.willThrow;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Mockito.mock;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -38,6 +40,8 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import javax.servlet.ReadListener;
 import javax.servlet.ServletException;
@@ -51,6 +55,9 @@ import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.killbill.billing.ErrorCode;
 import org.killbill.billing.plugin.easytax.api.EasyTaxDao;
+import org.killbill.billing.plugin.easytax.api.EasyTaxTaxCalculator;
+import org.killbill.billing.plugin.easytax.api.EasyTaxTaxCodeOverlapException;
+import org.killbill.billing.plugin.easytax.api.EasyTaxTaxCodeValidationException;
 import org.killbill.billing.security.Logical;
 import org.killbill.billing.security.Permission;
 import org.killbill.billing.security.SecurityApiException;
@@ -66,6 +73,7 @@ import org.mockito.stubbing.Answer;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Resources;
 import com.google.common.net.HttpHeaders;
 
@@ -490,6 +498,54 @@ public class EasyTaxServletTests {
                 "Response body content");
     }
 
+    @Test(groups = "fast")
+    public void getTaxCodesValidAtKnownAt() throws IOException, ServletException, SQLException {
+        // given
+        ByteArrayOutputStream byos = givenDefaultServletCall("GET", "/taxCodes/NZ");
+        given(req.getParameter(EasyTaxServlet.VALID_DATE)).willReturn("2017-01-01T12:00:00Z");
+        given(req.getParameter(EasyTaxServlet.KNOWN_DATE_PARAM))
+                .willReturn("2017-06-01T00:00:00+12:00");
+
+        List<EasyTaxTaxCode> taxCodes = Arrays
+                .asList(new EasyTaxTaxCode(UUID.randomUUID().toString()));
+        DateTime at = new DateTime(2017, 1, 1, 12, 0, 0, DateTimeZone.UTC);
+        DateTime knownAt = new DateTime(2017, 5, 31, 12, 0, 0, DateTimeZone.UTC);
+        given(dao.getTaxCodes(tenantId, "NZ", null, null, at, knownAt)).willReturn(taxCodes);
+
+        // when
+        servlet.service(req, res);
+
+        // then
+        thenDefaultOkJsonResponse();
+        then(dao).should(Mockito.never()).getTaxCodes(tenantId, "NZ", null, null, at);
+
+        assertEquals(byos.toString("UTF-8"),
+                "[{\"tax_code\":\"" + taxCodes.get(0).getTaxCode() + "\"}]",
+                "Response body content");
+    }
+
+    @Test(groups = "fast")
+    public void getTaxCodesKnownBeforeChangeLog()
+            throws IOException, ServletException, SQLException {
+        // given
+        ByteArrayOutputStream byos = givenDefaultServletCall("GET", "/taxCodes/NZ");
+        given(req.getParameter(EasyTaxServlet.KNOWN_DATE_PARAM)).willReturn("2017-06-01T00:00:00Z");
+
+        DateTime knownAt = new DateTime(2017, 6, 1, 0, 0, 0, DateTimeZone.UTC);
+        given(dao.getTaxCodes(tenantId, "NZ", null, null, null, knownAt))
+                .willThrow(new EasyTaxTaxCodeValidationException(
+                        Collections.singletonList("Known date too early")));
+
+        // when
+        servlet.service(req, res);
+
+        // then
+        thenDefaultResponse(400, EasyTaxServlet.APPLICATION_JSON_UTF8);
+
+        assertEquals(byos.toString("UTF-8"), "{\"errors\":[\"Known date too early\"]}",
+                "Response body content");
+    }
+
     @Test(groups = "fast")
     public void deleteAllTaxCodes() throws IOException, ServletException, SQLException {
         // given
@@ -750,4 +806,829 @@ public class EasyTaxServletTests {
         assertNull(saved.getValidToDate(), "Valid to date");
     }
 
+    @Test(groups = "fast")
+    public void getTaxCodeSnapshot() throws IOException, ServletException, SQLException {
+        // given
+        ByteArrayOutputStream byos = givenDefaultServletCall("GET", "/taxCodeSnapshot");
+        given(req.getHeader("Accept-Encoding")).willReturn("deflate, gzip;q=0.8");
+
+        EasyTaxTaxCode code1 = new EasyTaxTaxCode("GST");
+        code1.setKbTenantId(tenantId);
+        code1.setCreatedDate(now);
+        code1.setTaxZone("NZ");
+        code1.setProductName("memory-use");
+        code1.setTaxRate(new BigDecimal("0.15"));
+        code1.setValidFromDate(new DateTime(2017, 1, 1, 12, 0, 0, DateTimeZone.UTC));
+        EasyTaxTaxCode code2 = new EasyTaxTaxCode(code1);
+        code2.setValidFromDate(new DateTime(2017, 9, 1, 1, 2, 3, DateTimeZone.UTC));
+        given(dao.getTaxCodes(tenantId, null, null, null, null))
+                .willReturn(Arrays.asList(code1, code2));
+
+        // when
+        servlet.service(req, res);
+
+        // then
+        thenDefaultOkResponse(EasyTaxServlet.APPLICATION_NDJSON_UTF8);
+        then(res).should().setHeader("Content-Encoding", "gzip");
+
+        String json = new String(ByteStreams.toByteArray(
+                new GZIPInputStream(new ByteArrayInputStream(byos.toByteArray()))), "UTF-8");
+        assertEquals(json,
+                "{\"tax_zone\":\"NZ\",\"product_name\":\"memory-use\","
+                        + "\"tax_code\":\"GST\",\"tax_rate\":\"0.15\","
+                        + "\"valid_from_date\":\"2017-01-01T12:00:00.000Z\"}\n"
+                        + "{\"tax_zone\":\"NZ\",\"product_name\":\"memory-use\","
+                        + "\"tax_code\":\"GST\",\"tax_rate\":\"0.15\","
+                        + "\"valid_from_date\":\"2017-09-01T01:02:03.000Z\"}\n",
+                "Response body content");
+    }
+
+    @Test(groups = "fast")
+    public void getTaxCodeSnapshotUncompressed()
+            throws IOException, ServletException, SQLException {
+        // given
+        ByteArrayOutputStream byos = givenDefaultServletCall("GET", "/taxCodeSnapshot");
+        given(req.getHeader("Accept-Encoding")).willReturn("gzip;q=0, identity");
+
+        EasyTaxTaxCode code1 = new EasyTaxTaxCode("GST");
+        code1.setKbTenantId(tenantId);
+        code1.setCreatedDate(now);
+        code1.setTaxZone("NZ");
+        code1.setProductName("memory-use");
+        code1.setTaxRate(new BigDecimal("0.15"));
+        code1.setValidFromDate(new DateTime(2017, 1, 1, 12, 0, 0, DateTimeZone.UTC));
+        given(dao.getTaxCodes(tenantId, null, null, null, null))
+                .willReturn(Collections.singletonList(code1));
+
+        // when
+        servlet.service(req, res);
+
+        // then
+        thenDefaultOkResponse(EasyTaxServlet.APPLICATION_NDJSON_UTF8);
+        then(res).should(Mockito.never()).setHeader(Mockito.eq("Content-Encoding"),
+                Mockito.anyString());
+
+        assertEquals(byos.toString("UTF-8"),
+                "{\"tax_zone\":\"NZ\",\"product_name\":\"memory-use\","
+                        + "\"tax_code\":\"GST\",\"tax_rate\":\"0.15\","
+                        + "\"valid_from_date\":\"2017-01-01T12:00:00.000Z\"}\n",
+                "Response body content");
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test(groups = "fast")
+    public void postTaxCodeSnapshot() throws IOException, ServletException, SQLException {
+        // given
+        byte[] data = Resources
+                .toByteArray(Resources.getResource(getClass(), "tax-codes-snapshot-01.ndjson"));
+        ByteArrayInputStream byis = new ByteArrayInputStream(data);
+        ByteArrayOutputStream byos = givenDefaultServletCall("POST", "/taxCodeSnapshot", byis,
+                data.length, EasyTaxServlet.APPLICATION_NDJSON_UTF8);
+        givenPermissions(TEST_USER, TEST_PASSWORD, TEST_PERMISSIONS);
+        given(dao.importTaxCodes(Mockito.eq(tenantId), Mockito.anyList(), Mockito.eq(false)))
+                .willReturn(2);
+
+        // when
+        servlet.service(req, res);
+
+        // then
+        thenAuthenticatedAs(TEST_USER, TEST_PASSWORD);
+        thenDefaultOkJsonResponse();
+
+        @SuppressWarnings("rawtypes")
+        ArgumentCaptor<List> taxCodesCaptor = ArgumentCaptor.forClass(List.class);
+        then(dao).should().importTaxCodes(Mockito.eq(tenantId), taxCodesCaptor.capture(),
+                Mockito.eq(false));
+
+        assertEquals(byos.toString("UTF-8"), "{\"count\":2}", "Response body content");
+        List<EasyTaxTaxCode> savedList = taxCodesCaptor.getValue();
+        assertEquals(savedList.size(), 2, "Imported count");
+
+        EasyTaxTaxCode saved = savedList.get(0);
+        assertEquals(saved.getCreatedDate(), now);
+        assertEquals(saved.getTaxZone(), "NZ");
+        assertEquals(saved.getProductName(), "memory-use");
+        assertEquals(saved.getTaxCode(), "GST");
+        assertDateTimeEquals(saved.getValidFromDate(),
+                new DateTime(2017, 1, 1, 12, 0, 0, DateTimeZone.UTC), "Valid from date");
+        assertDateTimeEquals(saved.getValidToDate(),
+                new DateTime(2017, 9, 1, 1, 2, 3, DateTimeZone.UTC), "Valid to date");
+
+        saved = savedList.get(1);
+        assertEquals(saved.getCreatedDate(), now);
+        assertDateTimeEquals(saved.getValidFromDate(),
+                new DateTime(2017, 9, 1, 1, 2, 3, DateTimeZone.UTC), "Valid from date");
+        assertNull(saved.getValidToDate(), "Valid to date");
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test(groups = "fast")
+    public void postTaxCodeSnapshotGzipReplace()
+            throws IOException, ServletException, SQLException {
+        // given
+        byte[] plain = Resources
+                .toByteArray(Resources.getResource(getClass(), "tax-codes-snapshot-01.ndjson"));
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+            out.write(plain);
+        }
+        byte[] data = gzipped.toByteArray();
+        ByteArrayInputStream byis = new ByteArrayInputStream(data);
+        ByteArrayOutputStream byos = givenDefaultServletCall("POST", "/taxCodeSnapshot", byis,
+                data.length, EasyTaxServlet.APPLICATION_NDJSON_UTF8);
+        given(req.getHeader("Content-Encoding")).willReturn("gzip");
+        given(req.getParameter(EasyTaxServlet.REPLACE_PARAM)).willReturn("true");
+        givenPermissions(TEST_USER, TEST_PASSWORD, TEST_PERMISSIONS);
+        given(dao.importTaxCodes(Mockito.eq(tenantId), Mockito.anyList(), Mockito.eq(true)))
+                .willReturn(2);
+
+        // when
+        servlet.service(req, res);
+
+        // then
+        thenAuthenticatedAs(TEST_USER, TEST_PASSWORD);
+        thenDefaultOkJsonResponse();
+
+        @SuppressWarnings("rawtypes")
+        ArgumentCaptor<List> taxCodesCaptor = ArgumentCaptor.forClass(List.class);
+        then(dao).should().importTaxCodes(Mockito.eq(tenantId), taxCodesCaptor.capture(),
+                Mockito.eq(true));
+
+        assertEquals(byos.toString("UTF-8"), "{\"count\":2}", "Response body content");
+        assertEquals(taxCodesCaptor.getValue().size(), 2, "Imported count");
+    }
+
+    @Test(groups = "fast")
+    public void postTaxCodeSnapshotInvalidTaxCodes()
+            throws IOException, ServletException, SQLException {
+        // given
+        byte[] data = ("{\"product_name\":\"memory-use\",\"tax_code\":\"GST\","
+                + "\"tax_rate\":\"0.15\",\"valid_from_date\":\"2017-01-01T12:00:00Z\"}\n"
+                + "{\"tax_zone\":\"NZ\",\"product_name\":\"memory-use\",\"tax_code\":\"GST\","
+                + "\"tax_rate\":\"-0.15\",\"valid_from_date\":\"2017-01-01T12:00:00Z\"}\n")
+                        .getBytes("UTF-8");
+        ByteArrayInputStream byis = new ByteArrayInputStream(data);
+        ByteArrayOutputStream byos = givenDefaultServletCall("POST", "/taxCodeSnapshot", byis,
+                data.length, EasyTaxServlet.APPLICATION_NDJSON_UTF8);
+        givenPermissions(TEST_USER, TEST_PASSWORD, TEST_PERMISSIONS);
+
+        // when
+        servlet.service(req, res);
+
+        // then
+        thenAuthenticatedAs(TEST_USER, TEST_PASSWORD);
+        thenDefaultResponse(422, EasyTaxServlet.APPLICATION_JSON_UTF8);
+        Mockito.verifyZeroInteractions(dao);
+
+        String json = byos.toString("UTF-8");
+        assertTrue(json.contains("Missing tax zone, product name, or tax code"),
+                "Missing tax zone error");
+        assertTrue(json.contains("Missing or negative tax rate"), "Negative tax rate error");
+    }
+
+    @Test(groups = "fast")
+    public void postTaxCodeSnapshotMalformed()
+            throws IOException, ServletException, SQLException {
+        // given
+        byte[] data = "{\"tax_zone\":\"NZ\",\"tax_rate\":\"not a number\"}\n".getBytes("UTF-8");
+        ByteArrayInputStream byis = new ByteArrayInputStream(data);
+        ByteArrayOutputStream byos = givenDefaultServletCall("POST", "/taxCodeSnapshot", byis,
+                data.length, EasyTaxServlet.APPLICATION_NDJSON_UTF8);
+        givenPermissions(TEST_USER, TEST_PASSWORD, TEST_PERMISSIONS);
+
+        // when
+        servlet.service(req, res);
+
+        // then
+        thenDefaultResponse(400, EasyTaxServlet.APPLICATION_JSON_UTF8);
+        Mockito.verifyZeroInteractions(dao);
+        assertTrue(byos.toString("UTF-8").startsWith("{\"errors\":[\"Invalid tax code snapshot: "),
+                "Response body content");
+    }
+
+    @Test(groups = "fast")
+    public void postTaxCodeSnapshotNotPermitted()
+            throws IOException, ServletException, SQLException {
+        // given
+        byte[] data = Resources
+                .toByteArray(Resources.getResource(getClass(), "tax-codes-snapshot-01.ndjson"));
+        ByteArrayInputStream byis = new ByteArrayInputStream(data);
+        ByteArrayOutputStream byos = givenDefaultServletCall("POST", "/taxCodeSnapshot", byis,
+                data.length, EasyTaxServlet.APPLICATION_NDJSON_UTF8);
+        givenPermissions(TEST_USER, TEST_PASSWORD, singleton(Permission.USER_CAN_CREATE));
+
+        // when
+        servlet.service(req, res);
+
+        // then
+        thenDefaultResponse(403, null);
+        Mockito.verifyZeroInteractions(dao);
+
+        assertEquals(byos.size(), 0, "Response body content");
+    }
+
+    @Test(groups = "fast")
+    public void copyTaxCodeSnapshot() throws IOException, ServletException, SQLException {
+        // given
+        UUID sourceTenantId = UUID.randomUUID();
+        ByteArrayOutputStream byos = givenDefaultServletCall("POST", "/taxCodeSnapshot");
+        given(req.getParameter(EasyTaxServlet.SOURCE_TENANT_ID_PARAM))
+                .willReturn(sourceTenantId.toString());
+        givenPermissions(TEST_USER, TEST_PASSWORD, TEST_PERMISSIONS);
+        given(dao.copyTaxCodes(sourceTenantId, tenantId, false)).willReturn(3);
+
+        // when
+        servlet.service(req, res);
+
+        // then
+        thenDefaultOkJsonResponse();
+        then(dao).should().copyTaxCodes(sourceTenantId, tenantId, false);
+
+        assertEquals(byos.toString("UTF-8"), "{\"count\":3}", "Response body content");
+    }
+
+    @Test(groups = "fast")
+    public void copyTaxCodeSnapshotOverlap() throws IOException, ServletException, SQLException {
+        // given
+        UUID sourceTenantId = UUID.randomUUID();
+        ByteArrayOutputStream byos = givenDefaultServletCall("POST", "/taxCodeSnapshot");
+        given(req.getParameter(EasyTaxServlet.SOURCE_TENANT_ID_PARAM))
+                .willReturn(sourceTenantId.toString());
+        givenPermissions(TEST_USER, TEST_PASSWORD, TEST_PERMISSIONS);
+        given(dao.copyTaxCodes(sourceTenantId, tenantId, false)).willThrow(
+                new EasyTaxTaxCodeOverlapException(Collections.singletonList("Copy overlaps")));
+
+        // when
+        servlet.service(req, res);
+
+        // then
+        thenDefaultResponse(409, EasyTaxServlet.APPLICATION_JSON_UTF8);
+        then(dao).should().copyTaxCodes(sourceTenantId, tenantId, false);
+
+        assertEquals(byos.toString("UTF-8"), "{\"errors\":[\"Copy overlaps\"]}",
+                "Response body content");
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test(groups = "fast")
+    public void copyTaxCodeSnapshotSourceNotPermitted()
+            throws IOException, ServletException, SQLException, SecurityApiException {
+        // given
+        UUID sourceTenantId = UUID.randomUUID();
+        ByteArrayOutputStream byos = givenDefaultServletCall("POST", "/taxCodeSnapshot");
+        given(req.getParameter(EasyTaxServlet.SOURCE_TENANT_ID_PARAM))
+                .willReturn(sourceTenantId.toString());
+        givenPermissions(TEST_USER, TEST_PASSWORD, TEST_PERMISSIONS);
+        willThrow(new SecurityApiException(ErrorCode.SECURITY_NOT_ENOUGH_PERMISSIONS))
+                .given(securityApi).checkCurrentUserPermissions(Mockito.anyList(),
+                        Mockito.eq(Logical.AND), argThat(new ArgumentMatcher<TenantContext>() {
+
+                            @Override
+                            public boolean matches(Object arg) {
+                                return (arg instanceof TenantContext && sourceTenantId
+                                        .equals(((TenantContext) arg).getTenantId()));
+                            }
+
+                        }));
+
+        // when
+        servlet.service(req, res);
+
+        // then
+        thenDefaultResponse(403, null);
+        Mockito.verifyZeroInteractions(dao);
+
+        assertEquals(byos.size(), 0, "Response body content");
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test(groups = "fast")
+    public void putTaxCodes() throws IOException, ServletException, SQLException {
+        // given
+        byte[] data = Resources.toByteArray(Resources.getResource(getClass(), "tax-codes-01.json"));
+        ByteArrayInputStream byis = new ByteArrayInputStream(data);
+        ByteArrayOutputStream byos = givenDefaultServletCall("PUT", "/taxCodes", byis, data.length,
+                EasyTaxServlet.APPLICATION_JSON_UTF8);
+        givenPermissions(TEST_USER, TEST_PASSWORD, TEST_PERMISSIONS);
+        EasyTaxTaxCodeDiff diff = new EasyTaxTaxCodeDiff(
+                Collections.singletonList(new EasyTaxTaxCode()), Collections.emptyList(),
+                Arrays.asList(new EasyTaxTaxCode(), new EasyTaxTaxCode()), 1);
+        given(dao.syncTaxCodes(Mockito.eq(tenantId), (String) Mockito.isNull(),
+                Mockito.anyList())).willReturn(diff);
+
+        // when
+        servlet.service(req, res);
+
+        // then
+        thenAuthenticatedAs(TEST_USER, TEST_PASSWORD);
+        thenDefaultOkJsonResponse();
+
+        @SuppressWarnings("rawtypes")
+        ArgumentCaptor<List> taxCodesCaptor = ArgumentCaptor.forClass(List.class);
+        then(dao).should().syncTaxCodes(Mockito.eq(tenantId), (String) Mockito.isNull(),
+                taxCodesCaptor.capture());
+
+        assertEquals(byos.toString("UTF-8"),
+                "{\"inserted\":1,\"updated\":0,\"deleted\":2,\"unchanged\":1}",
+                "Response body content");
+        List<EasyTaxTaxCode> savedList = taxCodesCaptor.getValue();
+        assertEquals(savedList.size(), 2, "Synchronized count");
+        for (EasyTaxTaxCode saved : savedList) {
+            assertEquals(saved.getCreatedDate(), now);
+            assertEquals(saved.getKbTenantId(), tenantId);
+            assertEquals(saved.getTaxZone(), "NZ");
+        }
+    }
+
+    @Test(groups = "fast")
+    public void putTaxCodesMissingBody() throws IOException, ServletException, SQLException {
+        // given
+        byte[] data = "null".getBytes("UTF-8");
+        ByteArrayInputStream byis = new ByteArrayInputStream(data);
+        ByteArrayOutputStream byos = givenDefaultServletCall("PUT", "/taxCodes", byis, data.length,
+                EasyTaxServlet.APPLICATION_JSON_UTF8);
+        givenPermissions(TEST_USER, TEST_PASSWORD, TEST_PERMISSIONS);
+
+        // when
+        servlet.service(req, res);
+
+        // then
+        thenAuthenticatedAs(TEST_USER, TEST_PASSWORD);
+        thenDefaultResponse(400, EasyTaxServlet.APPLICATION_JSON_UTF8);
+        Mockito.verifyZeroInteractions(dao);
+
+        assertEquals(byos.toString("UTF-8"), "{\"errors\":[\"Missing tax codes\"]}",
+                "Response body content");
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test(groups = "fast")
+    public void putTaxCodesForTaxZone() throws IOException, ServletException, SQLException {
+        // given
+        byte[] data = Resources.toByteArray(Resources.getResource(getClass(), "tax-codes-01.json"));
+        ByteArrayInputStream byis = new ByteArrayInputStream(data);
+        ByteArrayOutputStream byos = givenDefaultServletCall("PUT", "/taxCodes/AU", byis,
+                data.length, EasyTaxServlet.APPLICATION_JSON_UTF8);
+        givenPermissions(TEST_USER, TEST_PASSWORD, TEST_PERMISSIONS);
+        EasyTaxTaxCodeDiff diff = new EasyTaxTaxCodeDiff(Collections.emptyList(),
+                Collections.emptyList(), Collections.emptyList(), 2);
+        given(dao.syncTaxCodes(Mockito.eq(tenantId), Mockito.eq("AU"), Mockito.anyList()))
+                .willReturn(diff);
+
+        // when
+        servlet.service(req, res);
+
+        // then
+        thenDefaultOkJsonResponse();
+
+        @SuppressWarnings("rawtypes")
+        ArgumentCaptor<List> taxCodesCaptor = ArgumentCaptor.forClass(List.class);
+        then(dao).should().syncTaxCodes(Mockito.eq(tenantId), Mockito.eq("AU"),
+                taxCodesCaptor.capture());
+
+        assertEquals(byos.toString("UTF-8"),
+                "{\"inserted\":0,\"updated\":0,\"deleted\":0,\"unchanged\":2}",
+                "Response body content");
+        List<EasyTaxTaxCode> savedList = taxCodesCaptor.getValue();
+        for (EasyTaxTaxCode saved : savedList) {
+            assertEquals(saved.getTaxZone(), "AU", "Tax zone from path");
+        }
+    }
+
+    @Test(groups = "fast")
+    public void putTaxCodesForProductNotFound()
+            throws IOException, ServletException, SQLException {
+        // given
+        ByteArrayOutputStream byos = givenDefaultServletCall("PUT", "/taxCodes/NZ/memory-use");
+        givenPermissions(TEST_USER, TEST_PASSWORD, TEST_PERMISSIONS);
+
+        // when
+        servlet.service(req, res);
+
+        // then
+        thenErrorResponse(404, "Resource /taxCodes/NZ/memory-use not found");
+        Mockito.verifyZeroInteractions(dao);
+
+        assertEquals(byos.size(), 0, "Response body content");
+    }
+
+    @Test(groups = "fast")
+    public void createTaxCodeStage() throws IOException, ServletException, SQLException {
+        // given
+        byte[] data = Resources.toByteArray(Resources.getResource(getClass(), "tax-codes-01.json"));
+        ByteArrayInputStream byis = new ByteArrayInputStream(data);
+        ByteArrayOutputStream byos = givenDefaultServletCall("POST", "/taxCodeStages", byis,
+                data.length, EasyTaxServlet.APPLICATION_JSON_UTF8);
+        givenPermissions(TEST_USER, TEST_PASSWORD, TEST_PERMISSIONS);
+
+        // when
+        servlet.service(req, res);
+
+        // then
+        thenAuthenticatedAs(TEST_USER, TEST_PASSWORD);
+        thenDefaultResponse(201, null);
+
+        ArgumentCaptor<UUID> stageIdCaptor = ArgumentCaptor.forClass(UUID.class);
+        @SuppressWarnings("rawtypes")
+        ArgumentCaptor<List> taxCodesCaptor = ArgumentCaptor.forClass(List.class);
+        then(dao).should().stageTaxCodes(Mockito.eq(tenantId), stageIdCaptor.capture(),
+                taxCodesCaptor.capture());
+        then(res).should().setHeader(HttpHeaders.LOCATION,
+                "/plugins/killbill-easytax/taxCodeStages/" + stageIdCaptor.getValue());
+
+        assertEquals(byos.size(), 0, "Response body content");
+        List<EasyTaxTaxCode> stagedList = taxCodesCaptor.getValue();
+        assertEquals(stagedList.size(), 2, "Staged count");
+        assertEquals(stagedList.get(0).getCreatedDate(), now);
+    }
+
+    @Test(groups = "fast")
+    public void addToTaxCodeStage() throws IOException, ServletException, SQLException {
+        // given
+        UUID stageId = UUID.randomUUID();
+        byte[] data = Resources.toByteArray(Resources.getResource(getClass(), "tax-codes-01.json"));
+        ByteArrayInputStream byis = new ByteArrayInputStream(data);
+        ByteArrayOutputStream byos = givenDefaultServletCall("POST", "/taxCodeStages/" + stageId,
+                byis, data.length, EasyTaxServlet.APPLICATION_JSON_UTF8);
+        givenPermissions(TEST_USER, TEST_PASSWORD, TEST_PERMISSIONS);
+        given(dao.stageTaxCodes(Mockito.eq(tenantId), Mockito.eq(stageId), Mockito.anyList()))
+                .willReturn(2);
+
+        // when
+        servlet.service(req, res);
+
+        // then
+        thenAuthenticatedAs(TEST_USER, TEST_PASSWORD);
+        thenDefaultOkJsonResponse();
+
+        assertEquals(byos.toString("UTF-8"), "{\"count\":2}", "Response body content");
+    }
+
+    private List<EasyTaxTaxCode> givenStagedTaxCodes(UUID stageId, BigDecimal rate)
+            throws SQLException {
+        EasyTaxTaxCode code = new EasyTaxTaxCode("GST");
+        code.setTaxZone("NZ");
+        code.setProductName("memory-use");
+        code.setTaxRate(rate);
+        code.setValidFromDate(new DateTime(2017, 1, 1, 0, 0, DateTimeZone.UTC));
+        List<EasyTaxTaxCode> taxCodes = Collections.singletonList(code);
+        given(dao.getStagedTaxCodes(tenantId, stageId)).willReturn(taxCodes);
+        return taxCodes;
+    }
+
+    @Test(groups = "fast")
+    public void activateTaxCodeStage() throws IOException, ServletException, SQLException {
+        // given
+        UUID stageId = UUID.randomUUID();
+        ByteArrayOutputStream byos = givenDefaultServletCall("POST",
+                "/taxCodeStages/" + stageId + "/activate");
+        givenPermissions(TEST_USER, TEST_PASSWORD, TEST_PERMISSIONS);
+        given(dao.activateTaxCodeStage(tenantId, stageId)).willReturn(1);
+
+        // when
+        servlet.service(req, res);
+
+        // then
+        thenAuthenticatedAs(TEST_USER, TEST_PASSWORD);
+        thenDefaultOkJsonResponse();
+        then(dao).should().activateTaxCodeStage(tenantId, stageId);
+        then(dao).should(Mockito.never()).getStagedTaxCodes(tenantId, stageId);
+
+        assertEquals(byos.toString("UTF-8"), "{\"count\":1}", "Response body content");
+    }
+
+    @Test(groups = "fast")
+    public void activateTaxCodeStageInvalid() throws IOException, ServletException, SQLException {
+        // given
+        UUID stageId = UUID.randomUUID();
+        ByteArrayOutputStream byos = givenDefaultServletCall("POST",
+                "/taxCodeStages/" + stageId + "/activate");
+        givenPermissions(TEST_USER, TEST_PASSWORD, TEST_PERMISSIONS);
+        given(dao.activateTaxCodeStage(tenantId, stageId))
+                .willThrow(new EasyTaxTaxCodeValidationException(new EasyTaxTaxCodeValidator()
+                        .validate(givenStagedTaxCodes(stageId, new BigDecimal("-0.15")))));
+
+        // when
+        servlet.service(req, res);
+
+        // then
+        thenAuthenticatedAs(TEST_USER, TEST_PASSWORD);
+        thenDefaultResponse(422, EasyTaxServlet.APPLICATION_JSON_UTF8);
+        then(dao).should().activateTaxCodeStage(tenantId, stageId);
+
+        assertTrue(byos.toString("UTF-8")
+                .startsWith("{\"errors\":[\"Missing or negative tax rate"),
+                "Response body content");
+    }
+
+    @Test(groups = "fast")
+    public void activateTaxCodeStageNotFound() throws IOException, ServletException, SQLException {
+        // given
+        UUID stageId = UUID.randomUUID();
+        givenDefaultServletCall("POST", "/taxCodeStages/" + stageId + "/activate");
+        givenPermissions(TEST_USER, TEST_PASSWORD, TEST_PERMISSIONS);
+        given(dao.activateTaxCodeStage(tenantId, stageId)).willReturn(0);
+
+        // when
+        servlet.service(req, res);
+
+        // then
+        thenErrorResponse(404, "Stage " + stageId + " not found");
+        then(dao).should().activateTaxCodeStage(tenantId, stageId);
+    }
+
+    @Test(groups = "fast")
+    public void getTaxCodeStageValidation() throws IOException, ServletException, SQLException {
+        // given
+        UUID stageId = UUID.randomUUID();
+        ByteArrayOutputStream byos = givenDefaultServletCall("GET",
+                "/taxCodeStages/" + stageId + "/validation");
+        givenStagedTaxCodes(stageId, new BigDecimal("0.15"));
+
+        // when
+        servlet.service(req, res);
+
+        // then
+        thenDefaultOkJsonResponse();
+
+        assertEquals(byos.toString("UTF-8"), "{\"errors\":[]}", "Response body content");
+    }
+
+    @Test(groups = "fast")
+    public void deleteTaxCodeStage() throws IOException, ServletException, SQLException {
+        // given
+        UUID stageId = UUID.randomUUID();
+        ByteArrayOutputStream byos = givenDefaultServletCall("DELETE", "/taxCodeStages/" + stageId);
+        givenPermissions(TEST_USER, TEST_PASSWORD, TEST_PERMISSIONS);
+
+        // when
+        servlet.service(req, res);
+
+        // then
+        thenAuthenticatedAs(TEST_USER, TEST_PASSWORD);
+        thenDefaultOkResponse();
+        then(dao).should().removeTaxCodeStage(tenantId, stageId);
+
+        assertEquals(byos.size(), 0, "Response body content");
+    }
+
+    @Test(groups = "fast")
+    public void getTaxCodeStageInvalidId() throws IOException, ServletException, SQLException {
+        // given
+        ByteArrayOutputStream byos = givenDefaultServletCall("GET", "/taxCodeStages/foo");
+
+        // when
+        servlet.service(req, res);
+
+        // then
+        thenErrorResponse(404, "Resource /taxCodeStages/foo not found");
+        Mockito.verifyZeroInteractions(dao);
+
+        assertEquals(byos.size(), 0, "Response body content");
+    }
+
+    @Test(groups = "fast")
+    public void rollOverTaxCodes() throws IOException, ServletException, SQLException {
+        // given
+        byte[] data = ("{\"tax_zone\":\"NZ\",\"product_name\":\"memory-*\","
+                + "\"effective_date\":\"2018-01-01T00:00:00Z\",\"tax_rate\":\"0.2\"}")
+                        .getBytes("UTF-8");
+        ByteArrayInputStream byis = new ByteArrayInputStream(data);
+        ByteArrayOutputStream byos = givenDefaultServletCall("POST", "/taxCodeRollOver", byis,
+                data.length, EasyTaxServlet.APPLICATION_JSON_UTF8);
+        givenPermissions(TEST_USER, TEST_PASSWORD, TEST_PERMISSIONS);
+        given(dao.rollOverTaxCodes(Mockito.eq(tenantId),
+                Mockito.any(EasyTaxTaxCodeRollOver.class))).willReturn(3);
+
+        // when
+        servlet.service(req, res);
+
+        // then
+        thenAuthenticatedAs(TEST_USER, TEST_PASSWORD);
+        thenDefaultOkJsonResponse();
+
+        ArgumentCaptor<EasyTaxTaxCodeRollOver> rollOverCaptor = ArgumentCaptor
+                .forClass(EasyTaxTaxCodeRollOver.class);
+        then(dao).should().rollOverTaxCodes(Mockito.eq(tenantId), rollOverCaptor.capture());
+
+        assertEquals(byos.toString("UTF-8"), "{\"count\":3}", "Response body content");
+        EasyTaxTaxCodeRollOver rollOver = rollOverCaptor.getValue();
+        assertEquals(rollOver.getTaxZone(), "NZ");
+        assertEquals(rollOver.getProductName(), "memory-*");
+        assertNull(rollOver.getTaxCode(), "Tax code");
+        assertDateTimeEquals(rollOver.getEffectiveDate(),
+                new DateTime(2018, 1, 1, 0, 0, 0, DateTimeZone.UTC), "Effective date");
+        assertEquals(rollOver.getTaxRate(), new BigDecimal("0.2"));
+        assertNull(rollOver.getTaxRateDelta(), "Tax rate delta");
+    }
+
+    @Test(groups = "fast")
+    public void rollOverTaxCodesRateAndDelta() throws IOException, ServletException, SQLException {
+        // given
+        byte[] data = ("{\"effective_date\":\"2018-01-01T00:00:00Z\",\"tax_rate\":\"0.2\","
+                + "\"tax_rate_delta\":\"0.01\"}").getBytes("UTF-8");
+        ByteArrayInputStream byis = new ByteArrayInputStream(data);
+        ByteArrayOutputStream byos = givenDefaultServletCall("POST", "/taxCodeRollOver", byis,
+                data.length, EasyTaxServlet.APPLICATION_JSON_UTF8);
+        givenPermissions(TEST_USER, TEST_PASSWORD, TEST_PERMISSIONS);
+
+        // when
+        servlet.service(req, res);
+
+        // then
+        thenAuthenticatedAs(TEST_USER, TEST_PASSWORD);
+        thenDefaultResponse(400, EasyTaxServlet.APPLICATION_JSON_UTF8);
+        Mockito.verifyZeroInteractions(dao);
+
+        assertEquals(byos.toString("UTF-8"),
+                "{\"errors\":[\"Exactly one of tax_rate or tax_rate_delta is required\"]}",
+                "Response body content");
+    }
+
+    @Test(groups = "fast")
+    public void rollOverTaxCodesOverlap() throws IOException, ServletException, SQLException {
+        // given
+        byte[] data = ("{\"tax_zone\":\"NZ\",\"effective_date\":\"2018-01-01T00:00:00Z\","
+                + "\"tax_rate\":\"0.2\"}").getBytes("UTF-8");
+        ByteArrayInputStream byis = new ByteArrayInputStream(data);
+        ByteArrayOutputStream byos = givenDefaultServletCall("POST", "/taxCodeRollOver", byis,
+                data.length, EasyTaxServlet.APPLICATION_JSON_UTF8);
+        givenPermissions(TEST_USER, TEST_PASSWORD, TEST_PERMISSIONS);
+        given(dao.rollOverTaxCodes(Mockito.eq(tenantId),
+                Mockito.any(EasyTaxTaxCodeRollOver.class)))
+                        .willThrow(new EasyTaxTaxCodeOverlapException(
+                                Collections.singletonList("Roll over overlaps")));
+
+        // when
+        servlet.service(req, res);
+
+        // then
+        thenAuthenticatedAs(TEST_USER, TEST_PASSWORD);
+        thenDefaultResponse(409, EasyTaxServlet.APPLICATION_JSON_UTF8);
+
+        assertEquals(byos.toString("UTF-8"), "{\"errors\":[\"Roll over overlaps\"]}",
+                "Response body content");
+    }
+
+    @Test(groups = "fast")
+    public void addTaxCodesOverlap() throws IOException, ServletException, SQLException {
+        // given
+        byte[] data = Resources.toByteArray(Resources.getResource(getClass(), "tax-codes-01.json"));
+        ByteArrayInputStream byis = new ByteArrayInputStream(data);
+        ByteArrayOutputStream byos = givenDefaultServletCall("POST", "/taxCodes", byis, data.length,
+                EasyTaxServlet.APPLICATION_JSON_UTF8);
+        givenPermissions(TEST_USER, TEST_PASSWORD, TEST_PERMISSIONS);
+        willThrow(new EasyTaxTaxCodeOverlapException(Collections.singletonList("Overlap")))
+                .given(dao).saveTaxCodes(Mockito.anyList());
+
+        // when
+        servlet.service(req, res);
+
+        // then
+        thenAuthenticatedAs(TEST_USER, TEST_PASSWORD);
+        thenDefaultResponse(409, EasyTaxServlet.APPLICATION_JSON_UTF8);
+
+        assertEquals(byos.toString("UTF-8"), "{\"errors\":[\"Overlap\"]}",
+                "Response body content");
+    }
+
+    @Test(groups = "fast")
+    public void addTaxCodesValidateOnly() throws IOException, ServletException, SQLException {
+        // given
+        byte[] data = Resources.toByteArray(Resources.getResource(getClass(), "tax-codes-01.json"));
+        ByteArrayInputStream byis = new ByteArrayInputStream(data);
+        ByteArrayOutputStream byos = givenDefaultServletCall("POST", "/taxCodes", byis, data.length,
+                EasyTaxServlet.APPLICATION_JSON_UTF8);
+        givenPermissions(TEST_USER, TEST_PASSWORD, TEST_PERMISSIONS);
+        given(req.getParameter(EasyTaxServlet.VALIDATE_ONLY_PARAM)).willReturn("true");
+
+        // existing open-ended tax code overlaps the uploaded ones
+        EasyTaxTaxCode existing = new EasyTaxTaxCode("GST");
+        existing.setTaxZone("NZ");
+        existing.setProductName("memory-use");
+        existing.setTaxRate(new BigDecimal("0.15"));
+        existing.setValidFromDate(new DateTime(2016, 1, 1, 0, 0, DateTimeZone.UTC));
+        given(dao.getTaxCodes(tenantId, null, null, null, null))
+                .willReturn(Collections.singletonList(existing));
+
+        // when
+        servlet.service(req, res);
+
+        // then
+        thenAuthenticatedAs(TEST_USER, TEST_PASSWORD);
+        thenDefaultOkJsonResponse();
+        then(dao).should(Mockito.never()).saveTaxCodes(Mockito.anyList());
+
+        assertTrue(byos.toString("UTF-8")
+                .startsWith("{\"errors\":[\"Validity of NZ/memory-use/GST"),
+                "Response body content");
+    }
+
+    @Test(groups = "fast")
+    public void getTaxCodeChanges() throws IOException, ServletException, SQLException {
+        // given
+        ByteArrayOutputStream byos = givenDefaultServletCall("GET", "/taxCodeChanges");
+        given(req.getParameter(EasyTaxServlet.SINCE_SEQUENCE_PARAM)).willReturn("41");
+        given(req.getParameter(EasyTaxServlet.MAX_PARAM)).willReturn("10");
+
+        EasyTaxTaxCode taxCode = new EasyTaxTaxCode("GST");
+        EasyTaxTaxCodeChange change = new EasyTaxTaxCodeChange(
+                EasyTaxTaxCodeChange.ChangeType.DELETE, taxCode);
+        change.setSequence(42L);
+        given(dao.getTaxCodeChanges(tenantId, 41L, 10))
+                .willReturn(Collections.singletonList(change));
+
+        // when
+        servlet.service(req, res);
+
+        // then
+        thenDefaultOkJsonResponse();
+
+        assertEquals(byos.toString("UTF-8"),
+                "[{\"sequence\":42,\"change_type\":\"DELETE\",\"tax_code\":\"GST\"}]",
+                "Response body content");
+    }
+
+    @Test(groups = "fast")
+    public void getTaxCodeChangesDefaults() throws IOException, ServletException, SQLException {
+        // given
+        ByteArrayOutputStream byos = givenDefaultServletCall("GET", "/taxCodeChanges");
+        given(dao.getTaxCodeChanges(tenantId, 0L, EasyTaxServlet.DEFAULT_MAX_CHANGES))
+                .willReturn(Collections.emptyList());
+
+        // when
+        servlet.service(req, res);
+
+        // then
+        thenDefaultOkJsonResponse();
+
+        assertEquals(byos.toString("UTF-8"), "[]", "Response body content");
+    }
+
+    @Test(groups = "fast")
+    public void getTaxCodeChangesInvalidSequence()
+            throws IOException, ServletException, SQLException {
+        // given
+        givenDefaultServletCall("GET", "/taxCodeChanges");
+        given(req.getParameter(EasyTaxServlet.SINCE_SEQUENCE_PARAM)).willReturn("foo");
+
+        // when
+        servlet.service(req, res);
+
+        // then
+        thenDefaultResponse(400, EasyTaxServlet.APPLICATION_JSON_UTF8);
+        Mockito.verifyZeroInteractions(dao);
+
+        assertEquals(byos.toString("UTF-8"),
+                "{\"errors\":[\"Invalid sinceSequence or max value\"]}",
+                "Response body content");
+    }
+
+    @Test(groups = "fast")
+    public void prefetchTaxZones() throws IOException, ServletException {
+        // given
+        UUID accountId = UUID.randomUUID();
+        UUID accountId2 = UUID.randomUUID();
+        EasyTaxTaxCalculator calculator = mock(EasyTaxTaxCalculator.class);
+        servlet.setTaxCalculator(calculator);
+        byte[] data = ("[\"" + accountId + "\",\"" + accountId2 + "\"]").getBytes("UTF-8");
+        ByteArrayInputStream byis = new ByteArrayInputStream(data);
+        ByteArrayOutputStream byos = givenDefaultServletCall("POST", "/taxZonePrefetch", byis,
+                data.length, EasyTaxServlet.APPLICATION_JSON_UTF8);
+        givenPermissions(TEST_USER, TEST_PASSWORD, TEST_PERMISSIONS);
+        given(calculator.prefetchTaxZones(tenantId, Arrays.asList(accountId, accountId2)))
+                .willReturn(2);
+
+        // when
+        servlet.service(req, res);
+
+        // then
+        thenAuthenticatedAs(TEST_USER, TEST_PASSWORD);
+        thenDefaultOkJsonResponse();
+        assertEquals(byos.toString("UTF-8"), "{\"count\":2}", "Response body content");
+        Mockito.verifyZeroInteractions(dao);
+    }
+
+    @Test(groups = "fast")
+    public void prefetchTaxZonesMissingAccountIds() throws IOException, ServletException {
+        // given
+        EasyTaxTaxCalculator calculator = mock(EasyTaxTaxCalculator.class);
+        servlet.setTaxCalculator(calculator);
+        byte[] data = "null".getBytes("UTF-8");
+        ByteArrayInputStream byis = new ByteArrayInputStream(data);
+        ByteArrayOutputStream byos = givenDefaultServletCall("POST", "/taxZonePrefetch", byis,
+                data.length, EasyTaxServlet.APPLICATION_JSON_UTF8);
+        givenPermissions(TEST_USER, TEST_PASSWORD, TEST_PERMISSIONS);
+
+        // when
+        servlet.service(req, res);
+
+        // then
+        thenAuthenticatedAs(TEST_USER, TEST_PASSWORD);
+        thenDefaultResponse(400, EasyTaxServlet.APPLICATION_JSON_UTF8);
+        assertEquals(byos.toString("UTF-8"), "{\"errors\":[\"Missing account IDs\"]}",
+                "Response body content");
+        Mockito.verifyZeroInteractions(calculator);
+    }
+
 }
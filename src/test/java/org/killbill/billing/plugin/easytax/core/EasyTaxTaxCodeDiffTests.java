@@ -0,0 +1,137 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.killbill.billing.plugin.easytax.core;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Test cases for the {@link EasyTaxTaxCodeDiff} class.
+ *
+ * @author matt
+ */
+public class EasyTaxTaxCodeDiffTests {
+
+    private static final BigDecimal TEST_TAX_RATE = new BigDecimal("0.15");
+
+    private EasyTaxTaxCode existing;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setup() {
+        existing = new EasyTaxTaxCode("GST");
+        existing.setKbTenantId(UUID.randomUUID());
+        existing.setTaxZone("NZ");
+        existing.setProductName("memory-use");
+        existing.setTaxRate(TEST_TAX_RATE);
+        existing.setValidFromDate(new DateTime(2017, 1, 1, 0, 0, DateTimeZone.UTC));
+    }
+
+    @Test(groups = "fast")
+    public void noChanges() {
+        EasyTaxTaxCode desired = new EasyTaxTaxCode(existing);
+        desired.setTaxRate(new BigDecimal("0.150000000"));
+        desired.setValidFromDate(
+                existing.getValidFromDate().withZone(DateTimeZone.forOffsetHours(13)));
+
+        EasyTaxTaxCodeDiff diff = EasyTaxTaxCodeDiff.diff(singletonList(existing),
+                singletonList(desired));
+
+        assertTrue(diff.isEmpty(), "No differences");
+        assertEquals(diff.getUnchangedCount(), 1, "Unchanged count");
+    }
+
+    @Test(groups = "fast")
+    public void insert() {
+        EasyTaxTaxCode desired = new EasyTaxTaxCode(existing);
+        desired.setTaxCode("VAT");
+
+        EasyTaxTaxCodeDiff diff = EasyTaxTaxCodeDiff.diff(singletonList(existing),
+                Arrays.asList(existing, desired));
+
+        assertFalse(diff.isEmpty(), "Has differences");
+        assertEquals(diff.getInserts(), singletonList(desired), "Inserts");
+        assertEquals(diff.getUpdates(), emptyList(), "Updates");
+        assertEquals(diff.getDeletes(), emptyList(), "Deletes");
+        assertEquals(diff.getUnchangedCount(), 1, "Unchanged count");
+    }
+
+    @Test(groups = "fast")
+    public void updateTaxRate() {
+        EasyTaxTaxCode desired = new EasyTaxTaxCode(existing);
+        desired.setTaxRate(new BigDecimal("0.2"));
+
+        EasyTaxTaxCodeDiff diff = EasyTaxTaxCodeDiff.diff(singletonList(existing),
+                singletonList(desired));
+
+        assertEquals(diff.getInserts(), emptyList(), "Inserts");
+        assertEquals(diff.getUpdates(), singletonList(desired), "Updates");
+        assertEquals(diff.getDeletes(), emptyList(), "Deletes");
+        assertEquals(diff.getUnchangedCount(), 0, "Unchanged count");
+    }
+
+    @Test(groups = "fast")
+    public void updateValidToDate() {
+        EasyTaxTaxCode desired = new EasyTaxTaxCode(existing);
+        desired.setValidToDate(new DateTime(2018, 1, 1, 0, 0, DateTimeZone.UTC));
+
+        EasyTaxTaxCodeDiff diff = EasyTaxTaxCodeDiff.diff(singletonList(existing),
+                singletonList(desired));
+
+        assertEquals(diff.getUpdates(), singletonList(desired), "Updates");
+        assertEquals(diff.getUpdateCount(), 1, "Update count");
+    }
+
+    @Test(groups = "fast")
+    public void delete() {
+        EasyTaxTaxCode other = new EasyTaxTaxCode(existing);
+        other.setValidFromDate(existing.getValidFromDate().plusYears(1));
+
+        EasyTaxTaxCodeDiff diff = EasyTaxTaxCodeDiff.diff(Arrays.asList(existing, other),
+                singletonList(existing));
+
+        assertEquals(diff.getInserts(), emptyList(), "Inserts");
+        assertEquals(diff.getUpdates(), emptyList(), "Updates");
+        assertEquals(diff.getDeletes(), singletonList(other), "Deletes");
+        assertEquals(diff.getUnchangedCount(), 1, "Unchanged count");
+    }
+
+    @Test(groups = "fast")
+    public void duplicateDesiredLastWins() {
+        EasyTaxTaxCode first = new EasyTaxTaxCode(existing);
+        first.setTaxRate(new BigDecimal("0.2"));
+        EasyTaxTaxCode last = new EasyTaxTaxCode(existing);
+        last.setTaxRate(new BigDecimal("0.25"));
+
+        EasyTaxTaxCodeDiff diff = EasyTaxTaxCodeDiff.diff(singletonList(existing),
+                Arrays.asList(first, last));
+
+        assertEquals(diff.getUpdates().size(), 1, "Update count");
+        assertEquals(diff.getUpdates().get(0).getTaxRate(), last.getTaxRate(), "Last rate wins");
+    }
+
+}
@@ -0,0 +1,174 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.killbill.billing.plugin.easytax.core;
+
+import static java.util.Collections.singletonList;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Test cases for the {@link EasyTaxTaxCodeValidator} class.
+ *
+ * @author matt
+ */
+public class EasyTaxTaxCodeValidatorTests {
+
+    private EasyTaxTaxCodeValidator validator;
+    private EasyTaxTaxCode code;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setup() {
+        validator = new EasyTaxTaxCodeValidator();
+        code = new EasyTaxTaxCode("GST");
+        code.setTaxZone("NZ");
+        code.setProductName("memory-use");
+        code.setTaxRate(new BigDecimal("0.15"));
+        code.setValidFromDate(new DateTime(2017, 1, 1, 0, 0, DateTimeZone.UTC));
+    }
+
+    @Test(groups = "fast")
+    public void valid() {
+        EasyTaxTaxCode next = new EasyTaxTaxCode(code);
+        code.setValidToDate(new DateTime(2018, 1, 1, 0, 0, DateTimeZone.UTC));
+        next.setValidFromDate(code.getValidToDate());
+
+        List<String> errors = validator.validate(Arrays.asList(code, next));
+
+        assertTrue(errors.isEmpty(), "No errors: " + errors);
+    }
+
+    @Test(groups = "fast")
+    public void missingTaxZone() {
+        code.setTaxZone(null);
+
+        List<String> errors = validator.validate(singletonList(code));
+
+        assertEquals(errors.size(), 1, "Error count");
+        assertTrue(errors.get(0).startsWith("Missing tax zone"), "Error message");
+    }
+
+    @Test(groups = "fast")
+    public void negativeTaxRate() {
+        code.setTaxRate(new BigDecimal("-0.01"));
+
+        List<String> errors = validator.validate(singletonList(code));
+
+        assertEquals(errors.size(), 1, "Error count");
+        assertTrue(errors.get(0).startsWith("Missing or negative tax rate"), "Error message");
+    }
+
+    @Test(groups = "fast")
+    public void missingValidFromDate() {
+        code.setValidFromDate(null);
+
+        List<String> errors = validator.validate(singletonList(code));
+
+        assertEquals(errors.size(), 1, "Error count");
+        assertTrue(errors.get(0).startsWith("Missing valid from date"), "Error message");
+    }
+
+    @Test(groups = "fast")
+    public void validToDateNotAfterValidFromDate() {
+        code.setValidToDate(code.getValidFromDate());
+
+        List<String> errors = validator.validate(singletonList(code));
+
+        assertEquals(errors.size(), 1, "Error count");
+        assertTrue(errors.get(0).startsWith("Valid to date"), "Error message");
+    }
+
+    @Test(groups = "fast")
+    public void duplicate() {
+        EasyTaxTaxCode dup = new EasyTaxTaxCode(code);
+        dup.setValidFromDate(code.getValidFromDate().withZone(DateTimeZone.forOffsetHours(13)));
+
+        List<String> errors = validator.validate(Arrays.asList(code, dup));
+
+        assertEquals(errors.size(), 1, "Error count");
+        assertTrue(errors.get(0).startsWith("Duplicate tax code"), "Error message");
+    }
+
+    @Test(groups = "fast")
+    public void overlap() {
+        code.setValidToDate(new DateTime(2018, 1, 1, 0, 0, DateTimeZone.UTC));
+        EasyTaxTaxCode next = new EasyTaxTaxCode(code);
+        next.setValidFromDate(new DateTime(2017, 6, 1, 0, 0, DateTimeZone.UTC));
+        next.setValidToDate(null);
+
+        List<String> errors = validator.validate(Arrays.asList(next, code));
+
+        assertEquals(errors.size(), 1, "Error count");
+        assertTrue(errors.get(0).startsWith("Validity of NZ/memory-use/GST [2017-06-01"),
+                "Error message: " + errors.get(0));
+    }
+
+    @Test(groups = "fast")
+    public void overlapOpenEnded() {
+        EasyTaxTaxCode next = new EasyTaxTaxCode(code);
+        next.setValidFromDate(new DateTime(2018, 1, 1, 0, 0, DateTimeZone.UTC));
+        EasyTaxTaxCode other = new EasyTaxTaxCode(code);
+        other.setTaxCode("VAT");
+
+        List<String> errors = validator.validateOverlaps(Arrays.asList(code, next, other));
+
+        assertEquals(errors.size(), 1, "Error count");
+    }
+
+    @Test(groups = "fast")
+    public void overlapContained() {
+        // a long range followed by a short range and then one after the short range ends
+        code.setValidToDate(new DateTime(2020, 1, 1, 0, 0, DateTimeZone.UTC));
+        EasyTaxTaxCode inner = new EasyTaxTaxCode(code);
+        inner.setValidFromDate(new DateTime(2017, 6, 1, 0, 0, DateTimeZone.UTC));
+        inner.setValidToDate(new DateTime(2017, 7, 1, 0, 0, DateTimeZone.UTC));
+        EasyTaxTaxCode later = new EasyTaxTaxCode(code);
+        later.setValidFromDate(new DateTime(2018, 1, 1, 0, 0, DateTimeZone.UTC));
+        later.setValidToDate(null);
+
+        List<String> errors = validator.validateOverlaps(Arrays.asList(later, inner, code));
+
+        assertEquals(errors.size(), 2, "Error count");
+    }
+
+    @Test(groups = "fast")
+    public void overlapWithCurrent() {
+        EasyTaxTaxCode next = new EasyTaxTaxCode(code);
+        next.setValidFromDate(new DateTime(2018, 1, 1, 0, 0, DateTimeZone.UTC));
+
+        List<String> errors = validator.validateOverlaps(singletonList(code),
+                singletonList(next));
+
+        assertEquals(errors.size(), 1, "Error count");
+
+        // closing off the current tax code in the same change resolves the overlap
+        EasyTaxTaxCode closed = new EasyTaxTaxCode(code);
+        closed.setValidToDate(next.getValidFromDate());
+
+        errors = validator.validateOverlaps(singletonList(code), Arrays.asList(closed, next));
+
+        assertTrue(errors.isEmpty(), "No errors: " + errors);
+    }
+
+}
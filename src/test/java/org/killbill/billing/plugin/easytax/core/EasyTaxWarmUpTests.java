@@ -0,0 +1,97 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.killbill.billing.plugin.easytax.core;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.UUID;
+
+import org.killbill.billing.plugin.easytax.api.EasyTaxDao;
+import org.killbill.billing.plugin.easytax.api.EasyTaxTaxCalculator;
+import org.mockito.Mockito;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Test cases for the {@link EasyTaxWarmUp} class.
+ *
+ * @author matt
+ */
+public class EasyTaxWarmUpTests {
+
+    private EasyTaxDao dao;
+    private EasyTaxTaxCalculator calculator;
+    private UUID tenantId;
+    private UUID tenantId2;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setup() {
+        dao = Mockito.mock(EasyTaxDao.class);
+        calculator = Mockito.mock(EasyTaxTaxCalculator.class);
+        tenantId = UUID.randomUUID();
+        tenantId2 = UUID.randomUUID();
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void teardown() {
+        Mockito.verifyNoMoreInteractions(dao, calculator);
+        Mockito.validateMockitoUsage();
+    }
+
+    @Test(groups = "fast")
+    public void warmUpAllTenants() throws SQLException {
+        Mockito.when(dao.getTaxCodeTenantIds())
+                .thenReturn(new LinkedHashSet<>(Arrays.asList(tenantId, tenantId2)));
+        Mockito.when(dao.getTaxCodes(tenantId, null, null, null, null))
+                .thenReturn(Collections.singletonList(new EasyTaxTaxCode("GST")));
+        Mockito.when(dao.getTaxCodes(tenantId2, null, null, null, null))
+                .thenReturn(Collections.emptyList());
+
+        new EasyTaxWarmUp(dao, calculator, null, true).run();
+
+        Mockito.verify(dao).getTaxCodeTenantIds();
+        Mockito.verify(calculator).warmUp(tenantId);
+        Mockito.verify(calculator).warmUp(tenantId2);
+        Mockito.verify(dao).getTaxCodes(tenantId, null, null, null, null);
+        Mockito.verify(dao).getTaxCodes(tenantId2, null, null, null, null);
+    }
+
+    @Test(groups = "fast")
+    public void warmUpGivenTenantWithoutTaxCodes() throws SQLException {
+        new EasyTaxWarmUp(dao, calculator, Collections.singleton(tenantId), false).run();
+
+        Mockito.verify(calculator).warmUp(tenantId);
+    }
+
+    @Test(groups = "fast")
+    public void warmUpContinuesAfterError() throws SQLException {
+        Mockito.when(dao.getTaxCodes(tenantId, null, null, null, null))
+                .thenThrow(new SQLException("test"));
+        Mockito.when(dao.getTaxCodes(tenantId2, null, null, null, null))
+                .thenReturn(Collections.emptyList());
+
+        new EasyTaxWarmUp(dao, calculator, Arrays.asList(tenantId, tenantId2), true).run();
+
+        Mockito.verify(calculator).warmUp(tenantId);
+        Mockito.verify(calculator).warmUp(tenantId2);
+        Mockito.verify(dao).getTaxCodes(tenantId, null, null, null, null);
+        Mockito.verify(dao).getTaxCodes(tenantId2, null, null, null, null);
+    }
+
+}
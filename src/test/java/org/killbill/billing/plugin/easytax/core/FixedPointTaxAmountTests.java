@@ -0,0 +1,164 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.killbill.billing.plugin.easytax.core;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+/**
+ * Test cases for the {@link FixedPointTaxAmount} class.
+ *
+ * @author matt
+ */
+public class FixedPointTaxAmountTests {
+
+    private static final String[] RATES = new String[] { "0", "0.15", "0.125", "0.1", "0.18",
+            "0.075", "0.000000001", "0.999999999", "1", "0.333333333", "0.5", "15", "-0.15",
+            "1E+2", "0.123456789", "0.05" };
+
+    private static Object expected(BigDecimal rate, BigDecimal amount, int scale,
+            RoundingMode mode) {
+        try {
+            return rate.multiply(amount).setScale(scale, mode);
+        } catch (ArithmeticException e) {
+            return ArithmeticException.class;
+        }
+    }
+
+    private static Object actual(BigDecimal rate, BigDecimal amount, int scale,
+            RoundingMode mode) {
+        try {
+            return FixedPointTaxAmount.multiply(rate, amount, scale, mode);
+        } catch (ArithmeticException e) {
+            return ArithmeticException.class;
+        }
+    }
+
+    private static void assertSameResult(BigDecimal rate, BigDecimal amount, int scale,
+            RoundingMode mode) {
+        Object expected = expected(rate, amount, scale, mode);
+        Object actual = actual(rate, amount, scale, mode);
+        // BigDecimal.equals() compares the scale as well as the value
+        if (!expected.equals(actual)) {
+            fail(rate + " * " + amount + " @ " + scale + " " + mode + ": expected " + expected
+                    + " but was " + actual);
+        }
+    }
+
+    @Test(groups = "fast")
+    public void exhaustiveSmallAmounts() {
+        for (String r : RATES) {
+            BigDecimal rate = new BigDecimal(r);
+            for (int amountScale = 0; amountScale <= 3; amountScale++) {
+                for (long unscaled = -1000; unscaled <= 1000; unscaled++) {
+                    BigDecimal amount = BigDecimal.valueOf(unscaled, amountScale);
+                    for (int scale = -1; scale <= 4; scale++) {
+                        for (RoundingMode mode : RoundingMode.values()) {
+                            assertSameResult(rate, amount, scale, mode);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test(groups = "fast")
+    public void exhaustiveTies() {
+        // every remainder around half of the divisor, for each rounding mode
+        BigDecimal rate = new BigDecimal("0.5");
+        for (long unscaled = -10000; unscaled <= 10000; unscaled++) {
+            BigDecimal amount = BigDecimal.valueOf(unscaled, 2);
+            for (int scale = 0; scale <= 3; scale++) {
+                for (RoundingMode mode : RoundingMode.values()) {
+                    assertSameResult(rate, amount, scale, mode);
+                }
+            }
+        }
+    }
+
+    @Test(groups = "fast")
+    public void randomValues() {
+        final Random rng = new Random(20170701L);
+        final RoundingMode[] modes = RoundingMode.values();
+        for (int i = 0; i < 500000; i++) {
+            BigDecimal rate = BigDecimal.valueOf(rng.nextInt(1000000000), 9);
+            BigDecimal amount;
+            switch (rng.nextInt(3)) {
+                case 0:
+                    amount = BigDecimal.valueOf(rng.nextInt(), rng.nextInt(6));
+                    break;
+
+                case 1:
+                    amount = BigDecimal.valueOf(rng.nextLong() >> rng.nextInt(64),
+                            rng.nextInt(12));
+                    break;
+
+                default:
+                    amount = new BigDecimal(new BigInteger(70, rng), rng.nextInt(12));
+                    if (rng.nextBoolean()) {
+                        amount = amount.negate();
+                    }
+            }
+            assertSameResult(rate, amount, rng.nextInt(12) - 2,
+                    modes[rng.nextInt(modes.length)]);
+        }
+    }
+
+    @Test(groups = "fast")
+    public void overflowFallsBack() {
+        BigDecimal rate = new BigDecimal("0.999999999");
+        for (long amount : new long[] { Long.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE / 10,
+                Long.MIN_VALUE + 1 }) {
+            for (RoundingMode mode : RoundingMode.values()) {
+                assertSameResult(rate, BigDecimal.valueOf(amount, 2), 2, mode);
+                assertSameResult(rate, BigDecimal.valueOf(amount, 2), 30, mode);
+            }
+        }
+    }
+
+    @Test(groups = "fast")
+    public void largeScaleChange() {
+        BigDecimal rate = new BigDecimal("0.15");
+        BigDecimal amount = new BigDecimal("12.34");
+        for (int scale = -25; scale <= 25; scale++) {
+            for (RoundingMode mode : RoundingMode.values()) {
+                assertSameResult(rate, amount, scale, mode);
+            }
+        }
+    }
+
+    @Test(groups = "fast")
+    public void typicalTaxAmount() {
+        assertEquals(FixedPointTaxAmount.multiply(new BigDecimal("0.15"), new BigDecimal("9.99"),
+                2, RoundingMode.HALF_UP), new BigDecimal("1.50"));
+        assertEquals(FixedPointTaxAmount.multiply(new BigDecimal("0.125"), new BigDecimal("0.2"),
+                2, RoundingMode.HALF_EVEN), new BigDecimal("0.02"));
+    }
+
+    @Test(groups = "fast", expectedExceptions = ArithmeticException.class)
+    public void roundingNecessary() {
+        FixedPointTaxAmount.multiply(new BigDecimal("0.15"), new BigDecimal("9.99"), 2,
+                RoundingMode.UNNECESSARY);
+    }
+
+}
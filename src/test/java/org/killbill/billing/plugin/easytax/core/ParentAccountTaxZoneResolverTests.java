@@ -0,0 +1,287 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.killbill.billing.plugin.easytax.core;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+
+import java.util.Collections;
+import java.util.Properties;
+import java.util.UUID;
+
+import org.joda.time.DateTimeZone;
+import org.killbill.billing.ErrorCode;
+import org.killbill.billing.ObjectType;
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.account.api.AccountApiException;
+import org.killbill.billing.account.api.AccountUserApi;
+import org.killbill.billing.osgi.api.OSGIKillbill;
+import org.killbill.billing.plugin.easytax.EasyTaxTestUtils;
+import org.killbill.billing.util.api.CustomFieldUserApi;
+import org.killbill.billing.util.callcontext.TenantContext;
+import org.killbill.billing.util.customfield.CustomField;
+import org.mockito.Mockito;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Test cases for the {@link ParentAccountTaxZoneResolver} class.
+ *
+ * @author matt
+ */
+public class ParentAccountTaxZoneResolverTests {
+
+    private static final String TEST_TAX_ZONE = "test.zone";
+
+    private OSGIKillbill killbillApi;
+    private AccountUserApi accountApi;
+    private CustomFieldUserApi fieldApi;
+    private UUID tenantId;
+    private Account account;
+    private Account parent;
+    private Account grandparent;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setup() throws AccountApiException {
+        tenantId = UUID.randomUUID();
+        killbillApi = Mockito.mock(OSGIKillbill.class);
+        accountApi = Mockito.mock(AccountUserApi.class);
+        fieldApi = Mockito.mock(CustomFieldUserApi.class);
+        when(killbillApi.getAccountUserApi()).thenReturn(accountApi);
+        when(killbillApi.getCustomFieldUserApi()).thenReturn(fieldApi);
+        grandparent = createAccount(null);
+        parent = createAccount(grandparent);
+        account = createAccount(parent);
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void teardown() {
+        Mockito.validateMockitoUsage();
+    }
+
+    private Account createAccount(Account parentAccount) throws AccountApiException {
+        Account result = EasyTaxTestUtils.createAccount("NZ",
+                DateTimeZone.forID("Pacific/Auckland"));
+        if (parentAccount != null) {
+            when(result.getParentAccountId()).thenReturn(parentAccount.getId());
+        }
+        when(accountApi.getAccountById(eq(result.getId()), any(TenantContext.class)))
+                .thenReturn(result);
+        return result;
+    }
+
+    private ParentAccountTaxZoneResolver createResolver(Properties properties) {
+        ParentAccountTaxZoneResolver resolver = new ParentAccountTaxZoneResolver();
+        resolver.init(killbillApi, new EasyTaxConfig(properties));
+        return resolver;
+    }
+
+    private void givenCustomField(Account fieldAccount, String value) {
+        CustomField field = Mockito.mock(CustomField.class);
+        when(field.getFieldName())
+                .thenReturn(AccountCustomFieldTaxZoneResolver.TAX_ZONE_CUSTOM_FIIELD);
+        when(field.getFieldValue()).thenReturn(value);
+        when(fieldApi.getCustomFieldsForObject(eq(fieldAccount.getId()), eq(ObjectType.ACCOUNT),
+                any(TenantContext.class))).thenReturn(Collections.singletonList(field));
+    }
+
+    private void verifyFieldsFetched(Account fieldAccount, int count) {
+        verify(fieldApi, times(count)).getCustomFieldsForObject(eq(fieldAccount.getId()),
+                eq(ObjectType.ACCOUNT), any(TenantContext.class));
+    }
+
+    @Test(groups = "fast")
+    public void ownCustomField() throws AccountApiException {
+        // given
+        givenCustomField(account, TEST_TAX_ZONE);
+        givenCustomField(parent, "parent.zone");
+        ParentAccountTaxZoneResolver resolver = createResolver(new Properties());
+
+        // when
+        String taxZone = resolver.taxZoneForInvoice(tenantId, account, null,
+                Collections.emptyList());
+
+        // then
+        assertEquals(taxZone, TEST_TAX_ZONE, "Tax zone resolved from own custom field");
+        verify(accountApi, never()).getAccountById(any(UUID.class), any(TenantContext.class));
+    }
+
+    @Test(groups = "fast")
+    public void parentsOnly() {
+        // given
+        givenCustomField(account, "own.zone");
+        givenCustomField(parent, TEST_TAX_ZONE);
+        Properties props = new Properties();
+        props.setProperty(EasyTaxConfig.PROPERTY_PREFIX
+                + ParentAccountTaxZoneResolver.INCLUDE_ACCOUNT_PROPERTY, "false");
+        ParentAccountTaxZoneResolver resolver = createResolver(props);
+
+        // when
+        String taxZone = resolver.taxZoneForInvoice(tenantId, account, null,
+                Collections.emptyList());
+
+        // then
+        assertFalse(resolver.isIncludeAccount(), "Account itself not included");
+        assertEquals(taxZone, TEST_TAX_ZONE, "Tax zone inherited from parent");
+        assertEquals(resolver.getCachedAccountCount(), 1, "Cached accounts");
+        verifyFieldsFetched(account, 0);
+        verifyFieldsFetched(grandparent, 0);
+    }
+
+    @Test(groups = "fast")
+    public void inheritedFromParent() {
+        // given
+        givenCustomField(parent, TEST_TAX_ZONE);
+        ParentAccountTaxZoneResolver resolver = createResolver(new Properties());
+
+        // when
+        String taxZone = resolver.taxZoneForInvoice(tenantId, account, null,
+                Collections.emptyList());
+
+        // then
+        assertEquals(taxZone, TEST_TAX_ZONE, "Tax zone inherited from parent");
+        verifyFieldsFetched(grandparent, 0);
+    }
+
+    @Test(groups = "fast")
+    public void deepHierarchyCached() throws AccountApiException {
+        // given
+        givenCustomField(grandparent, TEST_TAX_ZONE);
+        ParentAccountTaxZoneResolver resolver = createResolver(new Properties());
+
+        // when
+        String taxZone = resolver.taxZoneForInvoice(tenantId, account, null,
+                Collections.emptyList());
+        String taxZone2 = resolver.taxZoneForInvoice(tenantId, account, null,
+                Collections.emptyList());
+        String parentTaxZone = resolver.taxZoneForInvoice(tenantId, parent, null,
+                Collections.emptyList());
+
+        // then
+        assertEquals(taxZone, TEST_TAX_ZONE, "Tax zone inherited from grandparent");
+        assertEquals(taxZone2, TEST_TAX_ZONE, "Tax zone resolved from cache");
+        assertEquals(parentTaxZone, TEST_TAX_ZONE, "Parent tax zone resolved from cache");
+        assertEquals(resolver.getCachedAccountCount(), 3, "Cached accounts");
+        verify(accountApi, times(1)).getAccountById(eq(parent.getId()),
+                any(TenantContext.class));
+        verify(accountApi, times(1)).getAccountById(eq(grandparent.getId()),
+                any(TenantContext.class));
+        verifyFieldsFetched(account, 1);
+        verifyFieldsFetched(parent, 1);
+        verifyFieldsFetched(grandparent, 1);
+    }
+
+    @Test(groups = "fast")
+    public void accountChangedDiscardsCachedAccount() throws AccountApiException {
+        // given
+        givenCustomField(grandparent, TEST_TAX_ZONE);
+        ParentAccountTaxZoneResolver resolver = createResolver(new Properties());
+        resolver.taxZoneForInvoice(tenantId, account, null, Collections.emptyList());
+
+        // when
+        givenCustomField(grandparent, "new.zone");
+        resolver.accountChanged(tenantId, grandparent.getId());
+        String taxZone = resolver.taxZoneForInvoice(tenantId, account, null,
+                Collections.emptyList());
+
+        // then
+        assertEquals(taxZone, "new.zone", "Changed tax zone inherited from grandparent");
+        verify(accountApi, times(1)).getAccountById(eq(parent.getId()),
+                any(TenantContext.class));
+        verify(accountApi, times(2)).getAccountById(eq(grandparent.getId()),
+                any(TenantContext.class));
+        verifyFieldsFetched(parent, 1);
+    }
+
+    @Test(groups = "fast")
+    public void cacheDisabled() {
+        // given
+        givenCustomField(parent, TEST_TAX_ZONE);
+        Properties props = new Properties();
+        props.setProperty(EasyTaxConfig.PROPERTY_PREFIX
+                + ParentAccountTaxZoneResolver.CACHE_SECONDS_PROPERTY, "0");
+        ParentAccountTaxZoneResolver resolver = createResolver(props);
+
+        // when
+        resolver.taxZoneForInvoice(tenantId, account, null, Collections.emptyList());
+        resolver.taxZoneForInvoice(tenantId, account, null, Collections.emptyList());
+
+        // then
+        assertEquals(resolver.getCachedAccountCount(), 0, "Cached accounts");
+        verifyFieldsFetched(parent, 2);
+    }
+
+    @Test(groups = "fast")
+    public void maxDepth() {
+        // given
+        givenCustomField(grandparent, TEST_TAX_ZONE);
+        Properties props = new Properties();
+        props.setProperty(
+                EasyTaxConfig.PROPERTY_PREFIX + ParentAccountTaxZoneResolver.MAX_DEPTH_PROPERTY,
+                "1");
+        ParentAccountTaxZoneResolver resolver = createResolver(props);
+
+        // when
+        String taxZone = resolver.taxZoneForInvoice(tenantId, account, null,
+                Collections.emptyList());
+
+        // then
+        assertNull(taxZone, "Grandparent beyond max depth");
+        verifyFieldsFetched(grandparent, 0);
+    }
+
+    @Test(groups = "fast")
+    public void parentCycle() {
+        // given
+        when(grandparent.getParentAccountId()).thenReturn(account.getId());
+        ParentAccountTaxZoneResolver resolver = createResolver(new Properties());
+
+        // when
+        String taxZone = resolver.taxZoneForInvoice(tenantId, account, null,
+                Collections.emptyList());
+
+        // then
+        assertNull(taxZone, "No tax zone in cyclic hierarchy");
+        verifyFieldsFetched(account, 1);
+    }
+
+    @Test(groups = "fast")
+    public void missingParent() throws AccountApiException {
+        // given
+        when(accountApi.getAccountById(eq(parent.getId()), any(TenantContext.class)))
+                .thenThrow(new AccountApiException(ErrorCode.ACCOUNT_DOES_NOT_EXIST_FOR_ID,
+                        parent.getId()));
+        ParentAccountTaxZoneResolver resolver = createResolver(new Properties());
+
+        // when
+        String taxZone = resolver.taxZoneForInvoice(tenantId, account, null,
+                Collections.emptyList());
+
+        // then
+        assertNull(taxZone, "No tax zone without parent");
+        assertFalse(resolver.isCacheable(), "Not cacheable by account");
+    }
+
+}
@@ -0,0 +1,133 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.killbill.billing.plugin.easytax.core;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+/**
+ * Test cases for the {@link PostalCodeRangeIndex} class.
+ *
+ * @author matt
+ */
+public class PostalCodeRangeIndexTests {
+
+    private static PostalCodeRangeIndex parse(String data) throws IOException {
+        return PostalCodeRangeIndex.parse(new StringReader(data));
+    }
+
+    @Test(groups = "fast")
+    public void empty() {
+        PostalCodeRangeIndex index = PostalCodeRangeIndex.empty();
+
+        assertEquals(index.size(), 0, "Size");
+        assertNull(index.taxZone("US", "94107"), "No zone");
+    }
+
+    @Test(groups = "fast")
+    public void lookup() throws IOException {
+        PostalCodeRangeIndex index = parse("country,from_postal_code,to_postal_code,tax_zone\n"
+                + "# California\n" + "US,94100,94199,US-CA-SF\n" + "US,90001,90089,US-CA-LA\n"
+                + "\n" + "CA,V6B,,CA-BC-VAN\n");
+
+        assertEquals(index.size(), 3, "Size");
+        assertEquals(index.taxZone("US", "94107"), "US-CA-SF", "Inside range");
+        assertEquals(index.taxZone("US", "94100"), "US-CA-SF", "Range start");
+        assertEquals(index.taxZone("US", "94199"), "US-CA-SF", "Range end");
+        assertEquals(index.taxZone("US", "94107-1234"), "US-CA-SF", "ZIP+4");
+        assertEquals(index.taxZone("us", "90001"), "US-CA-LA", "Lower case country");
+        assertEquals(index.taxZone("CA", "v6b 1a1"), "CA-BC-VAN", "Prefix");
+        assertNull(index.taxZone("US", "94200"), "After range");
+        assertNull(index.taxZone("US", "90090"), "Between ranges");
+        assertNull(index.taxZone("US", "941"), "Too short");
+        assertNull(index.taxZone("US", "94_07"), "Invalid character");
+        assertNull(index.taxZone("NZ", "6011"), "Unknown country");
+        assertNull(index.taxZone("US", null), "No postal code");
+        assertNull(index.taxZone(null, "94107"), "No country");
+    }
+
+    @Test(groups = "fast")
+    public void mostSpecificRangeWins() throws IOException {
+        PostalCodeRangeIndex index = parse(
+                "US,9,,US-WEST\n" + "US,9410,9419,US-CA-SF\n" + "US,94107,,US-CA-SOMA\n");
+
+        assertEquals(index.taxZone("US", "94107"), "US-CA-SOMA", "Longest range");
+        assertEquals(index.taxZone("US", "94110"), "US-CA-SF", "Shorter range");
+        assertEquals(index.taxZone("US", "90210"), "US-WEST", "Shortest range");
+    }
+
+    @Test(groups = "fast")
+    public void overlappingRanges() throws IOException {
+        try {
+            parse("US,94100,94199,A\n" + "US,94150,94250,B\n");
+            fail("Overlapping ranges should not load");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("line 2"), "Line number in message");
+        }
+    }
+
+    @Test(groups = "fast")
+    public void invalidRanges() {
+        String[] invalid = new String[] { "US,94100\n", "US,94100,9419,A\n", "US,94199,94100,A\n",
+                "US,94_00,94199,A\n", ",94100,94199,A\n", "US,94100,94199,\n",
+                "US,1234567890123,,A\n" };
+        for (String data : invalid) {
+            try {
+                parse(data);
+                fail("Invalid range should not load: " + data);
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test(groups = "fast")
+    public void sameAsLinearSearch() throws IOException {
+        final Random rng = new Random(12345L);
+        final StringBuilder buf = new StringBuilder();
+        final int[] from = new int[2000];
+        final int[] to = new int[from.length];
+        int next = 0;
+        for (int i = 0; i < from.length; i++) {
+            from[i] = next + rng.nextInt(20);
+            to[i] = from[i] + rng.nextInt(30);
+            next = to[i] + 1;
+            buf.append(String.format("US,%06d,%06d,Z%d\n", from[i], to[i], i));
+        }
+        final PostalCodeRangeIndex index = parse(buf.toString());
+        for (int i = 0; i < 20000; i++) {
+            int code = rng.nextInt(next + 100);
+            String expected = null;
+            for (int j = 0; j < from.length; j++) {
+                if (code >= from[j] && code <= to[j]) {
+                    expected = "Z" + j;
+                    break;
+                }
+            }
+            assertEquals(index.taxZone("US", String.format("%06d", code)), expected,
+                    "Zone of " + code);
+        }
+    }
+
+}
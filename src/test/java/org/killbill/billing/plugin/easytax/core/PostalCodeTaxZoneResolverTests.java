@@ -0,0 +1,190 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.killbill.billing.plugin.easytax.core;
+
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.UUID;
+
+import org.joda.time.DateTimeZone;
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.osgi.api.OSGIKillbill;
+import org.killbill.billing.plugin.easytax.EasyTaxTestUtils;
+import org.mockito.Mockito;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Test cases for the {@link PostalCodeTaxZoneResolver} class.
+ *
+ * @author matt
+ */
+public class PostalCodeTaxZoneResolverTests {
+
+    private OSGIKillbill killbillApi;
+    private UUID tenantId;
+    private Path file;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setup() throws IOException {
+        tenantId = UUID.randomUUID();
+        killbillApi = Mockito.mock(OSGIKillbill.class);
+        file = Files.createTempFile("postal-codes-", ".csv");
+        Files.write(file, "US,94100,94199,US-CA-SF\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void teardown() throws IOException {
+        Files.deleteIfExists(file);
+        Mockito.validateMockitoUsage();
+    }
+
+    private PostalCodeTaxZoneResolver createResolver(Properties properties) {
+        PostalCodeTaxZoneResolver resolver = new PostalCodeTaxZoneResolver();
+        resolver.init(killbillApi, new EasyTaxConfig(properties));
+        return resolver;
+    }
+
+    private Properties fileProperties() {
+        Properties props = new Properties();
+        props.setProperty(EasyTaxConfig.PROPERTY_PREFIX + PostalCodeTaxZoneResolver.FILE_PROPERTY,
+                file.toString());
+        return props;
+    }
+
+    private Account createAccount(String postalCode) {
+        Account account = EasyTaxTestUtils.createAccount("US",
+                DateTimeZone.forID("America/Los_Angeles"));
+        when(account.getPostalCode()).thenReturn(postalCode);
+        return account;
+    }
+
+    @Test(groups = "fast")
+    public void postalCodeRange() {
+        // when
+        PostalCodeTaxZoneResolver resolver = createResolver(fileProperties());
+        String taxZone = resolver.taxZoneForInvoice(tenantId, createAccount("94107"), null,
+                Collections.emptyList());
+
+        // then
+        assertEquals(resolver.getIndex().size(), 1, "Ranges loaded");
+        assertEquals(taxZone, "US-CA-SF", "Tax zone resolved from postal code");
+    }
+
+    @Test(groups = "fast")
+    public void fallbackToAccountCountry() {
+        // when
+        PostalCodeTaxZoneResolver resolver = createResolver(fileProperties());
+        String taxZone = resolver.taxZoneForInvoice(tenantId, createAccount("10001"), null,
+                Collections.emptyList());
+
+        // then
+        assertEquals(taxZone, "US", "Fallback to account country when no range matches");
+    }
+
+    @Test(groups = "fast")
+    public void noFallbackToAccountCountry() {
+        // given
+        Properties props = fileProperties();
+        props.setProperty(EasyTaxConfig.PROPERTY_PREFIX
+                + PostalCodeTaxZoneResolver.USE_ACCOUNT_COUNTRY_PROPERTY, "false");
+
+        // when
+        PostalCodeTaxZoneResolver resolver = createResolver(props);
+        String taxZone = resolver.taxZoneForInvoice(tenantId, createAccount("10001"), null,
+                Collections.emptyList());
+
+        // then
+        assertNull(taxZone, "No tax zone when no range matches");
+    }
+
+    @Test(groups = "fast", expectedExceptions = IllegalStateException.class)
+    public void missingFile() throws IOException {
+        // given
+        Files.delete(file);
+
+        // when
+        createResolver(fileProperties());
+    }
+
+    @Test(groups = "fast", expectedExceptions = IllegalStateException.class)
+    public void invalidFile() throws IOException {
+        // given
+        Files.write(file, "US,94199,94100,US-CA-SF\n".getBytes(StandardCharsets.UTF_8));
+
+        // when
+        createResolver(fileProperties());
+    }
+
+    @Test(groups = "fast")
+    public void noFileConfigured() {
+        // when
+        PostalCodeTaxZoneResolver resolver = createResolver(new Properties());
+        String taxZone = resolver.taxZoneForInvoice(tenantId, createAccount("94107"), null,
+                Collections.emptyList());
+
+        // then
+        assertEquals(resolver.getIndex().size(), 0, "No ranges loaded");
+        assertEquals(taxZone, "US", "Fallback to account country");
+    }
+
+    @Test(groups = "fast")
+    public void reloadWhenFileChanges() throws IOException {
+        // given
+        Properties props = fileProperties();
+        props.setProperty(EasyTaxConfig.PROPERTY_PREFIX
+                + PostalCodeTaxZoneResolver.FILE_CHECK_SECONDS_PROPERTY, "0");
+        PostalCodeTaxZoneResolver resolver = createResolver(props);
+        Files.write(file, ("US,94100,94199,US-CA-SF\nUS,10000,10299,US-NY-NYC\n")
+                .getBytes(StandardCharsets.UTF_8));
+
+        // when
+        String taxZone = resolver.taxZoneForInvoice(tenantId, createAccount("10001"), null,
+                Collections.emptyList());
+
+        // then
+        assertEquals(resolver.getIndex().size(), 2, "Ranges re-loaded");
+        assertEquals(taxZone, "US-NY-NYC", "Tax zone resolved from re-loaded ranges");
+    }
+
+    @Test(groups = "fast")
+    public void reloadErrorKeepsPreviousRanges() throws IOException {
+        // given
+        Properties props = fileProperties();
+        props.setProperty(EasyTaxConfig.PROPERTY_PREFIX
+                + PostalCodeTaxZoneResolver.FILE_CHECK_SECONDS_PROPERTY, "0");
+        PostalCodeTaxZoneResolver resolver = createResolver(props);
+        Files.delete(file);
+
+        // when
+        String taxZone = resolver.taxZoneForInvoice(tenantId, createAccount("94107"), null,
+                Collections.emptyList());
+
+        // then
+        assertEquals(resolver.getIndex().size(), 1, "Previous ranges kept");
+        assertEquals(taxZone, "US-CA-SF", "Tax zone resolved from previous ranges");
+    }
+
+}
@@ -19,6 +19,7 @@ import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.UUID;
 
@@ -421,4 +422,57 @@ public class SimpleTaxDateResolverTests {
         Assert.assertNull(result, "Disabling invoice item created date fallback resolves null");
     }
 
+    @Test(groups = "fast")
+    public void batchSharesStartOfDay() {
+        // given
+        List<InvoiceItem> items = setupDefaultInvoice(TEST_INVOICE_DATE, TEST_START_DATE,
+                TEST_END_DATE);
+        InvoiceItem sameEnd = EasyTaxTestUtils.createInvoiceItem(account, invoice,
+                InvoiceItemType.USAGE, TEST_USAGE_PLAN_NAME, now, TEST_START_DATE.plusDays(1),
+                TEST_END_DATE, TEST_USAGE_COST, Currency.NZD);
+        items.add(sameEnd);
+        InvoiceItem noDates = EasyTaxTestUtils.createInvoiceItem(account, invoice,
+                InvoiceItemType.USAGE, TEST_USAGE_PLAN_NAME, now, null, null, TEST_USAGE_COST,
+                Currency.NZD);
+        items.add(noDates);
+
+        // when
+        SimpleTaxDateResolver resolver = createResolver(new Properties());
+        Map<UUID, DateTime> result = resolver.taxDatesForInvoiceItems(tenantId, account, invoice,
+                items, Collections.emptyList());
+
+        // then
+        Assert.assertEquals(result.size(), 3, "Date for every item");
+        Assert.assertEquals(result.get(items.get(0).getId()),
+                TEST_END_DATE.toDateTimeAtStartOfDay(account.getTimeZone()), "End date");
+        Assert.assertSame(result.get(sameEnd.getId()), result.get(items.get(0).getId()),
+                "Same end date shares tax date");
+        Assert.assertEquals(result.get(noDates.getId()),
+                TEST_INVOICE_DATE.toDateTimeAtStartOfDay(account.getTimeZone()),
+                "Falls back to invoice date");
+    }
+
+    @Test(groups = "fast")
+    public void batchSameAsSingleItem() {
+        // given
+        List<InvoiceItem> items = setupDefaultInvoice(now, now, null, TEST_START_DATE, null);
+        items.add(EasyTaxTestUtils.createInvoiceItem(account, invoice, InvoiceItemType.USAGE,
+                TEST_USAGE_PLAN_NAME, now, null, null, TEST_USAGE_COST, Currency.NZD));
+
+        // when
+        SimpleTaxDateResolver resolver = createResolver(
+                configureFallbackToInvoiceCratedDate(
+                        configureFallbackToInvoiceItemCreatedDate(new Properties(), false),
+                        false));
+        Map<UUID, DateTime> result = resolver.taxDatesForInvoiceItems(tenantId, account, invoice,
+                items, Collections.emptyList());
+
+        // then
+        Assert.assertEquals(result.size(), 1, "Item without date not included");
+        Assert.assertEquals(result.get(items.get(0).getId()), resolver.taxDateForInvoiceItem(
+                tenantId, account, invoice, items.get(0), Collections.emptyList()), "Start date");
+        Assert.assertNull(resolver.taxDateForInvoiceItem(tenantId, account, invoice, items.get(1),
+                Collections.emptyList()), "No date");
+    }
+
 }
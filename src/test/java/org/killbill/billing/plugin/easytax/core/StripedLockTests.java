@@ -0,0 +1,51 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *  
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.killbill.billing.plugin.easytax.core;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertSame;
+
+import java.util.UUID;
+
+import org.testng.annotations.Test;
+
+/**
+ * Test cases for the {@link StripedLock} class.
+ * 
+ * @author matt
+ */
+public class StripedLockTests {
+
+    @Test(groups = "fast")
+    public void stripeCountRoundedToPowerOfTwo() {
+        assertEquals(new StripedLock(1).getStripeCount(), 1);
+        assertEquals(new StripedLock(3).getStripeCount(), 4);
+        assertEquals(new StripedLock(64).getStripeCount(), 64);
+        assertEquals(new StripedLock(65).getStripeCount(), 128);
+    }
+
+    @Test(groups = "fast")
+    public void sameKeySameLock() {
+        StripedLock locks = new StripedLock(16);
+        for (int i = 0; i < 100; i++) {
+            UUID key = UUID.randomUUID();
+            assertNotNull(locks.lockFor(key));
+            assertSame(locks.lockFor(key), locks.lockFor(UUID.fromString(key.toString())));
+        }
+    }
+
+}
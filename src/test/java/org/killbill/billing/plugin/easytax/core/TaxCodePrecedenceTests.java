@@ -0,0 +1,62 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.killbill.billing.plugin.easytax.core;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+/**
+ * Test cases for the {@link TaxCodePrecedence} class.
+ *
+ * @author matt
+ */
+public class TaxCodePrecedenceTests {
+
+    private static EasyTaxTaxCode taxCode(String taxZone, String productName, String code) {
+        EasyTaxTaxCode taxCode = new EasyTaxTaxCode(code);
+        taxCode.setTaxZone(taxZone);
+        taxCode.setProductName(productName);
+        return taxCode;
+    }
+
+    @Test(groups = "fast")
+    public void productOverridesAnyProduct() {
+        EasyTaxTaxCode any = taxCode("NZ", EasyTaxTaxCode.ANY_PRODUCT_NAME, "GST");
+        EasyTaxTaxCode product = taxCode("NZ", "memory-use", "GST");
+        EasyTaxTaxCode levy = taxCode("NZ", EasyTaxTaxCode.ANY_PRODUCT_NAME, "LEVY");
+        List<EasyTaxTaxCode> codes = new ArrayList<>(Arrays.asList(any, levy, product));
+
+        assertTrue(TaxCodePrecedence.removeOverridden(codes), "Removed");
+        assertEquals(codes, Arrays.asList(levy, product), "Any-product GST overridden");
+    }
+
+    @Test(groups = "fast")
+    public void otherTaxZoneNotOverridden() {
+        EasyTaxTaxCode any = taxCode("NZ", EasyTaxTaxCode.ANY_PRODUCT_NAME, "GST");
+        EasyTaxTaxCode product = taxCode("NZ-AKL", "memory-use", "GST");
+        List<EasyTaxTaxCode> codes = new ArrayList<>(Arrays.asList(any, product));
+
+        assertEquals(TaxCodePrecedence.removeOverridden(codes), false, "Nothing removed");
+        assertEquals(codes, Arrays.asList(any, product), "Codes unchanged");
+    }
+
+}
@@ -0,0 +1,69 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.killbill.billing.plugin.easytax.core;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.testng.annotations.Test;
+
+/**
+ * Test cases for the {@link TaxZoneHierarchy} class.
+ *
+ * @author matt
+ */
+public class TaxZoneHierarchyTests {
+
+    @Test(groups = "fast")
+    public void empty() {
+        assertSame(TaxZoneHierarchy.parse(null), TaxZoneHierarchy.EMPTY, "Null value");
+        assertSame(TaxZoneHierarchy.parse(" "), TaxZoneHierarchy.EMPTY, "Blank value");
+        assertTrue(TaxZoneHierarchy.EMPTY.isEmpty(), "Empty");
+        assertEquals(TaxZoneHierarchy.EMPTY.ancestry("NZ"), Collections.singletonList("NZ"),
+                "Zone without parent");
+    }
+
+    @Test(groups = "fast")
+    public void ancestry() {
+        TaxZoneHierarchy hierarchy = TaxZoneHierarchy
+                .parse("US-CA-SF-X:US-CA-SF, US-CA-SF:US-CA,US-CA:US,,US-NY:US");
+
+        assertEquals(hierarchy.size(), 4, "Nested zone count");
+        assertEquals(hierarchy.ancestry("US-CA-SF-X"),
+                Arrays.asList("US-CA-SF-X", "US-CA-SF", "US-CA", "US"), "City ancestry");
+        assertEquals(hierarchy.ancestry("US-NY"), Arrays.asList("US-NY", "US"), "State ancestry");
+        assertEquals(hierarchy.ancestry("US"), Collections.singletonList("US"), "Country");
+    }
+
+    @Test(groups = "fast")
+    public void invalid() {
+        String[] invalid = new String[] { "A", "A:", ":B", "A:B,A:C", "A:B,B:C,C:A", "A:A" };
+        for (String value : invalid) {
+            try {
+                TaxZoneHierarchy.parse(value);
+                fail("Invalid hierarchy should not parse: " + value);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+}
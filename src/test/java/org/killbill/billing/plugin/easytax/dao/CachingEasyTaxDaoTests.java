@@ -0,0 +1,203 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.killbill.billing.plugin.easytax.dao;
+
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.killbill.billing.plugin.easytax.api.EasyTaxDao;
+import org.killbill.billing.plugin.easytax.core.EasyTaxTaxCode;
+import org.killbill.billing.plugin.easytax.core.TaxZoneHierarchy;
+import org.mockito.Mockito;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Test cases for the {@link CachingEasyTaxDao} class.
+ *
+ * @author matt
+ */
+public class CachingEasyTaxDaoTests {
+
+    private static final long TEST_TTL = 60000L;
+
+    private EasyTaxDao delegate;
+    private UUID tenantId;
+    private List<EasyTaxTaxCode> taxCodes;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setup() throws SQLException {
+        delegate = mock(EasyTaxDao.class);
+        tenantId = UUID.randomUUID();
+
+        EasyTaxTaxCode code = new EasyTaxTaxCode("GST");
+        code.setKbTenantId(tenantId);
+        code.setTaxZone("NZ");
+        code.setProductName("memory-use");
+        code.setTaxRate(new BigDecimal("0.15"));
+        code.setValidFromDate(new DateTime(2017, 1, 1, 0, 0, DateTimeZone.UTC));
+        code.setValidToDate(new DateTime(2018, 1, 1, 0, 0, DateTimeZone.UTC));
+
+        EasyTaxTaxCode code2 = new EasyTaxTaxCode(code);
+        code2.setValidFromDate(code.getValidToDate());
+        code2.setValidToDate(null);
+        code2.setTaxRate(new BigDecimal("0.18"));
+
+        EasyTaxTaxCode code3 = new EasyTaxTaxCode(code);
+        code3.setTaxZone("AU");
+
+        taxCodes = Arrays.asList(code, code2, code3);
+        given(delegate.getTaxCodes(tenantId, null, null, null, null)).willReturn(taxCodes);
+    }
+
+    @Test(groups = "fast")
+    public void cachesTaxCodes() throws SQLException {
+        CachingEasyTaxDao dao = new CachingEasyTaxDao(delegate, TEST_TTL);
+
+        List<EasyTaxTaxCode> result = dao.getTaxCodes(tenantId, null, null, null, null);
+        List<EasyTaxTaxCode> result2 = dao.getTaxCodes(tenantId, "NZ", null, null, null);
+
+        assertEquals(result, taxCodes, "All tax codes");
+        assertEquals(result2, taxCodes.subList(0, 2), "Tax codes for zone");
+        then(delegate).should(Mockito.times(1)).getTaxCodes(tenantId, null, null, null, null);
+    }
+
+    @Test(groups = "fast")
+    public void filtersByDate() throws SQLException {
+        CachingEasyTaxDao dao = new CachingEasyTaxDao(delegate, TEST_TTL);
+
+        List<EasyTaxTaxCode> result = dao.getTaxCodes(tenantId, "NZ", "memory-use", "GST",
+                new DateTime(2018, 6, 1, 0, 0, DateTimeZone.UTC));
+
+        assertEquals(result, taxCodes.subList(1, 2), "Tax codes valid at date");
+    }
+
+    @Test(groups = "fast")
+    public void compactFiltersByDate() throws SQLException {
+        CachingEasyTaxDao dao = new CachingEasyTaxDao(delegate, TEST_TTL, true);
+
+        List<EasyTaxTaxCode> result = dao.getTaxCodes(tenantId, "NZ", "memory-use", null,
+                new DateTime(2018, 6, 1, 0, 0, DateTimeZone.UTC));
+        List<EasyTaxTaxCode> result2 = dao.getTaxCodes(tenantId, "NZ", null, null, null);
+
+        assertEquals(result, taxCodes.subList(1, 2), "Tax codes valid at date");
+        assertEquals(result.get(0).getTaxRate(), new BigDecimal("0.18"), "Tax rate");
+        assertEquals(result2, taxCodes.subList(0, 2), "Tax codes for zone");
+        then(delegate).should(Mockito.times(1)).getTaxCodes(tenantId, null, null, null, null);
+    }
+
+    @Test(groups = "fast")
+    public void applicableTaxCodesOfHierarchy() throws SQLException {
+        // given
+        EasyTaxTaxCode city = new EasyTaxTaxCode(taxCodes.get(0));
+        city.setTaxZone("NZ-AKL");
+        city.setTaxCode("LEVY");
+        city.setTaxRate(new BigDecimal("0.01"));
+        city.setValidToDate(null);
+        List<EasyTaxTaxCode> codes = Arrays.asList(taxCodes.get(0), taxCodes.get(1),
+                taxCodes.get(2), city);
+        given(delegate.getTaxCodes(tenantId, null, null, null, null)).willReturn(codes);
+        TaxZoneHierarchy hierarchy = TaxZoneHierarchy.parse("NZ-AKL:NZ");
+        CachingEasyTaxDao dao = new CachingEasyTaxDao(delegate, TEST_TTL);
+
+        // when
+        List<EasyTaxTaxCode> result = dao.getApplicableTaxCodes(tenantId, hierarchy, "NZ-AKL",
+                "memory-use", new DateTime(2017, 6, 1, 0, 0, DateTimeZone.UTC));
+        List<EasyTaxTaxCode> result2 = dao.getApplicableTaxCodes(tenantId, hierarchy, "NZ-AKL",
+                "memory-use", new DateTime(2018, 6, 1, 0, 0, DateTimeZone.UTC));
+        List<EasyTaxTaxCode> result3 = dao.getApplicableTaxCodes(tenantId, hierarchy, "NZ",
+                "memory-use", new DateTime(2018, 6, 1, 0, 0, DateTimeZone.UTC));
+
+        // then
+        assertEquals(result, Arrays.asList(city, taxCodes.get(0)), "City and country codes");
+        assertEquals(result2, Arrays.asList(taxCodes.get(1), city), "Latest valid from first");
+        assertEquals(result3, taxCodes.subList(1, 2), "Country codes only");
+        then(delegate).should(Mockito.times(1)).getTaxCodes(tenantId, null, null, null, null);
+    }
+
+    @Test(groups = "fast")
+    public void applicableAnyProductTaxCodes() throws SQLException {
+        // given
+        EasyTaxTaxCode any = new EasyTaxTaxCode(taxCodes.get(1));
+        any.setProductName(EasyTaxTaxCode.ANY_PRODUCT_NAME);
+        EasyTaxTaxCode levy = new EasyTaxTaxCode(any);
+        levy.setTaxCode("LEVY");
+        levy.setTaxRate(new BigDecimal("0.01"));
+        List<EasyTaxTaxCode> codes = Arrays.asList(taxCodes.get(0), taxCodes.get(1),
+                taxCodes.get(2), any, levy);
+        given(delegate.getTaxCodes(tenantId, null, null, null, null)).willReturn(codes);
+        CachingEasyTaxDao dao = new CachingEasyTaxDao(delegate, TEST_TTL);
+        DateTime date = new DateTime(2018, 6, 1, 0, 0, DateTimeZone.UTC);
+
+        // when
+        List<EasyTaxTaxCode> result = dao.getApplicableTaxCodes(tenantId, TaxZoneHierarchy.EMPTY,
+                "NZ", "memory-use", date);
+        List<EasyTaxTaxCode> result2 = dao.getApplicableTaxCodes(tenantId,
+                TaxZoneHierarchy.EMPTY, "NZ", "cpu-use", date);
+
+        // then
+        assertEquals(result, Arrays.asList(taxCodes.get(1), levy),
+                "Product-specific code overrides any-product code");
+        assertEquals(result2, Arrays.asList(any, levy), "Any-product codes");
+        then(delegate).should(Mockito.times(1)).getTaxCodes(tenantId, null, null, null, null);
+    }
+
+    @Test(groups = "fast")
+    public void invalidatesOnWrite() throws SQLException {
+        CachingEasyTaxDao dao = new CachingEasyTaxDao(delegate, TEST_TTL);
+
+        dao.getTaxCodes(tenantId, null, null, null, null);
+        dao.removeTaxCodes(tenantId, "AU", null, null);
+        dao.getTaxCodes(tenantId, null, null, null, null);
+
+        then(delegate).should().removeTaxCodes(tenantId, "AU", null, null);
+        then(delegate).should(Mockito.times(2)).getTaxCodes(tenantId, null, null, null, null);
+    }
+
+    @Test(groups = "fast")
+    public void invalidatesOnActivateStage() throws SQLException {
+        CachingEasyTaxDao dao = new CachingEasyTaxDao(delegate, TEST_TTL);
+        UUID stageId = UUID.randomUUID();
+
+        dao.getTaxCodes(tenantId, null, null, null, null);
+        dao.activateTaxCodeStage(tenantId, stageId);
+        dao.getTaxCodes(tenantId, null, null, null, null);
+
+        then(delegate).should().activateTaxCodeStage(tenantId, stageId);
+        then(delegate).should(Mockito.times(2)).getTaxCodes(tenantId, null, null, null, null);
+    }
+
+    @Test(groups = "fast")
+    public void expires() throws SQLException {
+        CachingEasyTaxDao dao = new CachingEasyTaxDao(delegate, 0);
+
+        dao.getTaxCodes(tenantId, null, null, null, null);
+        dao.getTaxCodes(tenantId, null, null, null, null);
+
+        then(delegate).should(Mockito.times(2)).getTaxCodes(tenantId, null, null, null, null);
+    }
+
+}
@@ -0,0 +1,145 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.killbill.billing.plugin.easytax.dao;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.plugin.easytax.core.EasyTaxTaxCode;
+import org.testng.annotations.Test;
+
+/**
+ * Test cases for the {@link CompactTaxCodeStore} class.
+ *
+ * @author matt
+ */
+public class CompactTaxCodeStoreTests {
+
+    private static final DateTime START = new DateTime(2017, 1, 1, 0, 0);
+
+    private static EasyTaxTaxCode taxCode(UUID tenantId, String zone, String product, String code,
+            String rate, DateTime from, DateTime to) {
+        EasyTaxTaxCode taxCode = new EasyTaxTaxCode(code);
+        taxCode.setKbTenantId(tenantId);
+        taxCode.setTaxZone(zone);
+        taxCode.setProductName(product);
+        taxCode.setTaxRate(rate != null ? new BigDecimal(rate) : null);
+        taxCode.setValidFromDate(from);
+        taxCode.setValidToDate(to);
+        taxCode.setCreatedDate(START.minusDays(1));
+        return taxCode;
+    }
+
+    private static void assertSameTaxCodes(List<EasyTaxTaxCode> actual,
+            List<EasyTaxTaxCode> expected, String msg) {
+        assertEquals(actual.size(), expected.size(), msg + " count");
+        for (int i = 0; i < expected.size(); i++) {
+            EasyTaxTaxCode a = actual.get(i);
+            EasyTaxTaxCode e = expected.get(i);
+            assertEquals(a, e, msg + " " + i);
+            assertEquals(a.getTaxRate(), e.getTaxRate(), msg + " " + i + " rate");
+            assertEquals(a.getValidToDate(), e.getValidToDate(), msg + " " + i + " valid to");
+            assertEquals(a.getCreatedDate(), e.getCreatedDate(), msg + " " + i + " created");
+        }
+    }
+
+    @Test(groups = "fast")
+    public void empty() {
+        CompactTaxCodeStore store = CompactTaxCodeStore.build(UUID.randomUUID(),
+                Collections.emptyList());
+
+        assertEquals(store.size(), 0, "Size");
+        assertTrue(store.getTaxCodes("NZ", "memory-use", null, START).isEmpty(), "No codes");
+        assertTrue(store.getTaxCodes(null, null, null, null).isEmpty(), "No codes");
+    }
+
+    @Test(groups = "fast")
+    public void lookup() {
+        UUID tenantId = UUID.randomUUID();
+        EasyTaxTaxCode gst = taxCode(tenantId, "NZ", "memory-use", "GST", "0.15", START,
+                START.plusYears(1));
+        EasyTaxTaxCode gst2 = taxCode(tenantId, "NZ", "memory-use", "GST", "0.18",
+                START.plusYears(1), null);
+        EasyTaxTaxCode au = taxCode(tenantId, "AU", "memory-use", "GST", "0.1", START, null);
+        CompactTaxCodeStore store = CompactTaxCodeStore.build(tenantId,
+                Arrays.asList(gst, gst2, au));
+
+        assertSameTaxCodes(store.getTaxCodes("NZ", "memory-use", null, START.plusMonths(13)),
+                Collections.singletonList(gst2), "NZ now");
+        assertSameTaxCodes(store.getTaxCodes("AU", null, null, null),
+                Collections.singletonList(au), "AU");
+        assertSameTaxCodes(store.getTaxCodes(null, null, null, null), Arrays.asList(gst, gst2, au),
+                "All");
+        assertTrue(store.getTaxCodes("US", null, null, null).isEmpty(), "Unknown zone");
+        assertTrue(store.getTaxCodes("NZ", "GST", null, null).isEmpty(), "Unknown product");
+    }
+
+    @Test(groups = "fast")
+    public void nullRate() {
+        UUID tenantId = UUID.randomUUID();
+        EasyTaxTaxCode code = taxCode(tenantId, "NZ", "memory-use", "GST", null, START, null);
+        CompactTaxCodeStore store = CompactTaxCodeStore.build(tenantId,
+                Collections.singletonList(code));
+
+        assertNull(store.getTaxCodes(null, null, null, null).get(0).getTaxRate(), "Null rate");
+    }
+
+    @Test(groups = "fast")
+    public void rateTooLarge() {
+        UUID tenantId = UUID.randomUUID();
+        EasyTaxTaxCode code = taxCode(tenantId, "NZ", "memory-use", "GST",
+                "0.12345678901234567890123", START, null);
+
+        assertNull(CompactTaxCodeStore.build(tenantId, Collections.singletonList(code)),
+                "Not stored");
+    }
+
+    @Test(groups = "fast")
+    public void sameAsFilter() {
+        final UUID tenantId = UUID.randomUUID();
+        final Random rng = new Random(54321L);
+        final List<EasyTaxTaxCode> codes = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            DateTime from = START.plusDays(rng.nextInt(1000));
+            DateTime to = (rng.nextInt(4) == 0 ? null : from.plusDays(1 + rng.nextInt(400)));
+            codes.add(taxCode(tenantId, "Z" + rng.nextInt(10), "P" + rng.nextInt(4),
+                    "C" + rng.nextInt(3), "0." + rng.nextInt(1000000000), from, to));
+        }
+        final CompactTaxCodeStore store = CompactTaxCodeStore.build(tenantId, codes);
+        assertEquals(store.size(), codes.size(), "Size");
+        for (int i = 0; i < 3000; i++) {
+            DateTime date = (rng.nextInt(5) == 0 ? null
+                    : START.plusDays(rng.nextInt(1500) - 50).plusMillis(rng.nextInt(86400000)));
+            String zone = (rng.nextInt(5) == 0 ? null : "Z" + rng.nextInt(11));
+            String product = (rng.nextInt(3) == 0 ? null : "P" + rng.nextInt(5));
+            String code = (rng.nextBoolean() ? null : "C" + rng.nextInt(3));
+            assertSameTaxCodes(store.getTaxCodes(zone, product, code, date),
+                    TaxCodeFilter.filter(codes, zone, product, code, date),
+                    zone + "/" + product + "/" + code + " at " + date);
+        }
+    }
+
+}
@@ -0,0 +1,202 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *  
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.killbill.billing.plugin.easytax.dao;
+
+import static java.util.Collections.singletonList;
+import static org.killbill.billing.plugin.easytax.EasyTaxTestUtils.assertBigDecimalEquals;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.plugin.easytax.api.EasyTaxDao;
+import org.killbill.billing.plugin.easytax.core.EasyTaxTaxCode;
+import org.killbill.billing.plugin.easytax.core.EasyTaxTaxation;
+import org.mockito.Mockito;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Test cases for the {@link FileEasyTaxDao} class.
+ * 
+ * @author matt
+ */
+public class FileEasyTaxDaoTests {
+
+    private EasyTaxDao delegate;
+    private UUID tenantId;
+    private Path file;
+    private FileEasyTaxDao dao;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setup() throws IOException {
+        delegate = Mockito.mock(EasyTaxDao.class);
+        tenantId = UUID.randomUUID();
+        file = Files.createTempFile("easytax-tax-codes-", ".csv");
+        dao = new FileEasyTaxDao(delegate, file, 0);
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void teardown() throws IOException {
+        Files.deleteIfExists(file);
+        Mockito.validateMockitoUsage();
+    }
+
+    private void writeFile(String... lines) throws IOException {
+        Files.write(file, Arrays.asList(lines), StandardCharsets.UTF_8);
+    }
+
+    @Test(groups = "fast")
+    public void getTaxCodes() throws Exception {
+        writeFile("tenant_id,tax_zone,product_name,tax_code,tax_rate,valid_from_date,valid_to_date",
+                tenantId + ",NZ,Widget,GST,0.15,2010-10-01T00:00:00+13:00,",
+                "# comment", "",
+                tenantId + ",NZ,Gadget,GST,0.125,2000-01-01T00:00:00+13:00,"
+                        + "2010-10-01T00:00:00+13:00",
+                UUID.randomUUID() + ",NZ,Widget,GST,0.2,2010-10-01T00:00:00+13:00,");
+
+        List<EasyTaxTaxCode> result = dao.getTaxCodes(tenantId, null, null, null, null);
+        assertEquals(result.size(), 2, "Tenant tax codes");
+        EasyTaxTaxCode code = result.get(0);
+        assertEquals(code.getKbTenantId(), tenantId);
+        assertEquals(code.getTaxZone(), "NZ");
+        assertEquals(code.getProductName(), "Widget");
+        assertEquals(code.getTaxCode(), "GST");
+        assertBigDecimalEquals(code.getTaxRate(), new BigDecimal("0.15"), 9, "Tax rate");
+        assertEquals(code.getValidFromDate().getMillis(),
+                new DateTime("2010-10-01T00:00:00+13:00").getMillis(), "Valid from");
+        assertNull(code.getValidToDate(), "Valid to");
+        assertEquals(result.get(1).getProductName(), "Gadget");
+        assertEquals(result.get(1).getValidToDate().getMillis(),
+                new DateTime("2010-10-01T00:00:00+13:00").getMillis(), "Valid to");
+    }
+
+    @Test(groups = "fast")
+    public void getTaxCodesForDate() throws Exception {
+        writeFile(tenantId + ",NZ,Widget,GST,0.125,2000-01-01T00:00:00Z,2010-01-01T00:00:00Z",
+                tenantId + ",NZ,Widget,GST,0.15,2010-01-01T00:00:00Z,",
+                tenantId + ",NZ,Widget,XST,0.01,2005-01-01T00:00:00Z,",
+                tenantId + ",AU,Widget,GST,0.1,2000-01-01T00:00:00Z,");
+
+        List<EasyTaxTaxCode> result = dao.getTaxCodes(tenantId, "NZ", "Widget", null,
+                new DateTime("2012-01-01T00:00:00Z"));
+        assertEquals(result.size(), 2, "Valid tax codes");
+        assertEquals(result.get(0).getTaxCode(), "GST", "Ordered by valid from descending");
+        assertBigDecimalEquals(result.get(0).getTaxRate(), new BigDecimal("0.15"), 9, "Rate");
+        assertEquals(result.get(1).getTaxCode(), "XST");
+
+        result = dao.getTaxCodes(tenantId, "NZ", "Widget", "GST",
+                new DateTime("2009-12-31T23:59:59Z"));
+        assertEquals(result.size(), 1, "Valid tax codes");
+        assertBigDecimalEquals(result.get(0).getTaxRate(), new BigDecimal("0.125"), 9, "Rate");
+
+        result = dao.getTaxCodes(tenantId, "NZ", "Widget", "GST",
+                new DateTime("2010-01-01T00:00:00Z"));
+        assertEquals(result.size(), 1, "Valid to date is exclusive");
+        assertBigDecimalEquals(result.get(0).getTaxRate(), new BigDecimal("0.15"), 9, "Rate");
+    }
+
+    @Test(groups = "fast")
+    public void reloadOnFileChange() throws Exception {
+        writeFile(tenantId + ",NZ,Widget,GST,0.15,2010-01-01T00:00:00Z,");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(1000000000000L));
+        assertEquals(dao.getTaxCodes(tenantId, null, null, null, null).size(), 1);
+
+        writeFile(tenantId + ",NZ,Widget,GST,0.15,2010-01-01T00:00:00Z,",
+                tenantId + ",NZ,Gadget,GST,0.15,2010-01-01T00:00:00Z,");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(1000000001000L));
+        assertEquals(dao.getTaxCodes(tenantId, null, null, null, null).size(), 2, "Reloaded");
+    }
+
+    @Test(groups = "fast")
+    public void invalidReloadKeepsPreviousTaxCodes() throws Exception {
+        writeFile(tenantId + ",NZ,Widget,GST,0.15,2010-01-01T00:00:00Z,");
+        assertEquals(dao.getTaxCodes(tenantId, null, null, null, null).size(), 1);
+
+        writeFile(tenantId + ",NZ,Widget,GST,not a number,2010-01-01T00:00:00Z,");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(1000000001000L));
+        assertEquals(dao.getTaxCodes(tenantId, null, null, null, null).size(), 1,
+                "Previous tax codes used");
+    }
+
+    @Test(groups = "fast", expectedExceptions = SQLException.class)
+    public void invalidInitialLoad() throws Exception {
+        writeFile(tenantId + ",NZ,Widget");
+        dao.getTaxCodes(tenantId, null, null, null, null);
+    }
+
+    @Test(groups = "fast", expectedExceptions = SQLException.class)
+    public void extraColumnsRejected() throws Exception {
+        writeFile(tenantId + ",NZ,Widget,GST,0.15,2010-01-01T00:00:00Z,,extra");
+        dao.getTaxCodes(tenantId, null, null, null, null);
+    }
+
+    @Test(groups = "fast")
+    public void getTaxCodesForZone() throws Exception {
+        writeFile(tenantId + ",NZ,Widget,GST,0.15,2010-01-01T00:00:00Z,",
+                tenantId + ",AU,Widget,GST,0.1,2000-01-01T00:00:00Z,",
+                tenantId + ",NZ,Gadget,GST,0.15,2010-01-01T00:00:00Z,");
+
+        List<EasyTaxTaxCode> result = dao.getTaxCodes(tenantId, "NZ", null, null, null);
+        assertEquals(result.size(), 2, "Zone tax codes");
+        assertEquals(result.get(0).getProductName(), "Widget", "File order");
+        assertEquals(result.get(1).getProductName(), "Gadget", "File order");
+
+        assertEquals(dao.getTaxCodes(tenantId, "AU", "Widget", null, null).size(), 1,
+                "Zone and product tax codes");
+        assertEquals(dao.getTaxCodes(tenantId, "US", null, null, null).size(), 0,
+                "Unknown zone");
+    }
+
+    @Test(groups = "fast", expectedExceptions = SQLFeatureNotSupportedException.class)
+    public void saveTaxCodeNotSupported() throws Exception {
+        dao.saveTaxCode(new EasyTaxTaxCode("GST"));
+    }
+
+    @Test(groups = "fast", expectedExceptions = SQLFeatureNotSupportedException.class)
+    public void removeTaxCodesNotSupported() throws Exception {
+        dao.removeTaxCodes(tenantId, null, null, null);
+    }
+
+    @Test(groups = "fast")
+    public void taxationDelegated() throws Exception {
+        final UUID accountId = UUID.randomUUID();
+        final UUID invoiceId = UUID.randomUUID();
+        final EasyTaxTaxation taxation = new EasyTaxTaxation(1L);
+        Mockito.when(delegate.getTaxation(tenantId, accountId, invoiceId))
+                .thenReturn(singletonList(taxation));
+
+        dao.addTaxation(taxation);
+        assertEquals(dao.getTaxation(tenantId, accountId, invoiceId), singletonList(taxation));
+
+        Mockito.verify(delegate).addTaxation(taxation);
+        Mockito.verify(delegate).getTaxation(tenantId, accountId, invoiceId);
+        Mockito.verifyNoMoreInteractions(delegate);
+    }
+
+}
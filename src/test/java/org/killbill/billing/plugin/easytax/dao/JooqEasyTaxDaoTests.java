@@ -18,16 +18,24 @@ package org.killbill.billing.plugin.easytax.dao;
 import static org.killbill.billing.plugin.easytax.EasyTaxTestUtils.assertBigDecimalEquals;
 import static org.killbill.billing.plugin.easytax.EasyTaxTestUtils.assertDateTimeEquals;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
@@ -37,8 +45,15 @@ import java.util.UUID;
 import org.joda.time.DateTime;
 import org.killbill.billing.plugin.TestWithEmbeddedDBBase;
 import org.killbill.billing.plugin.easytax.EasyTaxTestUtils;
+import org.killbill.billing.plugin.easytax.api.EasyTaxTaxCodeOverlapException;
+import org.killbill.billing.plugin.easytax.api.EasyTaxTaxCodeValidationException;
 import org.killbill.billing.plugin.easytax.core.EasyTaxTaxCode;
+import org.killbill.billing.plugin.easytax.core.EasyTaxTaxCodeChange;
+import org.killbill.billing.plugin.easytax.core.EasyTaxTaxCodeChange.ChangeType;
+import org.killbill.billing.plugin.easytax.core.EasyTaxTaxCodeDiff;
+import org.killbill.billing.plugin.easytax.core.EasyTaxTaxCodeRollOver;
 import org.killbill.billing.plugin.easytax.core.EasyTaxTaxation;
+import org.killbill.billing.plugin.easytax.core.TaxZoneHierarchy;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
@@ -80,6 +95,25 @@ public class JooqEasyTaxDaoTests extends TestWithEmbeddedDBBase {
         lastTaxCode = taxCode;
     }
 
+    @Test(groups = "slow")
+    public void createTaxCodesForSeveralTenants() throws SQLException {
+        createTaxCodes();
+        final UUID otherTenantId = UUID.randomUUID();
+        final EasyTaxTaxCode other = new EasyTaxTaxCode(lastTaxCode);
+        other.setKbTenantId(otherTenantId);
+        final EasyTaxTaxCode successor = new EasyTaxTaxCode(lastTaxCode);
+        successor.setTaxCode(UUID.randomUUID().toString());
+
+        // the first save for a tenant adds its lock row, later saves reuse it
+        dao.saveTaxCodes(Arrays.asList(other, successor));
+        dao.saveTaxCodes(Collections.singleton(other));
+
+        assertEquals(dao.getTaxCodes(tenantId, null, null, null, null).size(), 3,
+                "Tenant result count");
+        assertEquals(dao.getTaxCodes(otherTenantId, null, null, null, null).size(), 1,
+                "Other tenant result count");
+    }
+
     @Test(groups = "slow")
     public void createAndGetTaxCodesForProductTaxCode() throws SQLException {
         createTaxCode();
@@ -268,6 +302,46 @@ public class JooqEasyTaxDaoTests extends TestWithEmbeddedDBBase {
         }
     }
 
+    @Test(groups = "slow")
+    public void getApplicableTaxCodes() throws SQLException {
+        final EasyTaxTaxCode state = new EasyTaxTaxCode("STATE");
+        state.setKbTenantId(tenantId);
+        state.setTaxZone("US-CA");
+        state.setProductName(EasyTaxTaxCode.ANY_PRODUCT_NAME);
+        state.setTaxRate(new BigDecimal("0.06"));
+        state.setValidFromDate(now.year().roundFloorCopy());
+
+        final EasyTaxTaxCode city = new EasyTaxTaxCode(state);
+        city.setTaxCode("CITY");
+        city.setTaxZone("US-CA-SF");
+        city.setTaxRate(new BigDecimal("0.02"));
+
+        final EasyTaxTaxCode cityProduct = new EasyTaxTaxCode(city);
+        cityProduct.setProductName("memory-use");
+        cityProduct.setTaxRate(new BigDecimal("0.01"));
+
+        final EasyTaxTaxCode other = new EasyTaxTaxCode(state);
+        other.setTaxZone("US-NY");
+        dao.saveTaxCodes(Arrays.asList(state, city, cityProduct, other));
+
+        final TaxZoneHierarchy hierarchy = TaxZoneHierarchy.parse("US-CA-SF:US-CA,US-NY:US");
+        List<EasyTaxTaxCode> found = dao.getApplicableTaxCodes(tenantId, hierarchy, "US-CA-SF",
+                "memory-use", now);
+        assertEquals(found, Arrays.asList(cityProduct, state),
+                "Product-specific city code overrides any-product city code");
+
+        found = dao.getApplicableTaxCodes(tenantId, hierarchy, "US-CA-SF", "cpu-use", now);
+        assertEquals(found, Arrays.asList(city, state), "Any-product codes of all tax zones");
+
+        found = dao.getApplicableTaxCodes(tenantId, hierarchy, "US-CA-SF", null, now);
+        assertEquals(found, Arrays.asList(cityProduct, city, state),
+                "Codes of all products without a product name");
+
+        found = dao.getApplicableTaxCodes(tenantId, hierarchy, "US-CA-SF", "cpu-use",
+                state.getValidFromDate().minusDays(1));
+        assertEquals(found.size(), 0, "No match before valid from date");
+    }
+
     @Test(groups = "slow")
     public void removeTaxCode() throws SQLException {
         createTaxCode();
@@ -324,6 +398,661 @@ public class JooqEasyTaxDaoTests extends TestWithEmbeddedDBBase {
                 "Deleted records not found");
     }
 
+    @Test(groups = "slow")
+    public void importTaxCodesUpdatesExisting() throws SQLException {
+        createTaxCodes();
+        final EasyTaxTaxCode existing = new EasyTaxTaxCode(lastTaxCode);
+
+        // update the existing code, and add a new one
+        final EasyTaxTaxCode updated = new EasyTaxTaxCode(existing);
+        updated.setKbTenantId(UUID.randomUUID()); // should be ignored
+        updated.setTaxRate(new BigDecimal("0.2"));
+        final EasyTaxTaxCode added = new EasyTaxTaxCode(existing);
+        added.setTaxCode(UUID.randomUUID().toString());
+
+        int result = dao.importTaxCodes(tenantId, Arrays.asList(updated, added), false);
+        assertEquals(result, 2, "Import count");
+
+        List<EasyTaxTaxCode> codes = dao.getTaxCodes(tenantId, null, null, null, null);
+        assertEquals(codes.size(), 3, "Result count");
+        assertEquals(codes.get(1), existing, "Updated code");
+        assertBigDecimalEquals(codes.get(1).getTaxRate(), updated.getTaxRate(), 2, "Tax rate");
+        assertEquals(codes.get(2).getKbTenantId(), tenantId, "Tenant ID");
+        assertEquals(codes.get(2).getTaxCode(), added.getTaxCode(), "Tax code");
+    }
+
+    @Test(groups = "slow")
+    public void importTaxCodesCountsChangedOnly() throws SQLException {
+        createTaxCodes();
+        final List<EasyTaxTaxCode> existing = dao.getTaxCodes(tenantId, null, null, null, null);
+        final EasyTaxTaxCode updated = new EasyTaxTaxCode(existing.get(0));
+        updated.setTaxRate(new BigDecimal("0.2"));
+
+        // re-import one code unchanged and update the other
+        int result = dao.importTaxCodes(tenantId,
+                Arrays.asList(new EasyTaxTaxCode(existing.get(1)), updated), false);
+        assertEquals(result, 1, "Only the updated code counted");
+    }
+
+    @Test(groups = "slow")
+    public void saveTaxCodesOverlap() throws SQLException {
+        createTaxCodes();
+        final EasyTaxTaxCode overlap = new EasyTaxTaxCode(lastTaxCode);
+        overlap.setValidFromDate(lastTaxCode.getValidFromDate().plusMonths(1));
+        final EasyTaxTaxCode added = new EasyTaxTaxCode(lastTaxCode);
+        added.setTaxCode(UUID.randomUUID().toString());
+
+        try {
+            dao.saveTaxCodes(Arrays.asList(added, overlap));
+            fail("Overlap should have been rejected");
+        } catch (EasyTaxTaxCodeOverlapException e) {
+            assertEquals(e.getOverlaps().size(), 1, "Overlap count");
+            assertEquals(e.getSQLState(), EasyTaxTaxCodeOverlapException.SQL_STATE, "SQL state");
+        }
+
+        assertEquals(dao.getTaxCodes(tenantId, null, null, null, null).size(), 2,
+                "Nothing saved");
+    }
+
+    @Test(groups = "slow")
+    public void importTaxCodesOverlap() throws SQLException {
+        createTaxCodes();
+        final EasyTaxTaxCode overlap = new EasyTaxTaxCode(lastTaxCode);
+        overlap.setValidFromDate(lastTaxCode.getValidFromDate().minusMonths(1));
+        overlap.setValidToDate(lastTaxCode.getValidFromDate());
+
+        try {
+            dao.importTaxCodes(tenantId, Collections.singleton(overlap), false);
+            fail("Overlap should have been rejected");
+        } catch (EasyTaxTaxCodeOverlapException e) {
+            assertEquals(e.getOverlaps().size(), 1, "Overlap count");
+        }
+
+        // replacing all tax codes has no overlap
+        int result = dao.importTaxCodes(tenantId, Collections.singleton(overlap), true);
+        assertEquals(result, 1, "Import count");
+    }
+
+    @Test(groups = "slow")
+    public void taxCodeChangesSave() throws SQLException {
+        createTaxCodes();
+        final EasyTaxTaxCode updated = new EasyTaxTaxCode(lastTaxCode);
+        updated.setTaxRate(new BigDecimal("0.2"));
+        dao.saveTaxCode(updated);
+
+        List<EasyTaxTaxCodeChange> changes = dao.getTaxCodeChanges(tenantId, 0, 10);
+        assertEquals(changes.size(), 3, "Change count");
+        for (int i = 0; i < changes.size(); i++) {
+            assertEquals(changes.get(i).getSequence(), i + 1L, "Sequence");
+            assertEquals(changes.get(i).getKbTenantId(), tenantId, "Tenant ID");
+        }
+        assertEquals(changes.get(0).getChangeType(), ChangeType.INSERT, "Change type");
+        assertEquals(changes.get(1).getChangeType(), ChangeType.INSERT, "Change type");
+        assertEquals(new EasyTaxTaxCode(changes.get(1)), lastTaxCode, "Inserted code");
+        assertEquals(changes.get(2).getChangeType(), ChangeType.UPDATE, "Change type");
+        assertEquals(new EasyTaxTaxCode(changes.get(2)), updated, "Updated code");
+        assertBigDecimalEquals(changes.get(2).getTaxRate(), updated.getTaxRate(), 2,
+                "Updated tax rate");
+    }
+
+    @Test(groups = "slow")
+    public void taxCodeChangesRemove() throws SQLException {
+        createTaxCodes();
+        int result = dao.removeTaxCodes(tenantId, lastTaxCode.getTaxZone(), null, null);
+        assertEquals(result, 2, "Remove count");
+
+        List<EasyTaxTaxCodeChange> changes = dao.getTaxCodeChanges(tenantId, 2, 10);
+        assertEquals(changes.size(), 2, "Change count");
+        assertEquals(changes.get(0).getSequence(), 3L, "Sequence");
+        assertEquals(changes.get(0).getChangeType(), ChangeType.DELETE, "Change type");
+        assertEquals(changes.get(1).getSequence(), 4L, "Sequence");
+        assertEquals(changes.get(1).getChangeType(), ChangeType.DELETE, "Change type");
+        assertEquals(new EasyTaxTaxCode(changes.get(1)), lastTaxCode, "Deleted code");
+
+        assertEquals(dao.getTaxCodeChanges(tenantId, 4, 10), Collections.emptyList(),
+                "No more changes");
+    }
+
+    @Test(groups = "slow")
+    public void taxCodeChangesRollOver() throws SQLException {
+        createTaxCodes();
+        final EasyTaxTaxCodeRollOver rollOver = new EasyTaxTaxCodeRollOver();
+        rollOver.setEffectiveDate(lastTaxCode.getValidFromDate().plusYears(1));
+        rollOver.setTaxRateDelta(new BigDecimal("0.02"));
+        dao.rollOverTaxCodes(tenantId, rollOver);
+
+        List<EasyTaxTaxCodeChange> changes = dao.getTaxCodeChanges(tenantId, 2, 1);
+        assertEquals(changes.size(), 1, "Change count limited by max");
+        assertEquals(changes.get(0).getChangeType(), ChangeType.UPDATE, "Change type");
+        assertDateTimeEquals(changes.get(0).getValidToDate(), rollOver.getEffectiveDate(),
+                "Closed valid to date");
+
+        changes = dao.getTaxCodeChanges(tenantId, 3, 10);
+        assertEquals(changes.size(), 1, "Change count");
+        assertEquals(changes.get(0).getChangeType(), ChangeType.INSERT, "Change type");
+        assertDateTimeEquals(changes.get(0).getValidFromDate(), rollOver.getEffectiveDate(),
+                "Successor valid from date");
+        assertBigDecimalEquals(changes.get(0).getTaxRate(), new BigDecimal("0.20"), 2,
+                "Successor tax rate");
+    }
+
+    @Test(groups = "slow")
+    public void taxCodeChangesSaveUnchanged() throws SQLException {
+        createTaxCodes();
+        dao.saveTaxCode(new EasyTaxTaxCode(lastTaxCode));
+
+        assertEquals(dao.getTaxCodeChanges(tenantId, 2, 10), Collections.emptyList(),
+                "Unchanged save not logged");
+    }
+
+    @Test(groups = "slow")
+    public void taxCodeChangesImportReplaceUnchanged() throws SQLException {
+        createTaxCodes();
+        final List<EasyTaxTaxCode> existing = dao.getTaxCodes(tenantId, null, null, null, null);
+        final EasyTaxTaxCode updated = new EasyTaxTaxCode(existing.get(1));
+        updated.setTaxRate(new BigDecimal("0.2"));
+        final EasyTaxTaxCode added = new EasyTaxTaxCode(existing.get(1));
+        added.setTaxCode(UUID.randomUUID().toString());
+
+        // replace with the first code unchanged, the second updated, and a new one
+        int result = dao.importTaxCodes(tenantId,
+                Arrays.asList(new EasyTaxTaxCode(existing.get(0)), updated, added), true);
+        assertEquals(result, 2, "Import count");
+
+        List<EasyTaxTaxCodeChange> changes = dao.getTaxCodeChanges(tenantId, 2, 10);
+        assertEquals(changes.size(), 2, "Change count");
+        assertEquals(changes.get(0).getChangeType(), ChangeType.UPDATE, "Change type");
+        assertEquals(new EasyTaxTaxCode(changes.get(0)), updated, "Updated code");
+        assertEquals(changes.get(1).getChangeType(), ChangeType.INSERT, "Change type");
+        assertEquals(new EasyTaxTaxCode(changes.get(1)), added, "Inserted code");
+    }
+
+    @Test(groups = "slow")
+    public void removeTaxCodeChangesOlderThan() throws SQLException {
+        createTaxCodes();
+        final List<EasyTaxTaxCode> existing = dao.getTaxCodes(tenantId, null, null, null, null);
+        final EasyTaxTaxCode updated = new EasyTaxTaxCode(existing.get(1));
+        updated.setTaxRate(new BigDecimal("0.2"));
+        dao.saveTaxCode(updated);
+        dao.importTaxCodes(tenantId, Collections.singleton(updated), true);
+
+        // nothing is older than a day ago
+        assertEquals(dao.removeTaxCodeChanges(new DateTime().minusDays(1), 100), 0,
+                "Recent changes kept");
+
+        // both inserts are superseded, and then the delete of the first code refers to nothing
+        final DateTime later = new DateTime().plusDays(1);
+        int result = dao.removeTaxCodeChanges(later, 100);
+        assertEquals(result, 3, "Removed count");
+
+        List<EasyTaxTaxCodeChange> changes = dao.getTaxCodeChanges(tenantId, 0, 10);
+        assertEquals(changes.size(), 1, "Change count");
+        assertEquals(changes.get(0).getSequence(), 3L, "Latest change kept");
+        assertEquals(changes.get(0).getChangeType(), ChangeType.UPDATE, "Change type");
+
+        assertEquals(dao.getTaxCodes(tenantId, null, null, null, null, later),
+                Collections.singletonList(updated), "Tax codes known after pruning");
+
+        // the sequence continues after the kept change
+        dao.removeTaxCodes(tenantId, null, null, null);
+        changes = dao.getTaxCodeChanges(tenantId, 3, 10);
+        assertEquals(changes.size(), 1, "Change count");
+        assertEquals(changes.get(0).getSequence(), 5L, "Next sequence");
+    }
+
+    @Test(groups = "slow")
+    public void getTaxCodesKnownBeforeRemovedChanges() throws SQLException {
+        createTaxCodes();
+        final EasyTaxTaxCode updated = new EasyTaxTaxCode(lastTaxCode);
+        updated.setTaxRate(new BigDecimal("0.2"));
+        dao.saveTaxCode(updated);
+        final DateTime later = new DateTime().plusDays(1);
+        assertEquals(dao.removeTaxCodeChanges(later, 100), 1, "Removed count");
+
+        try {
+            dao.getTaxCodes(tenantId, null, null, null, null, later.minusSeconds(1));
+            fail("Tax codes before removed changes are not known");
+        } catch (EasyTaxTaxCodeValidationException e) {
+            assertTrue(e.getMessage().startsWith("Known date "), "Known date error");
+        }
+        assertEquals(dao.getTaxCodes(tenantId, lastTaxCode.getTaxZone(), null, null, null, later)
+                .size(), 2, "Tax codes known after removed changes");
+    }
+
+    @Test(groups = "slow")
+    public void getTaxCodesKnownAt() throws SQLException {
+        createTaxCodes();
+        final EasyTaxTaxCode updated = new EasyTaxTaxCode(lastTaxCode);
+        updated.setTaxRate(new BigDecimal("0.2"));
+        dao.saveTaxCode(updated);
+        dao.removeTaxCodes(tenantId, null, null, null);
+
+        final DateTime later = new DateTime().plusDays(1);
+        assertEquals(dao.getTaxCodes(tenantId, null, null, null, null, later),
+                Collections.emptyList(), "All removed by now");
+
+        final DateTime earlier = new DateTime().minusDays(1);
+        assertEquals(dao.getTaxCodes(tenantId, null, null, null, null, earlier),
+                Collections.emptyList(), "None known yet");
+    }
+
+    @Test(groups = "slow")
+    public void taxCodeChangesDatedWhenLogged() throws SQLException {
+        final DateTime before = new DateTime();
+        createTaxCodes();
+        final DateTime after = new DateTime();
+
+        List<EasyTaxTaxCodeChange> changes = dao.getTaxCodeChanges(tenantId, 0, 10);
+        assertEquals(changes.size(), 2, "Change count");
+        for (EasyTaxTaxCodeChange change : changes) {
+            assertFalse(change.getCreatedDate().isBefore(before.secondOfMinute().roundFloorCopy()),
+                    "Change date not before the save started");
+            assertFalse(change.getCreatedDate().isAfter(after), "Change date not after the save");
+        }
+    }
+
+    @Test(groups = "slow")
+    public void getTaxCodesKnownAtLatestVersion() throws SQLException {
+        createTaxCodes();
+        final EasyTaxTaxCode updated = new EasyTaxTaxCode(lastTaxCode);
+        updated.setTaxRate(new BigDecimal("0.2"));
+        dao.saveTaxCode(updated);
+
+        final DateTime later = new DateTime().plusDays(1);
+        List<EasyTaxTaxCode> codes = dao.getTaxCodes(tenantId, lastTaxCode.getTaxZone(), null,
+                null, null, later);
+        assertEquals(codes.size(), 2, "Result count");
+        assertBigDecimalEquals(codes.get(0).getTaxRate(), TEST_TAX_RATE, 2, "First tax rate");
+        assertEquals(codes.get(1), updated, "Updated code");
+        assertBigDecimalEquals(codes.get(1).getTaxRate(), updated.getTaxRate(), 2,
+                "Latest tax rate");
+
+        codes = dao.getTaxCodes(tenantId, null, null, null, lastTaxCode.getValidFromDate(), later);
+        assertEquals(codes, Collections.singletonList(updated), "Valid at result");
+    }
+
+    @Test(groups = "slow")
+    public void importTaxCodesReplace() throws SQLException {
+        createTaxCodes();
+
+        final EasyTaxTaxCode added = new EasyTaxTaxCode(lastTaxCode);
+        added.setTaxCode(UUID.randomUUID().toString());
+
+        int result = dao.importTaxCodes(tenantId, Collections.singleton(added), true);
+        assertEquals(result, 1, "Import count");
+
+        List<EasyTaxTaxCode> codes = dao.getTaxCodes(tenantId, null, null, null, null);
+        assertEquals(codes, Collections.singletonList(added), "Replaced codes");
+    }
+
+    @Test(groups = "slow")
+    public void syncTaxCodes() throws SQLException {
+        createTaxCodes();
+        final List<EasyTaxTaxCode> existing = dao.getTaxCodes(tenantId, null, null, null, null);
+
+        // keep first unchanged, update second, and add a new code
+        final EasyTaxTaxCode unchanged = new EasyTaxTaxCode(existing.get(0));
+        unchanged.setCreatedDate(null);
+        final EasyTaxTaxCode updated = new EasyTaxTaxCode(existing.get(1));
+        updated.setCreatedDate(null);
+        updated.setTaxRate(new BigDecimal("0.2"));
+        final EasyTaxTaxCode added = new EasyTaxTaxCode(updated);
+        added.setTaxCode(UUID.randomUUID().toString());
+
+        EasyTaxTaxCodeDiff diff = dao.syncTaxCodes(tenantId, null,
+                Arrays.asList(unchanged, updated, added));
+        assertEquals(diff.getInsertCount(), 1, "Inserted count");
+        assertEquals(diff.getUpdateCount(), 1, "Updated count");
+        assertEquals(diff.getDeleteCount(), 0, "Deleted count");
+        assertEquals(diff.getUnchangedCount(), 1, "Unchanged count");
+
+        List<EasyTaxTaxCode> codes = dao.getTaxCodes(tenantId, null, null, null, null);
+        assertEquals(codes, Arrays.asList(unchanged, updated, added), "Synchronized codes");
+        assertDateTimeEquals(codes.get(0).getCreatedDate(), existing.get(0).getCreatedDate(),
+                "Unchanged code not modified");
+        assertBigDecimalEquals(codes.get(1).getTaxRate(), updated.getTaxRate(), 2, "Tax rate");
+    }
+
+    @Test(groups = "slow")
+    public void syncTaxCodesDeletesWithinTaxZone() throws SQLException {
+        createTaxCodes();
+        final EasyTaxTaxCode kept = lastTaxCode;
+        final EasyTaxTaxCode otherZone = new EasyTaxTaxCode(kept);
+        otherZone.setTaxZone(UUID.randomUUID().toString());
+        dao.saveTaxCode(otherZone);
+
+        EasyTaxTaxCodeDiff diff = dao.syncTaxCodes(tenantId, kept.getTaxZone(),
+                Collections.singleton(kept));
+        assertEquals(diff.getInsertCount(), 0, "Inserted count");
+        assertEquals(diff.getUpdateCount(), 0, "Updated count");
+        assertEquals(diff.getDeleteCount(), 1, "Deleted count");
+        assertEquals(diff.getUnchangedCount(), 1, "Unchanged count");
+
+        List<EasyTaxTaxCode> codes = dao.getTaxCodes(tenantId, null, null, null, null);
+        assertEquals(codes, Arrays.asList(kept, otherZone), "Other tax zone unchanged");
+    }
+
+    @Test(groups = "slow")
+    public void copyTaxCodes() throws SQLException {
+        createTaxCodes();
+        final List<EasyTaxTaxCode> source = dao.getTaxCodes(tenantId, null, null, null, null);
+        final UUID destTenantId = UUID.randomUUID();
+
+        int result = dao.copyTaxCodes(tenantId, destTenantId, false);
+        assertEquals(result, 2, "Copy count");
+
+        List<EasyTaxTaxCode> codes = dao.getTaxCodes(destTenantId, null, null, null, null);
+        assertEquals(codes.size(), 2, "Result count");
+        for (int i = 0; i < codes.size(); i++) {
+            EasyTaxTaxCode code = codes.get(i);
+            EasyTaxTaxCode expected = source.get(i);
+            assertEquals(code.getKbTenantId(), destTenantId, "Tenant ID");
+            assertEquals(code.getTaxZone(), expected.getTaxZone(), "Tax zone");
+            assertEquals(code.getProductName(), expected.getProductName(), "Product name");
+            assertEquals(code.getTaxCode(), expected.getTaxCode(), "Tax code");
+            assertBigDecimalEquals(code.getTaxRate(), expected.getTaxRate(), 2, "Tax rate");
+            assertDateTimeEquals(code.getValidFromDate(), expected.getValidFromDate(),
+                    "Valid from");
+            assertDateTimeEquals(code.getValidToDate(), expected.getValidToDate(), "Valid to");
+        }
+
+        assertEquals(dao.getTaxCodes(tenantId, null, null, null, null), source,
+                "Source codes unchanged");
+    }
+
+    @Test(groups = "slow")
+    public void getTaxCodeTenantIds() throws SQLException {
+        createTaxCodes();
+        final UUID otherTenantId = UUID.randomUUID();
+        dao.copyTaxCodes(tenantId, otherTenantId, false);
+
+        Set<UUID> result = dao.getTaxCodeTenantIds();
+        assertTrue(result.contains(tenantId), "Tenant with tax codes");
+        assertTrue(result.contains(otherTenantId), "Other tenant with tax codes");
+        assertFalse(result.contains(UUID.randomUUID()), "Tenant without tax codes");
+    }
+
+    @Test(groups = "slow")
+    public void copyTaxCodesSkipsExisting() throws SQLException {
+        createTaxCodes();
+        final UUID destTenantId = UUID.randomUUID();
+        final EasyTaxTaxCode existing = new EasyTaxTaxCode(lastTaxCode);
+        existing.setKbTenantId(destTenantId);
+        existing.setTaxRate(new BigDecimal("0.2"));
+        dao.saveTaxCode(existing);
+
+        int result = dao.copyTaxCodes(tenantId, destTenantId, false);
+        assertEquals(result, 1, "Copy count");
+
+        List<EasyTaxTaxCode> codes = dao.getTaxCodes(destTenantId, null, null, null, null);
+        assertEquals(codes.size(), 2, "Result count");
+        assertEquals(codes.get(0), existing, "Existing code");
+        assertBigDecimalEquals(codes.get(0).getTaxRate(), existing.getTaxRate(), 2,
+                "Existing tax rate unchanged");
+    }
+
+    @Test(groups = "slow")
+    public void copyTaxCodesOverlapsExisting() throws SQLException {
+        createTaxCodes();
+        final UUID destTenantId = UUID.randomUUID();
+        final EasyTaxTaxCode existing = new EasyTaxTaxCode(lastTaxCode);
+        existing.setKbTenantId(destTenantId);
+        existing.setValidFromDate(lastTaxCode.getValidFromDate().minusMonths(1));
+        dao.saveTaxCode(existing);
+
+        try {
+            dao.copyTaxCodes(tenantId, destTenantId, false);
+            fail("Copied tax codes overlap existing tax code");
+        } catch (EasyTaxTaxCodeOverlapException e) {
+            assertFalse(e.getOverlaps().isEmpty(), "Overlaps reported");
+        }
+
+        List<EasyTaxTaxCode> codes = dao.getTaxCodes(destTenantId, null, null, null, null);
+        assertEquals(codes, Collections.singletonList(existing), "Nothing copied");
+    }
+
+    @Test(groups = "slow")
+    public void copyTaxCodesReplace() throws SQLException {
+        createTaxCodes();
+        final UUID destTenantId = UUID.randomUUID();
+        final EasyTaxTaxCode existing = new EasyTaxTaxCode(lastTaxCode);
+        existing.setKbTenantId(destTenantId);
+        existing.setTaxCode(UUID.randomUUID().toString());
+        dao.saveTaxCode(existing);
+
+        int result = dao.copyTaxCodes(tenantId, destTenantId, true);
+        assertEquals(result, 2, "Copy count");
+
+        List<EasyTaxTaxCode> codes = dao.getTaxCodes(destTenantId, null, null, null, null);
+        assertEquals(codes.size(), 2, "Result count");
+        assertFalse(codes.contains(existing), "Existing code replaced");
+    }
+
+    private List<EasyTaxTaxCode> stagedTaxCodes() {
+        final EasyTaxTaxCode taxCode = new EasyTaxTaxCode(lastTaxCode);
+        taxCode.setTaxCode(UUID.randomUUID().toString());
+        taxCode.setTaxRate(new BigDecimal("0.2"));
+        final EasyTaxTaxCode taxCode2 = new EasyTaxTaxCode(taxCode);
+        taxCode2.setProductName(UUID.randomUUID().toString());
+        return Arrays.asList(taxCode, taxCode2);
+    }
+
+    @Test(groups = "slow")
+    public void stageTaxCodes() throws SQLException {
+        createTaxCodes();
+        final UUID stageId = UUID.randomUUID();
+        final List<EasyTaxTaxCode> staged = stagedTaxCodes();
+
+        int result = dao.stageTaxCodes(tenantId, stageId, staged);
+        assertEquals(result, 2, "Stage count");
+
+        List<EasyTaxTaxCode> codes = dao.getStagedTaxCodes(tenantId, stageId);
+        assertEquals(codes, staged, "Staged codes");
+        assertEquals(dao.getTaxCodes(tenantId, null, null, null, null).size(), 2,
+                "Active codes unchanged");
+        assertEquals(dao.getStagedTaxCodes(UUID.randomUUID(), stageId).size(), 0,
+                "Staged codes scoped to tenant");
+    }
+
+    @Test(groups = "slow")
+    public void activateTaxCodeStage() throws SQLException {
+        createTaxCodes();
+        final UUID stageId = UUID.randomUUID();
+        final List<EasyTaxTaxCode> staged = stagedTaxCodes();
+        dao.stageTaxCodes(tenantId, stageId, staged);
+
+        int result = dao.activateTaxCodeStage(tenantId, stageId);
+        assertEquals(result, 2, "Activate count");
+
+        List<EasyTaxTaxCode> codes = dao.getTaxCodes(tenantId, null, null, null, null);
+        assertEquals(codes.size(), 2, "Result count");
+        assertEquals(new HashSet<>(codes), new HashSet<>(staged), "Active codes replaced");
+        assertEquals(dao.getStagedTaxCodes(tenantId, stageId).size(), 0, "Stage removed");
+    }
+
+    @Test(groups = "slow")
+    public void activateTaxCodeStageEmpty() throws SQLException {
+        createTaxCodes();
+
+        int result = dao.activateTaxCodeStage(tenantId, UUID.randomUUID());
+        assertEquals(result, 0, "Activate count");
+
+        assertEquals(dao.getTaxCodes(tenantId, null, null, null, null).size(), 2,
+                "Active codes unchanged");
+    }
+
+    @Test(groups = "slow")
+    public void activateTaxCodeStageInvalid() throws SQLException {
+        createTaxCodes();
+        final UUID stageId = UUID.randomUUID();
+        final List<EasyTaxTaxCode> staged = stagedTaxCodes();
+        staged.get(1).setTaxRate(new BigDecimal("-0.2"));
+        dao.stageTaxCodes(tenantId, stageId, staged);
+
+        try {
+            dao.activateTaxCodeStage(tenantId, stageId);
+            fail("Invalid stage should not be activated");
+        } catch (EasyTaxTaxCodeValidationException e) {
+            assertEquals(e.getErrors().size(), 1, "Validation error count");
+        }
+
+        assertEquals(dao.getTaxCodes(tenantId, null, null, null, null).size(), 2,
+                "Active codes unchanged");
+        assertEquals(dao.getStagedTaxCodes(tenantId, stageId).size(), 2, "Stage kept");
+    }
+
+    @Test(groups = "slow")
+    public void removeTaxCodeStage() throws SQLException {
+        createTaxCodes();
+        final UUID stageId = UUID.randomUUID();
+        dao.stageTaxCodes(tenantId, stageId, stagedTaxCodes());
+
+        int result = dao.removeTaxCodeStage(tenantId, stageId);
+        assertEquals(result, 2, "Remove count");
+
+        assertEquals(dao.getStagedTaxCodes(tenantId, stageId).size(), 0, "Stage removed");
+    }
+
+    @Test(groups = "slow")
+    public void removeTaxCodeStagesOlderThan() throws SQLException {
+        final UUID oldStageId = UUID.randomUUID();
+        final List<EasyTaxTaxCode> oldStaged = stagedTaxCodes();
+        for (EasyTaxTaxCode taxCode : oldStaged) {
+            taxCode.setCreatedDate(now.minusDays(2));
+        }
+        dao.stageTaxCodes(tenantId, oldStageId, oldStaged);
+        final UUID newStageId = UUID.randomUUID();
+        final List<EasyTaxTaxCode> newStaged = stagedTaxCodes();
+        newStaged.get(0).setCreatedDate(now.minusDays(2));
+        newStaged.get(1).setCreatedDate(now);
+        dao.stageTaxCodes(tenantId, newStageId, newStaged);
+
+        int result = dao.removeTaxCodeStages(now.minusDays(1), 100);
+        assertTrue(result >= 2, "Removed count includes old stage");
+
+        assertEquals(dao.getStagedTaxCodes(tenantId, oldStageId).size(), 0, "Old stage removed");
+        assertEquals(dao.getStagedTaxCodes(tenantId, newStageId).size(), 2,
+                "Recently added to stage kept");
+    }
+
+    @Test(groups = "slow")
+    public void rollOverTaxCodes() throws SQLException {
+        createTaxCodes();
+        final EasyTaxTaxCodeRollOver rollOver = new EasyTaxTaxCodeRollOver();
+        rollOver.setTaxZone(lastTaxCode.getTaxZone());
+        rollOver.setEffectiveDate(lastTaxCode.getValidFromDate().plusYears(1));
+        rollOver.setTaxRate(new BigDecimal("0.2"));
+
+        int result = dao.rollOverTaxCodes(tenantId, rollOver);
+        assertEquals(result, 1, "Roll over count");
+
+        List<EasyTaxTaxCode> codes = dao.getTaxCodes(tenantId, null, null, null, null);
+        assertEquals(codes.size(), 3, "Result count");
+        assertEquals(codes.get(1), lastTaxCode, "Closed code");
+        assertDateTimeEquals(codes.get(1).getValidToDate(), rollOver.getEffectiveDate(),
+                "Closed valid to date");
+        assertDateTimeEquals(codes.get(2).getValidFromDate(), rollOver.getEffectiveDate(),
+                "Successor valid from date");
+        assertNull(codes.get(2).getValidToDate(), "Successor valid to date");
+        assertBigDecimalEquals(codes.get(2).getTaxRate(), rollOver.getTaxRate(), 2,
+                "Successor tax rate");
+    }
+
+    @Test(groups = "slow")
+    public void rollOverTaxCodesProductPatternDelta() throws SQLException {
+        createTaxCodes();
+        final EasyTaxTaxCode other = new EasyTaxTaxCode(lastTaxCode);
+        other.setProductName("other");
+        dao.saveTaxCode(other);
+
+        final EasyTaxTaxCodeRollOver rollOver = new EasyTaxTaxCodeRollOver();
+        rollOver.setProductName(lastTaxCode.getProductName().substring(0, 8) + "*");
+        rollOver.setEffectiveDate(lastTaxCode.getValidFromDate().plusYears(1));
+        rollOver.setTaxRateDelta(new BigDecimal("0.02"));
+
+        int result = dao.rollOverTaxCodes(tenantId, rollOver);
+        assertEquals(result, 1, "Roll over count");
+
+        List<EasyTaxTaxCode> codes = dao.getTaxCodes(tenantId, null,
+                lastTaxCode.getProductName(), null, rollOver.getEffectiveDate());
+        assertEquals(codes.size(), 1, "Result count");
+        assertBigDecimalEquals(codes.get(0).getTaxRate(), new BigDecimal("0.20"), 2,
+                "Successor tax rate");
+        assertNull(dao.getTaxCodes(tenantId, null, "other", null, null).get(0).getValidToDate(),
+                "Non-matching product not closed");
+    }
+
+    @Test(groups = "slow")
+    public void rollOverTaxCodesAnyProduct() throws SQLException {
+        createTaxCodes();
+        final EasyTaxTaxCode any = new EasyTaxTaxCode(lastTaxCode);
+        any.setProductName(EasyTaxTaxCode.ANY_PRODUCT_NAME);
+        dao.saveTaxCode(any);
+
+        final EasyTaxTaxCodeRollOver rollOver = new EasyTaxTaxCodeRollOver();
+        rollOver.setTaxZone(lastTaxCode.getTaxZone());
+        rollOver.setProductName(EasyTaxTaxCode.ANY_PRODUCT_NAME);
+        rollOver.setEffectiveDate(lastTaxCode.getValidFromDate().plusYears(1));
+        rollOver.setTaxRate(new BigDecimal("0.2"));
+
+        int result = dao.rollOverTaxCodes(tenantId, rollOver);
+        assertEquals(result, 1, "Only the any product code rolled over");
+
+        List<EasyTaxTaxCode> codes = dao.getTaxCodes(tenantId, null,
+                EasyTaxTaxCode.ANY_PRODUCT_NAME, null, null);
+        assertEquals(codes.size(), 2, "Any product result count");
+        assertDateTimeEquals(codes.get(0).getValidToDate(), rollOver.getEffectiveDate(),
+                "Any product code closed");
+        assertNull(codes.get(1).getValidToDate(), "Any product successor valid to date");
+        assertNull(dao.getTaxCodes(tenantId, null, lastTaxCode.getProductName(), null,
+                lastTaxCode.getValidFromDate()).get(0).getValidToDate(),
+                "Product-specific code not closed");
+    }
+
+    @Test(groups = "slow")
+    public void rollOverTaxCodesExistingSuccessor() throws SQLException {
+        createTaxCodes();
+        final EasyTaxTaxCodeRollOver rollOver = new EasyTaxTaxCodeRollOver();
+        rollOver.setTaxZone(lastTaxCode.getTaxZone());
+        rollOver.setEffectiveDate(lastTaxCode.getValidFromDate().plusYears(1));
+        rollOver.setTaxRate(new BigDecimal("0.2"));
+        assertEquals(dao.rollOverTaxCodes(tenantId, rollOver), 1, "Roll over count");
+
+        // re-open the predecessor, as a concurrent roll over would still have seen it
+        try (Connection conn = embeddedDB.getDataSource().getConnection();
+                PreparedStatement stmt = conn.prepareStatement("update easytax_tax_codes"
+                        + " set valid_to_date = null where kb_tenant_id = ? and tax_rate = ?")) {
+            stmt.setString(1, tenantId.toString());
+            stmt.setBigDecimal(2, lastTaxCode.getTaxRate());
+            assertEquals(stmt.executeUpdate(), 1, "Predecessor re-opened");
+        }
+
+        try {
+            dao.rollOverTaxCodes(tenantId, rollOver);
+            fail("Roll over with an existing successor should fail");
+        } catch (EasyTaxTaxCodeOverlapException e) {
+            assertEquals(e.getOverlaps().size(), 1, "Overlap count");
+        }
+
+        List<EasyTaxTaxCode> codes = dao.getTaxCodes(tenantId, null, null, null, null);
+        assertEquals(codes.size(), 3, "No duplicate successor added");
+        assertNull(codes.get(1).getValidToDate(), "Predecessor not closed again");
+    }
+
+    @Test(groups = "slow")
+    public void rollOverTaxCodesBeforeValidFrom() throws SQLException {
+        createTaxCodes();
+        final EasyTaxTaxCodeRollOver rollOver = new EasyTaxTaxCodeRollOver();
+        rollOver.setEffectiveDate(lastTaxCode.getValidFromDate());
+        rollOver.setTaxRate(new BigDecimal("0.2"));
+
+        int result = dao.rollOverTaxCodes(tenantId, rollOver);
+        assertEquals(result, 0, "Roll over count");
+
+        assertEquals(dao.getTaxCodes(tenantId, null, null, null, null).size(), 2,
+                "Tax codes unchanged");
+    }
+
     @Test(groups = "slow")
     public void saveTaxation() throws SQLException {
         final DateTime now = new DateTime().secondOfMinute().roundFloorCopy();
@@ -411,4 +1140,260 @@ public class JooqEasyTaxDaoTests extends TestWithEmbeddedDBBase {
         }
     }
 
-}
\ No newline at end of file
+    @Test(groups = "slow")
+    public void archiveTaxationsAndGetFromArchive() throws SQLException {
+        final DateTime old = new DateTime().secondOfMinute().roundFloorCopy().minusDays(30);
+        EasyTaxTaxation template = new EasyTaxTaxation();
+        template.setCreatedDate(old);
+        template.setKbTenantId(tenantId);
+        template.setKbAccountId(UUID.randomUUID());
+        template.setKbInvoiceId(UUID.randomUUID());
+        List<EasyTaxTaxation> saved = saveTaxations(template, 2);
+
+        int result = dao.archiveTaxations(old.plusDays(1), 10);
+        assertEquals(result, 2, "Archived count");
+        assertEquals(dao.archiveTaxations(old.plusDays(1), 10), 0, "Nothing left to archive");
+
+        List<EasyTaxTaxation> taxations = dao.getTaxation(template.getKbTenantId(),
+                template.getKbAccountId(), template.getKbInvoiceId());
+        assertEquals(taxations.size(), saved.size(), "Archived record count");
+        for (ListIterator<EasyTaxTaxation> itr = taxations.listIterator(); itr.hasNext();) {
+            EasyTaxTestUtils.assertEquivalent(itr.next(), saved.get(itr.previousIndex()),
+                    String.valueOf(itr.previousIndex()));
+        }
+    }
+
+    @Test(groups = "slow")
+    public void archiveTaxationsThenTaxAgain() throws SQLException {
+        final DateTime old = new DateTime().secondOfMinute().roundFloorCopy().minusDays(30);
+        EasyTaxTaxation template = new EasyTaxTaxation();
+        template.setCreatedDate(old);
+        template.setKbTenantId(tenantId);
+        template.setKbAccountId(UUID.randomUUID());
+        template.setKbInvoiceId(UUID.randomUUID());
+        List<EasyTaxTaxation> saved = saveTaxations(template, 1);
+        assertEquals(dao.archiveTaxations(old.plusDays(1), 10), 1, "Archived count");
+
+        // an adjustment on the archived invoice adds a new taxation
+        template.setCreatedDate(old.plusDays(30));
+        saved.addAll(saveTaxations(template, 1));
+
+        List<EasyTaxTaxation> taxations = dao.getTaxation(template.getKbTenantId(),
+                template.getKbAccountId(), template.getKbInvoiceId());
+        assertEquals(taxations.size(), 2, "Archived and new record count");
+        for (ListIterator<EasyTaxTaxation> itr = taxations.listIterator(); itr.hasNext();) {
+            EasyTaxTestUtils.assertEquivalent(itr.next(), saved.get(itr.previousIndex()),
+                    String.valueOf(itr.previousIndex()));
+        }
+        assertTrue(taxations.get(0).getInvoiceItemIds().keySet()
+                .containsAll(saved.get(0).getInvoiceItemIds().keySet()),
+                "Archived taxed items still returned");
+    }
+
+    @Test(groups = "slow")
+    public void archiveTaxationsRetriedBatchNotDuplicated() throws SQLException {
+        final DateTime old = new DateTime().secondOfMinute().roundFloorCopy().minusDays(30);
+        EasyTaxTaxation template = new EasyTaxTaxation();
+        template.setCreatedDate(old);
+        template.setKbTenantId(tenantId);
+        template.setKbAccountId(UUID.randomUUID());
+        template.setKbInvoiceId(UUID.randomUUID());
+        List<EasyTaxTaxation> saved = saveTaxations(template, 1);
+        assertEquals(dao.archiveTaxations(old.plusDays(1), 10), 1, "Archived count");
+
+        // put the archived record back, as if a batch was retried after copying it
+        try (Connection conn = embeddedDB.getDataSource().getConnection();
+                PreparedStatement stmt = conn.prepareStatement("insert into easytax_taxations"
+                        + " select * from easytax_taxations_archive where kb_invoice_id = ?")) {
+            stmt.setString(1, template.getKbInvoiceId().toString());
+            assertEquals(stmt.executeUpdate(), 1, "Record copied back");
+        }
+        assertEquals(dao.archiveTaxations(old.plusDays(1), 10), 1, "Archived again count");
+
+        List<EasyTaxTaxation> taxations = dao.getTaxation(template.getKbTenantId(),
+                template.getKbAccountId(), template.getKbInvoiceId());
+        assertEquals(taxations.size(), 1, "Archived record not duplicated");
+        EasyTaxTestUtils.assertEquivalent(taxations.get(0), saved.get(0), "0");
+    }
+
+    @Test(groups = "slow")
+    public void archiveTaxationsSkipsInvoicesWithRecentTaxation() throws SQLException {
+        final DateTime old = new DateTime().secondOfMinute().roundFloorCopy().minusDays(30);
+        EasyTaxTaxation template = new EasyTaxTaxation();
+        template.setCreatedDate(old);
+        template.setKbTenantId(tenantId);
+        template.setKbAccountId(UUID.randomUUID());
+        template.setKbInvoiceId(UUID.randomUUID());
+        saveTaxations(template, 1);
+
+        template.setCreatedDate(old.plusDays(29));
+        saveTaxations(template, 1);
+
+        assertEquals(dao.archiveTaxations(old.plusDays(1), 10), 0, "Archived count");
+        assertEquals(dao.getTaxation(template.getKbTenantId(), template.getKbAccountId(),
+                template.getKbInvoiceId()).size(), 2, "Records not archived");
+    }
+
+    @Test(groups = "slow")
+    public void archiveTaxationsLimitsInvoices() throws SQLException {
+        final DateTime old = new DateTime().secondOfMinute().roundFloorCopy().minusDays(30);
+        for (int i = 0; i < 3; i++) {
+            EasyTaxTaxation template = new EasyTaxTaxation();
+            template.setCreatedDate(old);
+            template.setKbTenantId(tenantId);
+            template.setKbAccountId(UUID.randomUUID());
+            template.setKbInvoiceId(UUID.randomUUID());
+            saveTaxations(template, 2);
+        }
+
+        assertEquals(dao.archiveTaxations(old.plusDays(1), 2), 4, "First batch count");
+        assertEquals(dao.archiveTaxations(old.plusDays(1), 2), 2, "Second batch count");
+        assertEquals(dao.archiveTaxations(old.plusDays(1), 2), 0, "Final batch count");
+    }
+
+    @Test(groups = "slow")
+    public void compactTaxation() throws SQLException {
+        final DateTime now = new DateTime().secondOfMinute().roundFloorCopy();
+        EasyTaxTaxation template = new EasyTaxTaxation();
+        template.setCreatedDate(now.minusHours(1));
+        template.setKbTenantId(tenantId);
+        template.setKbAccountId(UUID.randomUUID());
+        template.setKbInvoiceId(UUID.randomUUID());
+        List<EasyTaxTaxation> saved = saveTaxations(template, 2);
+        template.setCreatedDate(now);
+        saved.addAll(saveTaxations(template, 1));
+
+        List<EasyTaxTaxation> taxations = dao.getTaxation(template.getKbTenantId(),
+                template.getKbAccountId(), template.getKbInvoiceId());
+        final Long firstRecordId = taxations.get(0).getRecordId();
+
+        int result = dao.compactTaxation(template.getKbTenantId(), template.getKbAccountId(),
+                template.getKbInvoiceId());
+        assertEquals(result, 2, "Removed record count");
+
+        taxations = dao.getTaxation(template.getKbTenantId(), template.getKbAccountId(),
+                template.getKbInvoiceId());
+        assertEquals(taxations.size(), 1, "Compacted record count");
+        EasyTaxTaxation compacted = taxations.get(0);
+        assertEquals(compacted.getRecordId(), firstRecordId, "Oldest record kept");
+        assertDateTimeEquals(compacted.getCreatedDate(), now, "Latest created date");
+
+        BigDecimal expectedTotal = BigDecimal.ZERO;
+        Map<UUID, Set<UUID>> expectedItemIds = new HashMap<>();
+        for (EasyTaxTaxation tax : saved) {
+            expectedTotal = expectedTotal.add(tax.getTotalTax());
+            expectedItemIds.putAll(tax.getInvoiceItemIds());
+        }
+        assertBigDecimalEquals(compacted.getTotalTax(), expectedTotal, 2, "Summed total tax");
+        assertEquals(compacted.getInvoiceItemIds(), expectedItemIds, "Unioned invoice item IDs");
+
+        assertEquals(dao.compactTaxation(template.getKbTenantId(), template.getKbAccountId(),
+                template.getKbInvoiceId()), 0, "Already compacted");
+    }
+
+    @Test(groups = "slow")
+    public void compactTaxationsWithMinRecords() throws SQLException {
+        final DateTime now = new DateTime().secondOfMinute().roundFloorCopy();
+        EasyTaxTaxation many = new EasyTaxTaxation();
+        many.setCreatedDate(now);
+        many.setKbTenantId(tenantId);
+        many.setKbAccountId(UUID.randomUUID());
+        many.setKbInvoiceId(UUID.randomUUID());
+        saveTaxations(many, 50);
+
+        EasyTaxTaxation few = new EasyTaxTaxation(many);
+        few.setKbInvoiceId(UUID.randomUUID());
+        saveTaxations(few, 2);
+
+        int result;
+        do {
+            result = dao.compactTaxations(50, 10);
+        } while (result > 0);
+
+        assertEquals(dao.getTaxation(tenantId, many.getKbAccountId(), many.getKbInvoiceId())
+                .size(), 1, "Invoice with many records compacted");
+        assertEquals(
+                dao.getTaxation(tenantId, few.getKbAccountId(), few.getKbInvoiceId()).size(), 2,
+                "Invoice with few records not compacted");
+    }
+
+    @Test(groups = "slow", expectedExceptions = SQLIntegrityConstraintViolationException.class)
+    public void saveTaxationDuplicateContentHash() throws SQLException {
+        saveTaxation();
+        EasyTaxTaxation taxation = new EasyTaxTaxation(lastTaxation);
+        taxation.setContentHash(String.format("%064x", 1));
+        dao.addTaxation(taxation);
+
+        EasyTaxTaxation dup = new EasyTaxTaxation(taxation);
+        dup.setTotalTax(BigDecimal.TEN);
+        dao.addTaxation(dup);
+    }
+
+    @Test(groups = "slow", expectedExceptions = SQLIntegrityConstraintViolationException.class)
+    public void saveTaxationDuplicateContentHashAfterCompact() throws SQLException {
+        saveTaxation();
+        EasyTaxTaxation first = new EasyTaxTaxation(lastTaxation);
+        first.setContentHash(String.format("%064x", 1));
+        dao.addTaxation(first);
+        EasyTaxTaxation second = new EasyTaxTaxation(lastTaxation);
+        second.setContentHash(String.format("%064x", 2));
+        dao.addTaxation(second);
+        assertEquals(dao.compactTaxation(tenantId, lastTaxation.getKbAccountId(),
+                lastTaxation.getKbInvoiceId()), 2, "Compacted record count");
+
+        // the compacted record no longer holds the second hash
+        EasyTaxTaxation dup = new EasyTaxTaxation(second);
+        dup.setTotalTax(BigDecimal.TEN);
+        dao.addTaxation(dup);
+    }
+
+    @Test(groups = "slow")
+    public void saveTaxationContentHashRemovedAfterArchive() throws SQLException {
+        final DateTime old = new DateTime().secondOfMinute().roundFloorCopy().minusDays(30);
+        EasyTaxTaxation taxation = new EasyTaxTaxation();
+        taxation.setCreatedDate(old);
+        taxation.setKbTenantId(tenantId);
+        taxation.setKbAccountId(UUID.randomUUID());
+        taxation.setKbInvoiceId(UUID.randomUUID());
+        taxation.setTotalTax(BigDecimal.ONE);
+        taxation.setContentHash(String.format("%064x", 1));
+        dao.addTaxation(taxation);
+        assertEquals(dao.archiveTaxations(old.plusDays(1), 10), 1, "Archived count");
+
+        try (Connection conn = embeddedDB.getDataSource().getConnection();
+                PreparedStatement stmt = conn.prepareStatement(
+                        "select count(*) from easytax_taxation_hashes where kb_invoice_id = ?")) {
+            stmt.setString(1, taxation.getKbInvoiceId().toString());
+            try (ResultSet rs = stmt.executeQuery()) {
+                assertTrue(rs.next());
+                assertEquals(rs.getInt(1), 0, "Hashes of archived invoice removed");
+            }
+        }
+
+        // the hash is no longer checked, and the archived record is restored
+        EasyTaxTaxation dup = new EasyTaxTaxation(taxation);
+        dup.setCreatedDate(old.plusDays(30));
+        dao.addTaxation(dup);
+        assertEquals(dao.getTaxation(tenantId, taxation.getKbAccountId(),
+                taxation.getKbInvoiceId()).size(), 2, "Restored record count");
+    }
+
+    @Test(groups = "slow")
+    public void saveTaxationsDifferentContentHash() throws SQLException {
+        saveTaxation();
+        EasyTaxTaxation taxation = new EasyTaxTaxation(lastTaxation);
+        taxation.setContentHash(String.format("%064x", 1));
+        dao.addTaxation(taxation);
+
+        EasyTaxTaxation other = new EasyTaxTaxation(taxation);
+        other.setContentHash(String.format("%064x", 2));
+        dao.addTaxation(other);
+
+        List<EasyTaxTaxation> taxations = dao.getTaxation(taxation.getKbTenantId(),
+                taxation.getKbAccountId(), taxation.getKbInvoiceId());
+        assertEquals(taxations.size(), 3, "Saved record count");
+        EasyTaxTestUtils.assertEquivalent(taxations.get(1), taxation, "1");
+        EasyTaxTestUtils.assertEquivalent(taxations.get(2), other, "2");
+    }
+
+}
@@ -0,0 +1,159 @@
+/*  Copyright 2017 SolarNetwork Foundation
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.killbill.billing.plugin.easytax.dao;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.killbill.billing.plugin.easytax.core.EasyTaxTaxCode;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Test cases for the {@link TaxCodeTimeline} class.
+ *
+ * @author matt
+ */
+public class TaxCodeTimelineTests {
+
+    private static final DateTime START = new DateTime(2017, 1, 1, 0, 0, DateTimeZone.UTC);
+
+    private EasyTaxTaxCode gst;
+    private EasyTaxTaxCode gst2;
+    private EasyTaxTaxCode levy;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setup() {
+        gst = taxCode("GST", "0.15", START, START.plusYears(1));
+        gst2 = taxCode("GST", "0.18", START.plusYears(1), null);
+        levy = taxCode("LEVY", "0.01", START.plusMonths(6), START.plusMonths(18));
+    }
+
+    private static EasyTaxTaxCode taxCode(String code, String rate, DateTime from, DateTime to) {
+        EasyTaxTaxCode taxCode = new EasyTaxTaxCode(code);
+        taxCode.setTaxZone("NZ");
+        taxCode.setProductName("memory-use");
+        taxCode.setTaxRate(new BigDecimal(rate));
+        taxCode.setValidFromDate(from);
+        taxCode.setValidToDate(to);
+        return taxCode;
+    }
+
+    @Test(groups = "fast")
+    public void segments() {
+        TaxCodeTimeline timeline = TaxCodeTimeline.build(Arrays.asList(gst, gst2, levy));
+
+        assertEquals(timeline.getSegmentCount(), 4, "Segment count");
+        assertEquals(timeline.taxCodesAt(START.minusMillis(1).getMillis()).length, 0,
+                "Before first");
+        assertEquals(timeline.taxCodesAt(START.getMillis()), new EasyTaxTaxCode[] { gst },
+                "First segment start");
+        assertEquals(timeline.taxCodesAt(START.plusMonths(6).minusMillis(1).getMillis()),
+                new EasyTaxTaxCode[] { gst }, "First segment end");
+        assertEquals(timeline.taxCodesAt(START.plusMonths(6).getMillis()),
+                new EasyTaxTaxCode[] { levy, gst }, "Second segment, latest valid from first");
+        assertEquals(timeline.taxCodesAt(START.plusYears(1).getMillis()),
+                new EasyTaxTaxCode[] { gst2, levy }, "Third segment");
+        assertEquals(timeline.taxCodesAt(START.plusYears(10).getMillis()),
+                new EasyTaxTaxCode[] { gst2 }, "Open ended segment");
+    }
+
+    @Test(groups = "fast")
+    public void gap() {
+        EasyTaxTaxCode later = taxCode("GST", "0.2", START.plusYears(2), null);
+        TaxCodeTimeline timeline = TaxCodeTimeline.build(Arrays.asList(gst, later));
+
+        assertEquals(timeline.taxCodesAt(START.plusYears(1).getMillis()).length, 0,
+                "No codes in gap");
+        assertEquals(timeline.taxCodesAt(START.plusYears(2).getMillis()),
+                new EasyTaxTaxCode[] { later }, "After gap");
+    }
+
+    @Test(groups = "fast")
+    public void mergesAdjacentSegments() {
+        // a code that is never valid adds boundaries without changing the applicable codes
+        EasyTaxTaxCode never = taxCode("X", "0.1", START.plusMonths(3), START.plusMonths(3));
+        TaxCodeTimeline timeline = TaxCodeTimeline.build(Arrays.asList(gst, never));
+
+        assertEquals(timeline.getSegmentCount(), 2, "Segment count");
+        assertEquals(timeline.taxCodesAt(START.plusMonths(3).getMillis()),
+                new EasyTaxTaxCode[] { gst }, "Merged segment");
+    }
+
+    @Test(groups = "fast")
+    public void index() {
+        EasyTaxTaxCode au = taxCode("GST", "0.1", START, null);
+        au.setTaxZone("AU");
+        Map<String, TaxCodeTimeline> index = TaxCodeTimeline.index(Arrays.asList(gst, gst2, au));
+
+        assertEquals(index.size(), 2, "Timeline count");
+        assertSame(index.get(TaxCodeTimeline.key("AU", "memory-use"))
+                .taxCodesAt(START.getMillis())[0], au, "AU code");
+        assertSame(index.get(TaxCodeTimeline.key("NZ", "memory-use"))
+                .taxCodesAt(START.getMillis())[0], gst, "NZ code");
+    }
+
+    @Test(groups = "fast")
+    public void merge() {
+        EasyTaxTaxCode city = taxCode("CITY", "0.02", START.plusMonths(6), null);
+        city.setTaxZone("NZ-AKL");
+        TaxCodeTimeline timeline = TaxCodeTimeline.merge(
+                Arrays.asList(TaxCodeTimeline.build(Arrays.asList(city)),
+                        TaxCodeTimeline.build(Arrays.asList(gst, gst2, levy))));
+
+        assertEquals(timeline.getSegmentCount(), 4, "Segment count");
+        assertEquals(timeline.taxCodesAt(START.getMillis()), new EasyTaxTaxCode[] { gst },
+                "Before city code");
+        assertEquals(timeline.taxCodesAt(START.plusMonths(6).getMillis()),
+                new EasyTaxTaxCode[] { city, levy, gst },
+                "Same valid from date in timeline order");
+        assertEquals(timeline.taxCodesAt(START.plusYears(10).getMillis()),
+                new EasyTaxTaxCode[] { gst2, city }, "Open ended segment");
+    }
+
+    @Test(groups = "fast")
+    public void sameAsFilter() {
+        final Random rng = new Random(12345L);
+        final List<EasyTaxTaxCode> codes = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            DateTime from = START.plusDays(rng.nextInt(1000));
+            DateTime to = (rng.nextInt(4) == 0 ? null : from.plusDays(1 + rng.nextInt(400)));
+            EasyTaxTaxCode code = taxCode("C" + rng.nextInt(5), "0.1", from, to);
+            code.setProductName("P" + rng.nextInt(3));
+            codes.add(code);
+        }
+        final Map<String, TaxCodeTimeline> index = TaxCodeTimeline.index(codes);
+        for (int i = 0; i < 2000; i++) {
+            DateTime date = START.plusDays(rng.nextInt(1500) - 50)
+                    .plusMillis(rng.nextInt(3) == 0 ? 0 : rng.nextInt(86400000));
+            String productName = "P" + rng.nextInt(4);
+            String taxCode = (rng.nextBoolean() ? null : "C" + rng.nextInt(5));
+            assertEquals(TaxCodeFilter.filter(codes, index, "NZ", productName, taxCode, date),
+                    TaxCodeFilter.filter(codes, "NZ", productName, taxCode, date),
+                    "Timeline filter at " + date);
+        }
+    }
+
+}